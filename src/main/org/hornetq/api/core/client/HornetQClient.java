@@ -50,6 +50,12 @@ public class HornetQClient
 
    public static final int DEFAULT_CONSUMER_MAX_RATE = -1;
 
+   public static final boolean DEFAULT_CONSUMER_WINDOW_ADAPTIVE = false;
+
+   public static final int DEFAULT_CONSUMER_MIN_WINDOW_SIZE = 64 * 1024;
+
+   public static final int DEFAULT_CONSUMER_MAX_WINDOW_SIZE = 10 * 1024 * 1024;
+
    public static final int DEFAULT_CONFIRMATION_WINDOW_SIZE = -1;
 
    public static final int DEFAULT_PRODUCER_WINDOW_SIZE = 64 * 1024;
@@ -97,6 +103,13 @@ public class HornetQClient
    public static final boolean DEFAULT_XA = false;
    
    public static final boolean DEFAULT_HA = false;
+
+   /**
+    * The session metadata giving the weight of the session's consumers, used by queues whose consumer-dispatch-policy
+    * is WEIGHTED. A consumer with a weight of 4 gets 4 times as many outstanding messages as a consumer with a weight
+    * of 1, which is the default.
+    */
+   public static final String CONSUMER_WEIGHT_METADATA = "consumer-weight";
    
    /**
     * Create a ServerLocator which creates session factories using a static list of transportConfigurations, the ServerLocator is not updated automatically
@@ -165,6 +165,63 @@ public interface ServerLocator
     */
    void setConsumerWindowSize(int consumerWindowSize);
 
+   /**
+    * Returns whether the consumers created through this factory adapt their window size.
+    * 
+    * Default value is {@link HornetQClient#DEFAULT_CONSUMER_WINDOW_ADAPTIVE}.
+    * 
+    * @return <code>true</code> if the window size of the consumers is adapted to their rate, <code>false</code> else
+    */
+   boolean isConsumerWindowAdaptive();
+
+   /**
+    * Sets whether the consumers created through this factory adapt their window size.
+    * 
+    * An adaptive consumer measures the rate at which it consumes messages and the time it takes for them to arrive
+    * once it has sent credits, and sizes its window to cover the messages consumed during that time. The window starts
+    * at the consumer window size and stays between the consumer min and max window sizes.
+    * It only applies to consumers with a window size greater than 1.
+    *
+    * @param consumerWindowAdaptive <code>true</code> to adapt the window size of the consumers, <code>false</code> else
+    */
+   void setConsumerWindowAdaptive(boolean consumerWindowAdaptive);
+
+   /**
+    * Returns the minimum window size of the adaptive consumers created through this factory.
+    * 
+    * Value is in bytes, default value is {@link HornetQClient#DEFAULT_CONSUMER_MIN_WINDOW_SIZE}.
+    * 
+    * @return the minimum window size of the adaptive consumers
+    */
+   int getConsumerMinWindowSize();
+
+   /**
+    * Sets the minimum window size of the adaptive consumers created through this factory.
+    * 
+    * Value must be greater than 1.
+    *
+    * @param consumerMinWindowSize minimum window size (in bytes) of the adaptive consumers
+    */
+   void setConsumerMinWindowSize(int consumerMinWindowSize);
+
+   /**
+    * Returns the maximum window size of the adaptive consumers created through this factory.
+    * 
+    * Value is in bytes, default value is {@link HornetQClient#DEFAULT_CONSUMER_MAX_WINDOW_SIZE}.
+    * 
+    * @return the maximum window size of the adaptive consumers
+    */
+   int getConsumerMaxWindowSize();
+
+   /**
+    * Sets the maximum window size of the adaptive consumers created through this factory.
+    * 
+    * Value must be greater than or equal to the minimum window size.
+    *
+    * @param consumerMaxWindowSize maximum window size (in bytes) of the adaptive consumers
+    */
+   void setConsumerMaxWindowSize(int consumerMaxWindowSize);
+
    /**
     * Returns the maximum rate of message consumption for consumers created through this factory.
     * 
@@ -139,6 +139,63 @@ public interface HornetQServerControl
     */
    int getJournalCompactPercentage();
 
+   /**
+    * Returns the average time (in microseconds) taken to write and sync a batch on the message journal.
+    */
+   long getJournalFlushLatency();
+
+   /**
+    * Returns the average size (in bytes) of the batches written on the message journal.
+    */
+   long getJournalBatchSize();
+
+   /**
+    * Returns the average number of records on each batch written on the message journal.
+    */
+   double getJournalBatchRecords();
+
+   /**
+    * Returns the timeout (in nanoseconds) currently used to flush internal buffers on the journal.
+    * <br>
+    * It's lower than {@link #getJournalBufferTimeout()} when the timeout is adapted to the measured flush latency.
+    */
+   int getJournalCurrentBufferTimeout();
+
+   /**
+    * Returns the number of bytes rewritten by the last compacting of the journal.
+    */
+   long getJournalCompactBytesRewritten();
+
+   /**
+    * Returns the time (in microseconds) the appends to the journal were blocked by the last compacting.
+    */
+   long getJournalCompactPauseTime();
+
+   /**
+    * Returns the number of journal files reclaimed by the last compacting.
+    */
+   int getJournalCompactReclaimedFiles();
+
+   /**
+    * Returns the number of times an append to the journal had to wait for the next journal file to be ready.
+    */
+   long getJournalFileWaitCount();
+
+   /**
+    * Returns the total time (in microseconds) appends to the journal waited for the next journal file to be ready.
+    */
+   long getJournalFileWaitTime();
+
+   /**
+    * Returns the number of records migrated from the hot journal to the message journal.
+    */
+   long getJournalHotMigratedRecords();
+
+   /**
+    * Returns the number of records deleted while on the hot journal, which were never written to the message journal.
+    */
+   long getJournalHotDeletedRecords();
+
    /**
     * Returns whether this server is using persistence and store data.
     */
@@ -200,6 +257,41 @@ public interface HornetQServerControl
     */
    String getPagingDirectory();
 
+   /**
+    * Returns the max size (in bytes) of the pages cached for all the addresses.
+    */
+   long getPageCacheMaxSize();
+
+   /**
+    * Returns the size (in bytes) of the pages cached for all the addresses.
+    */
+   long getPageCacheSize();
+
+   /**
+    * Returns the number of times a page was found in the page cache.
+    */
+   long getPageCacheHits();
+
+   /**
+    * Returns the number of times a page was not found in the page cache and had to be read.
+    */
+   long getPageCacheMisses();
+
+   /**
+    * Returns the number of pages evicted from the page cache to keep it within its max size.
+    */
+   long getPageCacheEvictions();
+
+   /**
+    * Returns the max size (in bytes) of the messages in memory for all the addresses together, -1 if there's no limit.
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * Returns the size (in bytes) of the messages in memory for all the addresses together.
+    */
+   long getGlobalSize();
+
    /**
     * Returns whether delivery count is persisted before messages are delivered to the consumers.
     */
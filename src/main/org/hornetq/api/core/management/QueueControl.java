@@ -67,11 +67,21 @@ public interface QueueControl
     */
    long getScheduledCount();
 
+   /**
+    * Returns the time of the next scheduled delivery of this queue, or 0 if there are no scheduled messages.
+    */
+   long getNextScheduledDeliveryTime();
+
    /**
     * Returns the number of consumers consuming messages from this queue.
     */
    int getConsumerCount();
 
+   /**
+    * Returns the number of message groups pinned to the consumers of this queue.
+    */
+   int getGroupCount();
+
    /**
     * Returns the number of messages that this queue is currently delivering to its consumers.
     */
@@ -82,6 +92,17 @@ public interface QueueControl
     */
    long getMessagesAdded();
 
+   /**
+    * Returns the number of messages read from the paging files of this queue's address for this queue.
+    */
+   long getMessagesDepaged();
+
+   /**
+    * Returns the rate (in messages per second) at which messages are read from the paging files for this queue,
+    * measured since the previous call if it was at least a second ago.
+    */
+   double getDepageRate();
+
    /**
     * Returns the expiry address associated to this queue.
     */
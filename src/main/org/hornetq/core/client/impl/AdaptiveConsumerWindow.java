@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+/**
+ * The window size of an adaptive consumer.
+ *
+ * <p>The window has to cover the bytes the consumer consumes during a round trip to the server, so it doesn't wait for
+ * messages once it has sent credits. Every time the consumer sends credits, the window is sized to twice its rate
+ * multiplied by the round trip time, as credits are only sent once half of the window has been consumed. The window is
+ * at most doubled or halved each time, and it stays between the min and max sizes.</p>
+ *
+ * <p>The round trip time is measured when the server has used all its credits: it's the time between the credits
+ * being sent and the next message arriving. Until it's known, it's taken as 0, so the window shrinks until the server
+ * runs out of credits.</p>
+ */
+public class AdaptiveConsumerWindow
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final int minSize;
+
+   private final int maxSize;
+
+   private int windowSize;
+
+   /** The credits the server has left, as far as the messages received tell */
+   private long serverCredits;
+
+   /** When credits were sent while the server had none left, -1 if it has some */
+   private long blockedSince = -1;
+
+   /** In milliseconds */
+   private double roundTripTime;
+
+   /** In bytes per second, -1 until it's measured */
+   private double rate = -1;
+
+   /** Consumed and not credited yet, negative when the window shrank by more than what had been consumed */
+   private int creditsToSend;
+
+   /** Consumed and not accounted for in the rate yet */
+   private long consumedBytes;
+
+   private long lastResize;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param initialSize the window size, which the server is given as credits when the consumer is created
+    */
+   public AdaptiveConsumerWindow(final int initialSize, final int minSize, final int maxSize, final long now)
+   {
+      this.minSize = minSize;
+
+      this.maxSize = Math.max(minSize, maxSize);
+
+      windowSize = Math.min(Math.max(initialSize, minSize), this.maxSize);
+
+      serverCredits = windowSize;
+
+      lastResize = now;
+   }
+
+   // Public --------------------------------------------------------
+
+   public synchronized int getWindowSize()
+   {
+      return windowSize;
+   }
+
+   /**
+    * @return the round trip time in milliseconds
+    */
+   public synchronized double getRoundTripTime()
+   {
+      return roundTripTime;
+   }
+
+   /**
+    * @return the consumption rate in bytes per second, -1 if it's not measured yet
+    */
+   public synchronized double getRate()
+   {
+      return rate;
+   }
+
+   /**
+    * A message (or a chunk of a large message) arrived from the server
+    */
+   public synchronized void received(final int bytes, final long now)
+   {
+      if (blockedSince >= 0)
+      {
+         long sample = now - blockedSince;
+
+         roundTripTime = roundTripTime == 0 ? sample : (roundTripTime * 7 + sample) / 8;
+
+         blockedSince = -1;
+      }
+
+      serverCredits -= bytes;
+   }
+
+   /**
+    * The consumer consumed a message (or a chunk of a large message).
+    *
+    * @return the credits to send to the server, 0 if none are to be sent yet
+    */
+   public synchronized int consumed(final int bytes, final long now)
+   {
+      creditsToSend += bytes;
+
+      consumedBytes += bytes;
+
+      if (creditsToSend < windowSize >> 1)
+      {
+         return 0;
+      }
+
+      int credits = resize(creditsToSend, now);
+
+      if (credits <= 0)
+      {
+         creditsToSend = credits;
+
+         return 0;
+      }
+
+      creditsToSend = 0;
+
+      if (serverCredits <= 0 && blockedSince < 0)
+      {
+         blockedSince = now;
+      }
+
+      serverCredits += credits;
+
+      return credits;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "AdaptiveConsumerWindow[windowSize=" + windowSize +
+             ", rate=" +
+             (long)rate +
+             ", roundTripTime=" +
+             roundTripTime +
+             "]";
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   /**
+    * @return the credits consumed adjusted by the change of the window size
+    */
+   private int resize(final int consumed, final long now)
+   {
+      // the clock may not have moved when the consumer is fast enough
+      long elapsed = Math.max(1, now - lastResize);
+
+      double sample = consumedBytes * 1000d / elapsed;
+
+      rate = rate < 0 ? sample : (rate + sample) / 2;
+
+      consumedBytes = 0;
+
+      lastResize = now;
+
+      long target = (long)(2 * rate * roundTripTime / 1000);
+
+      target = Math.min(target, windowSize * 2L);
+
+      target = Math.max(target, windowSize / 2);
+
+      target = Math.min(Math.max(target, minSize), maxSize);
+
+      int delta = (int)target - windowSize;
+
+      windowSize = (int)target;
+
+      return consumed + delta;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
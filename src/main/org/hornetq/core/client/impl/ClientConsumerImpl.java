@@ -76,6 +76,9 @@ public class ClientConsumerImpl implements ClientConsumerInternal
 
    private final int clientWindowSize;
 
+   /** null unless the consumer adapts its window size */
+   private final AdaptiveConsumerWindow adaptiveWindow;
+
    private final int ackBatchSize;
 
    private final PriorityLinkedList<ClientMessageInternal> buffer = new PriorityLinkedListImpl<ClientMessageInternal>(ClientConsumerImpl.NUM_PRIORITIES);
@@ -125,6 +128,7 @@ public class ClientConsumerImpl implements ClientConsumerInternal
                              final SimpleString filterString,
                              final boolean browseOnly,
                              final int clientWindowSize,
+                             final AdaptiveConsumerWindow adaptiveWindow,
                              final int ackBatchSize,
                              final TokenBucketLimiter rateLimiter,
                              final Executor executor,
@@ -149,6 +153,8 @@ public class ClientConsumerImpl implements ClientConsumerInternal
 
       this.clientWindowSize = clientWindowSize;
 
+      this.adaptiveWindow = adaptiveWindow;
+
       this.ackBatchSize = ackBatchSize;
 
       this.queueInfo = queueInfo;
@@ -492,6 +498,11 @@ public class ClientConsumerImpl implements ClientConsumerInternal
 
       ClientMessageInternal messageToHandle = message;
 
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.received(message.getFlowControlSize(), System.currentTimeMillis());
+      }
+
       if (messageToHandle.getAddress() == null)
       {
          messageToHandle.setAddressTransient(queueInfo.getAddress());
@@ -532,6 +543,11 @@ public class ClientConsumerImpl implements ClientConsumerInternal
          return;
       }
 
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.received(packet.getPacketSize(), System.currentTimeMillis());
+      }
+
       // Flow control for the first packet, we will have others
 
       flowControl(packet.getPacketSize(), false);
@@ -571,6 +587,10 @@ public class ClientConsumerImpl implements ClientConsumerInternal
       {
          return;
       }
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.received(chunk.getPacketSize(), System.currentTimeMillis());
+      }
       currentLargeMessageController.addPacket(chunk);
    }
 
@@ -652,7 +672,11 @@ public class ClientConsumerImpl implements ClientConsumerInternal
     */
    public void flowControl(final int messageBytes, final boolean discountSlowConsumer) throws HornetQException
    {
-      if (clientWindowSize >= 0)
+      if (adaptiveWindow != null)
+      {
+         adaptiveFlowControl(messageBytes);
+      }
+      else if (clientWindowSize >= 0)
       {
          creditsToSend += messageBytes;
 
@@ -708,6 +732,21 @@ public class ClientConsumerImpl implements ClientConsumerInternal
    // Private
    // ---------------------------------------------------------------------------------------
 
+   private void adaptiveFlowControl(final int messageBytes)
+   {
+      int credits = adaptiveWindow.consumed(messageBytes, System.currentTimeMillis());
+
+      if (credits > 0)
+      {
+         if (ClientConsumerImpl.trace)
+         {
+            ClientConsumerImpl.log.trace("Sending " + credits + " from flow-control, " + adaptiveWindow);
+         }
+
+         channel.send(new SessionConsumerFlowCreditMessage(id, credits, adaptiveWindow.getWindowSize()));
+      }
+   }
+
    /** 
     * Sending a initial credit for slow consumers
     * */
@@ -716,6 +716,9 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal, C
                                                                      ackBatchSize,
                                                                      serverLocator.getConsumerWindowSize(),
                                                                      serverLocator.getConsumerMaxRate(),
+                                                                     serverLocator.isConsumerWindowAdaptive(),
+                                                                     serverLocator.getConsumerMinWindowSize(),
+                                                                     serverLocator.getConsumerMaxWindowSize(),
                                                                      serverLocator.getConfirmationWindowSize(),
                                                                      serverLocator.getProducerWindowSize(),
                                                                      serverLocator.getProducerMaxRate(),
@@ -146,6 +146,12 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
    private final int consumerMaxRate;
 
+   private final boolean consumerWindowAdaptive;
+
+   private final int consumerMinWindowSize;
+
+   private final int consumerMaxWindowSize;
+
    private final int confirmationWindowSize;
 
    private final int producerMaxRate;
@@ -202,6 +208,9 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
                             final int ackBatchSize,
                             final int consumerWindowSize,
                             final int consumerMaxRate,
+                            final boolean consumerWindowAdaptive,
+                            final int consumerMinWindowSize,
+                            final int consumerMaxWindowSize,
                             final int confirmationWindowSize,
                             final int producerWindowSize,
                             final int producerMaxRate,
@@ -251,6 +260,12 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
       this.consumerMaxRate = consumerMaxRate;
 
+      this.consumerWindowAdaptive = consumerWindowAdaptive;
+
+      this.consumerMinWindowSize = consumerMinWindowSize;
+
+      this.consumerMaxWindowSize = consumerMaxWindowSize;
+
       this.confirmationWindowSize = confirmationWindowSize;
 
       this.producerMaxRate = producerMaxRate;
@@ -1596,12 +1611,27 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
       int clientWindowSize = calcWindowSize(windowSize);
 
+      AdaptiveConsumerWindow adaptiveWindow = null;
+
+      int initialCredits = windowSize;
+
+      if (consumerWindowAdaptive && windowSize > 1)
+      {
+         adaptiveWindow = new AdaptiveConsumerWindow(windowSize,
+                                                     consumerMinWindowSize,
+                                                     consumerMaxWindowSize,
+                                                     System.currentTimeMillis());
+
+         initialCredits = adaptiveWindow.getWindowSize();
+      }
+
       ClientConsumerInternal consumer = new ClientConsumerImpl(this,
                                                                consumerID,
                                                                queueName,
                                                                filterString,
                                                                browseOnly,
                                                                clientWindowSize,
+                                                               adaptiveWindow,
                                                                ackBatchSize,
                                                                consumerMaxRate > 0 ? new TokenBucketLimiterImpl(maxRate,
                                                                                                                 false)
@@ -1618,7 +1648,7 @@ public class ClientSessionImpl implements ClientSessionInternal, FailureListener
 
       if (windowSize != 0)
       {
-         channel.send(new SessionConsumerFlowCreditMessage(consumerID, windowSize));
+         channel.send(new SessionConsumerFlowCreditMessage(consumerID, initialCredits, initialCredits));
       }
 
       return consumer;
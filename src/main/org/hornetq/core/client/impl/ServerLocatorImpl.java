@@ -97,6 +97,12 @@ public class ServerLocatorImpl implements ServerLocatorInternal, DiscoveryListen
 
    private int consumerWindowSize;
 
+   private boolean consumerWindowAdaptive;
+
+   private int consumerMinWindowSize;
+
+   private int consumerMaxWindowSize;
+
    private int consumerMaxRate;
 
    private int confirmationWindowSize;
@@ -324,6 +330,12 @@ public class ServerLocatorImpl implements ServerLocatorInternal, DiscoveryListen
 
       consumerWindowSize = HornetQClient.DEFAULT_CONSUMER_WINDOW_SIZE;
 
+      consumerWindowAdaptive = HornetQClient.DEFAULT_CONSUMER_WINDOW_ADAPTIVE;
+
+      consumerMinWindowSize = HornetQClient.DEFAULT_CONSUMER_MIN_WINDOW_SIZE;
+
+      consumerMaxWindowSize = HornetQClient.DEFAULT_CONSUMER_MAX_WINDOW_SIZE;
+
       consumerMaxRate = HornetQClient.DEFAULT_CONSUMER_MAX_RATE;
 
       confirmationWindowSize = HornetQClient.DEFAULT_CONFIRMATION_WINDOW_SIZE;
@@ -693,6 +705,39 @@ public class ServerLocatorImpl implements ServerLocatorInternal, DiscoveryListen
       this.consumerWindowSize = consumerWindowSize;
    }
 
+   public synchronized boolean isConsumerWindowAdaptive()
+   {
+      return consumerWindowAdaptive;
+   }
+
+   public synchronized void setConsumerWindowAdaptive(final boolean consumerWindowAdaptive)
+   {
+      checkWrite();
+      this.consumerWindowAdaptive = consumerWindowAdaptive;
+   }
+
+   public synchronized int getConsumerMinWindowSize()
+   {
+      return consumerMinWindowSize;
+   }
+
+   public synchronized void setConsumerMinWindowSize(final int consumerMinWindowSize)
+   {
+      checkWrite();
+      this.consumerMinWindowSize = consumerMinWindowSize;
+   }
+
+   public synchronized int getConsumerMaxWindowSize()
+   {
+      return consumerMaxWindowSize;
+   }
+
+   public synchronized void setConsumerMaxWindowSize(final int consumerMaxWindowSize)
+   {
+      checkWrite();
+      this.consumerMaxWindowSize = consumerMaxWindowSize;
+   }
+
    public synchronized int getConsumerMaxRate()
    {
       return consumerMaxRate;
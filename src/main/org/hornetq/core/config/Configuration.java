@@ -570,6 +570,115 @@ public interface Configuration extends Serializable
     */
    void setJournalMinFiles(int files);
 
+   /**
+    * Returns whether appends to the message journal are done concurrently, only locking when moving to a next file.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_CONCURRENT_APPEND}.
+    */
+   boolean isJournalConcurrentAppend();
+
+   /**
+    * Sets whether appends to the message journal are done concurrently, only locking when moving to a next file.
+    */
+   void setJournalConcurrentAppend(boolean concurrentAppend);
+
+   /**
+    * Returns the number of threads used to read the message journal files and to reload the queues during startup.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of threads used to read the message journal files and to reload the queues during startup.
+    */
+   void setJournalLoadThreads(int threads);
+
+   /**
+    * Returns whether the journal buffer timeout is adapted to the measured flush latency,
+    * using the configured timeout as its upper bound.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE}.
+    */
+   boolean isJournalBufferTimeoutAdaptive();
+
+   /**
+    * Sets whether the journal buffer timeout is adapted to the measured flush latency.
+    */
+   void setJournalBufferTimeoutAdaptive(boolean adaptive);
+
+   /**
+    * Returns the minimum number of journal files compacted on each compacting cycle, or 0 if the whole journal is compacted at once.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_COMPACT_FILES_PER_CYCLE}.
+    */
+   int getJournalCompactFilesPerCycle();
+
+   /**
+    * Sets the minimum number of journal files compacted on each compacting cycle.
+    */
+   void setJournalCompactFilesPerCycle(int files);
+
+   /**
+    * Returns the maximum rate, in MiB per second, of the data read and written by compacting, or 0 if it is not limited.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_COMPACT_I_O_BUDGET}.
+    */
+   int getJournalCompactIOBudget();
+
+   /**
+    * Sets the maximum rate, in MiB per second, of the data read and written by compacting.
+    */
+   void setJournalCompactIOBudget(int budget);
+
+   /**
+    * Returns whether every record written on the message journal carries a CRC.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_RECORD_CHECKSUM}.
+    */
+   boolean isJournalRecordChecksum();
+
+   /**
+    * Sets whether every record written on the message journal carries a CRC.
+    */
+   void setJournalRecordChecksum(boolean checksum);
+
+   /**
+    * Returns the maximum number of journal files kept filled in advance by the preallocator, or 0 if it is disabled.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_MAX_PREALLOCATED_FILES}.
+    */
+   int getJournalMaxPreallocatedFiles();
+
+   /**
+    * Sets the maximum number of journal files kept filled in advance by the preallocator.
+    */
+   void setJournalMaxPreallocatedFiles(int files);
+
+   /**
+    * Returns the number of files of the hot journal kept in front of the message journal, or 0 if there is no hot journal.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_HOT_FILES}.
+    */
+   int getJournalHotFiles();
+
+   /**
+    * Sets the number of files of the hot journal kept in front of the message journal.
+    */
+   void setJournalHotFiles(int files);
+
+   /**
+    * Returns the size (in bytes) of each file of the hot journal.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_JOURNAL_HOT_FILE_SIZE}.
+    */
+   int getJournalHotFileSize();
+
+   /**
+    * Sets the size (in bytes) of each file of the hot journal.
+    */
+   void setJournalHotFileSize(int size);
+
    // AIO and NIO need different values for these params
 
    /**
@@ -708,6 +817,30 @@ public interface Configuration extends Serializable
     */
    void setPagingDirectory(String dir);
 
+   /**
+    * Returns the max size (in bytes) of the pages read from the paging files and cached for all the addresses.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_PAGE_CACHE_MAX_SIZE}, for a tenth of the max heap size.
+    */
+   long getPageCacheMaxSize();
+
+   /**
+    * Sets the max size (in bytes) of the pages read from the paging files and cached for all the addresses.
+    */
+   void setPageCacheMaxSize(long size);
+
+   /**
+    * Returns the max size (in bytes) of the messages in memory for all the addresses together.
+    * <br>
+    * Default value is {@value org.hornetq.core.config.impl.ConfigurationImpl#DEFAULT_GLOBAL_MAX_SIZE}, for no limit.
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * Sets the max size (in bytes) of the messages in memory for all the addresses together.
+    */
+   void setGlobalMaxSize(long size);
+
    // Large Messages Properties ------------------------------------------------------------
 
    /**
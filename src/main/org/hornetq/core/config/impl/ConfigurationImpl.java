@@ -87,6 +87,10 @@ public class ConfigurationImpl implements Configuration
 
    public static final String DEFAULT_PAGING_DIR = "data/paging";
 
+   public static final long DEFAULT_PAGE_CACHE_MAX_SIZE = -1;
+
+   public static final long DEFAULT_GLOBAL_MAX_SIZE = -1;
+
    public static final String DEFAULT_LARGE_MESSAGES_DIR = "data/largemessages";
 
    public static final boolean DEFAULT_CREATE_JOURNAL_DIR = true;
@@ -105,6 +109,24 @@ public class ConfigurationImpl implements Configuration
 
    public static final int DEFAULT_JOURNAL_MIN_FILES = 2;
 
+   public static final boolean DEFAULT_JOURNAL_CONCURRENT_APPEND = false;
+
+   public static final int DEFAULT_JOURNAL_LOAD_THREADS = 1;
+
+   public static final boolean DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE = false;
+
+   public static final int DEFAULT_JOURNAL_COMPACT_FILES_PER_CYCLE = 0;
+
+   public static final int DEFAULT_JOURNAL_COMPACT_I_O_BUDGET = 0;
+
+   public static final boolean DEFAULT_JOURNAL_RECORD_CHECKSUM = false;
+
+   public static final int DEFAULT_JOURNAL_MAX_PREALLOCATED_FILES = 0;
+
+   public static final int DEFAULT_JOURNAL_HOT_FILES = 0;
+
+   public static final int DEFAULT_JOURNAL_HOT_FILE_SIZE = 1024 * 1024;
+
    // AIO and NIO need to have different defaults for some values
 
    public static final int DEFAULT_JOURNAL_MAX_IO_AIO = 500;
@@ -252,6 +274,10 @@ public class ConfigurationImpl implements Configuration
 
    protected String pagingDirectory = ConfigurationImpl.DEFAULT_PAGING_DIR;
 
+   protected long pageCacheMaxSize = ConfigurationImpl.DEFAULT_PAGE_CACHE_MAX_SIZE;
+
+   protected long globalMaxSize = ConfigurationImpl.DEFAULT_GLOBAL_MAX_SIZE;
+
    // File related attributes -----------------------------------------------------------
 
    protected String largeMessagesDirectory = ConfigurationImpl.DEFAULT_LARGE_MESSAGES_DIR;
@@ -278,6 +304,24 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalMinFiles = ConfigurationImpl.DEFAULT_JOURNAL_MIN_FILES;
 
+   protected boolean journalConcurrentAppend = ConfigurationImpl.DEFAULT_JOURNAL_CONCURRENT_APPEND;
+
+   protected int journalLoadThreads = ConfigurationImpl.DEFAULT_JOURNAL_LOAD_THREADS;
+
+   protected boolean journalBufferTimeoutAdaptive = ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE;
+
+   protected int journalCompactFilesPerCycle = ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_FILES_PER_CYCLE;
+
+   protected int journalCompactIOBudget = ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_I_O_BUDGET;
+
+   protected boolean journalRecordChecksum = ConfigurationImpl.DEFAULT_JOURNAL_RECORD_CHECKSUM;
+
+   protected int journalMaxPreallocatedFiles = ConfigurationImpl.DEFAULT_JOURNAL_MAX_PREALLOCATED_FILES;
+
+   protected int journalHotFiles = ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILES;
+
+   protected int journalHotFileSize = ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILE_SIZE;
+
    // AIO and NIO need different values for these attributes
 
    protected int journalMaxIO_AIO = ConfigurationImpl.DEFAULT_JOURNAL_MAX_IO_AIO;
@@ -635,6 +679,26 @@ public class ConfigurationImpl implements Configuration
       return pagingDirectory;
    }
 
+   public long getPageCacheMaxSize()
+   {
+      return pageCacheMaxSize;
+   }
+
+   public void setPageCacheMaxSize(final long size)
+   {
+      pageCacheMaxSize = size;
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return globalMaxSize;
+   }
+
+   public void setGlobalMaxSize(final long size)
+   {
+      globalMaxSize = size;
+   }
+
    public void setJournalType(final JournalType type)
    {
       journalType = type;
@@ -680,6 +744,96 @@ public class ConfigurationImpl implements Configuration
       journalMinFiles = files;
    }
 
+   public boolean isJournalConcurrentAppend()
+   {
+      return journalConcurrentAppend;
+   }
+
+   public void setJournalConcurrentAppend(final boolean concurrentAppend)
+   {
+      journalConcurrentAppend = concurrentAppend;
+   }
+
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int threads)
+   {
+      journalLoadThreads = threads;
+   }
+
+   public boolean isJournalBufferTimeoutAdaptive()
+   {
+      return journalBufferTimeoutAdaptive;
+   }
+
+   public void setJournalBufferTimeoutAdaptive(final boolean adaptive)
+   {
+      journalBufferTimeoutAdaptive = adaptive;
+   }
+
+   public int getJournalCompactFilesPerCycle()
+   {
+      return journalCompactFilesPerCycle;
+   }
+
+   public void setJournalCompactFilesPerCycle(final int files)
+   {
+      journalCompactFilesPerCycle = files;
+   }
+
+   public int getJournalCompactIOBudget()
+   {
+      return journalCompactIOBudget;
+   }
+
+   public void setJournalCompactIOBudget(final int budget)
+   {
+      journalCompactIOBudget = budget;
+   }
+
+   public boolean isJournalRecordChecksum()
+   {
+      return journalRecordChecksum;
+   }
+
+   public void setJournalRecordChecksum(final boolean checksum)
+   {
+      journalRecordChecksum = checksum;
+   }
+
+   public int getJournalMaxPreallocatedFiles()
+   {
+      return journalMaxPreallocatedFiles;
+   }
+
+   public void setJournalMaxPreallocatedFiles(final int files)
+   {
+      journalMaxPreallocatedFiles = files;
+   }
+
+   public int getJournalHotFiles()
+   {
+      return journalHotFiles;
+   }
+
+   public void setJournalHotFiles(final int files)
+   {
+      journalHotFiles = files;
+   }
+
+   public int getJournalHotFileSize()
+   {
+      return journalHotFileSize;
+   }
+
+   public void setJournalHotFileSize(final int size)
+   {
+      journalHotFileSize = size;
+   }
+
    public boolean isLogJournalWriteRate()
    {
       return logJournalWriteRate;
@@ -1156,6 +1310,42 @@ public class ConfigurationImpl implements Configuration
       {
          return false;
       }
+      if (journalConcurrentAppend != other.journalConcurrentAppend)
+      {
+         return false;
+      }
+      if (journalLoadThreads != other.journalLoadThreads)
+      {
+         return false;
+      }
+      if (journalBufferTimeoutAdaptive != other.journalBufferTimeoutAdaptive)
+      {
+         return false;
+      }
+      if (journalCompactFilesPerCycle != other.journalCompactFilesPerCycle)
+      {
+         return false;
+      }
+      if (journalCompactIOBudget != other.journalCompactIOBudget)
+      {
+         return false;
+      }
+      if (journalRecordChecksum != other.journalRecordChecksum)
+      {
+         return false;
+      }
+      if (journalMaxPreallocatedFiles != other.journalMaxPreallocatedFiles)
+      {
+         return false;
+      }
+      if (journalHotFiles != other.journalHotFiles)
+      {
+         return false;
+      }
+      if (journalHotFileSize != other.journalHotFileSize)
+      {
+         return false;
+      }
       if (journalPerfBlastPages != other.journalPerfBlastPages)
       {
          return false;
@@ -1273,6 +1463,14 @@ public class ConfigurationImpl implements Configuration
       {
          return false;
       }
+      if (pageCacheMaxSize != other.pageCacheMaxSize)
+      {
+         return false;
+      }
+      if (globalMaxSize != other.globalMaxSize)
+      {
+         return false;
+      }
       if (persistDeliveryCountBeforeDelivery != other.persistDeliveryCountBeforeDelivery)
       {
          return false;
@@ -15,6 +15,7 @@ package org.hornetq.core.config.impl;
 
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.ConsumerDispatchPolicy;
 
 /**
  * A Validators
@@ -166,7 +167,9 @@ public class Validators
       public void validate(final String name, final Object value)
       {
          String val = (String)value;
-         if (val == null || !val.equals(JournalType.NIO.toString()) && !val.equals(JournalType.ASYNCIO.toString()))
+         if (val == null || !val.equals(JournalType.NIO.toString()) &&
+             !val.equals(JournalType.ASYNCIO.toString()) &&
+             !val.equals(JournalType.MAPPED.toString()))
          {
             throw new IllegalArgumentException("Invalid journal type " + val);
          }
@@ -187,6 +190,20 @@ public class Validators
       }
    };
 
+   public static final Validator CONSUMER_DISPATCH_POLICY_TYPE = new Validator()
+   {
+      public void validate(final String name, final Object value)
+      {
+         String val = (String)value;
+         if (val == null || !val.equals(ConsumerDispatchPolicy.ROUND_ROBIN.toString()) &&
+             !val.equals(ConsumerDispatchPolicy.LEAST_OUTSTANDING.toString()) &&
+             !val.equals(ConsumerDispatchPolicy.WEIGHTED.toString()))
+         {
+            throw new IllegalArgumentException("Invalid consumer dispatch policy " + val);
+         }
+      }
+   };
+
    // Constructors --------------------------------------------------
 
    // Public --------------------------------------------------------
@@ -38,6 +38,7 @@ import org.hornetq.core.security.Role;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.server.group.impl.GroupingHandlerConfiguration;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+import org.hornetq.core.settings.impl.ConsumerDispatchPolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.utils.XMLConfigurationUtil;
 import org.hornetq.utils.XMLUtil;
@@ -116,6 +117,30 @@ public class FileConfigurationParser
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
 
+   private static final String SELECTOR_INDEX_NODE_NAME = "selector-index";
+
+   private static final String DELIVERY_LANES_NODE_NAME = "delivery-lanes";
+
+   private static final String MAX_GROUPS_NODE_NAME = "max-groups";
+
+   private static final String GROUP_IDLE_TIMEOUT_NODE_NAME = "group-idle-timeout";
+
+   private static final String GROUP_REBALANCE_NODE_NAME = "group-rebalance";
+
+   private static final String DELIVERY_BATCH_SIZE_NODE_NAME = "delivery-batch-size";
+
+   private static final String COMPACT_REFERENCES_NODE_NAME = "compact-references";
+
+   private static final String LAST_VALUE_CONFLATION_NODE_NAME = "last-value-conflation";
+
+   private static final String CONSUMER_DISPATCH_POLICY_NODE_NAME = "consumer-dispatch-policy";
+
+   private static final String PAGE_INDEX_NODE_NAME = "page-index";
+
+   private static final String PAGE_READ_AHEAD_NODE_NAME = "page-read-ahead";
+
+   private static final String PAGE_COMPRESSION_NODE_NAME = "page-compression";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -426,6 +451,16 @@ public class FileConfigurationParser
                                                                config.getPagingDirectory(),
                                                                Validators.NOT_NULL_OR_EMPTY));
 
+      config.setPageCacheMaxSize(XMLConfigurationUtil.getLong(e,
+                                                              "page-cache-max-size",
+                                                              config.getPageCacheMaxSize(),
+                                                              Validators.MINUS_ONE_OR_GT_ZERO));
+
+      config.setGlobalMaxSize(XMLConfigurationUtil.getLong(e,
+                                                           "global-max-size",
+                                                           config.getGlobalMaxSize(),
+                                                           Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setCreateJournalDir(XMLConfigurationUtil.getBoolean(e, "create-journal-dir", config.isCreateJournalDir()));
 
       String s = XMLConfigurationUtil.getString(e,
@@ -437,6 +472,10 @@ public class FileConfigurationParser
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -509,6 +548,48 @@ public class FileConfigurationParser
                                                                 config.getJournalMinFiles(),
                                                                 Validators.GT_ZERO));
 
+      config.setJournalConcurrentAppend(XMLConfigurationUtil.getBoolean(e,
+                                                                        "journal-concurrent-append",
+                                                                        config.isJournalConcurrentAppend()));
+
+      config.setJournalLoadThreads(XMLConfigurationUtil.getInteger(e,
+                                                                   "journal-load-threads",
+                                                                   config.getJournalLoadThreads(),
+                                                                   Validators.GT_ZERO));
+
+      config.setJournalBufferTimeoutAdaptive(XMLConfigurationUtil.getBoolean(e,
+                                                                             "journal-buffer-timeout-adaptive",
+                                                                             config.isJournalBufferTimeoutAdaptive()));
+
+      config.setJournalCompactFilesPerCycle(XMLConfigurationUtil.getInteger(e,
+                                                                            "journal-compact-files-per-cycle",
+                                                                            config.getJournalCompactFilesPerCycle(),
+                                                                            Validators.GE_ZERO));
+
+      config.setJournalCompactIOBudget(XMLConfigurationUtil.getInteger(e,
+                                                                       "journal-compact-io-budget",
+                                                                       config.getJournalCompactIOBudget(),
+                                                                       Validators.GE_ZERO));
+
+      config.setJournalRecordChecksum(XMLConfigurationUtil.getBoolean(e,
+                                                                      "journal-record-checksum",
+                                                                      config.isJournalRecordChecksum()));
+
+      config.setJournalMaxPreallocatedFiles(XMLConfigurationUtil.getInteger(e,
+                                                                            "journal-max-preallocated-files",
+                                                                            config.getJournalMaxPreallocatedFiles(),
+                                                                            Validators.GE_ZERO));
+
+      config.setJournalHotFiles(XMLConfigurationUtil.getInteger(e,
+                                                                "journal-hot-files",
+                                                                config.getJournalHotFiles(),
+                                                                Validators.GE_ZERO));
+
+      config.setJournalHotFileSize(XMLConfigurationUtil.getInteger(e,
+                                                                   "journal-hot-file-size",
+                                                                   config.getJournalHotFileSize(),
+                                                                   Validators.GT_ZERO));
+
       config.setJournalCompactMinFiles(XMLConfigurationUtil.getInteger(e,
                                                                        "journal-compact-min-files",
                                                                        config.getJournalCompactMinFiles(),
@@ -818,6 +899,57 @@ public class FileConfigurationParser
          {
             addressSettings.setSendToDLAOnNoRoute(Boolean.valueOf(child.getTextContent().trim()));
          }
+         else if (FileConfigurationParser.SELECTOR_INDEX_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setSelectorIndex(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.DELIVERY_LANES_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setDeliveryLanes(Integer.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.MAX_GROUPS_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setMaxGroups(Integer.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.GROUP_IDLE_TIMEOUT_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setGroupIdleTimeout(Long.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.GROUP_REBALANCE_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setGroupRebalance(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.DELIVERY_BATCH_SIZE_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setDeliveryBatchSize(Integer.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.COMPACT_REFERENCES_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setCompactReferences(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.LAST_VALUE_CONFLATION_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setLastValueConflation(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.CONSUMER_DISPATCH_POLICY_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            String value = child.getTextContent().trim();
+            Validators.CONSUMER_DISPATCH_POLICY_TYPE.validate(FileConfigurationParser.CONSUMER_DISPATCH_POLICY_NODE_NAME,
+                                                              value);
+            addressSettings.setConsumerDispatchPolicy(ConsumerDispatchPolicy.valueOf(value));
+         }
+         else if (FileConfigurationParser.PAGE_INDEX_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageIndex(Boolean.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.PAGE_READ_AHEAD_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageReadAhead(Integer.valueOf(child.getTextContent().trim()));
+         }
+         else if (FileConfigurationParser.PAGE_COMPRESSION_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageCompression(Boolean.valueOf(child.getTextContent().trim()));
+         }
       }
       return setting;
    }
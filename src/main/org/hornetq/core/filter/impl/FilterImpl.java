@@ -71,6 +71,10 @@ public class FilterImpl implements Filter
 
    private final Class<? extends Object> resultType;
 
+   private SimpleString equalityProperty;
+
+   private SimpleString equalityValue;
+
    // Static ---------------------------------------------------------
 
    /**
@@ -116,6 +120,23 @@ public class FilterImpl implements Filter
 
          throw new HornetQException(HornetQException.INVALID_FILTER_EXPRESSION, "Invalid filter: " + sfilterString + " " + e.getMessage());
       }
+
+      if (resultType.equals(Operator.class))
+      {
+         Operator op = (Operator)result;
+
+         if (op.operation == Operator.EQUAL)
+         {
+            if (op.oper1 instanceof Identifier && op.oper2 instanceof SimpleString)
+            {
+               setEqualityTerm((Identifier)op.oper1, (SimpleString)op.oper2);
+            }
+            else if (op.oper2 instanceof Identifier && op.oper1 instanceof SimpleString)
+            {
+               setEqualityTerm((Identifier)op.oper2, (SimpleString)op.oper1);
+            }
+         }
+      }
    }
 
    // Filter implementation ---------------------------------------------------------------------
@@ -172,6 +193,25 @@ public class FilterImpl implements Filter
       }
    }
 
+   // Public --------------------------------------------------------------------------
+
+   /**
+    * @return the property name if this filter is a single equality between a message property and a string,
+    *  such as <code>tenant = 'x'</code>, or null otherwise
+    */
+   public SimpleString getEqualityProperty()
+   {
+      return equalityProperty;
+   }
+
+   /**
+    * @return the string the property is compared to if this filter is a single equality, or null otherwise
+    */
+   public SimpleString getEqualityValue()
+   {
+      return equalityValue;
+   }
+
    /* (non-Javadoc)
     * @see java.lang.Object#toString()
     */
@@ -183,6 +223,17 @@ public class FilterImpl implements Filter
 
    // Private --------------------------------------------------------------------------
 
+   private void setEqualityTerm(final Identifier identifier, final SimpleString value)
+   {
+      // header fields are not properties on the message
+      if (!identifier.getName().startsWith(FilterConstants.HORNETQ_PREFIX))
+      {
+         equalityProperty = identifier.getName();
+
+         equalityValue = value;
+      }
+   }
+
    private Object getHeaderFieldValue(final ServerMessage msg, final SimpleString fieldName)
    {
       if (FilterConstants.HORNETQ_USERID.equals(fieldName))
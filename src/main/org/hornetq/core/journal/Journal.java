@@ -51,6 +51,18 @@ public interface Journal extends HornetQComponent
                            boolean sync,
                            IOCompletion completionCallback) throws Exception;
 
+   /**
+    * The same update applied to several records. It may be written as a single record, but it's loaded as one update
+    * per id.
+    */
+   void appendUpdateRecords(long[] ids, byte recordType, EncodingSupport record, boolean sync) throws Exception;
+
+   void appendUpdateRecords(long[] ids,
+                            byte recordType,
+                            EncodingSupport record,
+                            boolean sync,
+                            IOCompletion completionCallback) throws Exception;
+
    void appendDeleteRecord(long id, boolean sync) throws Exception;
 
    void appendDeleteRecord(long id, boolean sync, IOCompletion completionCallback) throws Exception;
@@ -65,6 +77,8 @@ public interface Journal extends HornetQComponent
 
    void appendUpdateRecordTransactional(long txID, long id, byte recordType, EncodingSupport record) throws Exception;
 
+   void appendUpdateRecordsTransactional(long txID, long[] ids, byte recordType, EncodingSupport record) throws Exception;
+
    void appendDeleteRecordTransactional(long txID, long id, byte[] record) throws Exception;
 
    void appendDeleteRecordTransactional(long txID, long id, EncodingSupport record) throws Exception;
@@ -64,6 +64,21 @@ public interface SequentialFile
 
    void write(EncodingSupport bytes, boolean sync) throws Exception;
 
+   /**
+    * Claims size bytes on the file without locking it, to be written later through {@link #write(int, EncodingSupport, boolean, IOAsyncTask)}.
+    * @return the slot that was claimed, or -1 if the file doesn't have enough space left
+    */
+   int reserve(int size) throws Exception;
+
+   /**
+    * Write into a slot previously claimed through {@link #reserve(int)}.
+    * If the encoding fails, the slot is filled with zeros before the exception is thrown.
+    */
+   void write(int slot, EncodingSupport bytes, boolean sync, IOAsyncTask callback) throws Exception;
+
+   /** Fills a slot claimed through {@link #reserve(int)} with zeros, when its record can't be written */
+   void abort(int slot, int size);
+
    /** Write directly to the file without using any buffer */
    void writeDirect(ByteBuffer bytes, boolean sync, IOAsyncTask callback);
 
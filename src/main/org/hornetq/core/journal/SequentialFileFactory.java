@@ -53,6 +53,11 @@ public interface SequentialFileFactory
 
    int calculateBlockSize(int bytes);
 
+   /**
+    * @return the size of the largest record that can be written at once, -1 if it's only limited by the file size
+    */
+   int getMaxRecordSize();
+
    void clearBuffer(ByteBuffer buffer);
 
    void start();
@@ -16,7 +16,6 @@ package org.hornetq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -27,7 +26,7 @@ import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.logging.Logger;
-import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashSet;
 
 /**
  * 
@@ -61,10 +60,13 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    private HornetQBuffer writingChannel;
 
-   private final Set<Long> recordsSnapshot = new ConcurrentHashSet<Long>();
+   private final ConcurrentLongHashSet recordsSnapshot;
 
    protected final List<JournalFile> newDataFiles = new ArrayList<JournalFile>();
 
+   /** Bytes of the records written so far */
+   private long bytesWritten;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -72,7 +74,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected AbstractJournalUpdateTask(final SequentialFileFactory fileFactory,
                                        final JournalImpl journal,
                                        final JournalFilesRepository filesRepository,
-                                       final Set<Long> recordsSnapshot,
+                                       final long[] recordsSnapshot,
                                        final long nextOrderingID)
    {
       super();
@@ -80,6 +82,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       this.filesRepository = filesRepository;
       this.fileFactory = fileFactory;
       this.nextOrderingID = nextOrderingID;
+      this.recordsSnapshot = new ConcurrentLongHashSet(Math.max(recordsSnapshot.length, 1));
       this.recordsSnapshot.addAll(recordsSnapshot);
    }
 
@@ -181,6 +184,14 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    {
       if (writingChannel != null)
       {
+         if (JournalImpl.isChecksum(currentFile) &&
+             !JournalInternalRecord.fillChecksums(writingChannel.toByteBuffer(),
+                                                  JournalImpl.SIZE_HEADER,
+                                                  writingChannel.writerIndex()))
+         {
+            throw new IllegalStateException("Invalid record found while calculating the checksums of " + currentFile);
+         }
+
          sequentialFile.position(0);
 
          // To Fix the size of the file
@@ -194,6 +205,11 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       writingChannel = null;
    }
 
+   public long getBytesWritten()
+   {
+      return bytesWritten;
+   }
+
    public boolean lookupRecord(final long id)
    {
       return recordsSnapshot.contains(id);
@@ -220,9 +236,12 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
       sequentialFile.open(1, false);
 
-      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, JournalImpl.FORMAT_VERSION);
+      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, journal.getJournalVersion());
 
-      JournalImpl.writeHeader(writingChannel, journal.getUserVersion(), currentFile.getFileID());
+      JournalImpl.writeHeader(writingChannel,
+                              currentFile.getJournalVersion(),
+                              journal.getUserVersion(),
+                              currentFile.getFileID());
    }
 
    protected void addToRecordsSnaptshot(final long id)
@@ -242,6 +261,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    {
       record.setFileID(currentFile.getRecordID());
       record.encode(getWritingChannel());
+      bytesWritten += record.getEncodeSize();
    }
 
    protected void writeEncoder(final JournalInternalRecord record, final int txcounter) throws Exception
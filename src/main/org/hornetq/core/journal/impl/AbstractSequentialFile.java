@@ -27,6 +27,7 @@ import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.logging.Logger;
 
 /**
@@ -227,6 +228,12 @@ public abstract class AbstractSequentialFile implements SequentialFile
 
          HornetQBuffer outBuffer = HornetQBuffers.wrappedBuffer(buffer);
          bytes.encode(outBuffer);
+
+         if (bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum())
+         {
+            JournalInternalRecord.fillChecksums(buffer, 0, outBuffer.writerIndex());
+         }
+
          buffer.rewind();
          writeDirect(buffer, sync, callback);
       }
@@ -248,6 +255,31 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
    }
 
+   public int reserve(final int size) throws Exception
+   {
+      if (timedBuffer == null)
+      {
+         throw new IllegalStateException("Reserving space on " + getFileName() + " requires a TimedBuffer");
+      }
+
+      return timedBuffer.reserve(size);
+   }
+
+   public void write(final int slot, final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (timedBuffer == null)
+      {
+         throw new IllegalStateException("Reserving space on " + getFileName() + " requires a TimedBuffer");
+      }
+
+      timedBuffer.addBytes(slot, bytes, sync, callback);
+   }
+
+   public void abort(final int slot, final int size)
+   {
+      timedBuffer.abort(slot, size);
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
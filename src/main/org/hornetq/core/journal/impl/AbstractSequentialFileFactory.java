@@ -82,6 +82,28 @@ public abstract class AbstractSequentialFileFactory implements SequentialFileFac
       this.bufferTimeout = bufferTimeout;
    }
 
+   /**
+    * @see TimedBuffer#setAdaptiveTimeout(boolean)
+    */
+   public void setAdaptiveBufferTimeout(final boolean adaptive)
+   {
+      if (timedBuffer != null)
+      {
+         timedBuffer.setAdaptiveTimeout(adaptive);
+      }
+   }
+
+   public int getMaxRecordSize()
+   {
+      return timedBuffer == null ? -1 : bufferSize;
+   }
+
+   /** The buffer used to batch writes, or null when the files are not buffered */
+   public TimedBuffer getTimedBuffer()
+   {
+      return timedBuffer;
+   }
+
    public void stop()
    {
       if (timedBuffer != null)
@@ -14,12 +14,8 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -35,6 +31,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.core.logging.Logger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * A JournalCompactor
@@ -54,11 +51,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    private final short COMPACT_SPLIT_LINE = 2;
 
    // Snapshot of transactions that were pending when the compactor started
-   private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
+   private final ConcurrentLongHashMap<PendingTransaction> pendingTransactions = new ConcurrentLongHashMap<PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
-   private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> newTransactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    /** Commands that happened during compacting
     *  We can't process any counts during compacting, as we won't know in what files the records are taking place, so
@@ -132,12 +129,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
 
-   public Map<Long, JournalTransaction> getNewTransactions()
+   public ConcurrentLongHashMap<JournalTransaction> getNewTransactions()
    {
       return newTransactions;
    }
@@ -145,7 +142,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final long[] recordsSnapshot,
                            final long firstFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
@@ -157,7 +154,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       pendingTransactions.put(transactionID, new PendingTransaction(ids));
    }
 
-   public void addCommandCommit(final JournalTransaction liveTransaction, final JournalFile currentFile)
+   public synchronized void addCommandCommit(final JournalTransaction liveTransaction, final JournalFile currentFile)
    {
       pendingCommands.add(new CommitCompactCommand(liveTransaction, currentFile));
 
@@ -190,7 +187,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       }
    }
 
-   public void addCommandRollback(final JournalTransaction liveTransaction, final JournalFile currentFile)
+   public synchronized void addCommandRollback(final JournalTransaction liveTransaction, final JournalFile currentFile)
    {
       pendingCommands.add(new RollbackCompactCommand(liveTransaction, currentFile));
    }
@@ -199,7 +196,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     * @param id
     * @param usedFile
     */
-   public void addCommandDelete(final long id, final JournalFile usedFile)
+   public synchronized void addCommandDelete(final long id, final JournalFile usedFile)
    {
       pendingCommands.add(new DeleteCompactCommand(id, usedFile));
    }
@@ -208,18 +205,23 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     * @param id
     * @param usedFile
     */
-   public void addCommandUpdate(final long id, final JournalFile usedFile, final int size)
+   public synchronized void addCommandUpdate(final long id, final JournalFile usedFile, final int size)
    {
       pendingCommands.add(new UpdateCompactCommand(id, usedFile, size));
    }
 
-   private void checkSize(final int size) throws Exception
+   private void checkSize(final JournalInternalRecord record) throws Exception
    {
-      checkSize(size, -1);
+      checkSize(record, -1);
    }
 
-   private void checkSize(final int size, final int compactCount) throws Exception
+   private void checkSize(final JournalInternalRecord record, final int compactCount) throws Exception
    {
+      // the new files are created with the version of the journal
+      record.setChecksum(journal.isRecordChecksum());
+
+      int size = record.getEncodeSize();
+
       if (getWritingChannel() == null)
       {
          if (!checkCompact(compactCount))
@@ -306,7 +308,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                 new ByteArrayEncoding(info.data));
          addRecord.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(addRecord.getEncodeSize(), info.compactCount);
+         checkSize(addRecord, info.compactCount);
 
          writeEncoder(addRecord);
 
@@ -328,7 +330,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          record.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(record.getEncodeSize(), info.compactCount);
+         checkSize(record, info.compactCount);
 
          newTransaction.addPositive(currentFile, info.id, record.getEncodeSize());
 
@@ -352,7 +354,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
          {
             JournalInternalRecord commitRecord = new JournalCompleteRecordTX(true, transactionID, null);
 
-            checkSize(commitRecord.getEncodeSize());
+            checkSize(commitRecord);
 
             writeEncoder(commitRecord, newTransaction.getCounter(currentFile));
 
@@ -382,7 +384,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                   info.id,
                                                                   new ByteArrayEncoding(info.data));
 
-         checkSize(record.getEncodeSize());
+         checkSize(record);
 
          writeEncoder(record);
 
@@ -407,7 +409,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                            transactionID,
                                                                            new ByteArrayEncoding(extraData));
 
-         checkSize(prepareRecord.getEncodeSize());
+         checkSize(prepareRecord);
 
          writeEncoder(prepareRecord, newTransaction.getCounter(currentFile));
 
@@ -432,7 +434,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
             JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(transactionID);
 
-            checkSize(rollbackRecord.getEncodeSize());
+            checkSize(rollbackRecord);
 
             writeEncoder(rollbackRecord);
 
@@ -453,7 +455,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecord.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(updateRecord.getEncodeSize(), info.compactCount);
+         checkSize(updateRecord, info.compactCount);
 
          JournalRecord newRecord = newRecords.get(info.id);
 
@@ -485,7 +487,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecordTX.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(updateRecordTX.getEncodeSize(), info.compactCount);
+         checkSize(updateRecordTX, info.compactCount);
 
          writeEncoder(updateRecordTX);
 
@@ -641,7 +643,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    /* (non-Javadoc)
     * @see org.hornetq.core.journal.impl.JournalRecordsProvider#getRecords()
     */
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
@@ -55,6 +55,13 @@ public interface JournalFile
 
    long getOffset();
 
+   /** Called when a transaction with records on this file is committed or rolled back on completionFile */
+   void transactionCompleted(JournalFile completionFile);
+
+   /** The highest fileID where a transaction with records on this file was completed, or -1 if there's none.
+    *  A group of files can only be compacted alone when none of their transactions were completed after the group. */
+   long getTransactionCompletionID();
+
    /** This is a field to identify that records on this file actually belong to the current file.
     *  The possible implementation for this is fileID & Integer.MAX_VALUE */
    int getRecordID();
@@ -53,6 +53,8 @@ public class JournalFileImpl implements JournalFile
 
    private final Map<JournalFile, AtomicInteger> negCounts = new ConcurrentHashMap<JournalFile, AtomicInteger>();
 
+   private volatile long transactionCompletionID = -1;
+
    public JournalFileImpl(final SequentialFile file, final long fileID, final int version)
    {
       this.file = file;
@@ -140,6 +142,19 @@ public class JournalFileImpl implements JournalFile
       return offset;
    }
 
+   public synchronized void transactionCompleted(final JournalFile completionFile)
+   {
+      if (completionFile.getFileID() > transactionCompletionID)
+      {
+         transactionCompletionID = completionFile.getFileID();
+      }
+   }
+
+   public long getTransactionCompletionID()
+   {
+      return transactionCompletionID;
+   }
+
    public long getFileID()
    {
       return fileID;
@@ -21,7 +21,9 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.journal.SequentialFile;
@@ -32,6 +34,12 @@ import org.hornetq.core.logging.Logger;
  * This is a helper class for the Journal, which will control access to dataFiles, openedFiles and freeFiles
  * Guaranteeing that they will be delivered in order to the Journal
  *
+ * <p>When preallocation is enabled ({@link #setMaxPreallocatedFiles(int)}), a background executor keeps filled files
+ * ready on freeFiles, as many as the journal is using in {@link #PREALLOCATE_WINDOW} milliseconds at the recent rate,
+ * and reclaimed files are reinitialized on that executor instead of on the reclaim path.
+ * The IDs are always generated while holding the lock on this repository at the same time the file is added to
+ * freeFiles (or created for immediate use), so files are still used in the order of their IDs.</p>
+ *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
  *
@@ -53,6 +61,9 @@ public class JournalFilesRepository
 
    // Constants -----------------------------------------------------
 
+   /** The preallocator keeps enough files for the appends done on this period, in milliseconds */
+   public static final long PREALLOCATE_WINDOW = 1000;
+
    // Attributes ----------------------------------------------------
 
    private final SequentialFileFactory fileFactory;
@@ -79,8 +90,29 @@ public class JournalFilesRepository
 
    private final int userVersion;
 
+   private volatile int journalVersion = JournalImpl.FORMAT_VERSION;
+
    private Executor filesExecutor;
 
+   private volatile Executor preallocateExecutor;
+
+   private volatile int maxPreallocatedFiles = 0;
+
+   private final AtomicBoolean preallocating = new AtomicBoolean(false);
+
+   /** Used to name the files being filled by the preallocator, before they have an ID */
+   private final AtomicLong preallocateSequence = new AtomicLong(0);
+
+   /** Time the last file was opened for appending, only accessed by the appender (under the journal lock) */
+   private long lastOpenTime = 0;
+
+   /** Moving average of the time (in milliseconds) between two files being opened for appending, -1 if unknown */
+   private volatile long averageOpenInterval = -1;
+
+   private final AtomicLong fileWaitCount = new AtomicLong(0);
+
+   private final AtomicLong fileWaitTime = new AtomicLong(0);
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -109,6 +141,72 @@ public class JournalFilesRepository
       filesExecutor = executor;
    }
 
+   /**
+    * Executor used to preallocate files and to reinitialize reclaimed files.
+    * It's only used if {@link #setMaxPreallocatedFiles(int)} is greater than 0.
+    */
+   public void setPreallocateExecutor(final Executor executor)
+   {
+      preallocateExecutor = executor;
+   }
+
+   /** The maximum number of filled files kept ready on freeFiles by the preallocator, 0 disables the preallocator */
+   public void setMaxPreallocatedFiles(final int maxPreallocatedFiles)
+   {
+      this.maxPreallocatedFiles = maxPreallocatedFiles;
+   }
+
+   public int getMaxPreallocatedFiles()
+   {
+      return maxPreallocatedFiles;
+   }
+
+   /**
+    * The number of free files the preallocator is currently keeping ready, based on the rate files were opened recently
+    */
+   public int getPreallocateTarget()
+   {
+      int max = maxPreallocatedFiles;
+
+      if (max <= 0)
+      {
+         return 0;
+      }
+
+      long interval = averageOpenInterval;
+
+      if (interval < 0)
+      {
+         return 1;
+      }
+      else if (interval == 0)
+      {
+         return max;
+      }
+
+      long target = (JournalFilesRepository.PREALLOCATE_WINDOW + interval - 1) / interval;
+
+      return (int)Math.max(1, Math.min(max, target));
+   }
+
+   /** Number of times the appender had to wait for the next file to be opened */
+   public long getFileWaitCount()
+   {
+      return fileWaitCount.get();
+   }
+
+   /** Total time (in microseconds) the appender waited for the next file to be opened */
+   public long getFileWaitTime()
+   {
+      return fileWaitTime.get();
+   }
+
+   /** The version written on the header of the files initialized from now on */
+   public void setJournalVersion(final int journalVersion)
+   {
+      this.journalVersion = journalVersion;
+   }
+
    public void clear()
    {
       dataFiles.clear();
@@ -179,7 +277,10 @@ public class JournalFilesRepository
          for (int i = 0; i < filesToCreate; i++)
          {
             // Keeping all files opened can be very costly (mainly on AIO)
-            freeFiles.add(createFile(false, false, true, false));
+            synchronized (this)
+            {
+               freeFiles.add(createFile(false, false, true, false, generateFileID()));
+            }
          }
       }
 
@@ -273,7 +374,8 @@ public class JournalFilesRepository
       }
       else
       // FIXME - size() involves a scan!!!
-      if (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles)
+      if (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles ||
+          freeFiles.size() < getPreallocateTarget())
       {
          // Re-initialise it
 
@@ -297,6 +399,37 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Adds a reclaimed file to freeFiles (or deletes it) on the preallocate executor,
+    * or right away when the preallocator is not enabled.
+    */
+   public void recycleFile(final JournalFile file) throws Exception
+   {
+      Executor executor = preallocateExecutor;
+
+      if (executor == null || maxPreallocatedFiles <= 0)
+      {
+         addFreeFile(file, false);
+      }
+      else
+      {
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  addFreeFile(file, false);
+               }
+               catch (Exception e)
+               {
+                  JournalFilesRepository.log.warn("Error reinitializing file " + file, e);
+               }
+            }
+         });
+      }
+   }
+
    public Collection<JournalFile> getFreeFiles()
    {
       return freeFiles;
@@ -367,16 +500,27 @@ public class JournalFilesRepository
          filesExecutor.execute(run);
       }
 
-      JournalFile nextFile = null;
+      updateOpenRate();
+
+      JournalFile nextFile = openedFiles.poll();
 
-      while (nextFile == null)
+      if (nextFile == null)
       {
-         nextFile = openedFiles.poll(5, TimeUnit.SECONDS);
-         if (nextFile == null)
+         long start = System.nanoTime();
+
+         while (nextFile == null)
          {
-            JournalFilesRepository.log.warn("Couldn't open a file in 60 Seconds",
-                                            new Exception("Warning: Couldn't open a file in 60 Seconds"));
+            nextFile = openedFiles.poll(5, TimeUnit.SECONDS);
+            if (nextFile == null)
+            {
+               JournalFilesRepository.log.warn("Couldn't open a file in 60 Seconds",
+                                               new Exception("Warning: Couldn't open a file in 60 Seconds"));
+            }
          }
+
+         fileWaitCount.incrementAndGet();
+
+         fileWaitTime.addAndGet((System.nanoTime() - start) / 1000);
       }
 
       if (JournalFilesRepository.trace)
@@ -395,6 +539,9 @@ public class JournalFilesRepository
    {
       JournalFile nextOpenedFile = takeFile(true, true, true, false);
 
+      // replacing the free file just taken
+      schedulePreallocate();
+
       if (JournalFilesRepository.trace)
       {
          JournalFilesRepository.trace("pushing openFile " + nextOpenedFile);
@@ -440,11 +587,22 @@ public class JournalFilesRepository
    {
       JournalFile nextFile = null;
 
-      nextFile = freeFiles.poll();
+      long fileID = 0;
+
+      synchronized (this)
+      {
+         nextFile = freeFiles.poll();
+
+         if (nextFile == null)
+         {
+            // Any file added to freeFiles from now on will have a greater ID
+            fileID = generateFileID();
+         }
+      }
 
       if (nextFile == null)
       {
-         nextFile = createFile(keepOpened, multiAIO, initFile, tmpCompactExtension);
+         nextFile = createFile(keepOpened, multiAIO, initFile, tmpCompactExtension, fileID);
       }
       else
       {
@@ -468,6 +626,104 @@ public class JournalFilesRepository
 
    // Private -------------------------------------------------------
 
+   private void updateOpenRate()
+   {
+      long now = System.currentTimeMillis();
+
+      if (lastOpenTime != 0)
+      {
+         long interval = now - lastOpenTime;
+
+         long average = averageOpenInterval;
+
+         averageOpenInterval = average < 0 ? interval : (average * 3 + interval) / 4;
+      }
+
+      lastOpenTime = now;
+   }
+
+   private void schedulePreallocate()
+   {
+      Executor executor = preallocateExecutor;
+
+      if (executor != null && maxPreallocatedFiles > 0 && preallocating.compareAndSet(false, true))
+      {
+         Runnable task = new Runnable()
+         {
+            public void run()
+            {
+               boolean done = false;
+
+               try
+               {
+                  preallocate();
+
+                  done = true;
+               }
+               catch (Exception e)
+               {
+                  JournalFilesRepository.log.warn("Error preallocating journal files", e);
+               }
+               finally
+               {
+                  preallocating.set(false);
+               }
+
+               // A file may have been taken after the last check, while this was still flagged as running
+               // FIXME - size() involves a scan
+               if (done && freeFiles.size() < getPreallocateTarget())
+               {
+                  schedulePreallocate();
+               }
+            }
+         };
+
+         try
+         {
+            executor.execute(task);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the journal is being stopped
+            preallocating.set(false);
+         }
+      }
+   }
+
+   private void preallocate() throws Exception
+   {
+      // FIXME - size() involves a scan
+      while (preallocateExecutor != null && freeFiles.size() < getPreallocateTarget())
+      {
+         String tmpFileName = filePrefix + "-prealloc" + preallocateSequence.incrementAndGet() + "." + fileExtension + ".tmp";
+
+         if (JournalFilesRepository.trace)
+         {
+            JournalFilesRepository.trace("Preallocating file " + tmpFileName);
+         }
+
+         SequentialFile sequentialFile = fileFactory.createSequentialFile(tmpFileName, maxAIO);
+
+         sequentialFile.open(1, false);
+
+         // The fill is done (and synced) before the ID is known, without holding the lock
+         sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
+
+         synchronized (this)
+         {
+            long fileID = generateFileID();
+
+            JournalImpl.initFileHeader(fileFactory, sequentialFile, journalVersion, userVersion, fileID);
+
+            sequentialFile.close();
+
+            sequentialFile.renameTo(createFileName(false, fileID));
+
+            freeFiles.add(new JournalFileImpl(sequentialFile, fileID, journalVersion));
+         }
+      }
+   }
+
    /**
     * This method will create a new file on the file system, pre-fill it with FILL_CHARACTER
     * @param keepOpened
@@ -477,10 +733,9 @@ public class JournalFilesRepository
    private JournalFile createFile(final boolean keepOpened,
                                   final boolean multiAIO,
                                   final boolean init,
-                                  final boolean tmpCompact) throws Exception
+                                  final boolean tmpCompact,
+                                  final long fileID) throws Exception
    {
-      long fileID = generateFileID();
-
       String fileName;
 
       fileName = createFileName(tmpCompact, fileID);
@@ -500,7 +755,7 @@ public class JournalFilesRepository
       {
          sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
 
-         JournalImpl.initFileHeader(fileFactory, sequentialFile, userVersion, fileID);
+         JournalImpl.initFileHeader(fileFactory, sequentialFile, journalVersion, userVersion, fileID);
       }
 
       long position = sequentialFile.position();
@@ -527,7 +782,7 @@ public class JournalFilesRepository
          sequentialFile.position(position);
       }
 
-      return new JournalFileImpl(sequentialFile, fileID, JournalImpl.FORMAT_VERSION);
+      return new JournalFileImpl(sequentialFile, fileID, journalVersion);
    }
 
    /**
@@ -577,9 +832,9 @@ public class JournalFilesRepository
 
       sf.open(1, false);
 
-      int position = JournalImpl.initFileHeader(fileFactory, sf, userVersion, newFileID);
+      int position = JournalImpl.initFileHeader(fileFactory, sf, journalVersion, userVersion, newFileID);
 
-      JournalFile jf = new JournalFileImpl(sf, newFileID, JournalImpl.FORMAT_VERSION);
+      JournalFile jf = new JournalFileImpl(sf, newFileID, journalVersion);
 
       sf.position(position);
 
@@ -24,8 +24,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -60,7 +58,10 @@ import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
+import org.hornetq.core.journal.impl.dataformat.JournalUpdateBatchRecord;
 import org.hornetq.core.logging.Logger;
+import org.hornetq.utils.ConcurrentLongHashMap;
+import org.hornetq.utils.ConcurrentLongHashSet;
 import org.hornetq.utils.DataConstants;
 
 /**
@@ -86,7 +87,10 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
    public static final int FORMAT_VERSION = 2;
 
-   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1 };
+   /** Same as FORMAT_VERSION, with a CRC before the size at the end of every record. See {@link #setRecordChecksum(boolean)} */
+   public static final int CHECKSUM_FORMAT_VERSION = 3;
+
+   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1, JournalImpl.CHECKSUM_FORMAT_VERSION };
 
    // Static --------------------------------------------------------
 
@@ -164,6 +168,12 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
    public static final byte ROLLBACK_RECORD = 19;
 
+   // Same size as the update records, plus the IDs on the variable portion
+
+   public static final byte UPDATE_BATCH_RECORD = 20;
+
+   public static final byte UPDATE_BATCH_RECORD_TX = 21;
+
    public static final byte FILL_CHARACTER = (byte)'J';
 
    // Attributes ----------------------------------------------------
@@ -185,10 +195,10 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
@@ -199,6 +209,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
    private ExecutorService compactorExecutor = null;
 
+   private ExecutorService preallocateExecutor = null;
+
    // Lock used during the append of records
    // This lock doesn't represent a global lock.
    // After a record is appended, the usedFile can't be changed until the positives and negatives are updated
@@ -207,6 +219,31 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
    /** We don't lock the journal while compacting, however we need to lock it while taking and updating snapshots */
    private final ReadWriteLock compactingLock = new ReentrantReadWriteLock();
 
+   // Used instead of lockAppend when concurrentAppend is on.
+   // Appends hold the read lock while claiming and encoding their slot on the currentFile,
+   // and the write lock is only taken to move to a next file
+   private final ReentrantReadWriteLock lockRollover = new ReentrantReadWriteLock();
+
+   private volatile boolean concurrentAppend = false;
+
+   private volatile int loadThreads = 1;
+
+   // 0 means the whole journal is compacted at once
+   private volatile int compactFilesPerCycle = 0;
+
+   // in MiB / second, 0 means no limit
+   private volatile int compactIOBudget = 0;
+
+   // Statistics of the last compacting cycle
+
+   private volatile long lastCompactBytesRewritten;
+
+   private volatile long lastCompactPauseTime;
+
+   private volatile int lastCompactReclaimedFiles;
+
+   private boolean recordChecksum = false;
+
    private volatile JournalFile currentFile;
 
    private volatile int state;
@@ -362,7 +399,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -416,6 +453,17 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
    public static int readJournalFile(final SequentialFileFactory fileFactory,
                                      final JournalFile file,
                                      final JournalReaderCallback reader) throws Exception
+   {
+      return JournalImpl.readJournalFile(fileFactory, file, reader, false);
+   }
+
+   /**
+    * @param current if the file is the last one written to, the only one that can end in a partially written record
+    */
+   public static int readJournalFile(final SequentialFileFactory fileFactory,
+                                     final JournalFile file,
+                                     final JournalReaderCallback reader,
+                                     final boolean current) throws Exception
    {
       file.getFile().open(1, false);
       ByteBuffer wholeFileBuffer = null;
@@ -437,13 +485,41 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          int lastDataPos = JournalImpl.SIZE_HEADER;
 
+         final boolean checksum = JournalImpl.isChecksum(file);
+
+         // Where the next record starts on a file with checksums, as its records are written one after the other
+         int nextRecordPos = JournalImpl.SIZE_HEADER;
+
          while (wholeFileBuffer.hasRemaining())
          {
             final int pos = wholeFileBuffer.position();
 
+            if (checksum && current && pos != nextRecordPos)
+            {
+               // IX - The record at nextRecordPos failed one of the checks. On the current file, there's no need
+               // to scan for more records byte by byte: a record is only followed by another one, or by zeros
+               // (the padding of a write to the alignment, or a record that failed to encode). Anything else is the
+               // end of the data, records from a previous usage of the file.
+               int next = JournalImpl.skipZeros(wholeFileBuffer, nextRecordPos);
+
+               if (next < 0 || next == nextRecordPos)
+               {
+                  JournalImpl.trace("File " + file.getFile().getFileName() +
+                                    " has no more valid records after position " +
+                                    nextRecordPos);
+                  break;
+               }
+
+               nextRecordPos = next;
+
+               wholeFileBuffer.position(next);
+
+               continue;
+            }
+
             byte recordType = wholeFileBuffer.get();
 
-            if (recordType < JournalImpl.ADD_RECORD || recordType > JournalImpl.ROLLBACK_RECORD)
+            if (recordType < JournalImpl.ADD_RECORD || recordType > JournalImpl.UPDATE_BATCH_RECORD_TX)
             {
                // I - We scan for any valid record on the file. If a hole
                // happened on the middle of the file we keep looking until all
@@ -655,6 +731,45 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                continue;
             }
 
+            // VIII - When the file has checksums, the record is only accepted if its contents match the CRC.
+            // This is what detects the records partially written when the server crashed (torn writes)
+            if (checksum && !JournalInternalRecord.isValidChecksum(wholeFileBuffer, pos, pos + checkSize))
+            {
+               if (current)
+               {
+                  // The write was torn by a crash. The writes after it were never completed to their callers, as
+                  // the callbacks are completed in order, so the file is only loaded up to it
+                  JournalImpl.log.warn("Record at position " + pos +
+                                       " recordType = " +
+                                       recordType +
+                                       " possible recordID = " +
+                                       recordID +
+                                       " on the current file " +
+                                       file.getFile().getFileName() +
+                                       " was partially written, the file is only loaded up to it");
+                  break;
+               }
+
+               // A file the journal moved on from had all its writes completed, so this is a damaged record and
+               // the ones after it are still loaded
+               JournalImpl.log.warn("Record at position " + pos +
+                                    " recordType = " +
+                                    recordType +
+                                    " possible transactionID = " +
+                                    transactionID +
+                                    " possible recordID = " +
+                                    recordID +
+                                    " file:" +
+                                    file.getFile().getFileName() +
+                                    " doesn't match its checksum and it is being ignored (IV)");
+
+               reader.markAsDataFile(file);
+
+               wholeFileBuffer.position(pos + DataConstants.SIZE_BYTE);
+
+               continue;
+            }
+
             wholeFileBuffer.position(oldPos);
 
             // At this point everything is checked. So we relax and just load
@@ -732,6 +847,35 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                   reader.onReadRollbackRecord(transactionID);
                   break;
                }
+               case UPDATE_BATCH_RECORD:
+               case UPDATE_BATCH_RECORD_TX:
+               {
+                  // The readers see one update per record
+                  long[] ids = JournalUpdateBatchRecord.decodeIDs(recordID, record);
+
+                  int idsSize = JournalUpdateBatchRecord.getIDsSize(ids);
+
+                  byte[] data = new byte[record.length - idsSize];
+
+                  System.arraycopy(record, idsSize, data, 0, data.length);
+
+                  for (long id : ids)
+                  {
+                     if (recordType == JournalImpl.UPDATE_BATCH_RECORD)
+                     {
+                        reader.onReadUpdateRecord(new RecordInfo(id, userRecordType, data, true, compactCount));
+                     }
+                     else
+                     {
+                        reader.onReadUpdateRecordTX(transactionID, new RecordInfo(id,
+                                                                                  userRecordType,
+                                                                                  data,
+                                                                                  true,
+                                                                                  compactCount));
+                     }
+                  }
+                  break;
+               }
                default:
                {
                   throw new IllegalStateException("Journal " + file.getFile().getFileName() +
@@ -740,6 +884,12 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                }
             }
 
+            if (checksum)
+            {
+               // the CRC was checked already
+               wholeFileBuffer.getInt();
+            }
+
             checkSize = wholeFileBuffer.getInt();
 
             // This is a sanity check about the loading code itself.
@@ -754,6 +904,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
             lastDataPos = wholeFileBuffer.position();
 
+            nextRecordPos = lastDataPos;
+
          }
 
          return lastDataPos;
@@ -831,7 +983,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         acquireAppendLock();
          try
          {
             JournalFile usedFile = appendRecord(addRecord, false, sync, null, callback);
@@ -849,7 +1001,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
          finally
          {
-            lockAppend.unlock();
+            releaseAppendLock();
          }
       }
       finally
@@ -916,7 +1068,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         acquireAppendLock();
          try
          {
             JournalFile usedFile = appendRecord(updateRecord, false, sync, null, callback);
@@ -943,7 +1095,141 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
          finally
          {
-            lockAppend.unlock();
+            releaseAppendLock();
+         }
+      }
+      finally
+      {
+         compactingLock.readLock().unlock();
+      }
+   }
+
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync) throws Exception
+   {
+      if (ids.length == 0)
+      {
+         return;
+      }
+
+      SyncIOCompletion callback = getSyncCallback(sync);
+
+      appendUpdateRecords(ids, recordType, record, sync, callback);
+
+      if (callback != null)
+      {
+         callback.waitCompletion();
+      }
+   }
+
+   /**
+    * The update is written as a single record for all the ids, as long as it fits on a file and on the buffer. When it
+    * doesn't, it's split on as many records as needed, and only the last one is synced and completes the callback.
+    * The ids that can't be found are skipped, so they don't fail the update of the others.
+    */
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      if (ids.length == 1)
+      {
+         appendUpdateRecord(ids[0], recordType, record, sync, callback);
+         return;
+      }
+
+      if (state != JournalImpl.STATE_LOADED)
+      {
+         throw new IllegalStateException("Journal must be loaded first");
+      }
+
+      compactingLock.readLock().lock();
+
+      try
+      {
+         long[] updateIDs = new long[ids.length];
+
+         JournalRecord[] jrnRecords = new JournalRecord[ids.length];
+
+         int found = 0;
+
+         for (long id : ids)
+         {
+            JournalRecord jrnRecord = records.get(id);
+
+            if (jrnRecord == null && !(compactor != null && compactor.lookupRecord(id)))
+            {
+               JournalImpl.log.warn("Cannot find add info " + id + ", its update is ignored");
+               continue;
+            }
+
+            updateIDs[found] = id;
+
+            jrnRecords[found++] = jrnRecord;
+         }
+
+         if (found == 0)
+         {
+            throw new IllegalStateException("Cannot find add info " + ids[0]);
+         }
+
+         int maxBatch = getMaxBatchIDs(record);
+
+         for (int start = 0; start < found; start += maxBatch)
+         {
+            int end = Math.min(found, start + maxBatch);
+
+            boolean last = end == found;
+
+            long[] batchIDs = new long[end - start];
+
+            System.arraycopy(updateIDs, start, batchIDs, 0, batchIDs.length);
+
+            JournalInternalRecord updateRecord = new JournalUpdateBatchRecord(batchIDs, recordType, record);
+
+            if (last && callback != null)
+            {
+               callback.storeLineUp();
+            }
+
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(updateRecord, false, last && sync, null, last ? callback : null);
+
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendUpdateRecords::ids=" + batchIDs.length +
+                                          ", firstID=" +
+                                          batchIDs[0] +
+                                          ", userRecordType=" +
+                                          recordType +
+                                          ", usedFile = " +
+                                          usedFile);
+               }
+
+               // Each record accounts for its share of the batch
+               int size = Math.max(1, updateRecord.getEncodeSize() / batchIDs.length);
+
+               for (int i = start; i < end; i++)
+               {
+                  if (jrnRecords[i] == null)
+                  {
+                     compactor.addCommandUpdate(updateIDs[i], usedFile, size);
+                  }
+                  else
+                  {
+                     jrnRecords[i].addUpdateFile(usedFile, size);
+                  }
+               }
+            }
+            finally
+            {
+               releaseAppendLock();
+            }
          }
       }
       finally
@@ -1001,7 +1287,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         acquireAppendLock();
          try
          {
             JournalFile usedFile = appendRecord(deleteRecord, false, sync, null, callback);
@@ -1025,7 +1311,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
          finally
          {
-            lockAppend.unlock();
+            releaseAppendLock();
          }
       }
       finally
@@ -1058,27 +1344,30 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(addRecord, false, false, tx, null);
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(addRecord, false, false, tx, null);
 
-            if (JournalImpl.TRACE_RECORDS)
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendAddRecordTransactional:txID=" + txID +
+                                          ",id=" +
+                                          id +
+                                          ", userRecordType=" +
+                                          recordType +
+                                          ", usedFile = " +
+                                          usedFile);
+               }
+
+               tx.addPositive(usedFile, id, addRecord.getEncodeSize());
+            }
+            finally
             {
-               JournalImpl.traceRecord("appendAddRecordTransactional:txID=" + txID +
-                                       ",id=" +
-                                       id +
-                                       ", userRecordType=" +
-                                       recordType +
-                                       ", usedFile = " +
-                                       usedFile);
+               releaseAppendLock();
             }
-
-            tx.addPositive(usedFile, id, addRecord.getEncodeSize());
-         }
-         finally
-         {
-            lockAppend.unlock();
          }
       }
       finally
@@ -1113,27 +1402,110 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(updateRecordTX, false, false, tx, null);
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(updateRecordTX, false, false, tx, null);
 
-            if (JournalImpl.TRACE_RECORDS)
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendUpdateRecordTransactional::txID=" + txID +
+                                          ",id=" +
+                                          id +
+                                          ", userRecordType=" +
+                                          recordType +
+                                          ", usedFile = " +
+                                          usedFile);
+               }
+
+               tx.addPositive(usedFile, id, updateRecordTX.getEncodeSize());
+            }
+            finally
             {
-               JournalImpl.traceRecord("appendUpdateRecordTransactional::txID=" + txID +
-                                       ",id=" +
-                                       id +
-                                       ", userRecordType=" +
-                                       recordType +
-                                       ", usedFile = " +
-                                       usedFile);
+               releaseAppendLock();
             }
-
-            tx.addPositive(usedFile, id, updateRecordTX.getEncodeSize());
          }
-         finally
+      }
+      finally
+      {
+         compactingLock.readLock().unlock();
+      }
+   }
+
+   public void appendUpdateRecordsTransactional(final long txID,
+                                                final long[] ids,
+                                                final byte recordType,
+                                                final EncodingSupport record) throws Exception
+   {
+      if (ids.length == 0)
+      {
+         return;
+      }
+
+      if (ids.length == 1)
+      {
+         appendUpdateRecordTransactional(txID, ids[0], recordType, record);
+         return;
+      }
+
+      if (state != JournalImpl.STATE_LOADED)
+      {
+         throw new IllegalStateException("Journal must be loaded first");
+      }
+
+      compactingLock.readLock().lock();
+
+      try
+      {
+         JournalTransaction tx = getTransactionInfo(txID);
+
+         int maxBatch = getMaxBatchIDs(record);
+
+         synchronized (tx)
          {
-            lockAppend.unlock();
+            for (int start = 0; start < ids.length; start += maxBatch)
+            {
+               int end = Math.min(ids.length, start + maxBatch);
+
+               long[] batchIDs = new long[end - start];
+
+               System.arraycopy(ids, start, batchIDs, 0, batchIDs.length);
+
+               JournalInternalRecord updateRecordTX = new JournalUpdateBatchRecord(txID, batchIDs, recordType, record);
+
+               acquireAppendLock();
+               try
+               {
+                  JournalFile usedFile = appendRecord(updateRecordTX, false, false, tx, null);
+
+                  if (JournalImpl.TRACE_RECORDS)
+                  {
+                     JournalImpl.traceRecord("appendUpdateRecordsTransactional::txID=" + txID +
+                                             ", ids=" +
+                                             batchIDs.length +
+                                             ", firstID=" +
+                                             batchIDs[0] +
+                                             ", userRecordType=" +
+                                             recordType +
+                                             ", usedFile = " +
+                                             usedFile);
+                  }
+
+                  // The commit record counts every update, as the records are read one by one when loading
+                  int size = Math.max(1, updateRecordTX.getEncodeSize() / batchIDs.length);
+
+                  for (long id : batchIDs)
+                  {
+                     tx.addPositive(usedFile, id, size);
+                  }
+               }
+               finally
+               {
+                  releaseAppendLock();
+               }
+            }
          }
       }
       finally
@@ -1162,25 +1534,28 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(deleteRecordTX, false, false, tx, null);
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(deleteRecordTX, false, false, tx, null);
 
-            if (JournalImpl.TRACE_RECORDS)
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendDeleteRecordTransactional::txID=" + txID +
+                                          ", id=" +
+                                          id +
+                                          ", usedFile = " +
+                                          usedFile);
+               }
+
+               tx.addNegative(usedFile, id);
+            }
+            finally
             {
-               JournalImpl.traceRecord("appendDeleteRecordTransactional::txID=" + txID +
-                                       ", id=" +
-                                       id +
-                                       ", usedFile = " +
-                                       usedFile);
+               releaseAppendLock();
             }
-
-            tx.addNegative(usedFile, id);
-         }
-         finally
-         {
-            lockAppend.unlock();
          }
       }
       finally
@@ -1260,21 +1635,24 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(prepareRecord, true, sync, tx, callback);
-
-            if (JournalImpl.TRACE_RECORDS)
+            acquireAppendLock();
+            try
             {
-               JournalImpl.traceRecord("appendPrepareRecord::txID=" + txID + ", usedFile = " + usedFile);
-            }
+               JournalFile usedFile = appendRecord(prepareRecord, true, sync, tx, callback);
 
-            tx.prepare(usedFile);
-         }
-         finally
-         {
-            lockAppend.unlock();
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendPrepareRecord::txID=" + txID + ", usedFile = " + usedFile);
+               }
+
+               tx.prepare(usedFile);
+            }
+            finally
+            {
+               releaseAppendLock();
+            }
          }
 
       }
@@ -1338,21 +1716,24 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(commitRecord, true, sync, tx, callback);
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(commitRecord, true, sync, tx, callback);
 
-            if (JournalImpl.TRACE_RECORDS)
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendCommitRecord::txID=" + txID + ", usedFile = " + usedFile);
+               }
+
+               tx.commit(usedFile);
+            }
+            finally
             {
-               JournalImpl.traceRecord("appendCommitRecord::txID=" + txID + ", usedFile = " + usedFile);
+               releaseAppendLock();
             }
-
-            tx.commit(usedFile);
-         }
-         finally
-         {
-            lockAppend.unlock();
          }
 
       }
@@ -1402,16 +1783,19 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
-         try
+         synchronized (tx)
          {
-            JournalFile usedFile = appendRecord(rollbackRecord, false, sync, tx, callback);
+            acquireAppendLock();
+            try
+            {
+               JournalFile usedFile = appendRecord(rollbackRecord, false, sync, tx, callback);
 
-            tx.rollback(usedFile);
-         }
-         finally
-         {
-            lockAppend.unlock();
+               tx.rollback(usedFile);
+            }
+            finally
+            {
+               releaseAppendLock();
+            }
          }
 
       }
@@ -1426,6 +1810,164 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       return fileFactory.getAlignment();
    }
 
+   /**
+    * <p>When set, appends will claim their space on the current file through a CAS on the TimedBuffer
+    * instead of serializing on a single lock. A lock is only taken when the journal needs to move to a next file.</p>
+    * <p>This is only possible when the SequentialFileFactory supports callbacks (i.e. it uses a TimedBuffer),
+    * and it will be ignored otherwise.</p>
+    */
+   public void setConcurrentAppend(final boolean concurrentAppend)
+   {
+      if (state == JournalImpl.STATE_LOADED)
+      {
+         throw new IllegalStateException("The append mode can't be changed after the journal is loaded");
+      }
+
+      this.concurrentAppend = concurrentAppend && fileFactory.isSupportsCallbacks();
+   }
+
+   public boolean isConcurrentAppend()
+   {
+      return concurrentAppend;
+   }
+
+   /**
+    * <p>The number of threads used to read the journal files during load. When greater than 1 the files are read and
+    * validated in parallel, while the records are still replayed on the order of the files.</p>
+    */
+   public void setLoadThreads(final int loadThreads)
+   {
+      if (loadThreads < 1)
+      {
+         throw new IllegalArgumentException("loadThreads must be >= 1");
+      }
+
+      this.loadThreads = loadThreads;
+   }
+
+   public int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * <p>When greater than 0, each compacting cycle will only compact the oldest data files, as a group of at least
+    * compactFilesPerCycle files, instead of the whole journal. The group grows beyond that when its files are not
+    * sparse enough (see compactPercentage), or when a transaction was still open at its end.</p>
+    */
+   public void setCompactFilesPerCycle(final int compactFilesPerCycle)
+   {
+      if (compactFilesPerCycle < 0)
+      {
+         throw new IllegalArgumentException("compactFilesPerCycle must be >= 0");
+      }
+
+      this.compactFilesPerCycle = compactFilesPerCycle;
+   }
+
+   public int getCompactFilesPerCycle()
+   {
+      return compactFilesPerCycle;
+   }
+
+   /**
+    * <p>The maximum rate (in MiB / second) compacting will read and write the journal files at, so it doesn't take
+    * all the disk bandwidth from the appends. 0 (the default) means no limit.</p>
+    */
+   public void setCompactIOBudget(final int compactIOBudget)
+   {
+      if (compactIOBudget < 0)
+      {
+         throw new IllegalArgumentException("compactIOBudget must be >= 0");
+      }
+
+      this.compactIOBudget = compactIOBudget;
+   }
+
+   public int getCompactIOBudget()
+   {
+      return compactIOBudget;
+   }
+
+   /** Bytes of the live records rewritten by the last compacting cycle */
+   public long getLastCompactBytesRewritten()
+   {
+      return lastCompactBytesRewritten;
+   }
+
+   /** Time (in microseconds) appends were blocked by the last compacting cycle */
+   public long getLastCompactPauseTime()
+   {
+      return lastCompactPauseTime;
+   }
+
+   /** Number of data files released by the last compacting cycle (compacted files - new files) */
+   public int getLastCompactReclaimedFiles()
+   {
+      return lastCompactReclaimedFiles;
+   }
+
+   /**
+    * <p>When set, the files are initialized with {@link #CHECKSUM_FORMAT_VERSION}, and every record written on them
+    * carries a CRC, calculated for the whole TimedBuffer batch when it's flushed. Records not matching their CRC are
+    * ignored on load, as torn writes.</p>
+    * <p>The files are read according to the version on their header, so the journal may contain files of both versions.</p>
+    */
+   public void setRecordChecksum(final boolean recordChecksum)
+   {
+      if (state == JournalImpl.STATE_LOADED)
+      {
+         throw new IllegalStateException("The record checksum can't be changed after the journal is loaded");
+      }
+
+      this.recordChecksum = recordChecksum;
+
+      filesRepository.setJournalVersion(getJournalVersion());
+   }
+
+   public boolean isRecordChecksum()
+   {
+      return recordChecksum;
+   }
+
+   /**
+    * <p>When greater than 0, a background thread keeps up to maxPreallocatedFiles filled files ready to be used,
+    * based on the rate files were used recently, so the appends don't have to wait for a file to be filled.
+    * Reclaimed files are also reinitialized on that thread.</p>
+    */
+   public void setMaxPreallocatedFiles(final int maxPreallocatedFiles)
+   {
+      if (maxPreallocatedFiles < 0)
+      {
+         throw new IllegalArgumentException("maxPreallocatedFiles must be >= 0");
+      }
+
+      filesRepository.setMaxPreallocatedFiles(maxPreallocatedFiles);
+   }
+
+   public int getMaxPreallocatedFiles()
+   {
+      return filesRepository.getMaxPreallocatedFiles();
+   }
+
+   /** Number of times an append had to wait for the next file to be ready */
+   public long getFileWaitCount()
+   {
+      return filesRepository.getFileWaitCount();
+   }
+
+   /** Total time (in microseconds) appends waited for the next file to be ready */
+   public long getFileWaitTime()
+   {
+      return filesRepository.getFileWaitTime();
+   }
+
+   /** The version of the files created by this journal */
+   public int getJournalVersion()
+   {
+      return recordChecksum ? JournalImpl.CHECKSUM_FORMAT_VERSION : JournalImpl.FORMAT_VERSION;
+   }
+
    public synchronized JournalLoadInformation loadInternalOnly() throws Exception
    {
       LoaderCallback dummyLoader = new LoaderCallback()
@@ -1558,10 +2100,17 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          throw new IllegalStateException("There is pending compacting operation");
       }
 
+      if (compactFilesPerCycle > 0 && compactGroup())
+      {
+         return;
+      }
+
       ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
 
       boolean previousReclaimValue = autoReclaim;
 
+      long pauseTime = 0;
+
       try
       {
          if (JournalImpl.trace)
@@ -1576,6 +2125,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          onCompactStart();
 
+         long lockTime = System.nanoTime();
+
          // We need to guarantee that the journal is frozen for this short time
          // We don't freeze the journal as we compact, only for the short time where we replace records
          compactingLock.writeLock().lock();
@@ -1609,13 +2160,13 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             compactor = new JournalCompactor(fileFactory,
                                              this,
                                              filesRepository,
-                                             records.keySet(),
+                                             records.keys(),
                                              dataFilesToProcess.get(0).getFileID());
 
-            for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
+            for (JournalTransaction tx : transactions.values())
             {
-               compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-               entry.getValue().setCompacting();
+               compactor.addPendingTransaction(tx.getId(), tx.getPositiveArray());
+               tx.setCompacting();
             }
 
             // We will calculate the new records during compacting, what will take the position the records will take
@@ -1625,6 +2176,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          finally
          {
             compactingLock.writeLock().unlock();
+
+            pauseTime += System.nanoTime() - lockTime;
          }
 
          Collections.sort(dataFilesToProcess, new JournalFileComparator());
@@ -1634,18 +2187,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new collections as
          // well
-         for (final JournalFile file : dataFilesToProcess)
-         {
-            try
-            {
-               JournalImpl.readJournalFile(fileFactory, file, compactor);
-            }
-            catch (Throwable e)
-            {
-               JournalImpl.log.warn("Error on reading compacting for " + file);
-               throw new Exception("Error on reading compacting for " + file, e);
-            }
-         }
+         readCompactingFiles(dataFilesToProcess, compactor);
 
          compactor.flush();
 
@@ -1660,6 +2202,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
          SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
+         lockTime = System.nanoTime();
+
          compactingLock.writeLock().lock();
          try
          {
@@ -1671,9 +2215,11 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             newDatafiles = localCompactor.getNewDataFiles();
 
             // Restore newRecords created during compacting
-            for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+
+            for (long id : newRecords.keys())
             {
-               records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
+               records.put(id, newRecords.get(id));
             }
 
             // Restore compacted dataFiles
@@ -1725,12 +2271,16 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          finally
          {
             compactingLock.writeLock().unlock();
+
+            pauseTime += System.nanoTime() - lockTime;
          }
 
          // At this point the journal is unlocked. We keep renaming files while the journal is already operational
          renameFiles(dataFilesToProcess, newDatafiles);
          deleteControlFile(controlFile);
 
+         compactDone(dataFilesToProcess.size(), newDatafiles.size(), localCompactor.getBytesWritten(), pauseTime);
+
          if (JournalImpl.trace)
          {
             JournalImpl.log.debug("Finished compacting on journal");
@@ -1755,11 +2305,380 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             {
             }
 
-            compactor = null;
+            compactor = null;
+         }
+         autoReclaim = previousReclaimValue;
+      }
+
+   }
+
+   /**
+    * <p>Compacts only the oldest data files, so each cycle rewrites a limited amount of data.</p>
+    *
+    * <p>The group of files is chosen so it can be compacted alone: No pending transaction can have records on it,
+    * and no transaction with records on it may have been completed after it. As records are only updated or deleted
+    * after they were added, the updates and deletes of the records added on the group that are not on the group
+    * are on newer files, which are kept as they are.</p>
+    *
+    * @return false if there wasn't such a group, and the whole journal should be compacted instead
+    */
+   private boolean compactGroup() throws Exception
+   {
+      final List<JournalFile> group = selectCompactGroup();
+
+      if (group == null)
+      {
+         return false;
+      }
+
+      if (JournalImpl.trace)
+      {
+         JournalImpl.trace("Starting compacting operation on journal files " + group);
+      }
+
+      onCompactStart();
+
+      Set<JournalFile> groupFiles = new HashSet<JournalFile>(group);
+
+      // Records can't be added to these files any more, so we look for them before taking the lock.
+      // They may still be deleted until the lock is taken
+      ConcurrentLongHashSet candidates = new ConcurrentLongHashSet();
+
+      for (long id : records.keys())
+      {
+         JournalRecord record = records.get(id);
+
+         if (record != null && groupFiles.contains(record.getAddFile()))
+         {
+            candidates.add(id);
+         }
+      }
+
+      // The records of the group, as they were before compacting
+      ConcurrentLongHashMap<JournalRecord> oldRecords = new ConcurrentLongHashMap<JournalRecord>();
+
+      boolean previousReclaimValue = autoReclaim;
+
+      boolean swapped = false;
+
+      long pauseTime = 0;
+
+      try
+      {
+         long lockTime = System.nanoTime();
+
+         compactingLock.writeLock().lock();
+         try
+         {
+            if (state != JournalImpl.STATE_LOADED || !filesRepository.getDataFiles().containsAll(group) ||
+                !isCompactGroupComplete(group))
+            {
+               // The journal changed since the group was chosen, it will be chosen again on the next cycle
+               return true;
+            }
+
+            onCompactLock();
+
+            setAutoReclaim(false);
+
+            for (long id : candidates.toArray())
+            {
+               JournalRecord record = records.remove(id);
+
+               if (record != null)
+               {
+                  oldRecords.put(id, record);
+               }
+            }
+
+            for (JournalFile file : group)
+            {
+               filesRepository.removeDataFile(file);
+            }
+
+            compactor = new JournalCompactor(fileFactory,
+                                             this,
+                                             filesRepository,
+                                             oldRecords.keys(),
+                                             group.get(0).getFileID());
+         }
+         finally
+         {
+            compactingLock.writeLock().unlock();
+
+            pauseTime += System.nanoTime() - lockTime;
+         }
+
+         readCompactingFiles(group, compactor);
+
+         compactor.flush();
+
+         onCompactDone();
+
+         List<JournalFile> newDatafiles = compactor.getNewDataFiles();
+
+         // The new files take the ordering IDs of the group, so they need to fit before the newer files
+         if (!newDatafiles.isEmpty() && newDatafiles.get(newDatafiles.size() - 1).getFileID() >= getFirstNewerFileID())
+         {
+            JournalImpl.log.debug("The compacted records didn't fit on the files being compacted, compacting the whole journal instead");
+            return false;
+         }
+
+         JournalCompactor localCompactor = compactor;
+
+         SequentialFile controlFile = createControlFile(group, newDatafiles, null);
+
+         lockTime = System.nanoTime();
+
+         compactingLock.writeLock().lock();
+         try
+         {
+            // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
+            compactor = null;
+
+            onCompactLock();
+
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+
+            for (long id : newRecords.keys())
+            {
+               JournalRecord newRecord = newRecords.get(id);
+
+               JournalRecord oldRecord = oldRecords.get(id);
+
+               if (oldRecord != null)
+               {
+                  newRecord.copyUpdateFiles(oldRecord, groupFiles);
+               }
+
+               records.put(id, newRecord);
+            }
+
+            for (int i = newDatafiles.size() - 1; i >= 0; i--)
+            {
+               filesRepository.addDataFileOnTop(newDatafiles.get(i));
+            }
+
+            // The deletes on the newer files don't need to be accounted against the compacted files any more
+            for (JournalFile file : filesRepository.getDataFiles())
+            {
+               for (JournalFile compactedFile : group)
+               {
+                  file.resetNegCount(compactedFile);
+               }
+            }
+
+            for (JournalTransaction newTransaction : localCompactor.getNewTransactions().values())
+            {
+               // Sanity check, the group is only chosen when all of its transactions were completed on it
+               JournalImpl.log.warn("Transaction " + newTransaction.getId() + " wasn't completed on the compacted files");
+            }
+
+            localCompactor.replayPendingCommands();
+
+            swapped = true;
+         }
+         finally
+         {
+            compactingLock.writeLock().unlock();
+
+            pauseTime += System.nanoTime() - lockTime;
+         }
+
+         // At this point the journal is unlocked. We keep renaming files while the journal is already operational
+         renameFiles(group, newDatafiles);
+         deleteControlFile(controlFile);
+
+         compactDone(group.size(), newDatafiles.size(), localCompactor.getBytesWritten(), pauseTime);
+
+         return true;
+      }
+      finally
+      {
+         if (!swapped && compactor != null)
+         {
+            restoreCompactGroup(group, oldRecords);
+         }
+
+         autoReclaim = previousReclaimValue;
+      }
+   }
+
+   /**
+    * @return the oldest data files that can be compacted alone (see {@link #compactGroup()}), or null if there are none
+    */
+   private List<JournalFile> selectCompactGroup()
+   {
+      List<JournalFile> dataFiles = new ArrayList<JournalFile>(filesRepository.getDataFiles());
+
+      Collections.sort(dataFiles, new JournalFileComparator());
+
+      List<JournalFile> group = new ArrayList<JournalFile>();
+
+      long liveSize = 0;
+
+      for (JournalFile file : dataFiles)
+      {
+         group.add(file);
+
+         liveSize += file.getLiveSize();
+
+         if (group.size() >= compactFilesPerCycle &&
+             (compactPercentage == 0 || liveSize < (long)(group.size() * (long)fileSize * compactPercentage)) &&
+             isCompactGroupComplete(group))
+         {
+            return group;
+         }
+      }
+
+      return null;
+   }
+
+   /** @return true if no transaction was left open on the group of files */
+   private boolean isCompactGroupComplete(final List<JournalFile> group)
+   {
+      long lastFileID = group.get(group.size() - 1).getFileID();
+
+      for (JournalFile file : group)
+      {
+         if (file.getTransactionCompletionID() > lastFileID)
+         {
+            return false;
+         }
+      }
+
+      for (JournalTransaction tx : transactions.values())
+      {
+         if (tx.isWrittenOn(group))
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /** The lowest ordering ID of the files newer than the ones being compacted */
+   private long getFirstNewerFileID()
+   {
+      long firstID = currentFile.getFileID();
+
+      for (JournalFile file : filesRepository.getDataFiles())
+      {
+         firstID = Math.min(firstID, file.getFileID());
+      }
+
+      return firstID;
+   }
+
+   /** Puts the group of files back as they were, when compacting them didn't complete */
+   private void restoreCompactGroup(final List<JournalFile> group, final ConcurrentLongHashMap<JournalRecord> oldRecords)
+   {
+      JournalCompactor localCompactor;
+
+      compactingLock.writeLock().lock();
+      try
+      {
+         localCompactor = compactor;
+
+         compactor = null;
+
+         for (long id : oldRecords.keys())
+         {
+            records.put(id, oldRecords.get(id));
+         }
+
+         for (int i = group.size() - 1; i >= 0; i--)
+         {
+            filesRepository.addDataFileOnTop(group.get(i));
+         }
+
+         localCompactor.replayPendingCommands();
+      }
+      finally
+      {
+         compactingLock.writeLock().unlock();
+      }
+
+      try
+      {
+         localCompactor.flush();
+
+         for (JournalFile file : localCompactor.getNewDataFiles())
+         {
+            file.getFile().delete();
+         }
+      }
+      catch (Throwable e)
+      {
+         JournalImpl.log.warn("Error deleting files from an incomplete compacting", e);
+      }
+   }
+
+   private void readCompactingFiles(final List<JournalFile> files, final JournalCompactor compactor) throws Exception
+   {
+      long start = System.nanoTime();
+
+      long bytesRead = 0;
+
+      for (final JournalFile file : files)
+      {
+         try
+         {
+            JournalImpl.readJournalFile(fileFactory, file, compactor);
+         }
+         catch (Throwable e)
+         {
+            JournalImpl.log.warn("Error on reading compacting for " + file);
+            throw new Exception("Error on reading compacting for " + file, e);
+         }
+
+         bytesRead += fileSize;
+
+         throttleCompacting(start, bytesRead + compactor.getBytesWritten());
+      }
+   }
+
+   /** Sleeps as long as needed to keep the IO done by compacting since start under compactIOBudget */
+   private void throttleCompacting(final long start, final long bytes) throws InterruptedException
+   {
+      int budget = compactIOBudget;
+
+      if (budget > 0)
+      {
+         long expectedTime = bytes * 1000L / (budget * 1024L * 1024L);
+
+         long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+         if (expectedTime > elapsedTime)
+         {
+            Thread.sleep(expectedTime - elapsedTime);
          }
-         autoReclaim = previousReclaimValue;
       }
+   }
+
+   private void compactDone(final int compactedFiles,
+                            final int newFiles,
+                            final long bytesRewritten,
+                            final long pauseTime)
+   {
+      lastCompactBytesRewritten = bytesRewritten;
 
+      lastCompactPauseTime = TimeUnit.NANOSECONDS.toMicros(pauseTime);
+
+      lastCompactReclaimedFiles = compactedFiles - newFiles;
+
+      if (JournalImpl.log.isDebugEnabled())
+      {
+         JournalImpl.log.debug("Compacted " + compactedFiles +
+                               " files into " +
+                               newFiles +
+                               ", " +
+                               bytesRewritten +
+                               " bytes rewritten, appends blocked for " +
+                               lastCompactPauseTime +
+                               " microseconds");
+      }
    }
 
    /** 
@@ -1820,17 +2739,37 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
       filesRepository.calculateNextfileID(orderedFiles);
 
+      // The free files come after the current one, as they get a new fileID when they are reused
+      int currentFileIndex = orderedFiles.size() - 1;
+
+      while (currentFileIndex > 0 && !isWritten(orderedFiles.get(currentFileIndex)))
+      {
+         currentFileIndex--;
+      }
+
       int lastDataPos = JournalImpl.SIZE_HEADER;
 
       final AtomicLong maxID = new AtomicLong(-1);
 
-      for (final JournalFile file : orderedFiles)
+      final long loadStart = System.currentTimeMillis();
+
+      // When loading with more than one thread, the files are read ahead in parallel and replayed here in order
+      ParallelJournalFileReader parallelReader = null;
+
+      if (loadThreads > 1 && orderedFiles.size() > 1)
+      {
+         parallelReader = new ParallelJournalFileReader(fileFactory, orderedFiles, currentFileIndex, loadThreads);
+      }
+
+      for (int fileIndex = 0; fileIndex < orderedFiles.size(); fileIndex++)
       {
+         final JournalFile file = orderedFiles.get(fileIndex);
+
          JournalImpl.trace("Loading file " + file.getFile().getFileName());
 
          final AtomicBoolean hasData = new AtomicBoolean(false);
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
+         JournalReaderCallback reader = new JournalReaderCallback()
          {
 
             private void checkID(final long id)
@@ -2078,7 +3017,18 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                hasData.set(true);
             }
 
-         });
+         };
+
+         int resultLastPost;
+
+         if (parallelReader == null)
+         {
+            resultLastPost = JournalImpl.readJournalFile(fileFactory, file, reader, fileIndex == currentFileIndex);
+         }
+         else
+         {
+            resultLastPost = parallelReader.replay(fileIndex, reader);
+         }
 
          if (hasData.get())
          {
@@ -2092,6 +3042,25 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
       }
 
+      if (parallelReader != null)
+      {
+         parallelReader.stop();
+      }
+
+      if (JournalImpl.log.isDebugEnabled())
+      {
+         JournalImpl.log.debug("Loaded " + orderedFiles.size() +
+                               " files with " +
+                               records.size() +
+                               " records in " +
+                               (System.currentTimeMillis() - loadStart) +
+                               " ms" +
+                               (parallelReader == null ? "" : " using " + loadThreads +
+                                                              " threads, " +
+                                                              parallelReader.getWaitTime() +
+                                                              " ms waiting for files to be read"));
+      }
+
       // Create any more files we need
 
       filesRepository.ensureMinFiles();
@@ -2187,7 +3156,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
                filesRepository.removeDataFile(file);
 
-               filesRepository.addFreeFile(file, false);
+               filesRepository.recycleFile(file);
             }
          }
       }
@@ -2355,6 +3324,20 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          latch.await();
       }
 
+      if (preallocateExecutor != null && !preallocateExecutor.isShutdown())
+      {
+         final CountDownLatch latch = new CountDownLatch(1);
+
+         preallocateExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               latch.countDown();
+            }
+         });
+
+         latch.await();
+      }
    }
 
    public int getDataFilesCount()
@@ -2418,7 +3401,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       compactingLock.readLock().lock();
       try
       {
-         lockAppend.lock();
+         acquireExclusiveAppendLock();
          try
          {
             moveNextFile(false);
@@ -2426,7 +3409,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
          finally
          {
-            lockAppend.unlock();
+            releaseExclusiveAppendLock();
          }
       }
       finally
@@ -2473,8 +3456,19 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          }
       });
 
+      preallocateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+
+         public Thread newThread(final Runnable r)
+         {
+            return new Thread(r, "JournalImpl::PreallocateExecutor");
+         }
+      });
+
       filesRepository.setExecutor(filesExecutor);
 
+      filesRepository.setPreallocateExecutor(preallocateExecutor);
+
       fileFactory.start();
 
       state = JournalImpl.STATE_STARTED;
@@ -2489,7 +3483,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          throw new IllegalStateException("Journal is already stopped");
       }
 
-      lockAppend.lock();
+      acquireExclusiveAppendLock();
 
       try
       {
@@ -2512,6 +3506,15 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
             JournalImpl.log.warn("Couldn't stop journal executor after 60 seconds");
          }
 
+         filesRepository.setPreallocateExecutor(null);
+
+         preallocateExecutor.shutdown();
+
+         if (!preallocateExecutor.awaitTermination(60, TimeUnit.SECONDS))
+         {
+            JournalImpl.log.warn("Couldn't stop preallocate executor after 60 seconds");
+         }
+
          fileFactory.deactivateBuffer();
 
          if (currentFile != null && currentFile.getFile().isOpen())
@@ -2529,7 +3532,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       }
       finally
       {
-         lockAppend.unlock();
+         releaseExclusiveAppendLock();
       }
    }
 
@@ -2657,10 +3660,30 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       return journalTransaction.getCounter(currentFile) == numberOfRecords;
    }
 
+   /** How many ids fit on a batch record, with the worst case size for every id */
+   private int getMaxBatchIDs(final EncodingSupport record)
+   {
+      int maxRecordSize = fileSize - fileFactory.calculateBlockSize(JournalImpl.SIZE_HEADER);
+
+      // A buffered file can't take records bigger than its buffer
+      if (fileFactory.getMaxRecordSize() > 0)
+      {
+         maxRecordSize = Math.min(maxRecordSize, fileFactory.getMaxRecordSize());
+      }
+
+      int available = maxRecordSize - JournalImpl.SIZE_ADD_RECORD_TX -
+                      1 -
+                      DataConstants.SIZE_INT -
+                      record.getEncodeSize();
+
+      return Math.max(1, available / JournalUpdateBatchRecord.MAX_ID_SIZE);
+   }
+
    private static boolean isTransaction(final byte recordType)
    {
       return recordType == JournalImpl.ADD_RECORD_TX || recordType == JournalImpl.UPDATE_RECORD_TX ||
              recordType == JournalImpl.DELETE_RECORD_TX ||
+             recordType == JournalImpl.UPDATE_BATCH_RECORD_TX ||
              JournalImpl.isCompleteTransaction(recordType);
    }
 
@@ -2670,9 +3693,17 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
              recordType == JournalImpl.ROLLBACK_RECORD;
    }
 
+   /** If the records on the file carry a checksum */
+   static boolean isChecksum(final JournalFile file)
+   {
+      return file.getJournalVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION;
+   }
+
    private static boolean isContainsBody(final byte recordType)
    {
-      return recordType >= JournalImpl.ADD_RECORD && recordType <= JournalImpl.DELETE_RECORD_TX;
+      return recordType >= JournalImpl.ADD_RECORD && recordType <= JournalImpl.DELETE_RECORD_TX ||
+             recordType == JournalImpl.UPDATE_BATCH_RECORD ||
+             recordType == JournalImpl.UPDATE_BATCH_RECORD_TX;
    }
 
    private static int getRecordSize(final byte recordType, final int journalVersion)
@@ -2708,13 +3739,23 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          case ROLLBACK_RECORD:
             recordSize = JournalImpl.SIZE_ROLLBACK_RECORD;
             break;
+         case UPDATE_BATCH_RECORD:
+            recordSize = JournalImpl.SIZE_ADD_RECORD;
+            break;
+         case UPDATE_BATCH_RECORD_TX:
+            recordSize = JournalImpl.SIZE_ADD_RECORD_TX;
+            break;
          default:
             // Sanity check, this was previously tested, nothing different
             // should be on this switch
             throw new IllegalStateException("Record other than expected");
 
       }
-      if (journalVersion >= 2)
+      if (journalVersion >= JournalImpl.CHECKSUM_FORMAT_VERSION)
+      {
+         return recordSize + 1 + DataConstants.SIZE_INT;
+      }
+      else if (journalVersion >= 2)
       {
          return recordSize + 1;
       }
@@ -2772,6 +3813,41 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       return new JournalFileImpl(file, fileID, journalVersion);
    }
 
+   /**
+    * @return if the first record after the header belongs to the file, and not to a previous usage of it
+    */
+   private boolean isWritten(final JournalFile file) throws Exception
+   {
+      SequentialFile sf = file.getFile();
+
+      int recordStart = fileFactory.calculateBlockSize(JournalImpl.SIZE_HEADER);
+
+      if (sf.size() < recordStart + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT)
+      {
+         return false;
+      }
+
+      ByteBuffer bb = fileFactory.newBuffer(recordStart + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+      sf.open(1, false);
+
+      try
+      {
+         sf.read(bb);
+
+         byte recordType = bb.get(recordStart);
+
+         return recordType >= JournalImpl.ADD_RECORD && recordType <= JournalImpl.UPDATE_BATCH_RECORD_TX &&
+                bb.getInt(recordStart + DataConstants.SIZE_BYTE) == file.getRecordID();
+      }
+      finally
+      {
+         fileFactory.releaseBuffer(bb);
+
+         sf.close();
+      }
+   }
+
    /**
     * @param fileID
     * @param sequentialFile
@@ -2781,13 +3857,25 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                                     final SequentialFile sequentialFile,
                                     final int userVersion,
                                     final long fileID) throws Exception
+   {
+      return JournalImpl.initFileHeader(fileFactory, sequentialFile, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   /**
+    * @param journalVersion FORMAT_VERSION or CHECKSUM_FORMAT_VERSION
+    */
+   public static int initFileHeader(final SequentialFileFactory fileFactory,
+                                    final SequentialFile sequentialFile,
+                                    final int journalVersion,
+                                    final int userVersion,
+                                    final long fileID) throws Exception
    {
       // We don't need to release buffers while writing.
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
 
       HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(bb);
 
-      JournalImpl.writeHeader(buffer, userVersion, fileID);
+      JournalImpl.writeHeader(buffer, journalVersion, userVersion, fileID);
 
       bb.rewind();
 
@@ -2807,7 +3895,15 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
     */
    public static void writeHeader(final HornetQBuffer buffer, final int userVersion, final long fileID)
    {
-      buffer.writeInt(JournalImpl.FORMAT_VERSION);
+      JournalImpl.writeHeader(buffer, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   public static void writeHeader(final HornetQBuffer buffer,
+                                  final int journalVersion,
+                                  final int userVersion,
+                                  final long fileID)
+   {
+      buffer.writeInt(journalVersion);
 
       buffer.writeInt(userVersion);
 
@@ -2831,6 +3927,8 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
 
       final IOAsyncTask callback;
 
+      encoder.setChecksum(JournalImpl.isChecksum(currentFile));
+
       int size = encoder.getEncodeSize();
 
       // We take into account the fileID used on the Header
@@ -2839,10 +3937,20 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
          throw new IllegalArgumentException("Record is too large to store " + size);
       }
 
+      if (concurrentAppend)
+      {
+         return appendRecordConcurrently(encoder, completeTransaction, sync, tx, parameterCallback);
+      }
+
       if (!currentFile.getFile().fits(size))
       {
          moveNextFile(true);
 
+         // the new file may be of a different version
+         encoder.setChecksum(JournalImpl.isChecksum(currentFile));
+
+         size = encoder.getEncodeSize();
+
          // The same check needs to be done at the new file also
          if (!currentFile.getFile().fits(size))
          {
@@ -2911,6 +4019,202 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       return currentFile;
    }
 
+   /**
+    * Same as {@link #appendRecord(JournalInternalRecord, boolean, boolean, JournalTransaction, IOAsyncTask)},
+    * but claiming the space on the currentFile without excluding other appends.
+    * You need to guarantee acquireAppendLock() before calling this method
+    */
+   private JournalFile appendRecordConcurrently(final JournalInternalRecord encoder,
+                                                final boolean completeTransaction,
+                                                final boolean sync,
+                                                final JournalTransaction tx,
+                                                final IOAsyncTask parameterCallback) throws Exception
+   {
+      JournalFile usedFile;
+
+      TransactionCallback txcallback;
+
+      int slot;
+
+      while (true)
+      {
+         usedFile = currentFile;
+
+         if (usedFile == null)
+         {
+            throw new NullPointerException("Current file = null");
+         }
+
+         encoder.setChecksum(JournalImpl.isChecksum(usedFile));
+
+         txcallback = null;
+
+         // The work for the transaction is done before claiming the space: nothing can be flushed until the slot is
+         // encoded, so nothing that blocks (syncing previous files) or throws can happen between reserve and write
+         if (tx != null)
+         {
+            if (sync)
+            {
+               tx.syncPreviousFiles(true, usedFile);
+            }
+
+            if (completeTransaction)
+            {
+               tx.fillNumberOfRecords(usedFile, encoder);
+            }
+
+            // The currentFile can't change while we hold the read lock, so the callback per file is still valid
+            // unless the file is full
+            txcallback = tx.getCallback(usedFile);
+         }
+
+         slot = -1;
+
+         try
+         {
+            slot = usedFile.getFile().reserve(encoder.getEncodeSize());
+         }
+         finally
+         {
+            if (slot < 0 && txcallback != null)
+            {
+               txcallback.cancelCountUp();
+            }
+         }
+
+         if (slot >= 0)
+         {
+            break;
+         }
+
+         rollover(usedFile);
+      }
+
+      final IOAsyncTask callback;
+
+      boolean ready = false;
+
+      try
+      {
+         if (txcallback != null)
+         {
+            if (parameterCallback != null)
+            {
+               txcallback.setDelegateCompletion(parameterCallback);
+            }
+            callback = txcallback;
+         }
+         else
+         {
+            callback = parameterCallback;
+         }
+
+         encoder.setFileID(usedFile.getRecordID());
+
+         ready = true;
+      }
+      finally
+      {
+         if (!ready)
+         {
+            // The batch can't be flushed until every claimed slot is filled
+            usedFile.getFile().abort(slot, encoder.getEncodeSize());
+         }
+      }
+
+      // If the encoding fails, write fills the slot before throwing
+      if (callback != null)
+      {
+         usedFile.getFile().write(slot, encoder, sync, callback);
+      }
+      else if (sync)
+      {
+         SimpleWaitIOCallback completion = new SimpleWaitIOCallback();
+
+         usedFile.getFile().write(slot, encoder, true, completion);
+
+         completion.waitCompletion();
+      }
+      else
+      {
+         usedFile.getFile().write(slot, encoder, false, DummyCallback.getInstance());
+      }
+
+      return usedFile;
+   }
+
+   /**
+    * Moves to a next file, unless another thread did it already.
+    * It upgrades the read lock held by the caller to the write lock, downgrading it again before returning.
+    */
+   private void rollover(final JournalFile fullFile) throws Exception
+   {
+      lockRollover.readLock().unlock();
+
+      lockRollover.writeLock().lock();
+      try
+      {
+         if (currentFile == fullFile)
+         {
+            moveNextFile(true);
+         }
+      }
+      finally
+      {
+         lockRollover.readLock().lock();
+
+         lockRollover.writeLock().unlock();
+      }
+   }
+
+   private void acquireAppendLock()
+   {
+      if (concurrentAppend)
+      {
+         lockRollover.readLock().lock();
+      }
+      else
+      {
+         lockAppend.lock();
+      }
+   }
+
+   private void releaseAppendLock()
+   {
+      if (concurrentAppend)
+      {
+         lockRollover.readLock().unlock();
+      }
+      else
+      {
+         lockAppend.unlock();
+      }
+   }
+
+   private void acquireExclusiveAppendLock()
+   {
+      if (concurrentAppend)
+      {
+         lockRollover.writeLock().lock();
+      }
+      else
+      {
+         lockAppend.lock();
+      }
+   }
+
+   private void releaseExclusiveAppendLock()
+   {
+      if (concurrentAppend)
+      {
+         lockRollover.writeLock().unlock();
+      }
+      else
+      {
+         lockAppend.unlock();
+      }
+   }
+
    // You need to guarantee lock.acquire() before calling this method
    private void moveNextFile(final boolean scheduleReclaim) throws InterruptedException
    {
@@ -3075,6 +4379,22 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       }
    }
 
+   /**
+    * @return the position of the first byte that isn't zero from position on, -1 if there's none
+    */
+   private static int skipZeros(final ByteBuffer buffer, final int position)
+   {
+      for (int i = position; i < buffer.limit(); i++)
+      {
+         if (buffer.get(i) != 0)
+         {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
    private static boolean isInvalidSize(final int fileSize, final int bufferPos, final int size)
    {
       if (size < 0)
@@ -3171,7 +4491,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
       {
          try
          {
-            lockAppend.lock();
+            acquireAppendLock();
 
             final ByteArrayEncoding byteEncoder = new ByteArrayEncoding(new byte[128 * 1024]);
 
@@ -3195,7 +4515,7 @@ public class JournalImpl implements TestableJournal, JournalRecordProvider
                appendRecord(blastRecord, false, false, null, null);
             }
 
-            lockAppend.unlock();
+            releaseAppendLock();
          }
          catch (Exception e)
          {
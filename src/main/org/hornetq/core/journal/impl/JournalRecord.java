@@ -14,6 +14,7 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.hornetq.api.core.Pair;
@@ -45,7 +46,35 @@ public class JournalRecord
       addFile.addSize(size);
    }
 
-   void addUpdateFile(final JournalFile updateFile, final int size)
+   JournalFile getAddFile()
+   {
+      return addFile;
+   }
+
+   /**
+    * Used after compacting a group of files: the updates living on files that were not compacted are kept.
+    * They are not counted again, as those files counted them already.
+    */
+   synchronized void copyUpdateFiles(final JournalRecord oldRecord, final Collection<JournalFile> compactedFiles)
+   {
+      if (oldRecord.updateFiles != null)
+      {
+         for (Pair<JournalFile, Integer> update : oldRecord.updateFiles)
+         {
+            if (!compactedFiles.contains(update.a))
+            {
+               if (updateFiles == null)
+               {
+                  updateFiles = new ArrayList<Pair<JournalFile, Integer>>();
+               }
+
+               updateFiles.add(update);
+            }
+         }
+      }
+   }
+
+   synchronized void addUpdateFile(final JournalFile updateFile, final int size)
    {
       if (updateFiles == null)
       {
@@ -59,7 +88,7 @@ public class JournalRecord
       updateFile.addSize(size);
    }
 
-   void delete(final JournalFile file)
+   synchronized void delete(final JournalFile file)
    {
       file.incNegCount(addFile);
       addFile.decSize(size);
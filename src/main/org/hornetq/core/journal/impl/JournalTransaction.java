@@ -14,6 +14,7 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -103,6 +104,23 @@ public class JournalTransaction
       }
    }
 
+   /** @return true if any record of this transaction was written on one of the files */
+   public boolean isWrittenOn(final Collection<JournalFile> files)
+   {
+      if (pendingFiles != null)
+      {
+         for (JournalFile file : files)
+         {
+            if (pendingFiles.contains(file))
+            {
+               return true;
+            }
+         }
+      }
+
+      return false;
+   }
+
    public void setCompacting()
    {
       compacting = true;
@@ -344,6 +362,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.transactionCompleted(file);
          }
       }
    }
@@ -395,6 +414,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.transactionCompleted(file);
          }
       }
    }
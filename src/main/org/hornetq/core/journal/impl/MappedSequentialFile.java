@@ -0,0 +1,400 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.logging.Logger;
+
+/**
+ * A SequentialFile backed by a MappedByteBuffer.
+ *
+ * <p>The whole file is mapped when it's opened. Writes are copied straight into the page cache with no system call,
+ * and the pages are only forced to disk on sync, before the callbacks are completed. Reads are also done from the
+ * mapped memory.</p>
+ *
+ * <p>As journal files are pre-allocated (filled) before being used, the mapping doesn't need to grow while writing.
+ * Writes beyond the end of a file that was not filled are still supported, but they will map the file again.</p>
+ */
+public class MappedSequentialFile extends AbstractSequentialFile
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MappedSequentialFile.class);
+
+   // Attributes ----------------------------------------------------
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   private MappedByteBuffer mappedBuffer;
+
+   /** Where the next read or write will happen on mappedBuffer */
+   private int mappedPosition;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * A mapping is only released when the buffer is garbage collected, which would hold the file
+    * (and the address space) after it's closed. This will release it right away when the JVM allows it.
+    */
+   private static void unmap(final MappedByteBuffer buffer)
+   {
+      try
+      {
+         Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buffer);
+         if (cleaner != null)
+         {
+            Method cleanMethod = cleaner.getClass().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleanMethod.invoke(cleaner);
+         }
+      }
+      catch (Throwable e)
+      {
+         // it will be unmapped by the GC
+         MappedSequentialFile.log.debug("Couldn't unmap buffer: " + e.getMessage());
+      }
+   }
+
+   // Constructors --------------------------------------------------
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory, final File file, final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+   }
+
+   // Public --------------------------------------------------------
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position) throws Exception
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws Exception
+   {
+      open(1, true);
+   }
+
+   /** maxIO is ignored, as writes are just copies to memory */
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws Exception
+   {
+      rfile = new RandomAccessFile(getFile(), "rw");
+
+      channel = rfile.getChannel();
+
+      // same as a newly opened channel
+      mappedPosition = 0;
+
+      map();
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      ByteBuffer bb = ByteBuffer.allocate(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         bb.put(fillCharacter);
+      }
+
+      bb.flip();
+
+      channel.write(bb, position);
+
+      channel.force(false);
+
+      // The file may have grown, so it needs to be mapped again
+      unmap();
+
+      map();
+   }
+
+   public synchronized void waitForClose() throws Exception
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws Exception
+   {
+      super.close();
+
+      unmap();
+
+      if (channel != null)
+      {
+         channel.close();
+      }
+
+      if (rfile != null)
+      {
+         rfile.close();
+      }
+
+      channel = null;
+
+      rfile = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws Exception
+   {
+      try
+      {
+         int bytesRead = 0;
+
+         if (mappedBuffer != null)
+         {
+            ByteBuffer source = mappedBuffer.duplicate();
+
+            bytesRead = Math.min(bytes.remaining(), source.limit() - mappedPosition);
+
+            source.position(mappedPosition);
+            source.limit(mappedPosition + bytesRead);
+
+            bytes.put(source);
+
+            mappedPosition += bytesRead;
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         bytes.flip();
+
+         return bytesRead;
+      }
+      catch (Exception e)
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQException.IO_ERROR, e.getLocalizedMessage());
+         }
+
+         throw e;
+      }
+   }
+
+   public synchronized void sync() throws Exception
+   {
+      if (mappedBuffer != null)
+      {
+         mappedBuffer.force();
+      }
+   }
+
+   public long size() throws Exception
+   {
+      FileChannel currentChannel = channel;
+
+      if (currentChannel == null)
+      {
+         return getFile().length();
+      }
+      else
+      {
+         return currentChannel.size();
+      }
+   }
+
+   @Override
+   public synchronized void position(final long pos) throws Exception
+   {
+      super.position(pos);
+      mappedPosition = (int)pos;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile copy()
+   {
+      return new MappedSequentialFile(factory, getFile(), writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(HornetQException.IO_ERROR, e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected ByteBuffer newBuffer(int size, final int limit)
+   {
+      // As with NIO, the buffer doesn't need to be the entire size of the timed buffer
+
+      size = limit;
+
+      return super.newBuffer(size, limit);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void map() throws Exception
+   {
+      map(channel.size());
+   }
+
+   private void map(final long size) throws Exception
+   {
+      if (size > Integer.MAX_VALUE)
+      {
+         throw new HornetQException(HornetQException.IO_ERROR, "File " + getFileName() +
+                                                               " is too large to be mapped (" +
+                                                               size +
+                                                               " bytes)");
+      }
+
+      if (size > 0)
+      {
+         // mapping beyond the end of the file will extend it
+         mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+
+      fileSize = size;
+   }
+
+   private void grow(final long newSize) throws Exception
+   {
+      unmap();
+
+      map(newSize);
+   }
+
+   private void unmap()
+   {
+      if (mappedBuffer != null)
+      {
+         MappedSequentialFile.unmap(mappedBuffer);
+         mappedBuffer = null;
+      }
+   }
+
+   private synchronized void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (!isOpen())
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQException.IO_ERROR, "File not opened");
+         }
+         else
+         {
+            throw new HornetQException(HornetQException.IO_ERROR, "File not opened");
+         }
+         return;
+      }
+
+      int size = bytes.remaining();
+
+      if (mappedBuffer == null || mappedPosition + size > mappedBuffer.limit())
+      {
+         // Only happens on files that were not filled before, as journal files are always filled
+         grow((long)mappedPosition + size);
+      }
+
+      ByteBuffer target = mappedBuffer.duplicate();
+
+      target.position(mappedPosition);
+
+      target.put(bytes);
+
+      mappedPosition += size;
+
+      position.addAndGet(size);
+
+      if (sync)
+      {
+         mappedBuffer.force();
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+   }
+
+}
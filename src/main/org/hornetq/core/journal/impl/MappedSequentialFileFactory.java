@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import org.hornetq.core.config.impl.ConfigurationImpl;
+import org.hornetq.core.journal.SequentialFile;
+
+/**
+ * A SequentialFileFactory creating {@link MappedSequentialFile}s.
+ *
+ * Buffers are handled the same way as on NIO, only the files are different.
+ */
+public class MappedSequentialFileFactory extends NIOSequentialFileFactory
+{
+
+   public MappedSequentialFileFactory(final String journalDir)
+   {
+      this(journalDir,
+           false,
+           ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_SIZE_NIO,
+           ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
+           false);
+   }
+
+   public MappedSequentialFileFactory(final String journalDir, final boolean buffered)
+   {
+      this(journalDir,
+           buffered,
+           ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_SIZE_NIO,
+           ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
+           false);
+   }
+
+   public MappedSequentialFileFactory(final String journalDir,
+                                      final boolean buffered,
+                                      final int bufferSize,
+                                      final int bufferTimeout,
+                                      final boolean logRates)
+   {
+      super(journalDir, buffered, bufferSize, bufferTimeout, logRates);
+   }
+
+   @Override
+   public SequentialFile createSequentialFile(final String fileName, final int maxIO)
+   {
+      return new MappedSequentialFile(this, journalDir, fileName, writeExecutor);
+   }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * Reads the journal files in parallel during load.
+ *
+ * <p>Each file is read and validated by {@link JournalImpl#readJournalFile(SequentialFileFactory, JournalFile, JournalReaderCallback, boolean)}
+ * on a thread pool, and what was read is kept in memory until the loader replays it through {@link #replay(int, JournalReaderCallback)}.
+ * Files must be replayed in order, so the records are merged exactly as if the files were read sequentially.</p>
+ *
+ * <p>Only a window of files ahead of the one being replayed is read, to limit the memory used by the records not yet replayed.</p>
+ */
+class ParallelJournalFileReader
+{
+
+   // Constants -----------------------------------------------------
+
+   /** Event type used to replay markAsDataFile, it doesn't clash with any record type */
+   private static final byte MARK_AS_DATA_FILE = -1;
+
+   // Attributes ----------------------------------------------------
+
+   private final SequentialFileFactory fileFactory;
+
+   private final List<JournalFile> files;
+
+   /** Index of the file the journal was writing to, the only one that can end in a partially written record */
+   private final int currentFileIndex;
+
+   private final ExecutorService executor;
+
+   private final Future<RecordedFile>[] futures;
+
+   private final int window;
+
+   private int nextToSubmit = 0;
+
+   /** Time spent by the loader waiting for files to be read */
+   private long waitTime = 0;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   @SuppressWarnings("unchecked")
+   ParallelJournalFileReader(final SequentialFileFactory fileFactory,
+                             final List<JournalFile> files,
+                             final int currentFileIndex,
+                             final int threads)
+   {
+      this.fileFactory = fileFactory;
+
+      this.files = files;
+
+      this.currentFileIndex = currentFileIndex;
+
+      futures = (Future<RecordedFile>[])new Future<?>[files.size()];
+
+      window = threads * 2;
+
+      final AtomicInteger threadCount = new AtomicInteger(0);
+
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            Thread t = new Thread(r, "JournalImpl::LoadExecutor-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Sends every event read on the file at fileIndex to the callback, waiting for the file to be read if necessary.
+    * @return the position after the last valid record on the file
+    */
+   int replay(final int fileIndex, final JournalReaderCallback callback) throws Exception
+   {
+      try
+      {
+         return internalReplay(fileIndex, callback);
+      }
+      catch (Exception e)
+      {
+         // the load is aborted, no need to keep reading the next files
+         stop();
+         throw e;
+      }
+   }
+
+   long getWaitTime()
+   {
+      return waitTime;
+   }
+
+   void stop()
+   {
+      executor.shutdownNow();
+   }
+
+   // Private -------------------------------------------------------
+
+   private int internalReplay(final int fileIndex, final JournalReaderCallback callback) throws Exception
+   {
+      submitUpTo(fileIndex + window);
+
+      RecordedFile recorded;
+
+      long start = System.currentTimeMillis();
+
+      try
+      {
+         recorded = futures[fileIndex].get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+         throw new Exception(e.getCause().getMessage(), e.getCause());
+      }
+      finally
+      {
+         waitTime += System.currentTimeMillis() - start;
+      }
+
+      // releasing the records as soon as they are replayed
+      futures[fileIndex] = null;
+
+      recorded.replay(callback);
+
+      return recorded.lastDataPos;
+   }
+
+   private void submitUpTo(final int lastIndex)
+   {
+      while (nextToSubmit < files.size() && nextToSubmit <= lastIndex)
+      {
+         final JournalFile file = files.get(nextToSubmit);
+
+         final boolean current = nextToSubmit == currentFileIndex;
+
+         futures[nextToSubmit++] = executor.submit(new Callable<RecordedFile>()
+         {
+            public RecordedFile call() throws Exception
+            {
+               RecordedFile recorded = new RecordedFile();
+
+               recorded.lastDataPos = JournalImpl.readJournalFile(fileFactory, file, recorded, current);
+
+               return recorded;
+            }
+         });
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Event
+   {
+      final byte recordType;
+
+      final long id;
+
+      final RecordInfo info;
+
+      final byte[] extraData;
+
+      final int numberOfRecords;
+
+      Event(final byte recordType,
+            final long id,
+            final RecordInfo info,
+            final byte[] extraData,
+            final int numberOfRecords)
+      {
+         this.recordType = recordType;
+         this.id = id;
+         this.info = info;
+         this.extraData = extraData;
+         this.numberOfRecords = numberOfRecords;
+      }
+   }
+
+   /** Keeps what was read from a file, in the order it was read */
+   private static final class RecordedFile implements JournalReaderCallback
+   {
+      private final List<Event> events = new ArrayList<Event>();
+
+      private JournalFile dataFile;
+
+      int lastDataPos;
+
+      public void onReadAddRecord(final RecordInfo info)
+      {
+         events.add(new Event(JournalImpl.ADD_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info)
+      {
+         events.add(new Event(JournalImpl.UPDATE_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadDeleteRecord(final long recordID)
+      {
+         events.add(new Event(JournalImpl.DELETE_RECORD, recordID, null, null, 0));
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(JournalImpl.ADD_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(JournalImpl.UPDATE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(JournalImpl.DELETE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords)
+      {
+         events.add(new Event(JournalImpl.PREPARE_RECORD, transactionID, null, extraData, numberOfRecords));
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords)
+      {
+         events.add(new Event(JournalImpl.COMMIT_RECORD, transactionID, null, null, numberOfRecords));
+      }
+
+      public void onReadRollbackRecord(final long transactionID)
+      {
+         events.add(new Event(JournalImpl.ROLLBACK_RECORD, transactionID, null, null, 0));
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         dataFile = file;
+         events.add(new Event(ParallelJournalFileReader.MARK_AS_DATA_FILE, 0, null, null, 0));
+      }
+
+      void replay(final JournalReaderCallback callback) throws Exception
+      {
+         for (Event event : events)
+         {
+            switch (event.recordType)
+            {
+               case JournalImpl.ADD_RECORD:
+                  callback.onReadAddRecord(event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD:
+                  callback.onReadUpdateRecord(event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD:
+                  callback.onReadDeleteRecord(event.id);
+                  break;
+               case JournalImpl.ADD_RECORD_TX:
+                  callback.onReadAddRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD_TX:
+                  callback.onReadUpdateRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD_TX:
+                  callback.onReadDeleteRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.PREPARE_RECORD:
+                  callback.onReadPrepareRecord(event.id, event.extraData, event.numberOfRecords);
+                  break;
+               case JournalImpl.COMMIT_RECORD:
+                  callback.onReadCommitRecord(event.id, event.numberOfRecords);
+                  break;
+               case JournalImpl.ROLLBACK_RECORD:
+                  callback.onReadRollbackRecord(event.id);
+                  break;
+               case ParallelJournalFileReader.MARK_AS_DATA_FILE:
+                  callback.markAsDataFile(dataFile);
+                  break;
+               default:
+                  throw new IllegalStateException("Invalid record type " + event.recordType);
+            }
+         }
+      }
+   }
+}
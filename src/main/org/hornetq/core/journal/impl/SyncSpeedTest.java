@@ -25,6 +25,7 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.logging.Logger;
+import org.hornetq.core.server.JournalType;
 
 /**
  * A SyncSpeedTest
@@ -44,7 +45,14 @@ public class SyncSpeedTest
    {
       try
       {
-         new SyncSpeedTest().testScaleAIO();
+         if (args.length > 0 && args[0].equals("compare"))
+         {
+            new SyncSpeedTest().compareFactories();
+         }
+         else
+         {
+            new SyncSpeedTest().testScaleAIO();
+         }
       }
       catch (Exception e)
       {
@@ -54,14 +62,18 @@ public class SyncSpeedTest
 
    protected SequentialFileFactory fileFactory;
 
-   public boolean AIO = true;
+   public JournalType type = JournalType.ASYNCIO;
 
    protected void setupFactory()
    {
-      if (AIO)
+      if (type == JournalType.ASYNCIO)
       {
          fileFactory = new AIOSequentialFileFactory(".", 0, 0, false);
       }
+      else if (type == JournalType.MAPPED)
+      {
+         fileFactory = new MappedSequentialFileFactory(".", false, 0, 0, false);
+      }
       else
       {
          fileFactory = new NIOSequentialFileFactory(".", false, 0, 0, false);
@@ -70,7 +82,7 @@ public class SyncSpeedTest
 
    protected SequentialFile createSequentialFile(final String fileName)
    {
-      if (AIO)
+      if (type == JournalType.ASYNCIO)
       {
          return new AIOSequentialFile(fileFactory,
                                       0,
@@ -82,6 +94,10 @@ public class SyncSpeedTest
                                       null,
                                       Executors.newSingleThreadExecutor());
       }
+      else if (type == JournalType.MAPPED)
+      {
+         return new MappedSequentialFile(fileFactory, new File(fileName), null);
+      }
       else
       {
          return new NIOSequentialFile(fileFactory, new File(fileName), 1000, null);
@@ -115,7 +131,7 @@ public class SyncSpeedTest
 
          file.fill(0, fileSize, (byte)'X');
 
-         if (!AIO)
+         if (type != JournalType.ASYNCIO)
          {
             file.sync();
          }
@@ -240,7 +256,7 @@ public class SyncSpeedTest
 
          file.fill(0, fileSize, (byte)'X');
 
-         if (!AIO)
+         if (type != JournalType.ASYNCIO)
          {
             file.sync();
          }
@@ -329,6 +345,112 @@ public class SyncSpeedTest
       }
    }
 
+   /**
+    * Runs the same sync, sequential write and read workload with the NIO, Mapped and AIO (when available) files,
+    * printing the rates for each one.
+    */
+   public void compareFactories() throws Exception
+   {
+      final int recordSize = 4 * 1024;
+
+      final int syncs = 1000;
+
+      final int fileSize = 10 * 1024 * 1024;
+
+      for (JournalType journalType : JournalType.values())
+      {
+         if (journalType == JournalType.ASYNCIO && !AIOSequentialFileFactory.isSupported())
+         {
+            System.out.println("AIO is not supported on this platform, ignoring it");
+            continue;
+         }
+
+         type = journalType;
+
+         setupFactory();
+
+         fileFactory.start();
+
+         try
+         {
+            SequentialFile file = fileFactory.createSequentialFile("sync-speed-test.dat", 1);
+
+            if (file.exists())
+            {
+               file.delete();
+            }
+
+            file.open();
+
+            file.fill(0, fileSize, (byte)'X');
+
+            file.sync();
+
+            ByteBuffer bb = fileFactory.newBuffer(recordSize);
+
+            for (int i = 0; i < recordSize; i++)
+            {
+               bb.put((byte)'h');
+            }
+
+            // I - syncs: every write is forced to disk before the next one
+            file.position(0);
+
+            long start = System.currentTimeMillis();
+
+            for (int i = 0; i < syncs; i++)
+            {
+               bb.rewind();
+               file.writeDirect(bb, true);
+            }
+
+            long syncTime = System.currentTimeMillis() - start;
+
+            // II - sequential writes over the whole file, with a single sync at the end
+            file.position(0);
+
+            start = System.currentTimeMillis();
+
+            for (int i = 0; i < fileSize / recordSize; i++)
+            {
+               bb.rewind();
+               file.writeDirect(bb, i == fileSize / recordSize - 1);
+            }
+
+            long writeTime = System.currentTimeMillis() - start;
+
+            // III - reading the whole file at once, as the journal does during load and compacting
+            file.position(0);
+
+            ByteBuffer readBuffer = fileFactory.newBuffer(fileSize);
+
+            start = System.currentTimeMillis();
+
+            file.read(readBuffer);
+
+            long readTime = System.currentTimeMillis() - start;
+
+            fileFactory.releaseBuffer(readBuffer);
+
+            fileFactory.releaseBuffer(bb);
+
+            file.close();
+
+            file.delete();
+
+            System.out.println("** " + journalType + ":");
+            System.out.println("Rate of " + 1000d * syncs / Math.max(1, syncTime) + " syncs per sec");
+            System.out.println("Sequential write throughput " + 1000d * fileSize / Math.max(1, writeTime) + " bytes per sec");
+            System.out.println("Read throughput " + 1000d * fileSize / Math.max(1, readTime) + " bytes per sec");
+            System.out.println("*************");
+         }
+         finally
+         {
+            fileFactory.stop();
+         }
+      }
+   }
+
    private void write(final ByteBuffer buffer, final FileChannel channel, final int size) throws Exception
    {
       buffer.flip();
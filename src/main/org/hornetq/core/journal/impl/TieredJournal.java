@@ -0,0 +1,1200 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalLoadInformation;
+import org.hornetq.core.journal.LoaderCallback;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.TransactionFailureCallback;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.utils.ConcurrentLongHashMap;
+import org.hornetq.utils.ConcurrentLongHashSet;
+
+/**
+ * A Journal keeping the recently added records on a small hot journal, in front of the main journal.
+ *
+ * <p>Non transactional adds of the configured record types are written to the hot journal, and so are the updates
+ * and the delete of those records while they are there. A record deleted soon after it was added (a message
+ * acknowledged within milliseconds) never reaches the main journal. The hot journal only has a few files and nothing
+ * stays there for long, so its files are reclaimed and reused as a ring.</p>
+ *
+ * <p>Records still alive after half the capacity of the hot journal was appended are migrated to the main journal:
+ * the add and its updates are committed together on the main journal, and the record is deleted from the hot journal
+ * only once that is synced. A record is also migrated right away when it's used in a transaction, as transactions are only
+ * written to the main journal.</p>
+ *
+ * <p>Whatever is left on the hot journal when it's loaded is migrated to the main journal. A record found on both
+ * journals (a migration interrupted by a crash after its commit) is taken from the main journal.</p>
+ */
+public class TieredJournal implements Journal
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(TieredJournal.class);
+
+   // Attributes ----------------------------------------------------
+
+   private final Journal mainJournal;
+
+   private final Journal hotJournal;
+
+   private final boolean[] hotRecordTypes = new boolean[256];
+
+   /** Records added more than migrateDistance bytes ago on the hot journal are migrated */
+   private final long migrateDistance;
+
+   /** The records alive on the hot journal */
+   private final ConcurrentLongHashMap<HotRecord> hotRecords = new ConcurrentLongHashMap<HotRecord>();
+
+   /** The records migrated to the main journal, until their delete on the hot journal is synced */
+   private final ConcurrentLongHashMap<HotRecord> migratingRecords = new ConcurrentLongHashMap<HotRecord>();
+
+   /** The records added to the hot journal, in the order they were added */
+   private final ConcurrentLinkedQueue<HotRecord> hotQueue = new ConcurrentLinkedQueue<HotRecord>();
+
+   /** Bytes appended to the hot journal */
+   private final AtomicLong hotPosition = new AtomicLong(0);
+
+   private final AtomicBoolean migrating = new AtomicBoolean(false);
+
+   private final AtomicLong migratedCount = new AtomicLong(0);
+
+   private final AtomicLong hotDeletedCount = new AtomicLong(0);
+
+   private volatile ExecutorService migrateExecutor;
+
+   // Static --------------------------------------------------------
+
+   private static byte[] toBytes(final EncodingSupport record)
+   {
+      HornetQBuffer buffer = HornetQBuffers.fixedBuffer(record.getEncodeSize());
+
+      record.encode(buffer);
+
+      byte[] bytes = new byte[buffer.writerIndex()];
+
+      buffer.readBytes(bytes);
+
+      return bytes;
+   }
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param hotCapacity the size of the hot journal (its number of files * file size)
+    * @param hotRecordTypes the user record types added to the hot journal
+    */
+   public TieredJournal(final Journal mainJournal,
+                        final Journal hotJournal,
+                        final long hotCapacity,
+                        final byte... hotRecordTypes)
+   {
+      this.mainJournal = mainJournal;
+
+      this.hotJournal = hotJournal;
+
+      migrateDistance = hotCapacity / 2;
+
+      for (byte recordType : hotRecordTypes)
+      {
+         this.hotRecordTypes[recordType & 0xff] = true;
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   /** Number of records migrated from the hot journal to the main journal */
+   public long getMigratedCount()
+   {
+      return migratedCount.get();
+   }
+
+   /** Number of records deleted while still on the hot journal, never written to the main journal */
+   public long getHotDeletedCount()
+   {
+      return hotDeletedCount.get();
+   }
+
+   /** Number of records currently alive on the hot journal */
+   public int getHotRecordsCount()
+   {
+      return hotRecords.size();
+   }
+
+   // Non transactional operations
+
+   public void appendAddRecord(final long id, final byte recordType, final byte[] record, final boolean sync) throws Exception
+   {
+      appendAddRecord(id, recordType, new ByteArrayEncoding(record), sync, null);
+   }
+
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final byte[] record,
+                               final boolean sync,
+                               final IOCompletion completionCallback) throws Exception
+   {
+      appendAddRecord(id, recordType, new ByteArrayEncoding(record), sync, completionCallback);
+   }
+
+   public void appendAddRecord(final long id, final byte recordType, final EncodingSupport record, final boolean sync) throws Exception
+   {
+      appendAddRecord(id, recordType, record, sync, null);
+   }
+
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final EncodingSupport record,
+                               final boolean sync,
+                               final IOCompletion completionCallback) throws Exception
+   {
+      if (!hotRecordTypes[recordType & 0xff])
+      {
+         appendMain(id, recordType, record, sync, completionCallback, false);
+         return;
+      }
+
+      byte[] bytes = TieredJournal.toBytes(record);
+
+      HotRecord hotRecord = new HotRecord(id, recordType, bytes);
+
+      synchronized (hotRecord)
+      {
+         hotRecords.put(id, hotRecord);
+
+         try
+         {
+            appendHot(id, recordType, bytes, sync, completionCallback, false);
+         }
+         catch (Exception e)
+         {
+            hotRecords.remove(id);
+            throw e;
+         }
+
+         hotRecord.position = hotPosition.addAndGet(JournalImpl.SIZE_ADD_RECORD + 1 + bytes.length);
+      }
+
+      hotQueue.add(hotRecord);
+
+      checkMigrate();
+   }
+
+   public void appendUpdateRecord(final long id, final byte recordType, final byte[] record, final boolean sync) throws Exception
+   {
+      appendUpdateRecord(id, recordType, new ByteArrayEncoding(record), sync, null);
+   }
+
+   public void appendUpdateRecord(final long id,
+                                  final byte recordType,
+                                  final byte[] record,
+                                  final boolean sync,
+                                  final IOCompletion completionCallback) throws Exception
+   {
+      appendUpdateRecord(id, recordType, new ByteArrayEncoding(record), sync, completionCallback);
+   }
+
+   public void appendUpdateRecord(final long id, final byte recordType, final EncodingSupport record, final boolean sync) throws Exception
+   {
+      appendUpdateRecord(id, recordType, record, sync, null);
+   }
+
+   public void appendUpdateRecord(final long id,
+                                  final byte recordType,
+                                  final EncodingSupport record,
+                                  final boolean sync,
+                                  final IOCompletion completionCallback) throws Exception
+   {
+      HotRecord hotRecord = lookup(id);
+
+      if (hotRecord != null)
+      {
+         synchronized (hotRecord)
+         {
+            if (hotRecord.isHot())
+            {
+               byte[] bytes = TieredJournal.toBytes(record);
+
+               appendHot(id, recordType, bytes, sync, completionCallback, true);
+
+               hotRecord.addUpdate(recordType, bytes);
+
+               hotPosition.addAndGet(JournalImpl.SIZE_ADD_RECORD + 1 + bytes.length);
+
+               return;
+            }
+         }
+      }
+
+      appendMain(id, recordType, record, sync, completionCallback, true);
+   }
+
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync) throws Exception
+   {
+      appendUpdateRecords(ids, recordType, record, sync, null);
+   }
+
+   /** The records still on the hot journal are updated there one by one, the others are updated as a batch */
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync,
+                                   final IOCompletion completionCallback) throws Exception
+   {
+      long[] mainIDs = new long[ids.length];
+
+      int mainCount = 0;
+
+      byte[] bytes = null;
+
+      for (long id : ids)
+      {
+         HotRecord hotRecord = lookup(id);
+
+         if (hotRecord != null)
+         {
+            synchronized (hotRecord)
+            {
+               if (hotRecord.isHot())
+               {
+                  if (bytes == null)
+                  {
+                     bytes = TieredJournal.toBytes(record);
+                  }
+
+                  appendHot(id, recordType, bytes, sync, completionCallback, true);
+
+                  hotRecord.addUpdate(recordType, bytes);
+
+                  hotPosition.addAndGet(JournalImpl.SIZE_ADD_RECORD + 1 + bytes.length);
+
+                  continue;
+               }
+            }
+         }
+
+         mainIDs[mainCount++] = id;
+      }
+
+      if (mainCount > 0)
+      {
+         if (mainCount < ids.length)
+         {
+            long[] copy = new long[mainCount];
+            System.arraycopy(mainIDs, 0, copy, 0, mainCount);
+            mainIDs = copy;
+         }
+
+         if (completionCallback == null)
+         {
+            mainJournal.appendUpdateRecords(mainIDs, recordType, record, sync);
+         }
+         else
+         {
+            mainJournal.appendUpdateRecords(mainIDs, recordType, record, sync, completionCallback);
+         }
+      }
+   }
+
+   public void appendDeleteRecord(final long id, final boolean sync) throws Exception
+   {
+      appendDeleteRecord(id, sync, null);
+   }
+
+   public void appendDeleteRecord(final long id, final boolean sync, final IOCompletion completionCallback) throws Exception
+   {
+      HotRecord hotRecord = lookup(id);
+
+      if (hotRecord != null)
+      {
+         synchronized (hotRecord)
+         {
+            if (hotRecord.isHot())
+            {
+               if (completionCallback == null)
+               {
+                  hotJournal.appendDeleteRecord(id, sync);
+               }
+               else
+               {
+                  hotJournal.appendDeleteRecord(id, sync, completionCallback);
+               }
+
+               hotRecord.deleted();
+
+               hotRecords.remove(id);
+
+               hotPosition.addAndGet(JournalImpl.SIZE_DELETE_RECORD);
+
+               hotDeletedCount.incrementAndGet();
+
+               return;
+            }
+         }
+      }
+
+      waitMigrated(id);
+
+      if (completionCallback == null)
+      {
+         mainJournal.appendDeleteRecord(id, sync);
+      }
+      else
+      {
+         mainJournal.appendDeleteRecord(id, sync, completionCallback);
+      }
+   }
+
+   // Transactional operations, always on the main journal
+
+   public void appendAddRecordTransactional(final long txID, final long id, final byte recordType, final byte[] record) throws Exception
+   {
+      mainJournal.appendAddRecordTransactional(txID, id, recordType, record);
+   }
+
+   public void appendAddRecordTransactional(final long txID,
+                                            final long id,
+                                            final byte recordType,
+                                            final EncodingSupport record) throws Exception
+   {
+      mainJournal.appendAddRecordTransactional(txID, id, recordType, record);
+   }
+
+   public void appendUpdateRecordTransactional(final long txID,
+                                               final long id,
+                                               final byte recordType,
+                                               final byte[] record) throws Exception
+   {
+      migrateNow(id);
+      mainJournal.appendUpdateRecordTransactional(txID, id, recordType, record);
+   }
+
+   public void appendUpdateRecordTransactional(final long txID,
+                                               final long id,
+                                               final byte recordType,
+                                               final EncodingSupport record) throws Exception
+   {
+      migrateNow(id);
+      mainJournal.appendUpdateRecordTransactional(txID, id, recordType, record);
+   }
+
+   public void appendUpdateRecordsTransactional(final long txID,
+                                                final long[] ids,
+                                                final byte recordType,
+                                                final EncodingSupport record) throws Exception
+   {
+      for (long id : ids)
+      {
+         migrateNow(id);
+      }
+      mainJournal.appendUpdateRecordsTransactional(txID, ids, recordType, record);
+   }
+
+   public void appendDeleteRecordTransactional(final long txID, final long id, final byte[] record) throws Exception
+   {
+      migrateNow(id);
+      waitMigrated(id);
+      mainJournal.appendDeleteRecordTransactional(txID, id, record);
+   }
+
+   public void appendDeleteRecordTransactional(final long txID, final long id, final EncodingSupport record) throws Exception
+   {
+      migrateNow(id);
+      waitMigrated(id);
+      mainJournal.appendDeleteRecordTransactional(txID, id, record);
+   }
+
+   public void appendDeleteRecordTransactional(final long txID, final long id) throws Exception
+   {
+      migrateNow(id);
+      waitMigrated(id);
+      mainJournal.appendDeleteRecordTransactional(txID, id);
+   }
+
+   public void appendCommitRecord(final long txID, final boolean sync) throws Exception
+   {
+      mainJournal.appendCommitRecord(txID, sync);
+   }
+
+   public void appendCommitRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      mainJournal.appendCommitRecord(txID, sync, callback);
+   }
+
+   public void appendPrepareRecord(final long txID, final EncodingSupport transactionData, final boolean sync) throws Exception
+   {
+      mainJournal.appendPrepareRecord(txID, transactionData, sync);
+   }
+
+   public void appendPrepareRecord(final long txID,
+                                   final EncodingSupport transactionData,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      mainJournal.appendPrepareRecord(txID, transactionData, sync, callback);
+   }
+
+   public void appendPrepareRecord(final long txID, final byte[] transactionData, final boolean sync) throws Exception
+   {
+      mainJournal.appendPrepareRecord(txID, transactionData, sync);
+   }
+
+   public void appendPrepareRecord(final long txID,
+                                   final byte[] transactionData,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      mainJournal.appendPrepareRecord(txID, transactionData, sync, callback);
+   }
+
+   public void appendRollbackRecord(final long txID, final boolean sync) throws Exception
+   {
+      mainJournal.appendRollbackRecord(txID, sync);
+   }
+
+   public void appendRollbackRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      mainJournal.appendRollbackRecord(txID, sync, callback);
+   }
+
+   // Load
+
+   public JournalLoadInformation load(final LoaderCallback reloadManager) throws Exception
+   {
+      final ConcurrentLongHashSet mainIDs = new ConcurrentLongHashSet();
+
+      JournalLoadInformation info = mainJournal.load(new LoaderCallback()
+      {
+         public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+         {
+            reloadManager.addPreparedTransaction(preparedTransaction);
+         }
+
+         public void addRecord(final RecordInfo info)
+         {
+            mainIDs.add(info.id);
+            reloadManager.addRecord(info);
+         }
+
+         public void deleteRecord(final long id)
+         {
+            mainIDs.remove(id);
+            reloadManager.deleteRecord(id);
+         }
+
+         public void updateRecord(final RecordInfo info)
+         {
+            reloadManager.updateRecord(info);
+         }
+
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+            if (!TieredJournal.isMigration(transactionID, records))
+            {
+               reloadManager.failedTransaction(transactionID, records, recordsToDelete);
+            }
+         }
+      });
+
+      List<RecordInfo> hotInfos = loadHot(mainIDs);
+
+      for (RecordInfo hotInfo : hotInfos)
+      {
+         if (hotInfo.isUpdate)
+         {
+            reloadManager.updateRecord(hotInfo);
+         }
+         else
+         {
+            reloadManager.addRecord(hotInfo);
+         }
+      }
+
+      return merge(info, hotInfos);
+   }
+
+   public JournalLoadInformation loadInternalOnly() throws Exception
+   {
+      return load(new LoaderCallback()
+      {
+         public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+         {
+         }
+
+         public void addRecord(final RecordInfo info)
+         {
+         }
+
+         public void deleteRecord(final long id)
+         {
+         }
+
+         public void updateRecord(final RecordInfo info)
+         {
+         }
+
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+         }
+      });
+   }
+
+   public JournalLoadInformation load(final List<RecordInfo> committedRecords,
+                                      final List<PreparedTransactionInfo> preparedTransactions,
+                                      final TransactionFailureCallback transactionFailure) throws Exception
+   {
+      JournalLoadInformation info = mainJournal.load(committedRecords, preparedTransactions, new TransactionFailureCallback()
+      {
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+            if (transactionFailure != null && !TieredJournal.isMigration(transactionID, records))
+            {
+               transactionFailure.failedTransaction(transactionID, records, recordsToDelete);
+            }
+         }
+      });
+
+      ConcurrentLongHashSet mainIDs = new ConcurrentLongHashSet();
+
+      for (RecordInfo record : committedRecords)
+      {
+         if (!record.isUpdate)
+         {
+            mainIDs.add(record.id);
+         }
+      }
+
+      List<RecordInfo> hotInfos = loadHot(mainIDs);
+
+      committedRecords.addAll(hotInfos);
+
+      return merge(info, hotInfos);
+   }
+
+   public int getAlignment() throws Exception
+   {
+      return mainJournal.getAlignment();
+   }
+
+   public int getNumberOfRecords()
+   {
+      return mainJournal.getNumberOfRecords() + hotJournal.getNumberOfRecords();
+   }
+
+   public int getUserVersion()
+   {
+      return mainJournal.getUserVersion();
+   }
+
+   public void perfBlast(final int pages) throws Exception
+   {
+      mainJournal.perfBlast(pages);
+   }
+
+   public void runDirectJournalBlast() throws Exception
+   {
+      mainJournal.runDirectJournalBlast();
+   }
+
+   // HornetQComponent implementation -------------------------------
+
+   public synchronized void start() throws Exception
+   {
+      migrateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            return new Thread(r, "TieredJournal::MigrateExecutor");
+         }
+      });
+
+      mainJournal.start();
+
+      hotJournal.start();
+   }
+
+   public synchronized void stop() throws Exception
+   {
+      ExecutorService executor = migrateExecutor;
+
+      migrateExecutor = null;
+
+      if (executor != null)
+      {
+         executor.shutdown();
+
+         if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+         {
+            TieredJournal.log.warn("Couldn't stop migrate executor after 60 seconds");
+         }
+      }
+
+      hotJournal.stop();
+
+      mainJournal.stop();
+
+      // Anything left on the hot journal will be migrated on the next load
+      hotRecords.clear();
+
+      migratingRecords.clear();
+
+      hotQueue.clear();
+   }
+
+   public boolean isStarted()
+   {
+      return mainJournal.isStarted();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private void appendMain(final long id,
+                           final byte recordType,
+                           final EncodingSupport record,
+                           final boolean sync,
+                           final IOCompletion completionCallback,
+                           final boolean update) throws Exception
+   {
+      if (update)
+      {
+         if (completionCallback == null)
+         {
+            mainJournal.appendUpdateRecord(id, recordType, record, sync);
+         }
+         else
+         {
+            mainJournal.appendUpdateRecord(id, recordType, record, sync, completionCallback);
+         }
+      }
+      else
+      {
+         if (completionCallback == null)
+         {
+            mainJournal.appendAddRecord(id, recordType, record, sync);
+         }
+         else
+         {
+            mainJournal.appendAddRecord(id, recordType, record, sync, completionCallback);
+         }
+      }
+   }
+
+   private void appendHot(final long id,
+                          final byte recordType,
+                          final byte[] bytes,
+                          final boolean sync,
+                          final IOCompletion completionCallback,
+                          final boolean update) throws Exception
+   {
+      if (update)
+      {
+         if (completionCallback == null)
+         {
+            hotJournal.appendUpdateRecord(id, recordType, bytes, sync);
+         }
+         else
+         {
+            hotJournal.appendUpdateRecord(id, recordType, bytes, sync, completionCallback);
+         }
+      }
+      else
+      {
+         if (completionCallback == null)
+         {
+            hotJournal.appendAddRecord(id, recordType, bytes, sync);
+         }
+         else
+         {
+            hotJournal.appendAddRecord(id, recordType, bytes, sync, completionCallback);
+         }
+      }
+   }
+
+   private void checkMigrate()
+   {
+      HotRecord oldest = hotQueue.peek();
+
+      if (oldest == null || hotPosition.get() - oldest.position <= migrateDistance)
+      {
+         return;
+      }
+
+      ExecutorService executor = migrateExecutor;
+
+      if (executor != null && migrating.compareAndSet(false, true))
+      {
+         try
+         {
+            executor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     migrateOldRecords();
+                  }
+                  catch (Exception e)
+                  {
+                     TieredJournal.log.warn("Error migrating records from the hot journal", e);
+                  }
+                  finally
+                  {
+                     migrating.set(false);
+                  }
+               }
+            });
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the journal is being stopped
+            migrating.set(false);
+         }
+      }
+   }
+
+   private void migrateOldRecords() throws Exception
+   {
+      HotRecord oldest;
+
+      while ((oldest = hotQueue.peek()) != null && hotPosition.get() - oldest.position > migrateDistance)
+      {
+         hotQueue.poll();
+
+         synchronized (oldest)
+         {
+            if (oldest.isHot())
+            {
+               migrate(oldest);
+            }
+         }
+      }
+   }
+
+   /** Migrates the record before it's used in a transaction */
+   private void migrateNow(final long id) throws Exception
+   {
+      HotRecord hotRecord = lookup(id);
+
+      if (hotRecord != null)
+      {
+         synchronized (hotRecord)
+         {
+            if (hotRecord.isHot())
+            {
+               migrate(hotRecord);
+            }
+         }
+      }
+   }
+
+   /**
+    * The record being migrated, if any, is only found on migratingRecords. Its lock has to be taken before
+    * appending to the main journal, as the add of the record is only queued there by the end of the migration.
+    */
+   private HotRecord lookup(final long id)
+   {
+      HotRecord hotRecord = hotRecords.get(id);
+
+      if (hotRecord == null)
+      {
+         hotRecord = migratingRecords.get(id);
+      }
+
+      return hotRecord;
+   }
+
+   /** To be called while holding the lock on the record */
+   private void migrate(final HotRecord hotRecord) throws Exception
+   {
+      hotRecord.migrating();
+
+      // From now on the record is found through migratingRecords, until it's deleted from the hot journal.
+      // It's added there before being removed from hotRecords, so lookup always finds it
+      migratingRecords.put(hotRecord.id, hotRecord);
+
+      hotRecords.remove(hotRecord.id);
+
+      migratedCount.incrementAndGet();
+
+      // The record is only deleted from the hot journal after its copy on the main journal is synced
+      IOCompletion onSynced = new IOCompletion()
+      {
+         public void storeLineUp()
+         {
+         }
+
+         public void done()
+         {
+            deleteMigrated(hotRecord);
+         }
+
+         public void onError(final int errorCode, final String errorMessage)
+         {
+            TieredJournal.log.warn("Error migrating record " + hotRecord.id + " to the main journal: " + errorMessage);
+            // The record stays on both journals, the copy on the main journal is used on the next load
+            removeMigrated(hotRecord);
+         }
+      };
+
+      appendMigration(hotRecord, true, onSynced);
+   }
+
+   /**
+    * A record with updates is copied to the main journal in a transaction, so a crash can't leave the add there
+    * without its updates. The id of the record is used as the id of the transaction, as the ids given to records
+    * and transactions are unique.
+    */
+   private void appendMigration(final HotRecord hotRecord, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      List<HotUpdate> updates = hotRecord.updates;
+
+      if (updates == null)
+      {
+         if (callback == null)
+         {
+            mainJournal.appendAddRecord(hotRecord.id, hotRecord.recordType, hotRecord.data, sync);
+         }
+         else
+         {
+            mainJournal.appendAddRecord(hotRecord.id, hotRecord.recordType, hotRecord.data, sync, callback);
+         }
+         return;
+      }
+
+      mainJournal.appendAddRecordTransactional(hotRecord.id, hotRecord.id, hotRecord.recordType, hotRecord.data);
+
+      for (HotUpdate update : updates)
+      {
+         mainJournal.appendUpdateRecordTransactional(hotRecord.id, hotRecord.id, update.recordType, update.data);
+      }
+
+      if (callback == null)
+      {
+         mainJournal.appendCommitRecord(hotRecord.id, sync);
+      }
+      else
+      {
+         mainJournal.appendCommitRecord(hotRecord.id, sync, callback);
+      }
+   }
+
+   /** A migration interrupted before its commit on the main journal, the hot journal still has the record */
+   private static boolean isMigration(final long transactionID, final List<RecordInfo> records)
+   {
+      if (records.isEmpty())
+      {
+         return false;
+      }
+
+      for (RecordInfo record : records)
+      {
+         if (record.id != transactionID)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /** Called when the copy of a migrated record on the main journal is synced */
+   private void deleteMigrated(final HotRecord hotRecord)
+   {
+      Runnable deleteHot = new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               hotJournal.appendDeleteRecord(hotRecord.id, true, new IOCompletion()
+               {
+                  public void storeLineUp()
+                  {
+                  }
+
+                  public void done()
+                  {
+                     removeMigrated(hotRecord);
+                  }
+
+                  public void onError(final int errorCode, final String errorMessage)
+                  {
+                     TieredJournal.log.warn("Error deleting migrated record " + hotRecord.id +
+                                            " from the hot journal: " +
+                                            errorMessage);
+                     removeMigrated(hotRecord);
+                  }
+               });
+
+               hotPosition.addAndGet(JournalImpl.SIZE_DELETE_RECORD);
+            }
+            catch (Exception e)
+            {
+               TieredJournal.log.warn("Error deleting migrated record " + hotRecord.id + " from the hot journal", e);
+               removeMigrated(hotRecord);
+            }
+         }
+      };
+
+      // This is called from the IO callback of the main journal, which can't be used to append
+      ExecutorService executor = migrateExecutor;
+
+      try
+      {
+         if (executor != null)
+         {
+            executor.execute(deleteHot);
+            return;
+         }
+      }
+      catch (RejectedExecutionException e)
+      {
+         // the journal is being stopped
+      }
+
+      // The record stays on both journals, the copy on the main journal is used on the next load
+      removeMigrated(hotRecord);
+   }
+
+   private void removeMigrated(final HotRecord hotRecord)
+   {
+      migratingRecords.remove(hotRecord.id);
+      hotRecord.migrated();
+   }
+
+   /**
+    * A migrated record can only be deleted from the main journal once it's deleted from the hot journal,
+    * or the copy on the hot journal would be loaded again.
+    */
+   private void waitMigrated(final long id) throws Exception
+   {
+      HotRecord hotRecord = migratingRecords.get(id);
+
+      if (hotRecord != null && !hotRecord.waitMigrated(60000))
+      {
+         TieredJournal.log.warn("Timed out waiting record " + id + " to be migrated from the hot journal");
+      }
+   }
+
+   /**
+    * Loads the hot journal, and migrates the records left there to the main journal.
+    * @return the records alive on the hot journal and not on the main journal
+    */
+   private List<RecordInfo> loadHot(final ConcurrentLongHashSet mainIDs) throws Exception
+   {
+      List<RecordInfo> hotInfos = new ArrayList<RecordInfo>();
+
+      hotJournal.load(hotInfos, new ArrayList<PreparedTransactionInfo>(), null);
+
+      List<RecordInfo> migrated = new ArrayList<RecordInfo>(hotInfos.size());
+
+      ConcurrentLongHashSet hotIDs = new ConcurrentLongHashSet();
+
+      Map<Long, HotRecord> leftRecords = new LinkedHashMap<Long, HotRecord>();
+
+      for (RecordInfo hotInfo : hotInfos)
+      {
+         if (!hotInfo.isUpdate)
+         {
+            hotIDs.add(hotInfo.id);
+         }
+
+         // if it's on the main journal, it's a migration interrupted after it was committed there
+         if (mainIDs.contains(hotInfo.id))
+         {
+            continue;
+         }
+
+         migrated.add(hotInfo);
+
+         if (hotInfo.isUpdate)
+         {
+            HotRecord hotRecord = leftRecords.get(hotInfo.id);
+
+            if (hotRecord != null)
+            {
+               hotRecord.addUpdate(hotInfo.getUserRecordType(), hotInfo.data);
+            }
+         }
+         else
+         {
+            leftRecords.put(hotInfo.id, new HotRecord(hotInfo.id, hotInfo.getUserRecordType(), hotInfo.data));
+         }
+      }
+
+      int count = 0;
+
+      for (HotRecord hotRecord : leftRecords.values())
+      {
+         // Syncing the records on the main journal before deleting them from the hot journal
+         appendMigration(hotRecord, ++count == leftRecords.size(), null);
+      }
+
+      if (hotIDs.size() > 0)
+      {
+         long[] ids = hotIDs.toArray();
+
+         for (int i = 0; i < ids.length; i++)
+         {
+            hotJournal.appendDeleteRecord(ids[i], i == ids.length - 1);
+         }
+
+         TieredJournal.log.info("Migrated " + hotIDs.size() + " records from the hot journal");
+      }
+
+      return migrated;
+   }
+
+   private JournalLoadInformation merge(final JournalLoadInformation mainInfo, final List<RecordInfo> hotInfos)
+   {
+      long maxID = mainInfo.getMaxID();
+
+      for (RecordInfo hotInfo : hotInfos)
+      {
+         maxID = Math.max(maxID, hotInfo.id);
+      }
+
+      return new JournalLoadInformation(mainInfo.getNumberOfRecords() + hotInfos.size(), maxID);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class HotUpdate
+   {
+      final byte recordType;
+
+      final byte[] data;
+
+      HotUpdate(final byte recordType, final byte[] data)
+      {
+         this.recordType = recordType;
+         this.data = data;
+      }
+   }
+
+   /** The state of a record is only changed while holding its lock */
+   private static final class HotRecord
+   {
+      private static final int HOT = 0;
+
+      private static final int MIGRATING = 1;
+
+      private static final int DONE = 2;
+
+      final long id;
+
+      final byte recordType;
+
+      byte[] data;
+
+      List<HotUpdate> updates;
+
+      /** Position of the hot journal after the record was added */
+      volatile long position;
+
+      private volatile int state = HotRecord.HOT;
+
+      private CountDownLatch migratedLatch;
+
+      HotRecord(final long id, final byte recordType, final byte[] data)
+      {
+         this.id = id;
+         this.recordType = recordType;
+         this.data = data;
+      }
+
+      boolean isHot()
+      {
+         return state == HotRecord.HOT;
+      }
+
+      void addUpdate(final byte recordType, final byte[] data)
+      {
+         if (updates == null)
+         {
+            updates = new ArrayList<HotUpdate>(2);
+         }
+         updates.add(new HotUpdate(recordType, data));
+      }
+
+      void deleted()
+      {
+         state = HotRecord.DONE;
+         data = null;
+         updates = null;
+      }
+
+      synchronized void migrating()
+      {
+         migratedLatch = new CountDownLatch(1);
+         state = HotRecord.MIGRATING;
+      }
+
+      synchronized void migrated()
+      {
+         state = HotRecord.DONE;
+         data = null;
+         updates = null;
+         migratedLatch.countDown();
+      }
+
+      boolean waitMigrated(final long timeout) throws InterruptedException
+      {
+         CountDownLatch latch;
+
+         synchronized (this)
+         {
+            latch = migratedLatch;
+         }
+
+         return latch == null || latch.await(timeout, TimeUnit.MILLISECONDS);
+      }
+   }
+
+}
@@ -15,11 +15,15 @@ package org.hornetq.core.journal.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -27,6 +31,7 @@ import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.logging.Logger;
 
 /**
@@ -63,6 +68,11 @@ public class TimedBuffer
 
    private volatile int timeout;
 
+   // The configured timeout. When adaptive, the timeout will vary between 0 and this value
+   private final int maxTimeout;
+
+   private volatile boolean adaptiveTimeout = false;
+
    // used to measure sync requests. When a sync is requested, it shouldn't take more than timeout to happen
    private volatile boolean pendingSync = false;
 
@@ -89,10 +99,62 @@ public class TimedBuffer
 
    private final AtomicLong lastFlushTime = new AtomicLong(0);
 
-   private boolean spinning = false;
+   private volatile boolean spinning = false;
+
+   // Used by the lock-free path (reserve / addBytes(int, ...)).
+   // The upper 32 bits hold the limit of the current batch and the lower 32 bits the bytes already claimed on it.
+   // A limit of 0 means the batch is closed, and the next reservation will have to reopen it through the monitor
+   private final AtomicLong reservations = new AtomicLong(0);
+
+   // Claimed bytes that were already encoded into the buffer. A batch can only be flushed when this reaches the claimed
+   // bytes
+   private final AtomicInteger encodedBytes = new AtomicInteger(0);
+
+   private final ConcurrentLinkedQueue<IOAsyncTask> reservedCallbacks = new ConcurrentLinkedQueue<IOAsyncTask>();
+
+   // The slots (position and size) filled with zeros as their records couldn't be written, on the current batch
+   private final ConcurrentLinkedQueue<int[]> abortedSlots = new ConcurrentLinkedQueue<int[]>();
+
+   // Set when the records on the current batch carry a checksum. As a batch is always written to a single file,
+   // either all of its records have a checksum or none of them
+   private volatile boolean checksumBatch = false;
+
+   // Measurements used by the adaptive timeout, and exposed through logRates and management.
+   // They are moving averages (see #average), in nanoseconds where applicable.
+
+   private volatile long averageFlushLatency = 0;
+
+   private volatile long averageSyncInterval = 0;
+
+   private final AtomicLong lastSyncRequest = new AtomicLong(0);
+
+   private volatile long averageBatchBytes = 0;
+
+   // records * AVERAGE_SCALE, so the fraction is not lost when batches are small
+   private volatile long averageBatchRecords = 0;
 
    // Static --------------------------------------------------------
 
+   private static final int AVERAGE_SCALE = 100;
+
+   private static boolean isChecksum(final EncodingSupport bytes)
+   {
+      return bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum();
+   }
+
+   /** Exponential moving average, where each new sample weights 1/8 */
+   private static long average(final long currentAverage, final long sample)
+   {
+      if (currentAverage == 0)
+      {
+         return sample;
+      }
+      else
+      {
+         return currentAverage + (sample - currentAverage >> 3);
+      }
+   }
+
    // Constructors --------------------------------------------------
 
    // Public --------------------------------------------------------
@@ -118,6 +180,53 @@ public class TimedBuffer
       callbacks = new ArrayList<IOAsyncTask>();
 
       this.timeout = timeout;
+
+      maxTimeout = timeout;
+   }
+
+   /**
+    * <p>When adaptive, the timeout is sized to the current load instead of being fixed (as a group commit):
+    * If sync requests arrive less often than a flush takes to complete, no other request would join the batch by waiting,
+    * so the buffer is flushed as soon as a sync is requested. As requests become more frequent the buffer waits
+    * longer, up to the time taken by a flush, or the configured timeout.</p>
+    */
+   public void setAdaptiveTimeout(final boolean adaptive)
+   {
+      adaptiveTimeout = adaptive;
+
+      if (!adaptive)
+      {
+         timeout = maxTimeout;
+      }
+   }
+
+   public boolean isAdaptiveTimeout()
+   {
+      return adaptiveTimeout;
+   }
+
+   /** The timeout (in nanoseconds) currently used */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   /** Average time (in nanoseconds) between a flush with sync being requested and its callbacks being completed */
+   public long getAverageFlushLatency()
+   {
+      return averageFlushLatency;
+   }
+
+   /** Average size (in bytes) of the flushed batches */
+   public long getAverageBatchSize()
+   {
+      return averageBatchBytes;
+   }
+
+   /** Average number of records on the flushed batches */
+   public double getAverageBatchRecords()
+   {
+      return (double)averageBatchRecords / TimedBuffer.AVERAGE_SCALE;
    }
 
    public synchronized void start()
@@ -263,12 +372,19 @@ public class TimedBuffer
 
       bytes.encode(buffer);
 
+      if (TimedBuffer.isChecksum(bytes))
+      {
+         checksumBatch = true;
+      }
+
       callbacks.add(callback);
 
       if (sync)
       {
          pendingSync = true;
 
+         syncRequested();
+
          // if (System.nanoTime() - lastFlushTime.get() > timeout)
          // {
          // // This might happen if there is low activity in the buffer - the timer hasn't fired because no sync records
@@ -288,6 +404,120 @@ public class TimedBuffer
 
    }
 
+   /**
+    * Claims a slot of sizeChecked bytes on the current batch without taking the monitor of this buffer.
+    * <p>The caller has to encode the record through {@link #addBytes(int, EncodingSupport, boolean, IOAsyncTask)}
+    * as soon as possible, as the batch can't be flushed until all its slots are encoded.
+    * The lock-free methods shouldn't be mixed with checkSize/addBytes on the same file.</p>
+    * @return the position of the slot on the buffer, or -1 if the current file doesn't have enough space left
+    */
+   public int reserve(final int sizeChecked)
+   {
+      if (!started)
+      {
+         throw new IllegalStateException("TimedBuffer is not started");
+      }
+
+      if (sizeChecked > bufferSize)
+      {
+         throw new IllegalStateException("Can't write records bigger than the bufferSize(" + bufferSize +
+                                         ") on the journal");
+      }
+
+      while (true)
+      {
+         long current = reservations.get();
+
+         int limit = (int)(current >>> 32);
+
+         int claimed = (int)current;
+
+         if (claimed + sizeChecked <= limit)
+         {
+            if (reservations.compareAndSet(current, current + sizeChecked))
+            {
+               return claimed;
+            }
+         }
+         else if (!openBatch(sizeChecked))
+         {
+            return -1;
+         }
+      }
+   }
+
+   /**
+    * Encodes a record into a slot previously claimed through {@link #reserve(int)}
+    */
+   public void addBytes(final int slot, final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      int size = bytes.getEncodeSize();
+
+      HornetQBuffer slotBuffer = buffer.slice(slot, size);
+
+      slotBuffer.clear();
+
+      try
+      {
+         bytes.encode(slotBuffer);
+      }
+      catch (RuntimeException e)
+      {
+         abort(slot, size);
+         throw e;
+      }
+
+      if (TimedBuffer.isChecksum(bytes))
+      {
+         checksumBatch = true;
+      }
+
+      if (callback != null)
+      {
+         reservedCallbacks.add(callback);
+      }
+
+      if (sync)
+      {
+         pendingSync = true;
+
+         syncRequested();
+      }
+
+      // From this point the slot can be flushed
+      encodedBytes.addAndGet(size);
+
+      if (sync && !spinning)
+      {
+         synchronized (this)
+         {
+            if (!spinning)
+            {
+               spinLimiter.release();
+
+               spinning = true;
+            }
+         }
+      }
+   }
+
+   /**
+    * Fills a slot claimed through {@link #reserve(int)} with zeros, when its record can't be written,
+    * so the batch can still be flushed. The loader skips the zeros.
+    */
+   public void abort(final int slot, final int size)
+   {
+      HornetQBuffer slotBuffer = buffer.slice(slot, size);
+
+      slotBuffer.clear();
+
+      slotBuffer.writeBytes(new byte[size]);
+
+      abortedSlots.add(new int[] { slot, size });
+
+      encodedBytes.addAndGet(size);
+   }
+
    public void flush()
    {
       flush(false);
@@ -306,15 +536,68 @@ public class TimedBuffer
             throw new IllegalStateException("TimedBuffer is not started");
          }
 
-         if ((force || !delayFlush) && buffer.writerIndex() > 0)
+         int pos = buffer.writerIndex();
+
+         if (force || !delayFlush)
          {
-            int pos = buffer.writerIndex();
+            // Closing the lock-free batch, if there is one. No more slots can be claimed until it is reopened
+            int claimed = (int)reservations.getAndSet(0);
+
+            if (claimed > 0)
+            {
+               while (encodedBytes.get() != claimed)
+               {
+                  // The slots are being encoded by other threads at this moment
+                  Thread.yield();
+               }
+
+               encodedBytes.set(0);
+
+               pos = claimed;
+
+               IOAsyncTask reservedCallback;
+
+               while ((reservedCallback = reservedCallbacks.poll()) != null)
+               {
+                  callbacks.add(reservedCallback);
+               }
+            }
+         }
 
+         if ((force || !delayFlush) && pos > 0)
+         {
             if (logRates)
             {
                bytesFlushed.addAndGet(pos);
             }
 
+            averageBatchBytes = TimedBuffer.average(averageBatchBytes, pos);
+
+            averageBatchRecords = TimedBuffer.average(averageBatchRecords, callbacks.size() *
+                                                                            (long)TimedBuffer.AVERAGE_SCALE);
+
+            if (pendingSync)
+            {
+               // completed after the batch was written and synced, as it's the last callback
+               callbacks.add(new FlushLatencyCallback());
+            }
+
+            if (checksumBatch)
+            {
+               // A single pass over the batch, instead of calculating each CRC as the records are added
+               if (!fillChecksums(buffer.toByteBuffer().array(), pos))
+               {
+                  TimedBuffer.log.warn("Invalid record found while calculating the checksums of a batch of " + pos +
+                                       " bytes, some of its records won't be loaded");
+               }
+
+               checksumBatch = false;
+            }
+            else
+            {
+               abortedSlots.clear();
+            }
+
             ByteBuffer bufferToFlush = bufferObserver.newBuffer(bufferSize, pos);
 
             // Putting a byteArray on a native buffer is much faster, since it will do in a single native call.
@@ -362,12 +645,139 @@ public class TimedBuffer
 
    // Package protected ---------------------------------------------
 
+   /**
+    * Sizes the timeout to the load measured so far.
+    * As the time taken by a flush with sync grows compared to the interval between sync requests,
+    * more requests will arrive while it's happening, and it's worth waiting for them.
+    */
+   void adaptTimeout()
+   {
+      long latency = averageFlushLatency;
+
+      long interval = averageSyncInterval;
+
+      if (latency == 0 || interval == 0)
+      {
+         // nothing measured yet
+         return;
+      }
+
+      long newTimeout = latency - interval;
+
+      if (newTimeout < 0)
+      {
+         newTimeout = 0;
+      }
+      else if (newTimeout > maxTimeout)
+      {
+         newTimeout = maxTimeout;
+      }
+
+      timeout = (int)newTimeout;
+   }
+
    // Protected -----------------------------------------------------
 
    // Private -------------------------------------------------------
 
+   private void syncRequested()
+   {
+      long now = System.nanoTime();
+
+      long last = lastSyncRequest.getAndSet(now);
+
+      if (last != 0)
+      {
+         // Concurrent requests may lose an update here, which is fine for an average
+         averageSyncInterval = TimedBuffer.average(averageSyncInterval, now - last);
+      }
+   }
+
+   /**
+    * Fills the checksums of the batch, around the slots that were aborted, as they don't have a record to walk through
+    */
+   private boolean fillChecksums(final byte[] bytes, final int end)
+   {
+      List<int[]> aborted = new ArrayList<int[]>();
+
+      int[] slot;
+
+      while ((slot = abortedSlots.poll()) != null)
+      {
+         aborted.add(slot);
+      }
+
+      Collections.sort(aborted, new Comparator<int[]>()
+      {
+         public int compare(final int[] slot1, final int[] slot2)
+         {
+            return slot1[0] < slot2[0] ? -1 : slot1[0] == slot2[0] ? 0 : 1;
+         }
+      });
+
+      boolean filled = true;
+
+      int start = 0;
+
+      for (int[] abortedSlot : aborted)
+      {
+         filled &= JournalInternalRecord.fillChecksums(bytes, start, abortedSlot[0]);
+
+         start = abortedSlot[0] + abortedSlot[1];
+      }
+
+      return JournalInternalRecord.fillChecksums(bytes, start, end) && filled;
+   }
+
+   /**
+    * Flushes the current lock-free batch and starts a new one sized to the space left on the file
+    * @return false if the file doesn't have space for sizeChecked
+    */
+   private synchronized boolean openBatch(final int sizeChecked)
+   {
+      long current = reservations.get();
+
+      if ((int)current + sizeChecked <= (int)(current >>> 32))
+      {
+         // Another thread already opened a new batch
+         return true;
+      }
+
+      flush();
+
+      final int remainingInFile = bufferObserver.getRemainingBytes();
+
+      if (sizeChecked > remainingInFile)
+      {
+         return false;
+      }
+
+      reservations.set((long)Math.min(remainingInFile, bufferSize) << 32);
+
+      return true;
+   }
+
    // Inner classes -------------------------------------------------
 
+   private class FlushLatencyCallback implements IOAsyncTask
+   {
+      private final long start = System.nanoTime();
+
+      public void done()
+      {
+         averageFlushLatency = TimedBuffer.average(averageFlushLatency, System.nanoTime() - start);
+
+         if (adaptiveTimeout)
+         {
+            adaptTimeout();
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
@@ -397,6 +807,15 @@ public class TimedBuffer
                                     " MiB / sec");
                double flushRate = 1000 * (double)(flushesD - lastFlushesDone) / (now - lastExecution);
                TimedBuffer.log.info("Flush rate = " + flushRate + " flushes / sec");
+               TimedBuffer.log.info("Average batch = " + getAverageBatchSize() +
+                                    " bytes / " +
+                                    getAverageBatchRecords() +
+                                    " records, flush latency = " +
+                                    getAverageFlushLatency() / 1000 +
+                                    " microseconds, timeout = " +
+                                    timeout +
+                                    " nanoseconds" +
+                                    (adaptiveTimeout ? " (adaptive)" : ""));
             }
 
             lastExecution = now;
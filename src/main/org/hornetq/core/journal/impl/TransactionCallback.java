@@ -43,6 +43,15 @@ public class TransactionCallback implements IOAsyncTask
       countLatch.countUp();
    }
 
+   /**
+    * Undoes a {@link #countUp()} for a record that won't be written
+    */
+   public void cancelCountUp()
+   {
+      up--;
+      countLatch.countDown();
+   }
+
    public void done()
    {
       countLatch.countDown();
@@ -77,12 +77,14 @@ public class JournalAddRecord extends JournalInternalRecord
 
       record.encode(buffer);
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
\ No newline at end of file
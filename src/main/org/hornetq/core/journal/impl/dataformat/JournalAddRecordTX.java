@@ -88,12 +88,14 @@ public class JournalAddRecordTX extends JournalInternalRecord
 
       record.encode(buffer);
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
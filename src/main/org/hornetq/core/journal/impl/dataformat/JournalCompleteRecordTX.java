@@ -87,6 +87,8 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
          transactionData.encode(buffer);
       }
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
@@ -107,11 +109,13 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
    {
       if (isCommit)
       {
-         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1;
+         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1 + getChecksumSize();
       }
       else
       {
-         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1;
+         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) +
+                1 +
+                getChecksumSize();
       }
    }
 }
@@ -49,12 +49,14 @@ public class JournalDeleteRecord extends JournalInternalRecord
 
       buffer.writeLong(id);
 
+      encodeChecksum(buffer);
+
       buffer.writeInt(getEncodeSize());
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_DELETE_RECORD + 1;
+      return JournalImpl.SIZE_DELETE_RECORD + 1 + getChecksumSize();
    }
 }
@@ -13,8 +13,12 @@
 
 package org.hornetq.core.journal.impl.dataformat;
 
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.utils.DataConstants;
 
 /**
  * A InternalEncoder
@@ -30,6 +34,122 @@ public abstract class JournalInternalRecord implements EncodingSupport
    
    protected byte compactCount;
 
+   /** If true a CRC of the record is written before the size at its end */
+   protected boolean checksum;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * Calculates the checksums of the records between start and end, a whole batch at once.
+    * <p>The records are walked backwards from end, through the size written at the end of every record, and the
+    * CRC of each record is written on the space left for it by {@link #encodeChecksum(HornetQBuffer)}.</p>
+    * @return false if a record with an invalid size was found, and the records before it don't have their checksums
+    */
+   public static boolean fillChecksums(final byte[] bytes, final int start, final int end)
+   {
+      CRC32 crc = new CRC32();
+
+      int recordEnd = end;
+
+      while (recordEnd > start)
+      {
+         int recordSize = JournalInternalRecord.getInt(bytes, recordEnd - DataConstants.SIZE_INT);
+
+         int recordStart = recordEnd - recordSize;
+
+         if (recordSize <= DataConstants.SIZE_INT * 2 || recordStart < start)
+         {
+            return false;
+         }
+
+         crc.reset();
+
+         crc.update(bytes, recordStart, recordSize - DataConstants.SIZE_INT * 2);
+
+         JournalInternalRecord.putInt(bytes, recordEnd - DataConstants.SIZE_INT * 2, (int)crc.getValue());
+
+         recordEnd = recordStart;
+      }
+
+      return true;
+   }
+
+   /**
+    * Same as {@link #fillChecksums(byte[], int, int)}, on a buffer that may not be backed by an array
+    */
+   public static boolean fillChecksums(final ByteBuffer buffer, final int start, final int end)
+   {
+      if (buffer.hasArray())
+      {
+         return JournalInternalRecord.fillChecksums(buffer.array(),
+                                                    buffer.arrayOffset() + start,
+                                                    buffer.arrayOffset() + end);
+      }
+      else
+      {
+         byte[] bytes = new byte[end - start];
+
+         ByteBuffer records = buffer.duplicate();
+
+         records.clear();
+         records.position(start);
+         records.get(bytes);
+
+         boolean filled = JournalInternalRecord.fillChecksums(bytes, 0, bytes.length);
+
+         records.position(start);
+         records.put(bytes);
+
+         return filled;
+      }
+   }
+
+   /**
+    * @return true if the CRC written on the record between start and end matches its contents
+    */
+   public static boolean isValidChecksum(final ByteBuffer buffer, final int start, final int end)
+   {
+      int crcPosition = end - DataConstants.SIZE_INT * 2;
+
+      CRC32 crc = new CRC32();
+
+      if (buffer.hasArray())
+      {
+         crc.update(buffer.array(), buffer.arrayOffset() + start, crcPosition - start);
+      }
+      else
+      {
+         byte[] bytes = new byte[crcPosition - start];
+
+         ByteBuffer record = buffer.duplicate();
+
+         record.clear();
+         record.position(start);
+         record.get(bytes);
+
+         crc.update(bytes, 0, bytes.length);
+      }
+
+      return buffer.getInt(crcPosition) == (int)crc.getValue();
+   }
+
+   private static int getInt(final byte[] bytes, final int index)
+   {
+      return (bytes[index] & 0xff) << 24 | (bytes[index + 1] & 0xff) << 16 |
+             (bytes[index + 2] & 0xff) << 8 |
+             bytes[index + 3] & 0xff;
+   }
+
+   private static void putInt(final byte[] bytes, final int index, final int value)
+   {
+      bytes[index] = (byte)(value >>> 24);
+      bytes[index + 1] = (byte)(value >>> 16);
+      bytes[index + 2] = (byte)(value >>> 8);
+      bytes[index + 3] = (byte)value;
+   }
+
+   // Public --------------------------------------------------------
+
    public int getFileID()
    {
       return fileID;
@@ -70,5 +190,36 @@ public abstract class JournalInternalRecord implements EncodingSupport
       }
    }
 
+   public boolean isChecksum()
+   {
+      return checksum;
+   }
+
+   /**
+    * The checksum is only written on files of version {@link org.hornetq.core.journal.impl.JournalImpl#CHECKSUM_FORMAT_VERSION}
+    */
+   public void setChecksum(final boolean checksum)
+   {
+      this.checksum = checksum;
+   }
+
    public abstract int getEncodeSize();
+
+   // Protected -----------------------------------------------------
+
+   /**
+    * Leaves the space for the CRC, which is only calculated when the record is written to the file
+    */
+   protected void encodeChecksum(final HornetQBuffer buffer)
+   {
+      if (checksum)
+      {
+         buffer.writeInt(0);
+      }
+   }
+
+   protected int getChecksumSize()
+   {
+      return checksum ? DataConstants.SIZE_INT : 0;
+   }
 }
@@ -41,13 +41,14 @@ public class JournalRollbackRecordTX extends JournalInternalRecord
       buffer.writeInt(fileID);
       buffer.writeByte(compactCount);
       buffer.writeLong(txID);
-      buffer.writeInt(JournalImpl.SIZE_ROLLBACK_RECORD + 1);
+      encodeChecksum(buffer);
+      buffer.writeInt(getEncodeSize());
 
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ROLLBACK_RECORD + 1;
+      return JournalImpl.SIZE_ROLLBACK_RECORD + 1 + getChecksumSize();
    }
 }
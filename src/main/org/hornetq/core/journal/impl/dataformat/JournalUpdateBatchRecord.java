@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl.dataformat;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.impl.JournalImpl;
+
+/**
+ * The same update applied to several records, written as a single record.
+ *
+ * <p>The layout is the same as an update record, with the first ID on the recordID field. The other IDs are
+ * written at the beginning of the variable portion: the number of IDs and the difference from each ID to the
+ * previous one, as variable length longs. The user record follows the IDs.</p>
+ */
+public class JournalUpdateBatchRecord extends JournalInternalRecord
+{
+
+   /** The maximum size of an ID on the record */
+   public static final int MAX_ID_SIZE = 10;
+
+   private final boolean transactional;
+
+   private final long txID;
+
+   private final long[] ids;
+
+   private final int idsSize;
+
+   private final EncodingSupport record;
+
+   private final byte recordType;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * @return the size of the IDs encoded at the beginning of the variable portion of the record
+    */
+   public static int getIDsSize(final long[] ids)
+   {
+      int size = JournalUpdateBatchRecord.getVarLongSize(ids.length - 1);
+
+      for (int i = 1; i < ids.length; i++)
+      {
+         size += JournalUpdateBatchRecord.getVarLongSize(JournalUpdateBatchRecord.zigZag(ids[i] - ids[i - 1]));
+      }
+
+      return size;
+   }
+
+   /**
+    * Decodes the IDs from the variable portion of a record.
+    * The user record starts at {@link #getIDsSize(long[])} on the body.
+    */
+   public static long[] decodeIDs(final long firstID, final byte[] body)
+   {
+      int[] position = new int[1];
+
+      long[] ids = new long[(int)JournalUpdateBatchRecord.readVarLong(body, position) + 1];
+
+      ids[0] = firstID;
+
+      for (int i = 1; i < ids.length; i++)
+      {
+         long delta = JournalUpdateBatchRecord.readVarLong(body, position);
+
+         ids[i] = ids[i - 1] + (delta >>> 1 ^ -(delta & 1));
+      }
+
+      return ids;
+   }
+
+   private static long zigZag(final long value)
+   {
+      return value << 1 ^ value >> 63;
+   }
+
+   private static int getVarLongSize(long value)
+   {
+      int size = 1;
+
+      while ((value & ~0x7FL) != 0)
+      {
+         value >>>= 7;
+         size++;
+      }
+
+      return size;
+   }
+
+   private static void writeVarLong(final HornetQBuffer buffer, long value)
+   {
+      while ((value & ~0x7FL) != 0)
+      {
+         buffer.writeByte((byte)(value & 0x7F | 0x80));
+         value >>>= 7;
+      }
+
+      buffer.writeByte((byte)value);
+   }
+
+   private static long readVarLong(final byte[] body, final int[] position)
+   {
+      long value = 0;
+
+      for (int shift = 0; shift < 64; shift += 7)
+      {
+         byte b = body[position[0]++];
+
+         value |= (long)(b & 0x7F) << shift;
+
+         if ((b & 0x80) == 0)
+         {
+            return value;
+         }
+      }
+
+      throw new IllegalStateException("Invalid batch record, ID is too long");
+   }
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param ids
+    * @param recordType
+    * @param record
+    */
+   public JournalUpdateBatchRecord(final long[] ids, final byte recordType, final EncodingSupport record)
+   {
+      this(false, 0, ids, recordType, record);
+   }
+
+   /**
+    * @param txID
+    * @param ids
+    * @param recordType
+    * @param record
+    */
+   public JournalUpdateBatchRecord(final long txID, final long[] ids, final byte recordType, final EncodingSupport record)
+   {
+      this(true, txID, ids, recordType, record);
+   }
+
+   private JournalUpdateBatchRecord(final boolean transactional,
+                                    final long txID,
+                                    final long[] ids,
+                                    final byte recordType,
+                                    final EncodingSupport record)
+   {
+      this.transactional = transactional;
+
+      this.txID = txID;
+
+      this.ids = ids;
+
+      idsSize = JournalUpdateBatchRecord.getIDsSize(ids);
+
+      this.recordType = recordType;
+
+      this.record = record;
+   }
+
+   // Public --------------------------------------------------------
+
+   /* (non-Javadoc)
+    * @see org.hornetq.core.journal.EncodingSupport#encode(org.hornetq.api.core.buffers.HornetQBuffer)
+    */
+   public void encode(final HornetQBuffer buffer)
+   {
+      if (transactional)
+      {
+         buffer.writeByte(JournalImpl.UPDATE_BATCH_RECORD_TX);
+      }
+      else
+      {
+         buffer.writeByte(JournalImpl.UPDATE_BATCH_RECORD);
+      }
+
+      buffer.writeInt(fileID);
+
+      buffer.writeByte(compactCount);
+
+      if (transactional)
+      {
+         buffer.writeLong(txID);
+      }
+
+      buffer.writeLong(ids[0]);
+
+      buffer.writeInt(idsSize + record.getEncodeSize());
+
+      buffer.writeByte(recordType);
+
+      JournalUpdateBatchRecord.writeVarLong(buffer, ids.length - 1);
+
+      for (int i = 1; i < ids.length; i++)
+      {
+         JournalUpdateBatchRecord.writeVarLong(buffer, JournalUpdateBatchRecord.zigZag(ids[i] - ids[i - 1]));
+      }
+
+      record.encode(buffer);
+
+      encodeChecksum(buffer);
+
+      buffer.writeInt(getEncodeSize());
+   }
+
+   @Override
+   public int getEncodeSize()
+   {
+      return (transactional ? JournalImpl.SIZE_ADD_RECORD_TX : JournalImpl.SIZE_ADD_RECORD) + idsSize +
+             record.getEncodeSize() +
+             1 +
+             getChecksumSize();
+   }
+}
@@ -359,6 +359,171 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getJournalFlushLatency()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalFlushLatency();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalBatchSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalBatchSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getJournalBatchRecords()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalBatchRecords();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCurrentBufferTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalCurrentBufferTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactBytesRewritten()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalCompactBytesRewritten();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactPauseTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalCompactPauseTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCompactReclaimedFiles()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalCompactReclaimedFiles();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalFileWaitCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalFileWaitCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalFileWaitTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalFileWaitTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalHotMigratedRecords()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalHotMigratedRecords();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalHotDeletedRecords()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return storageManager.getJournalHotDeletedRecords();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public boolean isPersistenceEnabled()
    {
       checkStarted();
@@ -404,6 +569,111 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getPageCacheMaxSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getPageCache().getMaxSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getPageCache().getSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheHits()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getPageCache().getHits();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheMisses()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getPageCache().getMisses();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheEvictions()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getPageCache().getEvictions();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGlobalMaxSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getGlobalMaxSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGlobalSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return postOffice.getPagingManager().getGlobalSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public int getScheduledThreadPoolMaxSize()
    {
       checkStarted();
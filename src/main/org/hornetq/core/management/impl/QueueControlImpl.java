@@ -31,6 +31,7 @@ import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.messagecounter.MessageCounter;
 import org.hornetq.core.messagecounter.impl.MessageCounterHelper;
+import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.PostOffice;
@@ -230,6 +231,40 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public long getMessagesDepaged()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getDepagedCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getDepageRate()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getDepagedRate();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public long getID()
    {
       checkStarted();
@@ -260,6 +295,36 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public long getNextScheduledDeliveryTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getNextScheduledDeliveryTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getGroupCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public String getDeadLetterAddress()
    {
       checkStarted();
@@ -816,6 +881,8 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
                obj.put("sessionID", serverConsumer.getSessionID());
                obj.put("browseOnly", serverConsumer.isBrowseOnly());
                obj.put("creationTime", serverConsumer.getCreationTime());
+               obj.put("groupCount", queue.getGroupCount(consumer));
+               obj.put("windowSize", serverConsumer.getWindowSize());
                
                jsonArray.put(obj);
             }
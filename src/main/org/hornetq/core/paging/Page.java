@@ -30,6 +30,14 @@ public interface Page
    void write(PagedMessage message) throws Exception;
 
    List<PagedMessage> read() throws Exception;
+
+   /**
+    * Reads a single message through the index of the page, without reading the rest of the page.
+    * The position of the page file is changed, so this is not meant for the page being written.
+    * 
+    * @return null if the page has no index or the index doesn't match the page
+    */
+   PagedMessage read(int messageNumber) throws Exception;
    
    void setLiveCache(LivePageCache pageCache);
 
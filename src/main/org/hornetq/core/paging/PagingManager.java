@@ -17,6 +17,7 @@ import java.util.Map;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.paging.cursor.SharedPageCache;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.server.HornetQComponent;
 
@@ -80,4 +81,22 @@ public interface PagingManager extends HornetQComponent
    void deletePageStore(SimpleString storeName) throws Exception;
    
    void processReload() throws Exception;
+
+   /** The cache of the pages read by the paging stores */
+   SharedPageCache getPageCache();
+
+   /**
+    * To be called by the stores as the messages in memory grow or shrink.
+    * When the global max size is exceeded, the largest store that isn't paging yet is forced to page.
+    */
+   void addGlobalSize(int size);
+
+   /** The size of the messages in memory for all the stores */
+   long getGlobalSize();
+
+   /** -1 if there's no global max size */
+   long getGlobalMaxSize();
+
+   /** If the size of the messages in memory for all the stores is over the global max size */
+   boolean isGlobalFull();
 }
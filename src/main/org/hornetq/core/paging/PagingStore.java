@@ -51,6 +51,15 @@ public interface PagingStore extends HornetQComponent
 
    long getPageSizeBytes();
 
+   /** If the pages have an offset index, so single messages are read without reading the whole page */
+   boolean isPageIndex();
+
+   /** The number of pages read in advance of the page a subscription is delivering, 0 for none */
+   int getPageReadAhead();
+
+   /** If the messages are compressed as they're written to the pages */
+   boolean isPageCompression();
+
    long getAddressSize();
    
    long getMaxSize();
@@ -100,6 +109,9 @@ public interface PagingStore extends HornetQComponent
    void addSize(int size);
    
    void executeRunnableWhenMemoryAvailable(Runnable runnable);
+
+   /** Runs what is waiting for memory if the store isn't full anymore, called as the global size goes back under the limit */
+   void checkMemory();
    
    /** This method will hold and producer, but it wait operations to finish before locking (write lock) */
    void lock();
@@ -56,6 +56,11 @@ public interface PageCursorProvider
    
    PagedMessage getMessage(PagePosition pos) throws Exception;
 
+   /**
+    * Reads a page into the cache on the executor of the provider, unless it's cached, being read or not fully written yet
+    */
+   void scheduleRead(long pageId);
+
    void processReload() throws Exception;
 
    void stop();
@@ -39,6 +39,12 @@ public interface PageSubscription
    
    long getMessageCount();
 
+   /** The number of messages read from the pages by the iterators of this subscription, not counting redeliveries */
+   long getDepagedCount();
+
+   /** In messages per second, measured between calls at least a second apart */
+   double getDepagedRate();
+
    long getId();
 
    boolean isPersistent();
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor;
+
+/**
+ * The pages read by the cursor providers of all the paging stores, within a max size.
+ * 
+ * The pages are evicted in least recently used order once their size goes over the max size.
+ * Live pages are kept by their cursor providers and are not part of this cache.
+ */
+public interface SharedPageCache
+{
+   /**
+    * Counts a hit or a miss.
+    * 
+    * @return null if the page is not cached
+    */
+   PageCache get(PageCursorProvider provider, long pageId);
+
+   /**
+    * Doesn't count a hit or a miss, and doesn't change the eviction order.
+    */
+   boolean contains(PageCursorProvider provider, long pageId);
+
+   /**
+    * Caches a page before its messages are read. Its size is given once they're read, through {@link #setSize(PageCursorProvider, long, long)}.
+    */
+   void put(PageCursorProvider provider, PageCache cache);
+
+   /**
+    * Sets the size of a cached page, evicting the least recently used pages if the cache goes over its max size.
+    */
+   void setSize(PageCursorProvider provider, long pageId, long size);
+
+   void remove(PageCursorProvider provider, long pageId);
+
+   void removeAll(PageCursorProvider provider);
+
+   int getNumberOfPages(PageCursorProvider provider);
+
+   // Statistics ----------------------------------------------------
+
+   long getMaxSize();
+
+   long getSize();
+
+   int getNumberOfPages();
+
+   long getHits();
+
+   long getMisses();
+
+   long getEvictions();
+}
@@ -14,6 +14,8 @@
 package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
@@ -30,10 +32,11 @@ import org.hornetq.core.paging.cursor.PagePosition;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.paging.cursor.PagedReferenceImpl;
+import org.hornetq.core.paging.cursor.SharedPageCache;
 import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.ExecutorFactory;
 import org.hornetq.utils.Future;
-import org.hornetq.utils.SoftValueHashMap;
 import org.jboss.netty.util.internal.ConcurrentHashMap;
 
 /**
@@ -62,7 +65,13 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    private final Executor executor;
 
-   private Map<Long, PageCache> softCache = new SoftValueHashMap<Long, PageCache>();
+   // The pages still being written are kept here until the next page is written, as they can't be evicted
+   private final Map<Long, PageCache> liveCaches = new HashMap<Long, PageCache>();
+
+   private final SharedPageCache sharedCache;
+
+   // The pages scheduled to be read in advance
+   private final ConcurrentHashSet<Long> pendingReads = new ConcurrentHashSet<Long>();
 
    private ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
@@ -78,6 +87,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
       this.storageManager = storageManager;
       this.executorFactory = executorFactory;
       this.executor = executorFactory.getExecutor();
+      this.sharedCache = pagingStore.getPagingManager().getPageCache();
    }
 
    // Public --------------------------------------------------------
@@ -116,6 +126,18 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public PagedMessage getMessage(final PagePosition pos) throws Exception
    {
+      if (pos.getPageCache() == null && pagingStore.isPageIndex())
+      {
+         // A single message of a page that is not cached is read through the page index,
+         // so looking up a position doesn't read and cache the whole page
+         PagedMessage message = readIndexedMessage(pos);
+
+         if (message != null)
+         {
+            return message;
+         }
+      }
+
       PageCache cache = getPageCache(pos);
 
       if (pos.getMessageNr() >= cache.getNumberOfMessages())
@@ -148,17 +170,30 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (liveCaches)
       {
-         softCache.put(cache.getPageId(), cache);
+         // The previous live page was closed before this one was created, so it can be evicted now
+         Iterator<PageCache> iter = liveCaches.values().iterator();
+         while (iter.hasNext())
+         {
+            PageCache closedCache = iter.next();
+            if (!closedCache.isLive())
+            {
+               iter.remove();
+               sharedCache.put(this, closedCache);
+               sharedCache.setSize(this, closedCache.getPageId(), estimateSize(closedCache));
+            }
+         }
+
+         liveCaches.put(cache.getPageId(), cache);
       }
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (liveCaches)
       {
-         return softCache.size();
+         return liveCaches.size() + sharedCache.getNumberOfPages(this);
       }
    }
 
@@ -189,6 +224,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
          log.warn("Waiting cursor provider " + this + " to finish executors");
       }
 
+      synchronized (liveCaches)
+      {
+         liveCaches.clear();
+         sharedCache.removeAll(this);
+      }
    }
 
    public void flushExecutors()
@@ -231,6 +271,53 @@ public class PageCursorProviderImpl implements PageCursorProvider
       });
    }
 
+   /* (non-Javadoc)
+    * @see org.hornetq.core.paging.cursor.PageCursorProvider#scheduleRead(long)
+    */
+   public void scheduleRead(final long pageId)
+   {
+      if (pageId < pagingStore.getFirstPage() || pageId >= pagingStore.getCurrentWritingPage())
+      {
+         return;
+      }
+
+      synchronized (liveCaches)
+      {
+         if (liveCaches.containsKey(pageId) || sharedCache.contains(this, pageId))
+         {
+            return;
+         }
+      }
+
+      if (!pendingReads.addIfAbsent(pageId))
+      {
+         return;
+      }
+
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               // the page may have been cleaned up since
+               if (pagingStore.isStarted() && pageId >= pagingStore.getFirstPage())
+               {
+                  getPageCache(pageId);
+               }
+            }
+            catch (Throwable e)
+            {
+               log.warn("Couldn't read page " + pageId + " in advance", e);
+            }
+            finally
+            {
+               pendingReads.remove(pageId);
+            }
+         }
+      });
+   }
+
    public void cleanup()
    {
       ArrayList<Page> depagedPages = new ArrayList<Page>();
@@ -338,9 +425,10 @@ public class PageCursorProviderImpl implements PageCursorProvider
          for (Page depagedPage : depagedPages)
          {
             depagedPage.delete();
-            synchronized (softCache)
+            synchronized (liveCaches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               liveCaches.remove((long)depagedPage.getPageId());
+               sharedCache.remove(this, depagedPage.getPageId());
             }
          }
       }
@@ -355,10 +443,14 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      synchronized (liveCaches)
       {
-         System.out.println("Cache " + cache);
+         for (PageCache cache : liveCaches.values())
+         {
+            System.out.println("Cache " + cache);
+         }
       }
+      System.out.println(sharedCache.getNumberOfPages(this) + " pages on " + sharedCache);
    }
 
    // Package protected ---------------------------------------------
@@ -373,6 +465,25 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    // Private -------------------------------------------------------
 
+   private long estimateSize(final PageCache cache)
+   {
+      long size = 0;
+
+      int numberOfMessages = cache.getNumberOfMessages();
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         PagedMessage message = cache.getMessage(i);
+
+         if (message != null)
+         {
+            size += message.getMessage().getMemoryEstimate();
+         }
+      }
+
+      return size;
+   }
+
    /**
     * This method is synchronized because we want it to be atomic with the cursors being used
     */
@@ -393,20 +504,65 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    }
 
+   /**
+    * @return the message read through the index of its page, null if the page is cached or the index can't be used
+    */
+   private PagedMessage readIndexedMessage(final PagePosition pos) throws Exception
+   {
+      synchronized (liveCaches)
+      {
+         if (pos.getPageNr() >= pagingStore.getCurrentWritingPage() || liveCaches.containsKey(pos.getPageNr()) ||
+             sharedCache.contains(this, pos.getPageNr()))
+         {
+            return null;
+         }
+      }
+
+      Page page = pagingStore.createPage((int)pos.getPageNr());
+
+      try
+      {
+         page.open();
+
+         PagedMessage message = page.read(pos.getMessageNr());
+
+         if (message != null)
+         {
+            message.initMessage(storageManager);
+         }
+
+         return message;
+      }
+      finally
+      {
+         try
+         {
+            page.close();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
    private PageCache getPageCache(final long pageId)
    {
       try
       {
          boolean needToRead = false;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (liveCaches)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = liveCaches.get(pageId);
+            if (cache == null)
+            {
+               cache = sharedCache.get(this, pageId);
+            }
             if (cache == null)
             {
                cache = createPageCache(pageId);
@@ -414,7 +570,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
                // anyone reading from this cache will have to wait reading to finish first
                // we also want only one thread reading this cache
                cache.lock();
-               softCache.put(pageId, cache);
+               sharedCache.put(this, cache);
             }
          }
 
@@ -438,6 +594,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
                cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
 
+               sharedCache.setSize(this, pageId, estimateSize(cache));
+
             }
             finally
             {
@@ -67,6 +67,9 @@ public class PageSubscriptionImpl implements PageSubscription
    // Constants -----------------------------------------------------
    private static final Logger log = Logger.getLogger(PageSubscriptionImpl.class);
 
+   // In milliseconds, the shortest interval the depaged rate is measured on
+   private static final long RATE_INTERVAL = 1000;
+
    // Attributes ----------------------------------------------------
 
    private final boolean isTrace = false; // PageCursorImpl.log.isTraceEnabled();
@@ -105,6 +108,15 @@ public class PageSubscriptionImpl implements PageSubscription
    
    private final AtomicLong deliveredCount = new AtomicLong(0);
 
+   private final AtomicLong depagedCount = new AtomicLong(0);
+
+   // The depaged count and the time when the depaged rate was last measured
+   private long rateCount;
+
+   private long rateTime = System.currentTimeMillis();
+
+   private double depagedRate;
+
    // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
    private final ConcurrentLinkedQueue<PagePosition> redeliveries = new ConcurrentLinkedQueue<PagePosition>();
 
@@ -185,6 +197,30 @@ public class PageSubscriptionImpl implements PageSubscription
    {
       return counter;
    }
+
+   public long getDepagedCount()
+   {
+      return depagedCount.get();
+   }
+
+   public synchronized double getDepagedRate()
+   {
+      long now = System.currentTimeMillis();
+
+      // A rate measured on a shorter interval would be too noisy, the last one is kept until then
+      if (now - rateTime >= PageSubscriptionImpl.RATE_INTERVAL)
+      {
+         long count = depagedCount.get();
+
+         depagedRate = (count - rateCount) * 1000d / (now - rateTime);
+
+         rateCount = count;
+
+         rateTime = now;
+      }
+
+      return depagedRate;
+   }
    
    public void scheduleCleanupCheck()
    {
@@ -339,6 +375,11 @@ public class PageSubscriptionImpl implements PageSubscription
          }
       }
 
+      if (retPos.getMessageNr() == 0)
+      {
+         readAhead(retPos.getPageNr());
+      }
+
       PagedMessage serverMessage = cache.getMessage(retPos.getMessageNr());
 
       if (serverMessage != null)
@@ -351,6 +392,20 @@ public class PageSubscriptionImpl implements PageSubscription
       }
    }
 
+   /**
+    * As the subscription starts delivering a page, the next pages are read on the executor of the provider,
+    * so the delivery doesn't wait for them to be read when it gets there.
+    */
+   private void readAhead(final long pageId)
+   {
+      int pages = pageStore.getPageReadAhead();
+
+      for (int i = 1; i <= pages; i++)
+      {
+         cursorProvider.scheduleRead(pageId + i);
+      }
+   }
+
    private boolean routed(PagedMessage message)
    {
       long id = getId();
@@ -1173,6 +1228,8 @@ public class PageSubscriptionImpl implements PageSubscription
             if (message != null)
             {
                lastOperation = lastPosition;
+
+               depagedCount.incrementAndGet();
             }
 
             return message;
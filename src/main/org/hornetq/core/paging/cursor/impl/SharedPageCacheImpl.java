@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.paging.cursor.SharedPageCache;
+
+/**
+ * A SharedPageCacheImpl
+ * 
+ * The pages are kept in access order, so the eldest entry is the least recently used page.
+ */
+public class SharedPageCacheImpl implements SharedPageCache
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final long maxSize;
+
+   private final LinkedHashMap<PageKey, CachedPage> entries = new LinkedHashMap<PageKey, CachedPage>(16, 0.75f, true);
+
+   private long size;
+
+   private long hits;
+
+   private long misses;
+
+   private long evictions;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param maxSize in bytes, as estimated by the memory used by the messages of the pages
+    */
+   public SharedPageCacheImpl(final long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   // Public --------------------------------------------------------
+
+   public synchronized PageCache get(final PageCursorProvider provider, final long pageId)
+   {
+      CachedPage entry = entries.get(new PageKey(provider, pageId));
+
+      if (entry == null)
+      {
+         misses++;
+         return null;
+      }
+      else
+      {
+         hits++;
+         return entry.cache;
+      }
+   }
+
+   public synchronized boolean contains(final PageCursorProvider provider, final long pageId)
+   {
+      return entries.containsKey(new PageKey(provider, pageId));
+   }
+
+   public synchronized void put(final PageCursorProvider provider, final PageCache cache)
+   {
+      CachedPage old = entries.put(new PageKey(provider, cache.getPageId()), new CachedPage(cache));
+
+      if (old != null)
+      {
+         size -= old.size;
+      }
+   }
+
+   public synchronized void setSize(final PageCursorProvider provider, final long pageId, final long pageSize)
+   {
+      // the page was just read, so it's fine to make it the most recently used
+      CachedPage page = entries.get(new PageKey(provider, pageId));
+
+      if (page != null)
+      {
+         size += pageSize - page.size;
+         page.size = pageSize;
+      }
+
+      Iterator<CachedPage> iter = entries.values().iterator();
+
+      while (size > maxSize && iter.hasNext())
+      {
+         CachedPage evicted = iter.next();
+
+         iter.remove();
+
+         size -= evicted.size;
+
+         evictions++;
+      }
+   }
+
+   public synchronized void remove(final PageCursorProvider provider, final long pageId)
+   {
+      CachedPage entry = entries.remove(new PageKey(provider, pageId));
+
+      if (entry != null)
+      {
+         size -= entry.size;
+      }
+   }
+
+   public synchronized void removeAll(final PageCursorProvider provider)
+   {
+      Iterator<Map.Entry<PageKey, CachedPage>> iter = entries.entrySet().iterator();
+
+      while (iter.hasNext())
+      {
+         Map.Entry<PageKey, CachedPage> mapEntry = iter.next();
+
+         if (mapEntry.getKey().provider == provider)
+         {
+            iter.remove();
+
+            size -= mapEntry.getValue().size;
+         }
+      }
+   }
+
+   public synchronized int getNumberOfPages(final PageCursorProvider provider)
+   {
+      int pages = 0;
+
+      for (PageKey key : entries.keySet())
+      {
+         if (key.provider == provider)
+         {
+            pages++;
+         }
+      }
+
+      return pages;
+   }
+
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public synchronized long getSize()
+   {
+      return size;
+   }
+
+   public synchronized int getNumberOfPages()
+   {
+      return entries.size();
+   }
+
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "SharedPageCacheImpl [maxSize=" + maxSize +
+             ", size=" +
+             size +
+             ", pages=" +
+             entries.size() +
+             ", hits=" +
+             hits +
+             ", misses=" +
+             misses +
+             ", evictions=" +
+             evictions +
+             "]";
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+   private static final class PageKey
+   {
+      private final PageCursorProvider provider;
+
+      private final long pageId;
+
+      PageKey(final PageCursorProvider provider, final long pageId)
+      {
+         this.provider = provider;
+         this.pageId = pageId;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return System.identityHashCode(provider) * 31 + (int)(pageId ^ pageId >>> 32);
+      }
+
+      @Override
+      public boolean equals(final Object obj)
+      {
+         if (this == obj)
+         {
+            return true;
+         }
+         if (!(obj instanceof PageKey))
+         {
+            return false;
+         }
+         PageKey other = (PageKey)obj;
+         return provider == other.provider && pageId == other.pageId;
+      }
+   }
+
+   private static final class CachedPage
+   {
+      private final PageCache cache;
+
+      private long size;
+
+      CachedPage(final PageCache cache)
+      {
+         this.cache = cache;
+      }
+   }
+}
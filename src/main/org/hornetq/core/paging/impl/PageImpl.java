@@ -17,6 +17,9 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -43,8 +46,14 @@ public class PageImpl implements Page, Comparable<Page>
 
    public static final int SIZE_RECORD = DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + DataConstants.SIZE_BYTE;
 
+   /** A compressed record also has the size of the message before it was compressed */
+   public static final int SIZE_COMPRESSED_RECORD = PageImpl.SIZE_RECORD + DataConstants.SIZE_INT;
+
    private static final byte START_BYTE = (byte)'{';
 
+   /** Starts a record with the message deflated, so compressed and plain records can be in the same page */
+   private static final byte COMPRESSED_START_BYTE = (byte)'[';
+
    private static final byte END_BYTE = (byte)'}';
 
    // Attributes ----------------------------------------------------
@@ -57,6 +66,11 @@ public class PageImpl implements Page, Comparable<Page>
 
    private final SequentialFile file;
 
+   /**
+    * The file offset of every message, in message number order, null if the page has no index
+    */
+   private final SequentialFile indexFile;
+
    private final SequentialFileFactory fileFactory;
    
    /**
@@ -70,6 +84,11 @@ public class PageImpl implements Page, Comparable<Page>
 
    private final SimpleString storeName;
 
+   private final boolean compress;
+
+   /** Created on the first compressed write. Writes are done by one thread at a time, under the store's lock */
+   private Deflater deflater;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -79,12 +98,38 @@ public class PageImpl implements Page, Comparable<Page>
                    final SequentialFileFactory factory,
                    final SequentialFile file,
                    final int pageId) throws Exception
+   {
+      this(storeName, storageManager, factory, file, null, pageId);
+   }
+
+   public PageImpl(final SimpleString storeName,
+                   final StorageManager storageManager,
+                   final SequentialFileFactory factory,
+                   final SequentialFile file,
+                   final SequentialFile indexFile,
+                   final int pageId) throws Exception
+   {
+      this(storeName, storageManager, factory, file, indexFile, pageId, false);
+   }
+
+   /**
+    * @param compress if the messages are deflated as they're written. Pages are read the same way either way.
+    */
+   public PageImpl(final SimpleString storeName,
+                   final StorageManager storageManager,
+                   final SequentialFileFactory factory,
+                   final SequentialFile file,
+                   final SequentialFile indexFile,
+                   final int pageId,
+                   final boolean compress) throws Exception
    {
       this.pageId = pageId;
       this.file = file;
+      this.indexFile = indexFile;
       fileFactory = factory;
       this.storageManager = storageManager;
       this.storeName = storeName;
+      this.compress = compress;
    }
 
    // Public --------------------------------------------------------
@@ -105,6 +150,8 @@ public class PageImpl implements Page, Comparable<Page>
    {
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
+      ArrayList<Integer> offsets = new ArrayList<Integer>();
+
       size.set((int)file.size());
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
       ByteBuffer buffer2 = ByteBuffer.allocateDirect(size.get());
@@ -117,68 +164,225 @@ public class PageImpl implements Page, Comparable<Page>
       HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(buffer2);
       fileBuffer.writerIndex(fileBuffer.capacity());
 
-      while (fileBuffer.readable())
+      Inflater inflater = null;
+
+      try
       {
-         final int position = fileBuffer.readerIndex();
+         while (fileBuffer.readable())
+         {
+            final int position = fileBuffer.readerIndex();
 
-         byte byteRead = fileBuffer.readByte();
+            byte byteRead = fileBuffer.readByte();
 
-         if (byteRead == PageImpl.START_BYTE)
-         {
-            if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
+            if (byteRead == PageImpl.START_BYTE || byteRead == PageImpl.COMPRESSED_START_BYTE)
             {
-               int messageSize = fileBuffer.readInt();
-               int oldPos = fileBuffer.readerIndex();
-               if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() && fileBuffer.getByte(oldPos + messageSize) == PageImpl.END_BYTE)
+               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
                {
-                  PagedMessage msg = new PagedMessageImpl();
-                  msg.decode(fileBuffer);
-                  byte b = fileBuffer.readByte();
-                  if (b != PageImpl.END_BYTE)
+                  int messageSize = fileBuffer.readInt();
+                  int oldPos = fileBuffer.readerIndex();
+                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() && fileBuffer.getByte(oldPos + messageSize) == PageImpl.END_BYTE)
                   {
-                     // Sanity Check: This would only happen if there is a bug on decode or any internal code, as this
-                     // constraint was already checked
-                     throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+                     PagedMessage msg = new PagedMessageImpl();
+                     if (byteRead == PageImpl.COMPRESSED_START_BYTE)
+                     {
+                        if (inflater == null)
+                        {
+                           inflater = new Inflater();
+                        }
+                        HornetQBuffer plainBuffer = PageImpl.inflate(fileBuffer, messageSize, inflater);
+                        if (plainBuffer == null)
+                        {
+                           markFileAsSuspect(position, messages.size());
+                           break;
+                        }
+                        msg.decode(plainBuffer);
+                     }
+                     else
+                     {
+                        msg.decode(fileBuffer);
+                     }
+                     byte b = fileBuffer.readByte();
+                     if (b != PageImpl.END_BYTE)
+                     {
+                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as this
+                        // constraint was already checked
+                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+                     }
+                     messages.add(msg);
+                     offsets.add(position);
+                  }
+                  else
+                  {
+                     markFileAsSuspect(position, messages.size());
+                     break;
                   }
-                  messages.add(msg);
-               }
-               else
-               {
-                  markFileAsSuspect(position, messages.size());
-                  break;
                }
             }
+            else
+            {
+               markFileAsSuspect(position, messages.size());
+               break;
+            }
          }
-         else
+      }
+      finally
+      {
+         if (inflater != null)
          {
-            markFileAsSuspect(position, messages.size());
-            break;
+            inflater.end();
          }
       }
 
       numberOfMessages.set(messages.size());
 
+      if (indexFile != null && indexFile.isOpen() && indexFile.size() != offsets.size() * DataConstants.SIZE_INT)
+      {
+         rewriteIndex(offsets);
+      }
+
       return messages;
    }
 
+   public PagedMessage read(final int messageNumber) throws Exception
+   {
+      if (indexFile == null || !indexFile.isOpen() || messageNumber < 0)
+      {
+         return null;
+      }
+
+      long indexPosition = (long)messageNumber * DataConstants.SIZE_INT;
+
+      if (indexPosition + DataConstants.SIZE_INT > indexFile.size())
+      {
+         return null;
+      }
+
+      ByteBuffer offsetBuffer = ByteBuffer.allocate(DataConstants.SIZE_INT);
+
+      indexFile.position(indexPosition);
+
+      if (indexFile.read(offsetBuffer) < DataConstants.SIZE_INT)
+      {
+         return null;
+      }
+
+      offsetBuffer.rewind();
+
+      int offset = offsetBuffer.getInt();
+
+      long fileSize = file.size();
+
+      // The index is written after the page, so the page may be missing the last entries after a failure
+      if (offset < 0 || offset + PageImpl.SIZE_RECORD > fileSize)
+      {
+         return null;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+      file.position(offset);
+
+      if (file.read(header) < header.capacity())
+      {
+         return null;
+      }
+
+      header.rewind();
+
+      byte startByte = header.get();
+
+      if (startByte != PageImpl.START_BYTE && startByte != PageImpl.COMPRESSED_START_BYTE)
+      {
+         return null;
+      }
+
+      int messageSize = header.getInt();
+
+      if (messageSize < 0 || offset + PageImpl.SIZE_RECORD + messageSize > fileSize)
+      {
+         return null;
+      }
+
+      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
+      ByteBuffer record = ByteBuffer.allocateDirect(messageSize + DataConstants.SIZE_BYTE);
+
+      file.position(offset + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+      if (file.read(record) < record.capacity() || record.get(messageSize) != PageImpl.END_BYTE)
+      {
+         return null;
+      }
+
+      record.rewind();
+
+      HornetQBuffer recordBuffer = HornetQBuffers.wrappedBuffer(record);
+      recordBuffer.writerIndex(messageSize);
+
+      if (startByte == PageImpl.COMPRESSED_START_BYTE)
+      {
+         Inflater inflater = new Inflater();
+
+         try
+         {
+            recordBuffer = PageImpl.inflate(recordBuffer, messageSize, inflater);
+         }
+         finally
+         {
+            inflater.end();
+         }
+
+         if (recordBuffer == null)
+         {
+            return null;
+         }
+      }
+
+      PagedMessage msg = new PagedMessageImpl();
+      msg.decode(recordBuffer);
+
+      return msg;
+   }
+
    public void write(final PagedMessage message) throws Exception
    {
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + PageImpl.SIZE_RECORD);
+      ByteBuffer buffer = null;
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
-      wrap.clear();
+      if (compress)
+      {
+         buffer = encodeCompressed(message);
+      }
 
-      wrap.writeByte(PageImpl.START_BYTE);
-      wrap.writeInt(0);
-      int startIndex = wrap.writerIndex();
-      message.encode(wrap);
-      int endIndex = wrap.writerIndex();
-      wrap.setInt(1, endIndex - startIndex); // The encoded length
-      wrap.writeByte(PageImpl.END_BYTE);
+      if (buffer == null)
+      {
+         buffer = fileFactory.newBuffer(message.getEncodeSize() + PageImpl.SIZE_RECORD);
 
-      buffer.rewind();
+         HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+         wrap.clear();
+
+         wrap.writeByte(PageImpl.START_BYTE);
+         wrap.writeInt(0);
+         int startIndex = wrap.writerIndex();
+         message.encode(wrap);
+         int endIndex = wrap.writerIndex();
+         wrap.setInt(1, endIndex - startIndex); // The encoded length
+         wrap.writeByte(PageImpl.END_BYTE);
+
+         buffer.rewind();
+      }
+
+      int offset = size.get();
 
       file.writeDirect(buffer, false);
+
+      if (indexFile != null)
+      {
+         ByteBuffer offsetBuffer = ByteBuffer.allocate(DataConstants.SIZE_INT);
+         offsetBuffer.putInt(offset);
+         offsetBuffer.rewind();
+
+         // The index is not synced: it's checked against the page on every read, and rebuilt by a full read
+         indexFile.writeDirect(offsetBuffer, false);
+      }
       
       if (pageCache != null)
       {
@@ -201,6 +405,12 @@ public class PageImpl implements Page, Comparable<Page>
       file.open();
       size.set((int)file.size());
       file.position(0);
+
+      if (indexFile != null)
+      {
+         indexFile.open();
+         indexFile.position(indexFile.size());
+      }
    }
 
    public void close() throws Exception
@@ -215,6 +425,15 @@ public class PageImpl implements Page, Comparable<Page>
          // leave it to the soft cache to decide when to release it now
          pageCache = null;
       }
+      if (indexFile != null && indexFile.isOpen())
+      {
+         indexFile.close();
+      }
+      if (deflater != null)
+      {
+         deflater.end();
+         deflater = null;
+      }
       file.close();
    }
 
@@ -239,6 +458,11 @@ public class PageImpl implements Page, Comparable<Page>
          {
             file.delete();
          }
+
+         if (indexFile != null)
+         {
+            indexFile.delete();
+         }
          
          return true;
       }
@@ -311,6 +535,130 @@ public class PageImpl implements Page, Comparable<Page>
       return true;
    }
 
+   /**
+    * Replaces the index by the offsets found reading the whole page.
+    * That builds the index of a page written before it was enabled, and drops entries left by a failure.
+    */
+   private void rewriteIndex(final List<Integer> offsets) throws Exception
+   {
+      indexFile.delete();
+
+      indexFile.open();
+
+      if (!offsets.isEmpty())
+      {
+         ByteBuffer buffer = ByteBuffer.allocate(offsets.size() * DataConstants.SIZE_INT);
+
+         for (Integer offset : offsets)
+         {
+            buffer.putInt(offset);
+         }
+
+         buffer.rewind();
+
+         indexFile.writeDirect(buffer, false);
+      }
+
+      indexFile.position(indexFile.size());
+   }
+
+   /**
+    * Deflates the message into a compressed record.
+    *
+    * @return null if the message doesn't get smaller, so it's written plain
+    */
+   private ByteBuffer encodeCompressed(final PagedMessage message)
+   {
+      byte[] plain = new byte[message.getEncodeSize()];
+
+      HornetQBuffer plainBuffer = HornetQBuffers.wrappedBuffer(plain);
+      plainBuffer.clear();
+
+      message.encode(plainBuffer);
+
+      int plainSize = plainBuffer.writerIndex();
+
+      if (deflater == null)
+      {
+         deflater = new Deflater(Deflater.BEST_SPEED);
+      }
+      else
+      {
+         deflater.reset();
+      }
+
+      deflater.setInput(plain, 0, plainSize);
+      deflater.finish();
+
+      // If it doesn't fit, the compressed record would be larger than the plain one
+      byte[] compressed = new byte[Math.max(0, plainSize - DataConstants.SIZE_INT)];
+
+      int compressedSize = deflater.deflate(compressed);
+
+      if (!deflater.finished())
+      {
+         return null;
+      }
+
+      ByteBuffer buffer = fileFactory.newBuffer(compressedSize + PageImpl.SIZE_COMPRESSED_RECORD);
+
+      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+      wrap.clear();
+
+      wrap.writeByte(PageImpl.COMPRESSED_START_BYTE);
+      wrap.writeInt(DataConstants.SIZE_INT + compressedSize); // The record length
+      wrap.writeInt(plainSize);
+      wrap.writeBytes(compressed, 0, compressedSize);
+      wrap.writeByte(PageImpl.END_BYTE);
+
+      buffer.rewind();
+
+      return buffer;
+   }
+
+   /**
+    * Inflates the message of a compressed record, the buffer being positioned after the record length.
+    *
+    * @return the encoded message, null if the record doesn't inflate to the size it was written with
+    */
+   private static HornetQBuffer inflate(final HornetQBuffer buffer, final int recordSize, final Inflater inflater)
+   {
+      if (recordSize < DataConstants.SIZE_INT)
+      {
+         return null;
+      }
+
+      int plainSize = buffer.readInt();
+
+      byte[] compressed = new byte[recordSize - DataConstants.SIZE_INT];
+
+      buffer.readBytes(compressed);
+
+      if (plainSize < 0)
+      {
+         return null;
+      }
+
+      byte[] plain = new byte[plainSize];
+
+      inflater.reset();
+      inflater.setInput(compressed);
+
+      try
+      {
+         if (inflater.inflate(plain) != plainSize || !inflater.finished())
+         {
+            return null;
+         }
+      }
+      catch (DataFormatException e)
+      {
+         return null;
+      }
+
+      return HornetQBuffers.wrappedBuffer(plain);
+   }
+
    /**
     * @param position
     * @param msgNumber
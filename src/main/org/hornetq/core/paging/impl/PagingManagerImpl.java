@@ -18,16 +18,22 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.config.impl.ConfigurationImpl;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
+import org.hornetq.core.paging.cursor.SharedPageCache;
+import org.hornetq.core.paging.cursor.impl.SharedPageCacheImpl;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
 
 /**
@@ -53,6 +59,18 @@ public class PagingManagerImpl implements PagingManager
 
    private final StorageManager storageManager;
 
+   private final SharedPageCache pageCache;
+
+   private final long globalMaxSize;
+
+   private final AtomicLong globalSize = new AtomicLong();
+
+   /** Set while a thread looks for a store to force into paging, so concurrent senders don't scan the stores too */
+   private final AtomicBoolean forcingPaging = new AtomicBoolean(false);
+
+   /** While over the global max size, the stores are scanned at most once every FORCE_PAGING_INTERVAL */
+   private volatile long nextForcePaging;
+
    private final ConcurrentMap</*TransactionID*/Long, PageTransactionInfo> transactions = new ConcurrentHashMap<Long, PageTransactionInfo>();
 
    // Static
@@ -60,16 +78,50 @@ public class PagingManagerImpl implements PagingManager
 
    private static final Logger log = Logger.getLogger(PagingManagerImpl.class);
 
+   /** Milliseconds between two scans of the stores looking for one to force into paging */
+   private static final long FORCE_PAGING_INTERVAL = 100;
+
    // Constructors
    // --------------------------------------------------------------------------------------------------------------------
 
    public PagingManagerImpl(final PagingStoreFactory pagingSPI,
                             final StorageManager storageManager,
                             final HierarchicalRepository<AddressSettings> addressSettingsRepository)
+   {
+      this(pagingSPI, storageManager, addressSettingsRepository, ConfigurationImpl.DEFAULT_PAGE_CACHE_MAX_SIZE);
+   }
+
+   /**
+    * @param pageCacheMaxSize the max size of the pages cached for all the stores, -1 for a tenth of the max heap
+    */
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final StorageManager storageManager,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final long pageCacheMaxSize)
+   {
+      this(pagingSPI,
+           storageManager,
+           addressSettingsRepository,
+           pageCacheMaxSize,
+           ConfigurationImpl.DEFAULT_GLOBAL_MAX_SIZE);
+   }
+
+   /**
+    * @param pageCacheMaxSize the max size of the pages cached for all the stores, -1 for a tenth of the max heap
+    * @param globalMaxSize the max size of the messages in memory for all the stores, -1 for no limit
+    */
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final StorageManager storageManager,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final long pageCacheMaxSize,
+                            final long globalMaxSize)
    {
       pagingStoreFactory = pagingSPI;
       this.addressSettingsRepository = addressSettingsRepository;
       this.storageManager = storageManager;
+      pageCache = new SharedPageCacheImpl(pageCacheMaxSize < 0 ? Runtime.getRuntime().maxMemory() / 10
+                                                               : pageCacheMaxSize);
+      this.globalMaxSize = globalMaxSize;
    }
 
    // Public
@@ -78,6 +130,44 @@ public class PagingManagerImpl implements PagingManager
    // PagingManager implementation
    // -----------------------------------------------------------------------------------------------------
 
+   public SharedPageCache getPageCache()
+   {
+      return pageCache;
+   }
+
+   public void addGlobalSize(final int size)
+   {
+      long newSize = globalSize.addAndGet(size);
+
+      if (size > 0 && globalMaxSize > 0 && newSize > globalMaxSize && System.currentTimeMillis() >= nextForcePaging)
+      {
+         forcePaging();
+      }
+      else if (size < 0 && globalMaxSize > 0 && newSize <= globalMaxSize && newSize - size > globalMaxSize)
+      {
+         // back under the limit, the BLOCK stores may have producers waiting for it
+         for (PagingStore store : stores.values())
+         {
+            store.checkMemory();
+         }
+      }
+   }
+
+   public long getGlobalSize()
+   {
+      return globalSize.get();
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return globalMaxSize;
+   }
+
+   public boolean isGlobalFull()
+   {
+      return globalMaxSize > 0 && globalSize.get() > globalMaxSize;
+   }
+
    public SimpleString[] getStoreNames()
    {
       Set<SimpleString> names = stores.keySet();
@@ -222,6 +312,68 @@ public class PagingManagerImpl implements PagingManager
 
    // Private -------------------------------------------------------
 
+   /**
+    * Forces the largest store that isn't paging yet to page, so the messages sent to it stop taking memory.
+    * The stores with the most messages in memory are the ones whose consumers are behind, while the stores whose
+    * consumers keep up stay small and keep their messages in memory.
+    * A store with less than a page of messages in memory is never forced, as paging it would hardly save anything.
+    * Once all the stores that can be forced are paging, every send would scan the stores for nothing, so the scans
+    * are done at most once every FORCE_PAGING_INTERVAL while the global size is over the limit.
+    */
+   private void forcePaging()
+   {
+      if (!forcingPaging.compareAndSet(false, true))
+      {
+         return;
+      }
+
+      try
+      {
+         PagingStore largest = null;
+
+         long largestSize = 0;
+
+         for (PagingStore store : stores.values())
+         {
+            if (store.getAddressFullMessagePolicy() != AddressFullMessagePolicy.PAGE || store.isPaging())
+            {
+               continue;
+            }
+
+            long size = store.getAddressSize();
+
+            if (size > largestSize && size >= store.getPageSizeBytes())
+            {
+               largest = store;
+
+               largestSize = size;
+            }
+         }
+
+         if (largest != null && largest.startPaging())
+         {
+            PagingManagerImpl.log.debug("Global size " + globalSize.get() +
+                                        " is over the global max size " +
+                                        globalMaxSize +
+                                        ", forcing " +
+                                        largest.getStoreName() +
+                                        " (size " +
+                                        largestSize +
+                                        ") to page");
+         }
+      }
+      catch (Exception e)
+      {
+         PagingManagerImpl.log.warn("Error forcing an address to page", e);
+      }
+      finally
+      {
+         nextForcePaging = System.currentTimeMillis() + PagingManagerImpl.FORCE_PAGING_INTERVAL;
+
+         forcingPaging.set(false);
+      }
+   }
+
    protected PagingStore newStore(final SimpleString address) 
    {
       return pagingStoreFactory.newStore(address,
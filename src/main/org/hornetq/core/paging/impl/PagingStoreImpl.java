@@ -75,6 +75,9 @@ public class PagingStoreImpl implements TestSupportPageStore
 
    private static final Logger log = Logger.getLogger(PagingStoreImpl.class);
 
+   /** Appended to the name of a page file for the name of its index file */
+   public static final String INDEX_EXTENSION = ".index";
+
    // Attributes ----------------------------------------------------
 
    private final SimpleString address;
@@ -101,6 +104,12 @@ public class PagingStoreImpl implements TestSupportPageStore
 
    private final long pageSize;
 
+   private final boolean pageIndex;
+
+   private final int pageReadAhead;
+
+   private final boolean pageCompression;
+
    private final AddressFullMessagePolicy addressFullMessagePolicy;
 
    private boolean printedDropMessagesWarning;
@@ -179,6 +188,12 @@ public class PagingStoreImpl implements TestSupportPageStore
 
       pageSize = addressSettings.getPageSizeBytes();
 
+      pageIndex = addressSettings.isPageIndex();
+
+      pageReadAhead = addressSettings.getPageReadAhead();
+
+      pageCompression = addressSettings.isPageCompression();
+
       addressFullMessagePolicy = addressSettings.getAddressFullMessagePolicy();
 
       if (addressFullMessagePolicy == AddressFullMessagePolicy.PAGE && maxSize != -1 && pageSize >= maxSize)
@@ -283,6 +298,21 @@ public class PagingStoreImpl implements TestSupportPageStore
       return pageSize;
    }
 
+   public boolean isPageIndex()
+   {
+      return pageIndex;
+   }
+
+   public int getPageReadAhead()
+   {
+      return pageReadAhead;
+   }
+
+   public boolean isPageCompression()
+   {
+      return pageCompression;
+   }
+
    public boolean isPaging()
    {
       lock.readLock().lock();
@@ -576,7 +606,14 @@ public class PagingStoreImpl implements TestSupportPageStore
 
       SequentialFile file = fileFactory.createSequentialFile(fileName, 1000);
 
-      Page page = new PageImpl(storeName, storageManager, fileFactory, file, pageNumber);
+      SequentialFile indexFile = null;
+
+      if (pageIndex)
+      {
+         indexFile = fileFactory.createSequentialFile(fileName + PagingStoreImpl.INDEX_EXTENSION, 1000);
+      }
+
+      Page page = new PageImpl(storeName, storageManager, fileFactory, file, indexFile, pageNumber, pageCompression);
 
       // To create the file
       file.open();
@@ -723,9 +760,9 @@ public class PagingStoreImpl implements TestSupportPageStore
 
    public void executeRunnableWhenMemoryAvailable(final Runnable runnable)
    {
-      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK && maxSize != -1)
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
       {
-         if (sizeInBytes.get() > maxSize)
+         if (isBlocked())
          {
             OurRunnable ourRunnable = new OurRunnable(runnable);
 
@@ -735,7 +772,7 @@ public class PagingStoreImpl implements TestSupportPageStore
             // has been added, but the check to execute was done before the element was added
             // NOTE! We do not fix this race by locking the whole thing, doing this check provides
             // MUCH better performance in a highly concurrent environment
-            if (sizeInBytes.get() <= maxSize)
+            if (!isBlocked())
             {
                // run it now
                ourRunnable.run();
@@ -748,6 +785,15 @@ public class PagingStoreImpl implements TestSupportPageStore
       runnable.run();
    }
 
+   public void checkMemory()
+   {
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK && !onMemoryFreedRunnables.isEmpty() &&
+          !isBlocked())
+      {
+         executor.execute(memoryFreedRunnablesExecutor);
+      }
+   }
+
    public void addSize(final int size)
    {
       if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
@@ -756,7 +802,9 @@ public class PagingStoreImpl implements TestSupportPageStore
          {
             long newSize = sizeInBytes.addAndGet(size);
 
-            if (newSize <= maxSize)
+            pagingManager.addGlobalSize(size);
+
+            if (newSize <= maxSize && !pagingManager.isGlobalFull())
             {
                if (!onMemoryFreedRunnables.isEmpty())
                {
@@ -764,6 +812,11 @@ public class PagingStoreImpl implements TestSupportPageStore
                }
             }
          }
+         else
+         {
+            // not limited on its own, but still blocked by the global max size
+            pagingManager.addGlobalSize(size);
+         }
 
          return;
       }
@@ -789,11 +842,16 @@ public class PagingStoreImpl implements TestSupportPageStore
             }
          }
 
+         // this may force this store or another one to page
+         pagingManager.addGlobalSize(size);
+
          return;
       }
       else if (addressFullMessagePolicy == AddressFullMessagePolicy.DROP)
       {
          sizeInBytes.addAndGet(size);
+
+         pagingManager.addGlobalSize(size);
       }
 
    }
@@ -1138,7 +1196,13 @@ public class PagingStoreImpl implements TestSupportPageStore
    // To be used on isDropMessagesWhenFull
    private boolean isFull()
    {
-      return maxSize > 0 && getAddressSize() > maxSize;
+      return maxSize > 0 && getAddressSize() > maxSize || pagingManager.isGlobalFull();
+   }
+
+   // To be used on the BLOCK policy
+   private boolean isBlocked()
+   {
+      return maxSize != -1 && sizeInBytes.get() > maxSize || pagingManager.isGlobalFull();
    }
 
    // Inner classes -------------------------------------------------
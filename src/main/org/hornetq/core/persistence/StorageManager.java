@@ -94,6 +94,9 @@ public interface StorageManager extends HornetQComponent
    void deleteMessage(long messageID) throws Exception;
 
    void storeAcknowledge(long queueID, long messageID) throws Exception;
+
+   /** Same as {@link #storeAcknowledge(long, long)}, for a batch of messages acknowledged at once */
+   void storeAcknowledgeBatch(long queueID, long[] messageIDs) throws Exception;
    
    void storeCursorAcknowledge(long queueID, PagePosition position) throws Exception;
 
@@ -111,6 +114,8 @@ public interface StorageManager extends HornetQComponent
 
    void storeAcknowledgeTransactional(long txID, long queueID, long messageID) throws Exception;
 
+   void storeAcknowledgeBatchTransactional(long txID, long queueID, long[] messageIDs) throws Exception;
+
    void storeCursorAcknowledgeTransactional(long txID, long queueID, PagePosition position) throws Exception;
    
    void deleteCursorAcknowledgeTransactional(long txID, long ackID) throws Exception;
@@ -210,6 +215,64 @@ public interface StorageManager extends HornetQComponent
     * @throws Exception 
     */
    long storePageCounterInc(long queueID, int add) throws Exception;
+
+   // Message journal statistics
+
+   /**
+    * @return the average time (in microseconds) taken to write and sync a batch on the message journal, 0 if unknown
+    */
+   long getJournalFlushLatency();
+
+   /**
+    * @return the average size (in bytes) of the batches written on the message journal, 0 if unknown
+    */
+   long getJournalBatchSize();
+
+   /**
+    * @return the average number of records on each batch written on the message journal, 0 if unknown
+    */
+   double getJournalBatchRecords();
+
+   /**
+    * @return the timeout (in nanoseconds) currently used to flush the message journal buffer,
+    *         which may be lower than the configured one when the timeout is adaptive
+    */
+   int getJournalCurrentBufferTimeout();
+
+   /**
+    * @return the number of bytes rewritten by the last compacting of the message journal
+    */
+   long getJournalCompactBytesRewritten();
+
+   /**
+    * @return the time (in microseconds) appends were blocked by the last compacting of the message journal
+    */
+   long getJournalCompactPauseTime();
+
+   /**
+    * @return the number of files reclaimed by the last compacting of the message journal
+    */
+   int getJournalCompactReclaimedFiles();
+
+   /**
+    * @return the number of times an append to the message journal had to wait for the next file to be ready
+    */
+   long getJournalFileWaitCount();
+
+   /**
+    * @return the total time (in microseconds) appends to the message journal waited for the next file to be ready
+    */
+   long getJournalFileWaitTime();
+
+   /**
+    * @return the number of records migrated from the hot journal to the message journal
+    */
+   long getJournalHotMigratedRecords();
+
+   /**
+    * @return the number of records deleted while on the hot journal, never written to the message journal
+    */
+   long getJournalHotDeletedRecords();
    
    
 }
@@ -21,8 +21,16 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.transaction.xa.Xid;
 
@@ -44,8 +52,12 @@ import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.TransactionFailureCallback;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.AbstractSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.TieredJournal;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
@@ -157,6 +169,9 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory largeMessagesFactory;
 
+   /** The factory used by the message journal, kept for its write statistics */
+   private final AbstractSequentialFileFactory journalFF;
+
    private volatile boolean started;
 
    /** Used to create Operation Contexts */
@@ -170,6 +185,14 @@ public class JournalStorageManager implements StorageManager
 
    private final int perfBlastPages;
 
+   private final int journalLoadThreads;
+
+   /** The message journal, without the replication */
+   private final JournalImpl localMessageJournal;
+
+   /** The message journal with the hot journal in front of it, null if there is no hot journal */
+   private final TieredJournal hotJournal;
+
    private final boolean createBindingsDir;
 
    private final String bindingsDir;
@@ -202,9 +225,10 @@ public class JournalStorageManager implements StorageManager
 
       this.replicator = replicator;
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+          config.getJournalType() != JournalType.MAPPED)
       {
-         throw new IllegalArgumentException("Only NIO and AsyncIO are supported journals");
+         throw new IllegalArgumentException("Only NIO, AsyncIO and Mapped are supported journals");
       }
 
       bindingsDir = config.getBindingsDirectory();
@@ -249,31 +273,21 @@ public class JournalStorageManager implements StorageManager
 
       syncTransactional = config.isJournalSyncTransactional();
 
-      SequentialFileFactory journalFF = null;
-
       if (config.getJournalType() == JournalType.ASYNCIO)
       {
          JournalStorageManager.log.info("Using AIO Journal");
-
-         journalFF = new AIOSequentialFileFactory(journalDir,
-                                                  config.getJournalBufferSize_AIO(),
-                                                  config.getJournalBufferTimeout_AIO(),
-                                                  config.isLogJournalWriteRate());
       }
       else if (config.getJournalType() == JournalType.NIO)
       {
          JournalStorageManager.log.info("Using NIO Journal");
-         journalFF = new NIOSequentialFileFactory(journalDir,
-                                                  true,
-                                                  config.getJournalBufferSize_NIO(),
-                                                  config.getJournalBufferTimeout_NIO(),
-                                                  config.isLogJournalWriteRate());
       }
-      else
+      else if (config.getJournalType() == JournalType.MAPPED)
       {
-         throw new IllegalArgumentException("Unsupported journal type " + config.getJournalType());
+         JournalStorageManager.log.info("Using Mapped Journal");
       }
 
+      journalFF = createJournalFactory(config);
+
       if (config.isBackup() && !config.isSharedStore())
       {
          idGenerator = null;
@@ -282,23 +296,71 @@ public class JournalStorageManager implements StorageManager
       {
          idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, bindingsJournal);
       }
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
-                                             config.getJournalMinFiles(),
-                                             config.getJournalCompactMinFiles(),
-                                             config.getJournalCompactPercentage(),
-                                             journalFF,
-                                             "hornetq-data",
-                                             "hq",
-                                             config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
-                                                                                           : config.getJournalMaxIO_NIO());
+      JournalImpl localMessage = new JournalImpl(config.getJournalFileSize(),
+                                                 config.getJournalMinFiles(),
+                                                 config.getJournalCompactMinFiles(),
+                                                 config.getJournalCompactPercentage(),
+                                                 journalFF,
+                                                 "hornetq-data",
+                                                 "hq",
+                                                 config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
+                                                                                               : config.getJournalMaxIO_NIO());
+
+      localMessage.setConcurrentAppend(config.isJournalConcurrentAppend());
+
+      journalLoadThreads = config.getJournalLoadThreads();
+
+      localMessage.setLoadThreads(journalLoadThreads);
+
+      localMessage.setCompactFilesPerCycle(config.getJournalCompactFilesPerCycle());
+
+      localMessage.setCompactIOBudget(config.getJournalCompactIOBudget());
+
+      localMessage.setRecordChecksum(config.isJournalRecordChecksum());
+
+      localMessage.setMaxPreallocatedFiles(config.getJournalMaxPreallocatedFiles());
+
+      localMessageJournal = localMessage;
+
+      Journal localJournal = localMessage;
+
+      if (config.getJournalHotFiles() > 0)
+      {
+         int hotFiles = Math.max(2, config.getJournalHotFiles());
+
+         // The hot journal needs its own factory, as the factory holds the buffer of the current file
+         JournalImpl hot = new JournalImpl(config.getJournalHotFileSize(),
+                                           hotFiles,
+                                           0,
+                                           0,
+                                           JournalStorageManager.createJournalFactory(config),
+                                           "hornetq-hot-data",
+                                           "hqh",
+                                           config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
+                                                                                         : config.getJournalMaxIO_NIO());
+
+         hot.setRecordChecksum(config.isJournalRecordChecksum());
+
+         hotJournal = new TieredJournal(localMessage,
+                                        hot,
+                                        (long)config.getJournalHotFileSize() * hotFiles,
+                                        JournalStorageManager.ADD_MESSAGE,
+                                        JournalStorageManager.ADD_LARGE_MESSAGE);
+
+         localJournal = hotJournal;
+      }
+      else
+      {
+         hotJournal = null;
+      }
 
       if (replicator != null)
       {
-         messageJournal = new ReplicatedJournal((byte)1, localMessage, replicator);
+         messageJournal = new ReplicatedJournal((byte)1, localJournal, replicator);
       }
       else
       {
-         messageJournal = localMessage;
+         messageJournal = localJournal;
       }
 
       largeMessagesDirectory = config.getLargeMessagesDirectory();
@@ -318,6 +380,65 @@ public class JournalStorageManager implements StorageManager
       return replicator != null;
    }
 
+   public long getJournalFlushLatency()
+   {
+      TimedBuffer buffer = journalFF.getTimedBuffer();
+      return buffer == null ? 0 : TimeUnit.NANOSECONDS.toMicros(buffer.getAverageFlushLatency());
+   }
+
+   public long getJournalBatchSize()
+   {
+      TimedBuffer buffer = journalFF.getTimedBuffer();
+      return buffer == null ? 0 : buffer.getAverageBatchSize();
+   }
+
+   public double getJournalBatchRecords()
+   {
+      TimedBuffer buffer = journalFF.getTimedBuffer();
+      return buffer == null ? 0 : buffer.getAverageBatchRecords();
+   }
+
+   public int getJournalCurrentBufferTimeout()
+   {
+      TimedBuffer buffer = journalFF.getTimedBuffer();
+      return buffer == null ? 0 : buffer.getTimeout();
+   }
+
+   public long getJournalCompactBytesRewritten()
+   {
+      return localMessageJournal.getLastCompactBytesRewritten();
+   }
+
+   public long getJournalCompactPauseTime()
+   {
+      return localMessageJournal.getLastCompactPauseTime();
+   }
+
+   public int getJournalCompactReclaimedFiles()
+   {
+      return localMessageJournal.getLastCompactReclaimedFiles();
+   }
+
+   public long getJournalFileWaitCount()
+   {
+      return localMessageJournal.getFileWaitCount();
+   }
+
+   public long getJournalFileWaitTime()
+   {
+      return localMessageJournal.getFileWaitTime();
+   }
+
+   public long getJournalHotMigratedRecords()
+   {
+      return hotJournal == null ? 0 : hotJournal.getMigratedCount();
+   }
+
+   public long getJournalHotDeletedRecords()
+   {
+      return hotJournal == null ? 0 : hotJournal.getHotDeletedCount();
+   }
+
    public void waitOnOperations() throws Exception
    {
       if (!started)
@@ -499,6 +620,16 @@ public class JournalStorageManager implements StorageManager
                                         getContext(syncNonTransactional));
    }
 
+   /** The acknowledgements are written as a single record on the journal */
+   public void storeAcknowledgeBatch(final long queueID, final long[] messageIDs) throws Exception
+   {
+      messageJournal.appendUpdateRecords(messageIDs,
+                                         JournalStorageManager.ACKNOWLEDGE_REF,
+                                         new RefEncoding(queueID),
+                                         syncNonTransactional,
+                                         getContext(syncNonTransactional));
+   }
+
    public void storeCursorAcknowledge(long queueID, PagePosition position) throws Exception
    {
       long ackID = idGenerator.generateID();
@@ -617,6 +748,14 @@ public class JournalStorageManager implements StorageManager
                                                      new RefEncoding(queueID));
    }
 
+   public void storeAcknowledgeBatchTransactional(final long txID, final long queueID, final long[] messageIDs) throws Exception
+   {
+      messageJournal.appendUpdateRecordsTransactional(txID,
+                                                      messageIDs,
+                                                      JournalStorageManager.ACKNOWLEDGE_REF,
+                                                      new RefEncoding(queueID));
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.persistence.StorageManager#storeCursorAcknowledgeTransactional(long, long, org.hornetq.core.paging.cursor.PagePosition)
     */
@@ -803,10 +942,14 @@ public class JournalStorageManager implements StorageManager
 
       Map<Long, ServerMessage> messages = new HashMap<Long, ServerMessage>();
 
+      final long startLoad = System.currentTimeMillis();
+
       JournalLoadInformation info = messageJournal.load(records,
                                                         preparedTransactions,
                                                         new LargeMessageTXFailureCallback(messages));
 
+      final long startDecode = System.currentTimeMillis();
+
       ArrayList<LargeServerMessage> largeMessages = new ArrayList<LargeServerMessage>();
 
       Map<Long, Map<Long, AddMessageRecord>> queueMap = new HashMap<Long, Map<Long, AddMessageRecord>>();
@@ -1088,43 +1231,22 @@ public class JournalStorageManager implements StorageManager
       records.clear();
       records = null;
 
-      for (Map.Entry<Long, Map<Long, AddMessageRecord>> entry : queueMap.entrySet())
-      {
-         long queueID = entry.getKey();
-
-         Map<Long, AddMessageRecord> queueRecords = entry.getValue();
-
-         Queue queue = queues.get(queueID);
+      final long startQueues = System.currentTimeMillis();
 
-         if (queue == null)
+      if (journalLoadThreads > 1 && queueMap.size() > 1)
+      {
+         reloadQueuesInParallel(postOffice, queues, queueMap);
+      }
+      else
+      {
+         for (Map.Entry<Long, Map<Long, AddMessageRecord>> entry : queueMap.entrySet())
          {
-            log.warn("Message for queue " + queueID + " which does not exist. This message will be ignored.");
-
-            continue;
-         }
-
-         Collection<AddMessageRecord> valueRecords = queueRecords.values();
-
-         for (AddMessageRecord record : valueRecords)
-         {
-            long scheduledDeliveryTime = record.scheduledDeliveryTime;
-
-            if (scheduledDeliveryTime != 0)
-            {
-               record.message.putLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME, scheduledDeliveryTime);
-            }
-
-            MessageReference ref = postOffice.reroute(record.message, queue, null);
-
-            ref.setDeliveryCount(record.deliveryCount);
-
-            if (scheduledDeliveryTime != 0)
-            {
-               record.message.removeProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
-            }
+            reloadQueue(postOffice, queues, entry.getKey(), entry.getValue());
          }
       }
 
+      final long startPrepared = System.currentTimeMillis();
+
       loadPreparedTransactions(postOffice,
                                pagingManager,
                                resourceManager,
@@ -1134,6 +1256,8 @@ public class JournalStorageManager implements StorageManager
                                duplicateIDMap,
                                pageSubscriptions);
 
+      final long endPrepared = System.currentTimeMillis();
+
       for (PageSubscription sub : pageSubscriptions.values())
       {
          sub.getCounter().processReload();
@@ -1173,6 +1297,19 @@ public class JournalStorageManager implements StorageManager
          pagingManager.processReload();
       }
 
+      JournalStorageManager.log.info("Message journal recovered in " + (System.currentTimeMillis() - startLoad) +
+                                     " ms: journal load = " +
+                                     (startDecode - startLoad) +
+                                     " ms, record decode = " +
+                                     (startQueues - startDecode) +
+                                     " ms, queue rebuild = " +
+                                     (startPrepared - startQueues) +
+                                     " ms (" +
+                                     queueMap.size() +
+                                     " queues), prepared transactions = " +
+                                     (endPrepared - startPrepared) +
+                                     " ms");
+
       if (perfBlastPages != -1)
       {
          messageJournal.perfBlast(perfBlastPages);
@@ -1186,6 +1323,106 @@ public class JournalStorageManager implements StorageManager
       return info;
    }
 
+   /**
+    * Routes the messages loaded from the journal back to their queue
+    */
+   private void reloadQueue(final PostOffice postOffice,
+                            final Map<Long, Queue> queues,
+                            final long queueID,
+                            final Map<Long, AddMessageRecord> queueRecords) throws Exception
+   {
+      Queue queue = queues.get(queueID);
+
+      if (queue == null)
+      {
+         log.warn("Message for queue " + queueID + " which does not exist. This message will be ignored.");
+
+         return;
+      }
+
+      Collection<AddMessageRecord> valueRecords = queueRecords.values();
+
+      for (AddMessageRecord record : valueRecords)
+      {
+         long scheduledDeliveryTime = record.scheduledDeliveryTime;
+
+         // The same message may be routed to other queues at the same time when reloading in parallel,
+         // and the scheduled delivery property is only set temporarily
+         synchronized (record.message)
+         {
+            if (scheduledDeliveryTime != 0)
+            {
+               record.message.putLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME, scheduledDeliveryTime);
+            }
+
+            MessageReference ref = postOffice.reroute(record.message, queue, null);
+
+            ref.setDeliveryCount(record.deliveryCount);
+
+            if (scheduledDeliveryTime != 0)
+            {
+               record.message.removeProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
+            }
+         }
+      }
+   }
+
+   /**
+    * Same as {@link #reloadQueue(PostOffice, Map, long, Map)}, but with one task per queue.
+    * The order of the messages is kept on each queue.
+    */
+   private void reloadQueuesInParallel(final PostOffice postOffice,
+                                       final Map<Long, Queue> queues,
+                                       final Map<Long, Map<Long, AddMessageRecord>> queueMap) throws Exception
+   {
+      final AtomicInteger threadCount = new AtomicInteger(0);
+
+      ExecutorService reloadExecutor = Executors.newFixedThreadPool(journalLoadThreads, new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            return new Thread(r, "JournalStorageManager::ReloadQueue-" + threadCount.incrementAndGet());
+         }
+      });
+
+      try
+      {
+         List<Future<Object>> futures = new ArrayList<Future<Object>>(queueMap.size());
+
+         for (final Map.Entry<Long, Map<Long, AddMessageRecord>> entry : queueMap.entrySet())
+         {
+            futures.add(reloadExecutor.submit(new Callable<Object>()
+            {
+               public Object call() throws Exception
+               {
+                  reloadQueue(postOffice, queues, entry.getKey(), entry.getValue());
+                  return null;
+               }
+            }));
+         }
+
+         for (Future<Object> future : futures)
+         {
+            try
+            {
+               future.get();
+            }
+            catch (ExecutionException e)
+            {
+               if (e.getCause() instanceof Exception)
+               {
+                  throw (Exception)e.getCause();
+               }
+               throw new Exception(e.getCause().getMessage(), e.getCause());
+            }
+         }
+      }
+      finally
+      {
+         reloadExecutor.shutdownNow();
+      }
+   }
+
    /**
     * @param queueID
     * @param pageSubscriptions
@@ -1496,6 +1733,43 @@ public class JournalStorageManager implements StorageManager
 
    // Private ----------------------------------------------------------------------------------
 
+   private static AbstractSequentialFileFactory createJournalFactory(final Configuration config)
+   {
+      AbstractSequentialFileFactory factory;
+
+      if (config.getJournalType() == JournalType.ASYNCIO)
+      {
+         factory = new AIOSequentialFileFactory(config.getJournalDirectory(),
+                                                config.getJournalBufferSize_AIO(),
+                                                config.getJournalBufferTimeout_AIO(),
+                                                config.isLogJournalWriteRate());
+      }
+      else if (config.getJournalType() == JournalType.NIO)
+      {
+         factory = new NIOSequentialFileFactory(config.getJournalDirectory(),
+                                                true,
+                                                config.getJournalBufferSize_NIO(),
+                                                config.getJournalBufferTimeout_NIO(),
+                                                config.isLogJournalWriteRate());
+      }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         factory = new MappedSequentialFileFactory(config.getJournalDirectory(),
+                                                   true,
+                                                   config.getJournalBufferSize_NIO(),
+                                                   config.getJournalBufferTimeout_NIO(),
+                                                   config.isLogJournalWriteRate());
+      }
+      else
+      {
+         throw new IllegalArgumentException("Unsupported journal type " + config.getJournalType());
+      }
+
+      factory.setAdaptiveBufferTimeout(config.isJournalBufferTimeoutAdaptive());
+
+      return factory;
+   }
+
    private void checkAndCreateDir(final String dir, final boolean create)
    {
       File f = new File(dir);
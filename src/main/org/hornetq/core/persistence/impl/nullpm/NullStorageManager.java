@@ -149,6 +149,10 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   public void storeAcknowledgeBatch(final long queueID, final long[] messageIDs) throws Exception
+   {
+   }
+
    public void storeMessageReferenceScheduled(final long queueID, final long messageID, final long scheduledDeliveryTime) throws Exception
    {
    }
@@ -157,6 +161,10 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   public void storeAcknowledgeBatchTransactional(final long txID, final long queueID, final long[] messageIDs) throws Exception
+   {
+   }
+
    public void deleteMessage(final long messageID) throws Exception
    {
    }
@@ -545,4 +553,59 @@ public class NullStorageManager implements StorageManager
       return 0;
    }
 
+   public long getJournalFlushLatency()
+   {
+      return 0;
+   }
+
+   public long getJournalBatchSize()
+   {
+      return 0;
+   }
+
+   public double getJournalBatchRecords()
+   {
+      return 0;
+   }
+
+   public int getJournalCurrentBufferTimeout()
+   {
+      return 0;
+   }
+
+   public long getJournalCompactBytesRewritten()
+   {
+      return 0;
+   }
+
+   public long getJournalCompactPauseTime()
+   {
+      return 0;
+   }
+
+   public int getJournalCompactReclaimedFiles()
+   {
+      return 0;
+   }
+
+   public long getJournalFileWaitCount()
+   {
+      return 0;
+   }
+
+   public long getJournalFileWaitTime()
+   {
+      return 0;
+   }
+
+   public long getJournalHotMigratedRecords()
+   {
+      return 0;
+   }
+
+   public long getJournalHotDeletedRecords()
+   {
+      return 0;
+   }
+
 }
@@ -12,6 +12,7 @@
  */
 package org.hornetq.core.protocol.core;
 
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 
 import org.hornetq.api.core.HornetQException;
@@ -51,6 +52,13 @@ public interface Channel
     */
    void sendBatched(Packet packet);
 
+   /**
+    * sends the packets on this channel, encoded one after the other into a single write on the connection.
+    *
+    * @param packets the packets to send
+    */
+   void sendBatched(List<? extends Packet> packets);
+
    /**
     * sends a packet on this channel and then blocks until it has been written to the connection.
     *
@@ -13,6 +13,7 @@
 
 package org.hornetq.core.protocol.core.impl;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -147,6 +148,65 @@ public class ChannelImpl implements Channel
       send(packet, false, true);
    }
 
+   public void sendBatched(final List<? extends Packet> packets)
+   {
+      if (packets.size() == 1)
+      {
+         send(packets.get(0), false, true);
+
+         return;
+      }
+
+      synchronized (sendLock)
+      {
+         HornetQBuffer[] buffers = new HornetQBuffer[packets.size()];
+
+         int size = 0;
+
+         for (int i = 0; i < buffers.length; i++)
+         {
+            Packet packet = packets.get(i);
+
+            packet.setChannelID(id);
+
+            buffers[i] = packet.encode(connection);
+
+            size += buffers[i].writerIndex();
+         }
+
+         lock.lock();
+
+         try
+         {
+            waitForFailover();
+
+            if (resendCache != null)
+            {
+               for (Packet packet : packets)
+               {
+                  if (packet.isRequiresConfirmations())
+                  {
+                     resendCache.add(packet);
+                  }
+               }
+            }
+         }
+         finally
+         {
+            lock.unlock();
+         }
+
+         HornetQBuffer buffer = connection.createBuffer(size);
+
+         for (HornetQBuffer packetBuffer : buffers)
+         {
+            buffer.writeBytes(packetBuffer, 0, packetBuffer.writerIndex());
+         }
+
+         connection.getTransportConnection().write(buffer, false, true);
+      }
+   }
+
    public void setTransferring(boolean transferring)
    {
       this.transferring = transferring;
@@ -166,23 +226,7 @@ public class ChannelImpl implements Channel
 
          try
          {
-            while (failingOver)
-            {
-               // TODO - don't hardcode this timeout
-               try
-               {
-                  failoverCondition.await(10000, TimeUnit.MILLISECONDS);
-               }
-               catch (InterruptedException e)
-               {
-               }
-            }
-
-            // Sanity check
-            if (transferring)
-            {
-               throw new IllegalStateException("Cannot send a packet while channel is doing failover");
-            }
+            waitForFailover();
 
             if (resendCache != null && packet.isRequiresConfirmations())
             {
@@ -473,6 +517,30 @@ public class ChannelImpl implements Channel
       }
    }
 
+   /**
+    * Must be called holding the lock
+    */
+   private void waitForFailover()
+   {
+      while (failingOver)
+      {
+         // TODO - don't hardcode this timeout
+         try
+         {
+            failoverCondition.await(10000, TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException e)
+         {
+         }
+      }
+
+      // Sanity check
+      if (transferring)
+      {
+         throw new IllegalStateException("Cannot send a packet while channel is doing failover");
+      }
+   }
+
    private void doWrite(final Packet packet)
    {
       final HornetQBuffer buffer = packet.encode(connection);
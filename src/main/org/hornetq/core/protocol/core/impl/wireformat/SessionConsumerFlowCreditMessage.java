@@ -32,17 +32,27 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
 
    private int credits;
 
+   /** The window size of the consumer, -1 if it has none or if it's not known */
+   private int windowSize = -1;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
 
    public SessionConsumerFlowCreditMessage(final long consumerID, final int credits)
+   {
+      this(consumerID, credits, -1);
+   }
+
+   public SessionConsumerFlowCreditMessage(final long consumerID, final int credits, final int windowSize)
    {
       super(PacketImpl.SESS_FLOWTOKEN);
 
       this.consumerID = consumerID;
 
       this.credits = credits;
+
+      this.windowSize = windowSize;
    }
 
    public SessionConsumerFlowCreditMessage()
@@ -62,11 +72,17 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
       return credits;
    }
 
+   public int getWindowSize()
+   {
+      return windowSize;
+   }
+
    @Override
    public void encodeRest(final HornetQBuffer buffer)
    {
       buffer.writeLong(consumerID);
       buffer.writeInt(credits);
+      buffer.writeInt(windowSize);
    }
 
    @Override
@@ -74,12 +90,17 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
    {
       consumerID = buffer.readLong();
       credits = buffer.readInt();
+      // Not sent by older clients
+      if (buffer.readable())
+      {
+         windowSize = buffer.readInt();
+      }
    }
 
    @Override
    public String toString()
    {
-      return getParentString() + ", consumerID=" + consumerID + ", credits=" + credits + "]";
+      return getParentString() + ", consumerID=" + consumerID + ", credits=" + credits + ", windowSize=" + windowSize + "]";
    }
 
    @Override
@@ -92,7 +113,7 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
 
       SessionConsumerFlowCreditMessage r = (SessionConsumerFlowCreditMessage)other;
 
-      return super.equals(other) && credits == r.credits && consumerID == r.consumerID;
+      return super.equals(other) && credits == r.credits && consumerID == r.consumerID && windowSize == r.windowSize;
    }
    // Package protected ---------------------------------------------
 
@@ -14,6 +14,7 @@ package org.hornetq.core.protocol.stomp;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,6 +26,7 @@ import org.hornetq.core.logging.Logger;
 import org.hornetq.core.message.impl.MessageImpl;
 import org.hornetq.core.persistence.OperationContext;
 import org.hornetq.core.protocol.stomp.Stomp.Headers;
+import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.QueueQueryResult;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.server.ServerSession;
@@ -144,6 +146,18 @@ class StompSession implements SessionCallback
 
    }
 
+   public int sendMessages(List<MessageReference> references, long consumerID)
+   {
+      int size = 0;
+
+      for (MessageReference reference : references)
+      {
+         size += sendMessage(reference.getMessage(), consumerID, reference.getDeliveryCount());
+      }
+
+      return size;
+   }
+
    public int sendLargeMessageContinuation(long consumerID, byte[] body, boolean continues, boolean requiresResponse)
    {
       return 0;
@@ -216,7 +230,7 @@ class StompSession implements SessionCallback
          }
       }
       session.createConsumer(consumerID, queue, SimpleString.toSimpleString(selector), false);
-      session.receiveConsumerCredits(consumerID, -1);
+      session.receiveConsumerCredits(consumerID, -1, -1);
       StompSubscription subscription = new StompSubscription(subscriptionID, ack);
       subscriptions.put(consumerID, subscription);
       // FIXME not very smart: since we can't start the consumer, we start the session
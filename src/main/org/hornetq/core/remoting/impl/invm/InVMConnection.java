@@ -23,6 +23,7 @@ import org.hornetq.spi.core.remoting.BufferHandler;
 import org.hornetq.spi.core.remoting.Connection;
 import org.hornetq.spi.core.remoting.ConnectionLifeCycleListener;
 import org.hornetq.spi.core.remoting.ReadyListener;
+import org.hornetq.utils.DataConstants;
 import org.hornetq.utils.UUIDGenerator;
 
 /**
@@ -132,9 +133,36 @@ public class InVMConnection implements Connection
                {
                   if (!closed)
                   {
-                     copied.readInt(); // read and discard
+                     int start = copied.readerIndex();
 
-                     handler.bufferReceived(id, copied);
+                     int length = copied.readInt();
+
+                     if (copied.readableBytes() == length)
+                     {
+                        handler.bufferReceived(id, copied);
+                     }
+                     else
+                     {
+                        // Several packets were written together, they are received one by one as Netty's frame
+                        // decoder would do
+                        while (true)
+                        {
+                           HornetQBuffer packet = copied.copy(start, DataConstants.SIZE_INT + length);
+
+                           packet.readInt(); // read and discard
+
+                           handler.bufferReceived(id, packet);
+
+                           start += DataConstants.SIZE_INT + length;
+
+                           if (start >= copied.writerIndex())
+                           {
+                              break;
+                           }
+
+                           length = copied.getInt(start);
+                        }
+                     }
                   }
                }
                catch (Exception e)
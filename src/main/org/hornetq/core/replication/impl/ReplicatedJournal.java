@@ -445,6 +445,65 @@ public class ReplicatedJournal implements Journal
       localJournal.appendUpdateRecordTransactional(txID, id, recordType, record);
    }
 
+   /**
+    * The backup receives one update per id, the batch is only written on the local journal
+    * @see org.hornetq.core.journal.Journal#appendUpdateRecords(long[], byte, org.hornetq.core.journal.EncodingSupport, boolean)
+    */
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync) throws Exception
+   {
+      if (ReplicatedJournal.trace)
+      {
+         ReplicatedJournal.trace("AppendUpdateRecords ids = " + ids.length + " , recordType = " + recordType);
+      }
+      for (long id : ids)
+      {
+         replicationManager.appendUpdateRecord(journalID, id, recordType, record);
+      }
+      localJournal.appendUpdateRecords(ids, recordType, record, sync);
+   }
+
+   /* (non-Javadoc)
+    * @see org.hornetq.core.journal.Journal#appendUpdateRecords(long[], byte, org.hornetq.core.journal.EncodingSupport, boolean, org.hornetq.core.journal.IOCompletion)
+    */
+   public void appendUpdateRecords(final long[] ids,
+                                   final byte recordType,
+                                   final EncodingSupport record,
+                                   final boolean sync,
+                                   final IOCompletion completionCallback) throws Exception
+   {
+      if (ReplicatedJournal.trace)
+      {
+         ReplicatedJournal.trace("AppendUpdateRecords ids = " + ids.length + " , recordType = " + recordType);
+      }
+      for (long id : ids)
+      {
+         replicationManager.appendUpdateRecord(journalID, id, recordType, record);
+      }
+      localJournal.appendUpdateRecords(ids, recordType, record, sync, completionCallback);
+   }
+
+   /* (non-Javadoc)
+    * @see org.hornetq.core.journal.Journal#appendUpdateRecordsTransactional(long, long[], byte, org.hornetq.core.journal.EncodingSupport)
+    */
+   public void appendUpdateRecordsTransactional(final long txID,
+                                                final long[] ids,
+                                                final byte recordType,
+                                                final EncodingSupport record) throws Exception
+   {
+      if (ReplicatedJournal.trace)
+      {
+         ReplicatedJournal.trace("AppendUpdateRecords txid=" + txID + " ids = " + ids.length + " , recordType = " + recordType);
+      }
+      for (long id : ids)
+      {
+         replicationManager.appendUpdateRecordTransactional(journalID, txID, id, recordType, record);
+      }
+      localJournal.appendUpdateRecordsTransactional(txID, ids, recordType, record);
+   }
+
    /**
     * @param committedRecords
     * @param preparedTransactions
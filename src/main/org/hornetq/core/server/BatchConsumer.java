@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server;
+
+import java.util.Iterator;
+
+/**
+ * 
+ * A Consumer that can take several references from a queue in a single call
+ */
+public interface BatchConsumer extends Consumer
+{
+   /**
+    * Handles the reference as {@link Consumer#handle(MessageReference)} does. If it's handled, the consumer may then
+    * take more references from the batch, while it has credits for them.
+    * 
+    * Every reference returned by the batch is removed from the queue, so it must be handled. The batch only returns
+    * references that the consumer can handle the same way as the first one.
+    */
+   HandleStatus handle(MessageReference reference, Iterator<MessageReference> batch) throws Exception;
+}
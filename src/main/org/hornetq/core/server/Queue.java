@@ -64,6 +64,11 @@ public interface Queue extends Bindable
 
    void acknowledge(Transaction tx, MessageReference ref) throws Exception;
 
+   /** Acknowledges the references at once, all of them must be on this queue */
+   void acknowledge(List<MessageReference> refs) throws Exception;
+
+   void acknowledge(Transaction tx, List<MessageReference> refs) throws Exception;
+
    void reacknowledge(Transaction tx, MessageReference ref) throws Exception;
 
    void cancel(Transaction tx, MessageReference ref) throws Exception;
@@ -80,6 +85,12 @@ public interface Queue extends Bindable
 
    int getScheduledCount();
 
+   long getNextScheduledDeliveryTime();
+
+   int getGroupCount();
+
+   int getGroupCount(Consumer consumer);
+
    List<MessageReference> getScheduledMessages();
 
    long getMessagesAdded();
@@ -25,6 +25,11 @@ public interface ScheduledDeliveryHandler
 
    int getScheduledCount();
 
+   /**
+    * @return the time of the first scheduled delivery, or 0 if there are no scheduled references
+    */
+   long getNextScheduledDeliveryTime();
+
    List<MessageReference> getScheduledReferences();
 
    List<MessageReference> cancel(Filter filter);
@@ -24,7 +24,7 @@ import org.hornetq.core.transaction.Transaction;
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  */
-public interface ServerConsumer extends Consumer
+public interface ServerConsumer extends BatchConsumer, WeightedConsumer
 {
    long getID();
    
@@ -38,6 +38,13 @@ public interface ServerConsumer extends Consumer
 
    void receiveCredits(int credits) throws Exception;
 
+   /**
+    * @return the window size the client last reported for this consumer, -1 if it didn't report one
+    */
+   int getWindowSize();
+
+   void setWindowSize(int windowSize);
+
    Queue getQueue();
 
    MessageReference removeReferenceByID(long messageID) throws Exception;
@@ -101,7 +101,10 @@ public interface ServerSession
 
    void closeConsumer(long consumerID) throws Exception;
 
-   void receiveConsumerCredits(long consumerID, int credits) throws Exception;
+   /**
+    * @param windowSize the window size of the consumer as reported by the client, -1 if it didn't report one
+    */
+   void receiveConsumerCredits(long consumerID, int credits, int windowSize) throws Exception;
 
    void sendContinuations(int packetSize, long totalBodySize, byte[] body, boolean continues) throws Exception;
 
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server;
+
+/**
+ * 
+ * A Consumer whose load is known to the queue, used when the queue doesn't dispatch round-robin
+ */
+public interface WeightedConsumer extends Consumer
+{
+   /**
+    * @return the number of references delivered to the consumer and not acknowledged yet
+    */
+   int getDeliveringCount();
+
+   /**
+    * @return the capacity of the consumer relative to the other consumers, at least 1
+    */
+   int getWeight();
+}
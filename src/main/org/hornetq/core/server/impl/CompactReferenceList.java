@@ -0,0 +1,613 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.NoSuchElementException;
+
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.PriorityLinkedList;
+
+/**
+ * The references of a queue, kept in chunks of slots instead of a node per reference.
+ *
+ * <p>A reference that was never delivered nor scheduled only carries its message and its queue, so only the message is
+ * kept, and a reference is created again when it's returned by an iterator or by {@link #poll()}. Any other reference
+ * is kept as it is. This makes a queued message cost a slot of an array instead of a reference and a node.</p>
+ *
+ * <p>Removed references leave an empty slot, and a chunk is dropped from its list once all its slots are empty. Like
+ * {@link org.hornetq.utils.LinkedListImpl}, several iterators can be used at the same time, and each of them may
+ * remove the reference it returned last.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class CompactReferenceList implements PriorityLinkedList<MessageReference>
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int CHUNK_SIZE = 256;
+
+   // Attributes ----------------------------------------------------
+
+   private final Queue queue;
+
+   private final ChunkList[] levels;
+
+   private int size;
+
+   private int lastReset;
+
+   private int highestPriority = -1;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * @return whether only the message of the reference needs to be kept
+    */
+   private static boolean isCompact(final MessageReference ref, final Queue queue)
+   {
+      return ref.getClass() == MessageReferenceImpl.class && ref.getQueue() == queue &&
+             ref.getDeliveryCount() == 0 &&
+             ref.getScheduledDeliveryTime() == 0;
+   }
+
+   // Constructors --------------------------------------------------
+
+   public CompactReferenceList(final int priorities, final Queue queue)
+   {
+      this.queue = queue;
+
+      levels = new ChunkList[priorities];
+
+      for (int i = 0; i < priorities; i++)
+      {
+         levels[i] = new ChunkList();
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   public void addHead(final MessageReference ref, final int priority)
+   {
+      checkHighest(priority);
+
+      levels[priority].addHead(compact(ref));
+
+      size++;
+   }
+
+   public void addTail(final MessageReference ref, final int priority)
+   {
+      checkHighest(priority);
+
+      levels[priority].addTail(compact(ref));
+
+      size++;
+   }
+
+   public MessageReference poll()
+   {
+      for (int i = highestPriority; i >= 0; i--)
+      {
+         ChunkList list = levels[i];
+
+         if (list.size != 0)
+         {
+            Object slot = list.poll();
+
+            size--;
+
+            if (list.size == 0 && highestPriority == i)
+            {
+               highestPriority--;
+            }
+
+            return materialize(slot);
+         }
+      }
+
+      return null;
+   }
+
+   public void clear()
+   {
+      for (ChunkList list : levels)
+      {
+         list.clear();
+      }
+
+      size = 0;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public LinkedListIterator<MessageReference> iterator()
+   {
+      return new PriorityIterator();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private void checkHighest(final int priority)
+   {
+      if (priority > highestPriority)
+      {
+         highestPriority = priority;
+
+         lastReset++;
+      }
+   }
+
+   private Object compact(final MessageReference ref)
+   {
+      if (CompactReferenceList.isCompact(ref, queue))
+      {
+         return ref.getMessage();
+      }
+
+      return ref;
+   }
+
+   private MessageReference materialize(final Object slot)
+   {
+      if (slot instanceof MessageReference)
+      {
+         return (MessageReference)slot;
+      }
+
+      return ((ServerMessage)slot).createReference(queue);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Chunk
+   {
+      final Object[] slots = new Object[CompactReferenceList.CHUNK_SIZE];
+
+      /** The first slot in use, slots before it are used by addHead */
+      int start;
+
+      /** The slot after the last one in use, slots after it are used by addTail */
+      int end;
+
+      /** The slots in use that were not removed */
+      int live;
+
+      Chunk next;
+
+      Chunk prev;
+
+      /** Dropped from the list, its next chunk is kept for the iterators still on it */
+      boolean unlinked;
+
+      Chunk(final int position)
+      {
+         start = position;
+
+         end = position;
+      }
+   }
+
+   /**
+    * The references of a priority
+    */
+   private static final class ChunkList
+   {
+      Chunk head;
+
+      Chunk tail;
+
+      int size;
+
+      void addHead(final Object slot)
+      {
+         if (head == null || head.start == 0)
+         {
+            Chunk chunk = new Chunk(CompactReferenceList.CHUNK_SIZE);
+
+            chunk.next = head;
+
+            if (head == null)
+            {
+               tail = chunk;
+            }
+            else
+            {
+               head.prev = chunk;
+            }
+
+            head = chunk;
+         }
+
+         head.slots[--head.start] = slot;
+
+         head.live++;
+
+         size++;
+      }
+
+      void addTail(final Object slot)
+      {
+         if (tail == null || tail.end == CompactReferenceList.CHUNK_SIZE)
+         {
+            Chunk chunk = new Chunk(0);
+
+            chunk.prev = tail;
+
+            Chunk oldTail = tail;
+
+            if (tail == null)
+            {
+               head = chunk;
+            }
+            else
+            {
+               tail.next = chunk;
+            }
+
+            tail = chunk;
+
+            if (oldTail != null && oldTail.live == 0)
+            {
+               // It was only kept as it was the tail
+               unlink(oldTail);
+            }
+         }
+
+         tail.slots[tail.end++] = slot;
+
+         tail.live++;
+
+         size++;
+      }
+
+      Object poll()
+      {
+         Chunk chunk = head;
+
+         while (chunk != null)
+         {
+            for (int i = chunk.start; i < chunk.end; i++)
+            {
+               Object slot = chunk.slots[i];
+
+               if (slot != null)
+               {
+                  remove(chunk, i);
+
+                  return slot;
+               }
+            }
+
+            chunk = chunk.next;
+         }
+
+         return null;
+      }
+
+      void remove(final Chunk chunk, final int position)
+      {
+         chunk.slots[position] = null;
+
+         chunk.live--;
+
+         size--;
+
+         if (position == chunk.start)
+         {
+            while (chunk.start < chunk.end && chunk.slots[chunk.start] == null)
+            {
+               chunk.start++;
+            }
+         }
+
+         if (chunk.live == 0 && chunk != tail)
+         {
+            unlink(chunk);
+         }
+      }
+
+      void clear()
+      {
+         for (Chunk chunk = head; chunk != null; chunk = chunk.next)
+         {
+            chunk.unlinked = true;
+
+            for (int i = chunk.start; i < chunk.end; i++)
+            {
+               chunk.slots[i] = null;
+            }
+         }
+
+         head = null;
+
+         tail = null;
+
+         size = 0;
+      }
+
+      private void unlink(final Chunk chunk)
+      {
+         if (chunk.unlinked)
+         {
+            return;
+         }
+
+         if (chunk.prev == null)
+         {
+            head = chunk.next;
+         }
+         else
+         {
+            chunk.prev.next = chunk.next;
+         }
+
+         if (chunk.next == null)
+         {
+            tail = chunk.prev;
+         }
+         else
+         {
+            chunk.next.prev = chunk.prev;
+         }
+
+         chunk.unlinked = true;
+      }
+   }
+
+   private final class ChunkIterator
+   {
+      private final ChunkList list;
+
+      private Chunk chunk;
+
+      /** The next slot to look at */
+      private int position;
+
+      private Chunk lastChunk;
+
+      private int lastPosition;
+
+      /** The reference created for the last slot returned, so a repeat returns the same reference */
+      private MessageReference last;
+
+      private boolean repeat;
+
+      ChunkIterator(final ChunkList list)
+      {
+         this.list = list;
+      }
+
+      boolean hasNext()
+      {
+         if (repeat)
+         {
+            if (lastChunk.slots[lastPosition] != null)
+            {
+               return true;
+            }
+
+            // Removed through another iterator
+            repeat = false;
+         }
+
+         if (chunk == null)
+         {
+            chunk = list.head;
+
+            if (chunk == null)
+            {
+               return false;
+            }
+
+            position = chunk.start;
+         }
+
+         while (true)
+         {
+            while (position < chunk.end)
+            {
+               if (chunk.slots[position] != null)
+               {
+                  return true;
+               }
+
+               position++;
+            }
+
+            if (chunk.next != null)
+            {
+               chunk = chunk.next;
+
+               position = chunk.start;
+            }
+            else if (chunk.unlinked)
+            {
+               // The list was cleared
+               chunk = null;
+
+               return hasNext();
+            }
+            else
+            {
+               return false;
+            }
+         }
+      }
+
+      MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         if (repeat)
+         {
+            repeat = false;
+
+            return last;
+         }
+
+         lastChunk = chunk;
+
+         lastPosition = position;
+
+         last = materialize(chunk.slots[position]);
+
+         position++;
+
+         return last;
+      }
+
+      void remove()
+      {
+         if (last == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         if (lastChunk.slots[lastPosition] != null)
+         {
+            list.remove(lastChunk, lastPosition);
+         }
+
+         last = null;
+
+         repeat = false;
+      }
+
+      void repeat()
+      {
+         if (last == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         repeat = true;
+      }
+   }
+
+   /**
+    * Returns the references of the highest priority first, as {@link org.hornetq.utils.PriorityLinkedListImpl} does
+    */
+   private final class PriorityIterator implements LinkedListIterator<MessageReference>
+   {
+      private int index = levels.length - 1;
+
+      private final ChunkIterator[] cachedIters = new ChunkIterator[levels.length];
+
+      private ChunkIterator lastIter;
+
+      private int resetCount = lastReset;
+
+      public void repeat()
+      {
+         if (lastIter == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         lastIter.repeat();
+      }
+
+      public void close()
+      {
+         lastIter = null;
+      }
+
+      public boolean hasNext()
+      {
+         if (lastReset > resetCount)
+         {
+            index = highestPriority;
+
+            resetCount = lastReset;
+         }
+
+         while (index >= 0)
+         {
+            lastIter = cachedIters[index];
+
+            if (lastIter == null)
+            {
+               lastIter = cachedIters[index] = new ChunkIterator(levels[index]);
+            }
+
+            if (lastIter.hasNext())
+            {
+               return true;
+            }
+
+            index--;
+
+            if (index < 0)
+            {
+               index = levels.length - 1;
+
+               break;
+            }
+         }
+
+         return false;
+      }
+
+      public MessageReference next()
+      {
+         if (lastIter == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         return lastIter.next();
+      }
+
+      public void remove()
+      {
+         if (lastIter == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         int before = lastIter.list.size;
+
+         lastIter.remove();
+
+         if (lastIter.list.size < before)
+         {
+            size--;
+
+            if (index == highestPriority && levels[index].size == 0)
+            {
+               highestPriority--;
+            }
+         }
+      }
+   }
+}
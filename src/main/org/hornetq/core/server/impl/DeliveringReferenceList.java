@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.hornetq.core.server.MessageReference;
+
+/**
+ * The references delivered to a consumer and not acknowledged yet, in delivery order and indexed by message ID.
+ *
+ * <p>Acknowledging up to a message takes the references from the head of the list, while an individual
+ * acknowledgement or an expiry takes a reference from anywhere in it. Both only cost the references they remove,
+ * however many references the consumer has.</p>
+ *
+ * <p>A message is only delivered once at a time to a consumer, so the message IDs are unique.</p>
+ */
+public class DeliveringReferenceList
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final LinkedHashMap<Long, MessageReference> refs = new LinkedHashMap<Long, MessageReference>();
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public synchronized void add(final MessageReference ref)
+   {
+      refs.put(ref.getMessage().getMessageID(), ref);
+   }
+
+   /**
+    * @return the first reference, null if there's none
+    */
+   public synchronized MessageReference peek()
+   {
+      if (refs.isEmpty())
+      {
+         return null;
+      }
+
+      return refs.values().iterator().next();
+   }
+
+   /**
+    * @return the reference of the message, null if there's none
+    */
+   public synchronized MessageReference remove(final long messageID)
+   {
+      return refs.remove(messageID);
+   }
+
+   /**
+    * Removes the references delivered before the one of the message, and that one.
+    *
+    * @return the references in delivery order, all of them if there's no reference for the message
+    */
+   public synchronized List<MessageReference> removeUpTo(final long messageID)
+   {
+      if (!refs.containsKey(messageID))
+      {
+         return removeAll();
+      }
+
+      List<MessageReference> removed = new ArrayList<MessageReference>();
+
+      Iterator<MessageReference> iter = refs.values().iterator();
+
+      while (true)
+      {
+         MessageReference ref = iter.next();
+
+         iter.remove();
+
+         removed.add(ref);
+
+         if (ref.getMessage().getMessageID() == messageID)
+         {
+            return removed;
+         }
+      }
+   }
+
+   /**
+    * @return the references in delivery order
+    */
+   public synchronized List<MessageReference> removeAll()
+   {
+      List<MessageReference> removed = new ArrayList<MessageReference>(refs.values());
+
+      refs.clear();
+
+      return removed;
+   }
+
+   public synchronized int size()
+   {
+      return refs.size();
+   }
+
+   public synchronized boolean isEmpty()
+   {
+      return refs.isEmpty();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.Consumer;
+
+/**
+ * The consumers the message groups of a queue are pinned to.
+ *
+ * <p>A group keeps the count of its messages delivered and not acknowledged yet. A group with no such message is at a
+ * boundary: it can be moved to another consumer without breaking the order of its messages. Only groups at a boundary
+ * are evicted when the table is full, or expired when they have been idle for too long.</p>
+ *
+ * <p>When the groups are rebalanced, the groups at a boundary are unpinned straight away, and the others are unpinned
+ * when their last delivered message is acknowledged. The next message of an unpinned group is pinned to the consumer it
+ * is delivered to.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class GroupTable
+{
+
+   // Constants -----------------------------------------------------
+
+   /** How many groups are looked at to find one to evict or to expire */
+   private static final int MAX_SCAN = 100;
+
+   // Attributes ----------------------------------------------------
+
+   private final int maxGroups;
+
+   private final long idleTimeout;
+
+   /** In access order, so the eldest groups are the least recently used */
+   private final LinkedHashMap<SimpleString, Group> groups = new LinkedHashMap<SimpleString, Group>(16, 0.75f, true);
+
+   private final Map<Consumer, int[]> consumerGroups = new IdentityHashMap<Consumer, int[]>();
+
+   private long nextExpiry;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param maxGroups the number of groups above which the least recently used groups are evicted, -1 for no limit
+    * @param idleTimeout the time in milliseconds after which an idle group is expired, -1 to never expire them
+    */
+   public GroupTable(final int maxGroups, final long idleTimeout)
+   {
+      this.maxGroups = maxGroups;
+
+      this.idleTimeout = idleTimeout;
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return the consumer the group is pinned to, or null if it is not pinned
+    */
+   public Consumer get(final SimpleString groupID, final long now)
+   {
+      Group group = groups.get(groupID);
+
+      if (group == null)
+      {
+         return null;
+      }
+
+      group.lastUsed = now;
+
+      return group.consumer;
+   }
+
+   /**
+    * A message of the group is about to be delivered to the consumer. The group is pinned to it if it's not pinned yet.
+    *
+    * @return true if the group was pinned by this call
+    */
+   public boolean delivering(final SimpleString groupID, final Consumer consumer, final long now)
+   {
+      Group group = groups.get(groupID);
+
+      boolean pinned = false;
+
+      if (group == null)
+      {
+         group = new Group(consumer);
+
+         groups.put(groupID, group);
+
+         consumerGroups(consumer)[0]++;
+
+         pinned = true;
+      }
+
+      group.inFlight++;
+
+      group.lastUsed = now;
+
+      if (pinned && maxGroups >= 0 && groups.size() > maxGroups)
+      {
+         evict();
+      }
+
+      return pinned;
+   }
+
+   /**
+    * The message passed to {@link #delivering(SimpleString, Consumer, long)} was not delivered after all
+    *
+    * @param pinned the value returned by {@link #delivering(SimpleString, Consumer, long)}
+    */
+   public void notDelivered(final SimpleString groupID, final boolean pinned)
+   {
+      Group group = groups.get(groupID);
+
+      if (group == null)
+      {
+         return;
+      }
+
+      if (pinned)
+      {
+         remove(groupID, group);
+      }
+      else if (group.inFlight > 0)
+      {
+         group.inFlight--;
+      }
+   }
+
+   /**
+    * A delivered message of the group was acknowledged, or it was cancelled back to the queue
+    */
+   public void completed(final SimpleString groupID, final long now)
+   {
+      Group group = groups.get(groupID);
+
+      if (group == null)
+      {
+         return;
+      }
+
+      group.lastUsed = now;
+
+      if (group.inFlight > 0)
+      {
+         group.inFlight--;
+      }
+
+      if (group.inFlight == 0 && group.rebalance)
+      {
+         remove(groupID, group);
+      }
+   }
+
+   public void removeConsumer(final Consumer consumer)
+   {
+      if (consumerGroups.remove(consumer) == null)
+      {
+         return;
+      }
+
+      Iterator<Group> iter = groups.values().iterator();
+
+      while (iter.hasNext())
+      {
+         if (iter.next().consumer == consumer)
+         {
+            iter.remove();
+         }
+      }
+   }
+
+   /**
+    * Unpins every group, each of them as soon as it's at a boundary
+    */
+   public void rebalance()
+   {
+      Iterator<Group> iter = groups.values().iterator();
+
+      while (iter.hasNext())
+      {
+         Group group = iter.next();
+
+         if (group.inFlight == 0)
+         {
+            iter.remove();
+
+            unpinned(group);
+         }
+         else
+         {
+            group.rebalance = true;
+         }
+      }
+   }
+
+   /**
+    * Removes the groups that have been idle for longer than the idle timeout. Only the least recently used groups are
+    * looked at, and not more often than every half of the timeout.
+    */
+   public void expire(final long now)
+   {
+      if (idleTimeout < 0 || now < nextExpiry || groups.isEmpty())
+      {
+         return;
+      }
+
+      nextExpiry = now + idleTimeout / 2;
+
+      Iterator<Group> iter = groups.values().iterator();
+
+      for (int i = 0; i < GroupTable.MAX_SCAN && iter.hasNext(); i++)
+      {
+         Group group = iter.next();
+
+         if (now - group.lastUsed < idleTimeout)
+         {
+            // The next ones have been used more recently
+            break;
+         }
+
+         if (group.inFlight == 0)
+         {
+            iter.remove();
+
+            unpinned(group);
+         }
+      }
+   }
+
+   public int size()
+   {
+      return groups.size();
+   }
+
+   /**
+    * @return the number of groups pinned to the consumer
+    */
+   public int getGroupCount(final Consumer consumer)
+   {
+      int[] count = consumerGroups.get(consumer);
+
+      return count == null ? 0 : count[0];
+   }
+
+   public void clear()
+   {
+      groups.clear();
+
+      consumerGroups.clear();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private void evict()
+   {
+      Iterator<Group> iter = groups.values().iterator();
+
+      // The groups with messages in flight can't be moved, if all the least recently used ones have some the table
+      // stays above its size for now
+      for (int i = 0; i < GroupTable.MAX_SCAN && iter.hasNext(); i++)
+      {
+         Group group = iter.next();
+
+         if (group.inFlight == 0)
+         {
+            iter.remove();
+
+            unpinned(group);
+
+            return;
+         }
+      }
+   }
+
+   private void remove(final SimpleString groupID, final Group group)
+   {
+      groups.remove(groupID);
+
+      unpinned(group);
+   }
+
+   private void unpinned(final Group group)
+   {
+      int[] count = consumerGroups.get(group.consumer);
+
+      if (count != null && --count[0] == 0)
+      {
+         consumerGroups.remove(group.consumer);
+      }
+   }
+
+   private int[] consumerGroups(final Consumer consumer)
+   {
+      int[] count = consumerGroups.get(consumer);
+
+      if (count == null)
+      {
+         count = new int[1];
+
+         consumerGroups.put(consumer, count);
+      }
+
+      return count;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Group
+   {
+      final Consumer consumer;
+
+      /** Messages delivered and not acknowledged yet */
+      int inFlight;
+
+      long lastUsed;
+
+      /** Unpin the group at its next boundary */
+      boolean rebalance;
+
+      Group(final Consumer consumer)
+      {
+         this.consumer = consumer;
+      }
+   }
+}
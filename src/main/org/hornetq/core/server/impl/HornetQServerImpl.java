@@ -1128,7 +1128,9 @@ public class HornetQServerImpl implements HornetQServer
                                                              executorFactory,
                                                              configuration.isJournalSyncNonTransactional()),
                                    storageManager,
-                                   addressSettingsRepository);
+                                   addressSettingsRepository,
+                                   configuration.getPageCacheMaxSize(),
+                                   configuration.getGlobalMaxSize());
    }
 
    /** 
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.PriorityLinkedList;
+import org.hornetq.utils.PriorityLinkedListImpl;
+
+/**
+ * The references of a queue, with optional indexes on message properties.
+ *
+ * <p>Every reference is kept on the main list. When an index is added for a property and a value, the references
+ * with that value are also kept on a sub list, so a consumer selecting on <code>property = 'value'</code> can iterate
+ * only the references it may match.</p>
+ *
+ * <p>A reference removed through one of the lists is only marked as removed on the others, and it is dropped from
+ * them when an iterator passes over it. Lists with too many removed references are purged.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class IndexedReferenceList implements PriorityLinkedList<MessageReference>
+{
+
+   // Constants -----------------------------------------------------
+
+   /** A list is only purged after it has this many removed references */
+   private static final int MIN_PURGE = 1000;
+
+   private static final RefList[] NO_LISTS = new RefList[0];
+
+   // Attributes ----------------------------------------------------
+
+   private final int priorities;
+
+   private final RefList main;
+
+   private final Map<SimpleString, Map<SimpleString, RefList>> indexes = new HashMap<SimpleString, Map<SimpleString, RefList>>();
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   public IndexedReferenceList(final int priorities)
+   {
+      this.priorities = priorities;
+
+      main = new RefList();
+   }
+
+   // Public --------------------------------------------------------
+
+   public void addHead(final MessageReference ref, final int priority)
+   {
+      Entry entry = new Entry(ref);
+
+      main.addHead(entry, priority);
+
+      for (RefList list : getIndexedLists(ref))
+      {
+         list.addHead(entry, priority);
+      }
+   }
+
+   public void addTail(final MessageReference ref, final int priority)
+   {
+      Entry entry = new Entry(ref);
+
+      main.addTail(entry, priority);
+
+      for (RefList list : getIndexedLists(ref))
+      {
+         list.addTail(entry, priority);
+      }
+   }
+
+   public MessageReference poll()
+   {
+      Entry entry;
+
+      do
+      {
+         entry = main.list.poll();
+      }
+      while (entry != null && entry.removed);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      removed(entry);
+
+      return entry.ref;
+   }
+
+   public void clear()
+   {
+      main.clear();
+
+      for (Map<SimpleString, RefList> index : indexes.values())
+      {
+         for (RefList list : index.values())
+         {
+            list.clear();
+         }
+      }
+   }
+
+   public int size()
+   {
+      return main.live;
+   }
+
+   public boolean isEmpty()
+   {
+      return main.live == 0;
+   }
+
+   public LinkedListIterator<MessageReference> iterator()
+   {
+      return main.iterator();
+   }
+
+   /**
+    * An iterator over the references whose property has the value.
+    * The index must have been added through {@link #addIndex(SimpleString, SimpleString)}.
+    */
+   public LinkedListIterator<MessageReference> iterator(final SimpleString property, final SimpleString value)
+   {
+      return getIndex(property, value).iterator();
+   }
+
+   /**
+    * Starts indexing the references with the value on the property, including the ones already on the list.
+    * Indexes are counted, and they are kept until removed as many times as they were added.
+    */
+   public void addIndex(final SimpleString property, final SimpleString value)
+   {
+      Map<SimpleString, RefList> index = indexes.get(property);
+
+      if (index == null)
+      {
+         index = new HashMap<SimpleString, RefList>();
+
+         indexes.put(property, index);
+      }
+
+      RefList list = index.get(value);
+
+      if (list == null)
+      {
+         list = new RefList();
+
+         index.put(value, list);
+
+         // The main iterator returns the references ordered by priority, so the sub list will keep the same order
+         LinkedListIterator<Entry> iter = main.list.iterator();
+
+         try
+         {
+            while (iter.hasNext())
+            {
+               Entry entry = iter.next();
+
+               if (!entry.removed && value.equals(entry.ref.getMessage().getObjectProperty(property)))
+               {
+                  list.addTail(entry, entry.ref.getMessage().getPriority());
+               }
+            }
+         }
+         finally
+         {
+            iter.close();
+         }
+      }
+
+      list.users++;
+   }
+
+   public void removeIndex(final SimpleString property, final SimpleString value)
+   {
+      Map<SimpleString, RefList> index = indexes.get(property);
+
+      RefList list = index == null ? null : index.get(value);
+
+      if (list == null)
+      {
+         return;
+      }
+
+      if (--list.users == 0)
+      {
+         index.remove(value);
+
+         if (index.isEmpty())
+         {
+            indexes.remove(property);
+         }
+
+         list.clear();
+      }
+   }
+
+   public boolean isIndexed(final SimpleString property, final SimpleString value)
+   {
+      Map<SimpleString, RefList> index = indexes.get(property);
+
+      return index != null && index.containsKey(value);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private RefList getIndex(final SimpleString property, final SimpleString value)
+   {
+      Map<SimpleString, RefList> index = indexes.get(property);
+
+      RefList list = index == null ? null : index.get(value);
+
+      if (list == null)
+      {
+         throw new IllegalStateException("There is no index for " + property + " = " + value);
+      }
+
+      return list;
+   }
+
+   private RefList[] getIndexedLists(final MessageReference ref)
+   {
+      if (indexes.isEmpty())
+      {
+         return IndexedReferenceList.NO_LISTS;
+      }
+
+      RefList[] lists = IndexedReferenceList.NO_LISTS;
+
+      for (Map.Entry<SimpleString, Map<SimpleString, RefList>> index : indexes.entrySet())
+      {
+         Object value = ref.getMessage().getObjectProperty(index.getKey());
+
+         RefList list = value instanceof SimpleString ? index.getValue().get(value) : null;
+
+         if (list != null)
+         {
+            RefList[] newLists = new RefList[lists.length + 1];
+
+            System.arraycopy(lists, 0, newLists, 0, lists.length);
+
+            newLists[lists.length] = list;
+
+            lists = newLists;
+         }
+      }
+
+      return lists;
+   }
+
+   private void removed(final Entry entry)
+   {
+      entry.removed = true;
+
+      main.removed();
+
+      for (RefList list : entry.lists)
+      {
+         list.removed();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Entry
+   {
+      final MessageReference ref;
+
+      RefList[] lists = IndexedReferenceList.NO_LISTS;
+
+      boolean removed;
+
+      Entry(final MessageReference ref)
+      {
+         this.ref = ref;
+      }
+   }
+
+   private final class RefList
+   {
+      final PriorityLinkedListImpl<Entry> list = new PriorityLinkedListImpl<Entry>(priorities);
+
+      /** the references on the list that were not removed */
+      int live;
+
+      /** the number of consumers using the index */
+      int users;
+
+      void addHead(final Entry entry, final int priority)
+      {
+         list.addHead(entry, priority);
+
+         added(entry);
+      }
+
+      void addTail(final Entry entry, final int priority)
+      {
+         list.addTail(entry, priority);
+
+         added(entry);
+      }
+
+      void clear()
+      {
+         list.clear();
+
+         live = 0;
+      }
+
+      LinkedListIterator<MessageReference> iterator()
+      {
+         return new RefIterator(list.iterator());
+      }
+
+      void removed()
+      {
+         if (this != main && users == 0)
+         {
+            // the index was removed
+            return;
+         }
+
+         live--;
+
+         int dead = list.size() - live;
+
+         if (dead > IndexedReferenceList.MIN_PURGE && dead > live)
+         {
+            purge();
+         }
+      }
+
+      private void added(final Entry entry)
+      {
+         live++;
+
+         if (this != main)
+         {
+            RefList[] lists = new RefList[entry.lists.length + 1];
+
+            System.arraycopy(entry.lists, 0, lists, 0, entry.lists.length);
+
+            lists[entry.lists.length] = this;
+
+            entry.lists = lists;
+         }
+      }
+
+      private void purge()
+      {
+         LinkedListIterator<Entry> iter = list.iterator();
+
+         try
+         {
+            while (iter.hasNext())
+            {
+               if (iter.next().removed)
+               {
+                  iter.remove();
+               }
+            }
+         }
+         finally
+         {
+            iter.close();
+         }
+      }
+   }
+
+   /**
+    * Skips the references removed through other lists, peeking the next live one with {@link LinkedListIterator#repeat()}
+    */
+   private final class RefIterator implements LinkedListIterator<MessageReference>
+   {
+      private final LinkedListIterator<Entry> iter;
+
+      private Entry last;
+
+      RefIterator(final LinkedListIterator<Entry> iter)
+      {
+         this.iter = iter;
+      }
+
+      public boolean hasNext()
+      {
+         while (iter.hasNext())
+         {
+            Entry entry = iter.next();
+
+            if (!entry.removed)
+            {
+               iter.repeat();
+
+               return true;
+            }
+
+            iter.remove();
+         }
+
+         return false;
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         last = iter.next();
+
+         return last.ref;
+      }
+
+      public void remove()
+      {
+         if (last == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         iter.remove();
+
+         removed(last);
+
+         last = null;
+      }
+
+      public void repeat()
+      {
+         iter.repeat();
+      }
+
+      public void close()
+      {
+         iter.close();
+      }
+   }
+}
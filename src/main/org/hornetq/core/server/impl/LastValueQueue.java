@@ -38,6 +38,9 @@ import org.hornetq.core.transaction.Transaction;
  * This is useful for example, for stock prices, where you're only interested in the latest value
  * for a particular stock
  * 
+ * With last-value-conflation on a non durable queue, the old value is dropped in place rather than acknowledged, so a
+ * high rate of updates to the same values doesn't go through the acknowledgement path.
+ * 
  * @author <a href="mailto:andy.taylor@jboss.org">Andy Taylor</a>
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a> rewrite
  */
@@ -47,6 +50,9 @@ public class LastValueQueue extends QueueImpl
 
    private final Map<SimpleString, HolderReference> map = new ConcurrentHashMap<SimpleString, HolderReference>();
 
+   /** The old value is dropped in place when it's replaced, instead of being acknowledged */
+   private final boolean conflate;
+
    public LastValueQueue(final long persistenceID,
                          final SimpleString address,
                          final SimpleString name,
@@ -72,6 +78,25 @@ public class LastValueQueue extends QueueImpl
             storageManager,
             addressSettingsRepository,
             executor);
+
+      boolean conflation = false;
+
+      if (addressSettingsRepository != null)
+      {
+         AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
+
+         conflation = settings != null && settings.isLastValueConflation();
+      }
+
+      if (conflation && durable)
+      {
+         // A durable message has to be acknowledged on a durable queue, or it would be back after a restart
+         LastValueQueue.log.warn("last-value-conflation is ignored on the durable queue " + name);
+
+         conflation = false;
+      }
+
+      conflate = conflation;
    }
 
    @Override
@@ -83,7 +108,26 @@ public class LastValueQueue extends QueueImpl
       {
          HolderReference hr = map.get(prop);
 
-         if (hr != null)
+         if (hr != null && conflate && !hr.getReference().isPaged())
+         {
+            // The old ref was never delivered and never stored, it only needs to be released as QueueImpl does once
+            // a non durable ref is acknowledged: the message gives its size back to the address when its reference
+            // count goes down
+
+            MessageReference oldRef = hr.getReference();
+
+            hr.setReference(ref);
+
+            try
+            {
+               oldRef.getMessage().decrementRefCount();
+            }
+            catch (Exception e)
+            {
+               LastValueQueue.log.warn("Unable to decrement reference counting", e);
+            }
+         }
+         else if (hr != null)
          {
             // We need to overwrite the old ref with the new one and ack the old one
 
@@ -175,6 +219,9 @@ public class LastValueQueue extends QueueImpl
 
       public void handled()
       {
+         // The delivery is counted on the queue, as the acknowledgement takes it off
+         ref.handled();
+
          // We need to remove the entry from the map just before it gets delivered
 
          map.remove(prop);
@@ -13,6 +13,7 @@
 
 package org.hornetq.core.server.impl;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.hornetq.api.core.SimpleString;
@@ -94,6 +95,19 @@ public class QueueFactoryImpl implements QueueFactory
       }
       else
       {
+         Executor[] laneExecutors = null;
+
+         // The first lane uses the queue's executor
+         if (addressSettings.getDeliveryLanes() > 1)
+         {
+            laneExecutors = new Executor[addressSettings.getDeliveryLanes() - 1];
+
+            for (int i = 0; i < laneExecutors.length; i++)
+            {
+               laneExecutors[i] = executorFactory.getExecutor();
+            }
+         }
+
          queue = new QueueImpl(persistenceID,
                                address,
                                name,
@@ -105,7 +119,8 @@ public class QueueFactoryImpl implements QueueFactory
                                postOffice,
                                storageManager,
                                addressSettingsRepository,
-                               executorFactory.getExecutor());
+                               executorFactory.getExecutor(),
+                               laneExecutors);
       }
 
       return queue;
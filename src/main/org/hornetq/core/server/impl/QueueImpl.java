@@ -14,12 +14,14 @@
 package org.hornetq.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
@@ -31,6 +33,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
@@ -38,6 +41,7 @@ import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Bindings;
 import org.hornetq.core.postoffice.DuplicateIDCache;
 import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.BatchConsumer;
 import org.hornetq.core.server.Consumer;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
@@ -45,9 +49,11 @@ import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.RoutingContext;
 import org.hornetq.core.server.ScheduledDeliveryHandler;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.WeightedConsumer;
 import org.hornetq.core.server.cluster.impl.Redistributor;
 import org.hornetq.core.settings.HierarchicalRepository;
 import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.ConsumerDispatchPolicy;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperation;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
@@ -56,7 +62,6 @@ import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.Future;
 import org.hornetq.utils.LinkedListIterator;
 import org.hornetq.utils.PriorityLinkedList;
-import org.hornetq.utils.PriorityLinkedListImpl;
 
 /**
  * Implementation of a Queue
@@ -97,24 +102,21 @@ public class QueueImpl implements Queue
    
    private final LinkedListIterator<PagedReference> pageIterator;
 
-   private final ConcurrentLinkedQueue<MessageReference> concurrentQueue = new ConcurrentLinkedQueue<MessageReference>();
+   /** The references are delivered by one lane, or by several lanes in parallel when delivery-lanes is set */
+   private final DeliveryLane[] lanes;
 
-   private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(QueueImpl.NUM_PRIORITIES);
-
-   private final List<ConsumerHolder> consumerList = new ArrayList<ConsumerHolder>();
+   private final AtomicInteger nextLane = new AtomicInteger(0);
 
    private final ScheduledDeliveryHandler scheduledDeliveryHandler;
 
-   private long messagesAdded;
-
    protected final AtomicInteger deliveringCount = new AtomicInteger(0);
 
-   private boolean paused;
-
-   private final Runnable deliverRunner = new DeliverRunner();
+   private volatile boolean paused;
 
    private final Runnable depageRunner = new DepageRunner();
 
+   private final Runnable laneDepageRunner = new LaneDepageRunner();
+
    private final StorageManager storageManager;
 
    private final HierarchicalRepository<AddressSettings> addressSettingsRepository;
@@ -135,21 +137,26 @@ public class QueueImpl implements Queue
 
    private final Set<Consumer> consumerSet = new HashSet<Consumer>();
 
-   private final Map<SimpleString, Consumer> groups = new HashMap<SimpleString, Consumer>();
-
    private volatile SimpleString expiryAddress;
 
-   private int pos;
-
    private final Executor executor;
 
-   private volatile int consumerWithFilterCount;
+   /** The groups each lane may pin before evicting the least recently used ones, -1 for no limit */
+   private final int laneMaxGroups;
+
+   private final long groupIdleTimeout;
 
-   private final Runnable concurrentPoller = new ConcurrentPoller();
+   private final boolean groupRebalance;
 
-   private volatile boolean checkDirect;
+   /** How many references a consumer may take at once, 1 when they are delivered one by one */
+   private final int deliveryBatchSize;
 
-   private volatile boolean directDeliver = true;
+   /** Only the messages of the references never delivered are kept, see CompactReferenceList */
+   private final boolean compactReferences;
+
+   private final ConsumerDispatchPolicy dispatchPolicy;
+
+   private volatile int consumerWithFilterCount;
    
    public QueueImpl(final long id,
                     final SimpleString address,
@@ -177,7 +184,6 @@ public class QueueImpl implements Queue
           executor);
    }
 
-
    public QueueImpl(final long id,
                     final SimpleString address,
                     final SimpleString name,
@@ -190,6 +196,36 @@ public class QueueImpl implements Queue
                     final StorageManager storageManager,
                     final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                     final Executor executor)
+   {
+      this(id,
+          address,
+          name,
+          filter,
+          pageSubscription,
+          durable,
+          temporary,
+          scheduledExecutor,
+          postOffice,
+          storageManager,
+          addressSettingsRepository,
+          executor,
+          null);
+   }
+
+
+   public QueueImpl(final long id,
+                    final SimpleString address,
+                    final SimpleString name,
+                    final Filter filter,
+                    final PageSubscription pageSubscription,
+                    final boolean durable,
+                    final boolean temporary,
+                    final ScheduledExecutorService scheduledExecutor,
+                    final PostOffice postOffice,
+                    final StorageManager storageManager,
+                    final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                    final Executor executor,
+                    final Executor[] laneExecutors)
    {
       this.id = id;
 
@@ -215,13 +251,39 @@ public class QueueImpl implements Queue
 
       scheduledDeliveryHandler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
 
+      int maxGroups = AddressSettings.DEFAULT_MAX_GROUPS;
+
       if (addressSettingsRepository != null)
       {
-         expiryAddress = addressSettingsRepository.getMatch(address.toString()).getExpiryAddress();
+         AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
+
+         expiryAddress = settings.getExpiryAddress();
+
+         maxGroups = settings.getMaxGroups();
+
+         groupIdleTimeout = settings.getGroupIdleTimeout();
+
+         groupRebalance = settings.isGroupRebalance();
+
+         deliveryBatchSize = settings.getDeliveryBatchSize();
+
+         compactReferences = settings.isCompactReferences();
+
+         dispatchPolicy = settings.getConsumerDispatchPolicy();
       }
       else
       {
          expiryAddress = null;
+
+         groupIdleTimeout = AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT;
+
+         groupRebalance = AddressSettings.DEFAULT_GROUP_REBALANCE;
+
+         deliveryBatchSize = AddressSettings.DEFAULT_DELIVERY_BATCH_SIZE;
+
+         compactReferences = AddressSettings.DEFAULT_COMPACT_REFERENCES;
+
+         dispatchPolicy = AddressSettings.DEFAULT_CONSUMER_DISPATCH_POLICY;
       }
       
       if (pageSubscription != null)
@@ -236,6 +298,20 @@ public class QueueImpl implements Queue
 
       this.executor = executor;
 
+      // The first lane delivers on the queue's executor, and it's locked on the queue itself, so a queue with a single
+      // lane behaves exactly as a queue without lanes
+      lanes = new DeliveryLane[laneExecutors == null ? 1 : laneExecutors.length + 1];
+
+      // The groups are spread over the lanes
+      laneMaxGroups = maxGroups < 0 ? -1 : Math.max(1, maxGroups / lanes.length);
+
+      lanes[0] = new DeliveryLane(this, executor);
+
+      for (int i = 1; i < lanes.length; i++)
+      {
+         lanes[i] = new DeliveryLane(new Object(), laneExecutors[i - 1]);
+      }
+
       checkQueueSizeFuture = scheduledExecutor.scheduleWithFixedDelay(new Runnable()
       {
          public void run()
@@ -244,7 +320,10 @@ public class QueueImpl implements Queue
             // is empty
             // We don't want to evaluate that on every delivery since that's too expensive
 
-            checkDirect = true;
+            for (DeliveryLane lane : lanes)
+            {
+               lane.checkDirect = true;
+            }
          }
       }, CHECK_QUEUE_SIZE_PERIOD, CHECK_QUEUE_SIZE_PERIOD, TimeUnit.MILLISECONDS);
    }
@@ -316,21 +395,31 @@ public class QueueImpl implements Queue
          return;
       }
 
-      messageReferences.addHead(ref, ref.getMessage().getPriority());
+      DeliveryLane lane = getLane(ref);
+
+      synchronized (lane.lock)
+      {
+         lane.messageReferences.addHead(ref, ref.getMessage().getPriority());
 
-      directDeliver = false;
+         lane.directDeliver = false;
+      }
    }
 
    public synchronized void reload(final MessageReference ref)
    {
-      if (!scheduledDeliveryHandler.checkAndSchedule(ref))
+      DeliveryLane lane = getLane(ref);
+
+      synchronized (lane.lock)
       {
-         messageReferences.addTail(ref, ref.getMessage().getPriority());
-      }
+         if (!scheduledDeliveryHandler.checkAndSchedule(ref))
+         {
+            lane.messageReferences.addTail(ref, ref.getMessage().getPriority());
+         }
 
-      directDeliver = false;
+         lane.directDeliver = false;
 
-      messagesAdded++;
+         lane.messagesAdded++;
+      }
    }
 
    public void addTail(final MessageReference ref)
@@ -340,48 +429,27 @@ public class QueueImpl implements Queue
 
    public void addTail(final MessageReference ref, final boolean direct)
    {
-      if (scheduledDeliveryHandler.checkAndSchedule(ref))
-      {
-         synchronized (this)
-         {
-            messagesAdded++;
-         }
-
-         return;
-      }
+      DeliveryLane lane = getLane(ref);
 
-      // The checkDirect flag is periodically set to true, if the delivery is specified as direct then this causes the
-      // directDeliver flag to be re-computed resulting in direct delivery if the queue is empty
-      // We don't recompute it on every delivery since executing isEmpty is expensive for a ConcurrentQueue
-      if (checkDirect)
+      if (scheduledDeliveryHandler.checkAndSchedule(ref))
       {
-         if (direct && !directDeliver && concurrentQueue.isEmpty() && messageReferences.isEmpty() && !pageIterator.hasNext() && !pageSubscription.isPaging())
+         synchronized (lane.lock)
          {
-            // We must block on the executor to ensure any async deliveries have completed or we might get out of order
-            // deliveries
-            blockOnExecutorFuture();
-
-            // Go into direct delivery mode
-            directDeliver = true;
+            lane.messagesAdded++;
          }
-         checkDirect = false;
-      }
 
-      if (direct && directDeliver && deliverDirect(ref))
-      {
          return;
       }
 
-      concurrentQueue.add(ref);
-
-      directDeliver = false;
-
-      executor.execute(concurrentPoller);
+      lane.addTail(ref, direct);
    }
 
    public void deliverAsync()
    {
-      executor.execute(deliverRunner);
+      for (DeliveryLane lane : lanes)
+      {
+         lane.deliverAsync();
+      }
    }
 
    public void close() throws Exception
@@ -409,15 +477,11 @@ public class QueueImpl implements Queue
 
    public void blockOnExecutorFuture()
    {
-      Future future = new Future();
-
-      executor.execute(future);
-
-      boolean ok = future.await(10000);
+      blockOnExecutorFuture(executor);
 
-      if (!ok)
+      for (int i = 1; i < lanes.length; i++)
       {
-         throw new IllegalStateException("Timed out waiting for future to complete");
+         blockOnExecutorFuture(lanes[i].executor);
       }
    }
 
@@ -430,54 +494,52 @@ public class QueueImpl implements Queue
          consumerWithFilterCount++;
       }
 
-      consumerList.add(new ConsumerHolder(consumer));
-
-      consumerSet.add(consumer);
-   }
-
-   public synchronized void removeConsumer(final Consumer consumer) throws Exception
-   {
-      Iterator<ConsumerHolder> iter = consumerList.iterator();
+      boolean index = consumer.getFilter() instanceof FilterImpl && isSelectorIndex();
 
-      while (iter.hasNext())
+      // Every lane delivers to every consumer
+      for (DeliveryLane lane : lanes)
       {
-         ConsumerHolder holder = iter.next();
+         ConsumerHolder holder = new ConsumerHolder(consumer);
 
-         if (holder.consumer == consumer)
+         if (index)
          {
-            if (holder.iter != null)
-            {
-               holder.iter.close();
-            }
+            FilterImpl consumerFilter = (FilterImpl)consumer.getFilter();
 
-            iter.remove();
+            if (consumerFilter.getEqualityProperty() != null)
+            {
+               holder.indexProperty = consumerFilter.getEqualityProperty();
 
-            break;
+               holder.indexValue = consumerFilter.getEqualityValue();
+            }
          }
-      }
 
-      if (pos > 0 && pos >= consumerList.size())
-      {
-         pos = consumerList.size() - 1;
+         lane.addConsumer(holder);
       }
 
-      consumerSet.remove(consumer);
-
-      List<SimpleString> gids = new ArrayList<SimpleString>();
-
-      for (SimpleString groupID : groups.keySet())
+      if (groupRebalance && !consumerSet.isEmpty())
       {
-         if (consumer == groups.get(groupID))
+         // The groups are moved as they reach a boundary, so some of them can be pinned to the new consumer
+         for (DeliveryLane lane : lanes)
          {
-            gids.add(groupID);
+            synchronized (lane.lock)
+            {
+               lane.groups.rebalance();
+            }
          }
       }
 
-      for (SimpleString gid : gids)
+      consumerSet.add(consumer);
+   }
+
+   public synchronized void removeConsumer(final Consumer consumer) throws Exception
+   {
+      for (DeliveryLane lane : lanes)
       {
-         groups.remove(gid);
+         lane.removeConsumer(consumer);
       }
 
+      consumerSet.remove(consumer);
+
       if (consumer.getFilter() != null)
       {
          consumerWithFilterCount--;
@@ -524,23 +586,9 @@ public class QueueImpl implements Queue
 
          redistributor = null;
 
-         Iterator<ConsumerHolder> iter = consumerList.iterator();
-
-         while (iter.hasNext())
-         {
-            ConsumerHolder holder = iter.next();
-
-            if (holder.consumer == redistributor)
-            {
-               iter.remove();
-
-               break;
-            }
-         }
-
-         if (pos > 0 && pos >= consumerList.size())
+         for (DeliveryLane lane : lanes)
          {
-            pos = consumerList.size() - 1;
+            lane.removeHolder(redistributor);
          }
       }
 
@@ -577,7 +625,8 @@ public class QueueImpl implements Queue
 
    public synchronized boolean hasMatchingConsumer(final ServerMessage message)
    {
-      for (ConsumerHolder holder : consumerList)
+      // The consumers are the same on every lane
+      for (ConsumerHolder holder : lanes[0].consumerList)
       {
          Consumer consumer = holder.consumer;
 
@@ -605,7 +654,14 @@ public class QueueImpl implements Queue
 
    public Iterator<MessageReference> iterator()
    {
-      return new SynchronizedIterator(messageReferences.iterator());
+      if (lanes.length == 1)
+      {
+         return new SynchronizedIterator(lanes[0]);
+      }
+      else
+      {
+         return new LanesIterator();
+      }
    }
 
    public synchronized MessageReference removeReferenceWithID(final long id) throws Exception
@@ -662,11 +718,11 @@ public class QueueImpl implements Queue
       {
          if (pageSubscription != null)
          {
-            return messageReferences.size() + getScheduledCount() + getDeliveringCount() + pageSubscription.getMessageCount();
+            return getReferencesCount() + getScheduledCount() + getDeliveringCount() + pageSubscription.getMessageCount();
          }
          else
          {
-            return messageReferences.size() + getScheduledCount() + getDeliveringCount();
+            return getReferencesCount() + getScheduledCount() + getDeliveringCount();
          }
       }
    }
@@ -676,6 +732,41 @@ public class QueueImpl implements Queue
       return scheduledDeliveryHandler.getScheduledCount();
    }
 
+   public long getNextScheduledDeliveryTime()
+   {
+      return scheduledDeliveryHandler.getNextScheduledDeliveryTime();
+   }
+
+   public int getGroupCount()
+   {
+      int count = 0;
+
+      for (DeliveryLane lane : lanes)
+      {
+         synchronized (lane.lock)
+         {
+            count += lane.groups.size();
+         }
+      }
+
+      return count;
+   }
+
+   public int getGroupCount(final Consumer consumer)
+   {
+      int count = 0;
+
+      for (DeliveryLane lane : lanes)
+      {
+         synchronized (lane.lock)
+         {
+            count += lane.groups.getGroupCount(consumer);
+         }
+      }
+
+      return count;
+   }
+
    public synchronized List<MessageReference> getScheduledMessages()
    {
       return scheduledDeliveryHandler.getScheduledReferences();
@@ -730,6 +821,53 @@ public class QueueImpl implements Queue
       }
    }
 
+   public void acknowledge(final List<MessageReference> refs) throws Exception
+   {
+      long[] messageIDs = getDurableMessageIDs(refs);
+
+      if (messageIDs.length > 0)
+      {
+         storageManager.storeAcknowledgeBatch(id, messageIDs);
+      }
+
+      // the messages are only deleted after all the acks were stored
+      for (MessageReference ref : refs)
+      {
+         if (ref.isPaged())
+         {
+            pageSubscription.ack((PagedReference)ref);
+         }
+         else
+         {
+            postAcknowledge(ref);
+         }
+      }
+   }
+
+   public void acknowledge(final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      long[] messageIDs = getDurableMessageIDs(refs);
+
+      if (messageIDs.length > 0)
+      {
+         storageManager.storeAcknowledgeBatchTransactional(tx.getID(), id, messageIDs);
+
+         tx.setContainsPersistent();
+      }
+
+      for (MessageReference ref : refs)
+      {
+         if (ref.isPaged())
+         {
+            pageSubscription.ackTx(tx, (PagedReference)ref);
+         }
+         else
+         {
+            getRefsOperation(tx).addAck(ref);
+         }
+      }
+   }
+
    public void reacknowledge(final Transaction tx, final MessageReference ref) throws Exception
    {
       ServerMessage message = ref.getMessage();
@@ -770,9 +908,16 @@ public class QueueImpl implements Queue
    {
       if (checkDLQ(reference))
       {
+         groupCompleted(reference);
+
          if (!scheduledDeliveryHandler.checkAndSchedule(reference))
          {
-            messageReferences.addHead(reference, reference.getMessage().getPriority());
+            DeliveryLane lane = getLane(reference);
+
+            synchronized (lane.lock)
+            {
+               lane.messageReferences.addHead(reference, reference.getMessage().getPriority());
+            }
          }
 
          resetAllIterators();
@@ -807,6 +952,16 @@ public class QueueImpl implements Queue
 
       synchronized (this)
       {
+         long messagesAdded = 0;
+
+         for (DeliveryLane lane : lanes)
+         {
+            synchronized (lane.lock)
+            {
+               messagesAdded += lane.messagesAdded;
+            }
+         }
+
          return messagesAdded;
       }
    }
@@ -1107,9 +1262,15 @@ public class QueueImpl implements Queue
 
    public synchronized void resetAllIterators()
    {
-      for (ConsumerHolder holder : this.consumerList)
+      for (DeliveryLane lane : lanes)
       {
-         holder.iter = null;
+         synchronized (lane.lock)
+         {
+            for (ConsumerHolder holder : lane.consumerList)
+            {
+               holder.iter = null;
+            }
+         }
       }
    }
 
@@ -1132,7 +1293,15 @@ public class QueueImpl implements Queue
    
    public boolean isDirectDeliver()
    {
-      return directDeliver;
+      for (DeliveryLane lane : lanes)
+      {
+         if (!lane.directDeliver)
+         {
+            return false;
+         }
+      }
+
+      return true;
    }
 
    // Public
@@ -1166,167 +1335,78 @@ public class QueueImpl implements Queue
    // Private
    // ------------------------------------------------------------------------------
 
-   private synchronized void doPoll()
+   /**
+    * The lane is chosen from the group ID, so all the messages of a group are delivered in order by the same lane.
+    * Messages without a group are spread over the lanes.
+    */
+   private DeliveryLane getLane(final MessageReference ref)
    {
-      MessageReference ref = concurrentQueue.poll();
-
-      if (ref != null)
+      if (lanes.length == 1)
       {
-         messageReferences.addTail(ref, ref.getMessage().getPriority());
+         return lanes[0];
+      }
 
-         messagesAdded++;
+      SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
 
-         if (consumerWithFilterCount > 0 || messageReferences.size() == 1)
-         {
-            deliver();
-         }
+      if (groupID != null)
+      {
+         return lanes[(groupID.hashCode() & Integer.MAX_VALUE) % lanes.length];
+      }
+      else
+      {
+         return lanes[(nextLane.getAndIncrement() & Integer.MAX_VALUE) % lanes.length];
       }
    }
 
-   // This method will deliver as many messages as possible until all consumers are busy or there are no more matching
-   // or available messages
-   private synchronized void deliver()
+   private int getReferencesCount()
    {
-      if (paused || consumerList.isEmpty())
+      int count = 0;
+
+      for (DeliveryLane lane : lanes)
       {
-         return;
+         synchronized (lane.lock)
+         {
+            count += lane.messageReferences.size();
+         }
       }
 
-      int busyCount = 0;
-
-      int nullRefCount = 0;
-
-      int size = consumerList.size();
+      return count;
+   }
 
-      int endPos = pos == size - 1 ? 0 : size - 1;
+   private void blockOnExecutorFuture(final Executor executor)
+   {
+      Future future = new Future();
 
-      int numRefs = messageReferences.size();
+      executor.execute(future);
 
-      int handled = 0;
+      boolean ok = future.await(10000);
 
-      while (handled < numRefs)
+      if (!ok)
       {
-         if (handled == MAX_DELIVERIES_IN_LOOP)
-         {
-            // Schedule another one - we do this to prevent a single thread getting caught up in this loop for too long
-
-            deliverAsync();
-
-            return;
-         }
-
-         ConsumerHolder holder = consumerList.get(pos);
-
-         Consumer consumer = holder.consumer;
+         throw new IllegalStateException("Timed out waiting for future to complete");
+      }
+   }
 
-         if (holder.iter == null)
-         {
-            holder.iter = messageReferences.iterator();
-         }
+   private void scheduleDepage()
+   {
+      executor.execute(depageRunner);
+   }
+   
+   private void depage()
+   {
+      if (paused || lanes[0].consumerList.isEmpty())
+      {
+         return;
+      }
 
-         MessageReference ref;
+      int concurrentSize = 0;
 
-         if (holder.iter.hasNext())
-         {
-            ref = holder.iter.next();
-         }
-         else
-         {
-            ref = null;
-         }
-
-         if (ref == null)
-         {
-            nullRefCount++;
-         }
-         else
-         {
-            if (checkExpired(ref))
-            {
-               holder.iter.remove();
-
-               continue;
-            }
-
-            Consumer groupConsumer = null;
-
-            // If a group id is set, then this overrides the consumer chosen round-robin
-
-            SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
-
-            if (groupID != null)
-            {
-               groupConsumer = groups.get(groupID);
-
-               if (groupConsumer != null)
-               {
-                  consumer = groupConsumer;
-               }
-            }
-
-            HandleStatus status = handle(ref, consumer);
-
-            if (status == HandleStatus.HANDLED)
-            {
-               holder.iter.remove();
-
-               if (groupID != null && groupConsumer == null)
-               {
-                  groups.put(groupID, consumer);
-               }
-
-               handled++;
-            }
-            else if (status == HandleStatus.BUSY)
-            {
-               holder.iter.repeat();
-
-               busyCount++;
-            }
-            else if (status == HandleStatus.NO_MATCH)
-            {
-            }
-         }
-
-         if (pos == endPos)
-         {
-            // Round robin'd all
-
-            if (nullRefCount + busyCount == size)
-            {
-               break;
-            }
-
-            nullRefCount = busyCount = 0;
-         }
-
-         pos++;
-
-         if (pos == size)
-         {
-            pos = 0;
-         }
-      }
-      
-      if (pageIterator != null && messageReferences.size() == 0 && pageIterator.hasNext())
-      {
-         scheduleDepage();
-      }
-   }
-   
-   private void scheduleDepage()
-   {
-      executor.execute(depageRunner);
-   }
-   
-   private void depage()
-   {
-      if (paused || consumerList.isEmpty())
+      for (DeliveryLane lane : lanes)
       {
-         return;
+         concurrentSize += lane.concurrentQueue.size();
       }
       
-      int msgsToDeliver = MAX_DELIVERIES_IN_LOOP - (messageReferences.size() + getScheduledCount() + concurrentQueue.size());
+      int msgsToDeliver = MAX_DELIVERIES_IN_LOOP - (getReferencesCount() + getScheduledCount() + concurrentSize);
       
       if (msgsToDeliver > 0)
       {
@@ -1362,7 +1442,10 @@ public class QueueImpl implements Queue
                                            executor,
                                            QueueImpl.REDISTRIBUTOR_BATCH_SIZE);
 
-         consumerList.add(new ConsumerHolder(redistributor));
+         for (DeliveryLane lane : lanes)
+         {
+            lane.addConsumer(new ConsumerHolder(redistributor));
+         }
 
          redistributor.start();
 
@@ -1517,75 +1600,17 @@ public class QueueImpl implements Queue
       tx.commit();
    }
 
-   /*
-    * This method delivers the reference on the callers thread - this can give us better latency in the case there is nothing in the queue
-    */
-   private synchronized boolean deliverDirect(final MessageReference ref)
+   private boolean isSelectorIndex()
    {
-      if (paused || consumerList.isEmpty())
+      // The compact references can't be indexed
+      if (addressSettingsRepository == null || compactReferences)
       {
          return false;
       }
 
-      if (checkExpired(ref))
-      {
-         return true;
-      }
-
-      int startPos = pos;
-
-      int size = consumerList.size();
-
-      while (true)
-      {
-         ConsumerHolder holder = consumerList.get(pos);
-
-         Consumer consumer = holder.consumer;
-
-         Consumer groupConsumer = null;
-
-         // If a group id is set, then this overrides the consumer chosen round-robin
-
-         SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
-
-         if (groupID != null)
-         {
-            groupConsumer = groups.get(groupID);
-
-            if (groupConsumer != null)
-            {
-               consumer = groupConsumer;
-            }
-         }
-
-         pos++;
-
-         if (pos == size)
-         {
-            pos = 0;
-         }
-
-         HandleStatus status = handle(ref, consumer);
-
-         if (status == HandleStatus.HANDLED)
-         {
-            if (groupID != null && groupConsumer == null)
-            {
-               groups.put(groupID, consumer);
-            }
-
-            messagesAdded++;
-
-            return true;
-         }
-
-         if (pos == startPos)
-         {
-            // Tried them all
+      AddressSettings settings = addressSettingsRepository.getMatch(address.toString());
 
-            return false;
-         }
-      }
+      return settings != null && settings.isSelectorIndex();
    }
 
    private boolean checkExpired(final MessageReference reference)
@@ -1611,12 +1636,27 @@ public class QueueImpl implements Queue
       }
    }
 
-   private synchronized HandleStatus handle(final MessageReference reference, final Consumer consumer)
+   /** Called with the lock of the delivering lane held */
+   private HandleStatus handle(final MessageReference reference, final Consumer consumer)
+   {
+      return handle(reference, consumer, null);
+   }
+
+   private HandleStatus handle(final MessageReference reference,
+                               final Consumer consumer,
+                               final Iterator<MessageReference> batch)
    {
       HandleStatus status;
       try
       {
-         status = consumer.handle(reference);
+         if (batch == null)
+         {
+            status = consumer.handle(reference);
+         }
+         else
+         {
+            status = ((BatchConsumer)consumer).handle(reference, batch);
+         }
       }
       catch (Throwable t)
       {
@@ -1625,13 +1665,34 @@ public class QueueImpl implements Queue
                             reference, t);
 
          // If the consumer throws an exception we remove the consumer
-         try
+         if (lanes.length == 1)
          {
-            removeConsumer(consumer);
+            try
+            {
+               removeConsumer(consumer);
+            }
+            catch (Exception e)
+            {
+               QueueImpl.log.error("Failed to remove consumer", e);
+            }
          }
-         catch (Exception e)
+         else
          {
-            QueueImpl.log.error("Failed to remove consumer", e);
+            // The queue lock must not be taken while holding the lock of a lane
+            executor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     removeConsumer(consumer);
+                  }
+                  catch (Exception e)
+                  {
+                     QueueImpl.log.error("Failed to remove consumer", e);
+                  }
+               }
+            });
          }
          return HandleStatus.BUSY;
       }
@@ -1644,6 +1705,33 @@ public class QueueImpl implements Queue
       return status;
    }
 
+   /** The IDs of the references that need their acknowledgement stored */
+   private long[] getDurableMessageIDs(final List<MessageReference> refs)
+   {
+      long[] messageIDs = new long[refs.size()];
+
+      int count = 0;
+
+      for (MessageReference ref : refs)
+      {
+         if (!ref.isPaged() && ref.getMessage().isDurable() && durable)
+         {
+            messageIDs[count++] = ref.getMessage().getMessageID();
+         }
+      }
+
+      if (count < messageIDs.length)
+      {
+         long[] durableIDs = new long[count];
+
+         System.arraycopy(messageIDs, 0, durableIDs, 0, count);
+
+         return durableIDs;
+      }
+
+      return messageIDs;
+   }
+
    private void postAcknowledge(final MessageReference ref)
    {
       final ServerMessage message = ref.getMessage();
@@ -1684,6 +1772,8 @@ public class QueueImpl implements Queue
          }
       }
 
+      queue.groupCompleted(ref);
+
       queue.deliveringCount.decrementAndGet();
       
       if (queue.deliveringCount.get() < 0)
@@ -1701,12 +1791,32 @@ public class QueueImpl implements Queue
       }
    }
 
+   /**
+    * A delivered reference was acknowledged or cancelled, so its group may have reached a boundary
+    */
+   private void groupCompleted(final MessageReference ref)
+   {
+      SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+      if (groupID != null)
+      {
+         DeliveryLane lane = getLane(ref);
+
+         synchronized (lane.lock)
+         {
+            lane.groups.completed(groupID, System.currentTimeMillis());
+         }
+      }
+   }
+
    void postRollback(final LinkedList<MessageReference> refs)
    {
       synchronized (this)
       {
          for (MessageReference ref : refs)
          {
+            groupCompleted(ref);
+
             addHead(ref);
          }
 
@@ -1731,6 +1841,11 @@ public class QueueImpl implements Queue
       final Consumer consumer;
 
       LinkedListIterator<MessageReference> iter;
+
+      /** The property and value of the consumer's filter when the queue has an index for them */
+      SimpleString indexProperty;
+
+      SimpleString indexValue;
    }
 
    private final class RefsOperation implements TransactionOperation
@@ -1835,92 +1950,1107 @@ public class QueueImpl implements Queue
       }
    }
 
-   private class DeliverRunner implements Runnable
+   /**
+    * A partition of the queue with its own references, lock and executor.
+    *
+    * Every lane delivers to every consumer, so the lanes of a queue deliver in parallel. The messages of a group are
+    * always routed to the same lane, so they are still delivered in order. An idle lane steals references without a
+    * group from the busiest lane.
+    */
+   private final class DeliveryLane
    {
-      public void run()
+      final Object lock;
+
+      final Executor executor;
+
+      final ConcurrentLinkedQueue<MessageReference> concurrentQueue = new ConcurrentLinkedQueue<MessageReference>();
+
+      final PriorityLinkedList<MessageReference> messageReferences;
+
+      /** The same list as messageReferences, null when the references are compact */
+      final IndexedReferenceList indexedReferences;
+
+      final List<ConsumerHolder> consumerList = new ArrayList<ConsumerHolder>();
+
+      final GroupTable groups = new GroupTable(laneMaxGroups, groupIdleTimeout);
+
+      int pos;
+
+      long messagesAdded;
+
+      volatile boolean checkDirect;
+
+      volatile boolean directDeliver = true;
+
+      /** Expired references found while holding the lock, they are expired after the lock is released */
+      private List<MessageReference> expiredRefs;
+
+      final Runnable deliverRunner = new DeliverRunner(this);
+
+      final Runnable concurrentPoller = new ConcurrentPoller(this);
+
+      final Runnable stealRunner = new StealRunner(this);
+
+      final ReferenceBatch batch = new ReferenceBatch();
+
+      /** The consumers already tried, when the consumers are picked by their load */
+      private boolean[] skipped = new boolean[0];
+
+      DeliveryLane(final Object lock, final Executor executor)
       {
-         try
+         this.lock = lock;
+
+         this.executor = executor;
+
+         if (compactReferences)
          {
-            deliver();
+            messageReferences = new CompactReferenceList(QueueImpl.NUM_PRIORITIES, QueueImpl.this);
+
+            indexedReferences = null;
          }
-         catch (Exception e)
+         else
          {
-            log.error("Failed to deliver", e);
+            indexedReferences = new IndexedReferenceList(QueueImpl.NUM_PRIORITIES);
+
+            messageReferences = indexedReferences;
          }
       }
-   }
 
-   private class DepageRunner implements Runnable
-   {
-      public void run()
+      void addTail(final MessageReference ref, final boolean direct)
       {
-         try
+         // The checkDirect flag is periodically set to true, if the delivery is specified as direct then this causes
+         // the directDeliver flag to be re-computed resulting in direct delivery if the lane is empty
+         // We don't recompute it on every delivery since executing isEmpty is expensive for a ConcurrentQueue
+         if (checkDirect)
          {
-            depage();
+            if (direct && !directDeliver &&
+                concurrentQueue.isEmpty() &&
+                messageReferences.isEmpty() &&
+                !pageIterator.hasNext() &&
+                !pageSubscription.isPaging())
+            {
+               // We must block on the executor to ensure any async deliveries have completed or we might get out of
+               // order deliveries
+               blockOnExecutorFuture(executor);
+
+               // Go into direct delivery mode
+               directDeliver = true;
+            }
+            checkDirect = false;
          }
-         catch (Exception e)
+
+         if (direct && directDeliver && deliverDirect(ref))
          {
-            log.error("Failed to deliver", e);
+            return;
          }
-      }
-   }
 
-   private class ConcurrentPoller implements Runnable
-   {
-      public void run()
-      {
-         doPoll();
-      }
-   }
+         concurrentQueue.add(ref);
 
-   /* For external use we need to use a synchronized version since the list is not thread safe */
-   private class SynchronizedIterator implements LinkedListIterator<MessageReference>
-   {
-      private final LinkedListIterator<MessageReference> iter;
+         directDeliver = false;
 
-      SynchronizedIterator(LinkedListIterator<MessageReference> iter)
-      {
-         this.iter = iter;
+         executor.execute(concurrentPoller);
       }
 
-      public void close()
+      void deliverAsync()
       {
-         synchronized (QueueImpl.this)
-         {
-            iter.close();
-         }
+         executor.execute(deliverRunner);
       }
 
-      public void repeat()
+      void addConsumer(final ConsumerHolder holder)
       {
-         synchronized (QueueImpl.this)
+         synchronized (lock)
          {
-            iter.repeat();
+            if (holder.indexProperty != null)
+            {
+               indexedReferences.addIndex(holder.indexProperty, holder.indexValue);
+            }
+
+            consumerList.add(holder);
          }
       }
 
-      public boolean hasNext()
+      void removeConsumer(final Consumer consumer)
       {
-         synchronized (QueueImpl.this)
+         synchronized (lock)
          {
-            return iter.hasNext();
+            removeHolder(consumer);
+
+            groups.removeConsumer(consumer);
          }
       }
 
-      public MessageReference next()
+      void removeHolder(final Consumer consumer)
       {
-         synchronized (QueueImpl.this)
+         synchronized (lock)
          {
-            return iter.next();
+            Iterator<ConsumerHolder> iter = consumerList.iterator();
+
+            while (iter.hasNext())
+            {
+               ConsumerHolder holder = iter.next();
+
+               if (holder.consumer == consumer)
+               {
+                  if (holder.iter != null)
+                  {
+                     holder.iter.close();
+                  }
+
+                  if (holder.indexProperty != null)
+                  {
+                     indexedReferences.removeIndex(holder.indexProperty, holder.indexValue);
+                  }
+
+                  iter.remove();
+
+                  break;
+               }
+            }
+
+            if (pos > 0 && pos >= consumerList.size())
+            {
+               pos = consumerList.size() - 1;
+            }
          }
       }
 
-      public void remove()
+      void doPoll()
       {
-         synchronized (QueueImpl.this)
+         synchronized (lock)
          {
-            iter.remove();
-         }
+            MessageReference ref = concurrentQueue.poll();
+
+            if (ref == null)
+            {
+               return;
+            }
+
+            messageReferences.addTail(ref, ref.getMessage().getPriority());
+
+            messagesAdded++;
+
+            if (consumerWithFilterCount == 0 && messageReferences.size() != 1)
+            {
+               return;
+            }
+         }
+
+         deliver();
+      }
+
+      // This method will deliver as many messages as possible until all consumers are busy or there are no more
+      // matching or available messages
+      void deliver()
+      {
+         boolean empty;
+
+         synchronized (lock)
+         {
+            if (paused || consumerList.isEmpty())
+            {
+               return;
+            }
+
+            // false if another delivery was scheduled
+            empty = deliverReferences() && messageReferences.isEmpty();
+         }
+
+         expirePending();
+
+         if (empty)
+         {
+            if (pageIterator != null)
+            {
+               if (lanes.length == 1)
+               {
+                  if (pageIterator.hasNext())
+                  {
+                     scheduleDepage();
+                  }
+               }
+               else
+               {
+                  // The page iterator is only used from the queue's executor
+                  QueueImpl.this.executor.execute(laneDepageRunner);
+               }
+            }
+
+            if (lanes.length > 1 && concurrentQueue.isEmpty())
+            {
+               executor.execute(stealRunner);
+            }
+         }
+      }
+
+      boolean deliverDirect(final MessageReference ref)
+      {
+         synchronized (lock)
+         {
+            if (paused || consumerList.isEmpty())
+            {
+               return false;
+            }
+
+            if (!isExpired(ref))
+            {
+               return deliverDirectLocked(ref);
+            }
+         }
+
+         expirePending();
+
+         return true;
+      }
+
+      /**
+       * Moves up to half of the references without a group from the lane with the most references to this lane.
+       */
+      void steal()
+      {
+         if (paused)
+         {
+            return;
+         }
+
+         synchronized (lock)
+         {
+            if (consumerList.isEmpty() || !messageReferences.isEmpty())
+            {
+               return;
+            }
+         }
+
+         DeliveryLane victim = null;
+
+         int victimSize = 1;
+
+         for (DeliveryLane lane : lanes)
+         {
+            if (lane != this)
+            {
+               int size;
+
+               synchronized (lane.lock)
+               {
+                  size = lane.messageReferences.size();
+               }
+
+               if (size > victimSize)
+               {
+                  victim = lane;
+
+                  victimSize = size;
+               }
+            }
+         }
+
+         if (victim == null)
+         {
+            return;
+         }
+
+         List<MessageReference> stolen = new ArrayList<MessageReference>();
+
+         synchronized (victim.lock)
+         {
+            int max = Math.min(victim.messageReferences.size() / 2, QueueImpl.MAX_DELIVERIES_IN_LOOP);
+
+            int scanned = 0;
+
+            LinkedListIterator<MessageReference> iter = victim.messageReferences.iterator();
+
+            try
+            {
+               // The scan is bounded, the lane could be full of grouped references
+               while (stolen.size() < max && scanned++ < QueueImpl.MAX_DELIVERIES_IN_LOOP && iter.hasNext())
+               {
+                  MessageReference ref = iter.next();
+
+                  if (ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID) == null)
+                  {
+                     iter.remove();
+
+                     stolen.add(ref);
+                  }
+               }
+            }
+            finally
+            {
+               iter.close();
+            }
+         }
+
+         if (stolen.isEmpty())
+         {
+            return;
+         }
+
+         synchronized (lock)
+         {
+            for (MessageReference ref : stolen)
+            {
+               messageReferences.addTail(ref, ref.getMessage().getPriority());
+            }
+         }
+
+         deliver();
+      }
+
+      /**
+       * @return false if the loop was interrupted and another delivery was scheduled
+       */
+      private boolean deliverReferences()
+      {
+         int busyCount = 0;
+
+         int nullRefCount = 0;
+
+         int size = consumerList.size();
+
+         int endPos = pos == size - 1 ? 0 : size - 1;
+
+         int numRefs = messageReferences.size();
+
+         int handled = 0;
+
+         long now = System.currentTimeMillis();
+
+         groups.expire(now);
+
+         boolean byLoad = dispatchPolicy != ConsumerDispatchPolicy.ROUND_ROBIN;
+
+         if (byLoad)
+         {
+            resetSkipped(size);
+
+            pos = selectConsumer();
+         }
+
+         while (handled < numRefs)
+         {
+            if (handled >= QueueImpl.MAX_DELIVERIES_IN_LOOP)
+            {
+               // Schedule another one - we do this to prevent a single thread getting caught up in this loop for too
+               // long
+
+               deliverAsync();
+
+               return false;
+            }
+
+            ConsumerHolder holder = consumerList.get(pos);
+
+            Consumer consumer = holder.consumer;
+
+            if (holder.iter == null)
+            {
+               if (holder.indexProperty != null)
+               {
+                  // Only the references with the value the consumer selects on
+                  holder.iter = indexedReferences.iterator(holder.indexProperty, holder.indexValue);
+               }
+               else
+               {
+                  holder.iter = messageReferences.iterator();
+               }
+            }
+
+            MessageReference ref;
+
+            if (holder.iter.hasNext())
+            {
+               ref = holder.iter.next();
+            }
+            else
+            {
+               ref = null;
+            }
+
+            if (ref == null)
+            {
+               nullRefCount++;
+
+               if (byLoad)
+               {
+                  // it has nothing more to take in this loop
+                  skipped[pos] = true;
+               }
+            }
+            else
+            {
+               if (isExpired(ref))
+               {
+                  holder.iter.remove();
+
+                  continue;
+               }
+
+               Consumer groupConsumer = null;
+
+               // If a group id is set, then this overrides the consumer chosen round-robin
+
+               SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+               boolean pinned = false;
+
+               if (groupID != null)
+               {
+                  groupConsumer = groups.get(groupID, now);
+
+                  if (groupConsumer != null)
+                  {
+                     consumer = groupConsumer;
+                  }
+
+                  // Before handling, as the message may be acknowledged before handle returns
+                  pinned = groups.delivering(groupID, consumer, now);
+               }
+
+               HandleStatus status;
+
+               boolean removed = false;
+
+               if (groupID == null && deliveryBatchSize > 1 &&
+                   consumer instanceof BatchConsumer &&
+                   consumer.getFilter() == null)
+               {
+                  batch.start(holder.iter, deliveryBatchSize - 1);
+
+                  status = handle(ref, consumer, batch);
+
+                  removed = batch.finish();
+
+                  handled += batch.taken;
+               }
+               else
+               {
+                  status = handle(ref, consumer);
+               }
+
+               if (status == HandleStatus.HANDLED)
+               {
+                  if (!removed)
+                  {
+                     holder.iter.remove();
+                  }
+
+                  handled++;
+               }
+               else
+               {
+                  if (groupID != null)
+                  {
+                     groups.notDelivered(groupID, pinned);
+                  }
+
+                  if (status == HandleStatus.BUSY)
+                  {
+                     if (!removed)
+                     {
+                        holder.iter.repeat();
+                     }
+
+                     busyCount++;
+
+                     if (byLoad)
+                     {
+                        skipped[pos] = true;
+                     }
+                  }
+               }
+            }
+
+            if (byLoad)
+            {
+               pos = selectConsumer();
+
+               if (pos == -1)
+               {
+                  // All the consumers are busy or have nothing to take
+
+                  pos = 0;
+
+                  break;
+               }
+
+               continue;
+            }
+
+            if (pos == endPos)
+            {
+               // Round robin'd all
+
+               if (nullRefCount + busyCount == size)
+               {
+                  break;
+               }
+
+               nullRefCount = busyCount = 0;
+            }
+
+            pos++;
+
+            if (pos == size)
+            {
+               pos = 0;
+            }
+         }
+
+         return true;
+      }
+
+      private boolean deliverDirectLocked(final MessageReference ref)
+      {
+         int startPos = pos;
+
+         long now = System.currentTimeMillis();
+
+         int size = consumerList.size();
+
+         boolean byLoad = dispatchPolicy != ConsumerDispatchPolicy.ROUND_ROBIN;
+
+         if (byLoad)
+         {
+            resetSkipped(size);
+
+            pos = selectConsumer();
+         }
+
+         while (true)
+         {
+            int current = pos;
+
+            ConsumerHolder holder = consumerList.get(pos);
+
+            Consumer consumer = holder.consumer;
+
+            Consumer groupConsumer = null;
+
+            // If a group id is set, then this overrides the consumer chosen round-robin
+
+            SimpleString groupID = ref.getMessage().getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+            boolean pinned = false;
+
+            if (groupID != null)
+            {
+               groupConsumer = groups.get(groupID, now);
+
+               if (groupConsumer != null)
+               {
+                  consumer = groupConsumer;
+               }
+
+               pinned = groups.delivering(groupID, consumer, now);
+            }
+
+            if (!byLoad)
+            {
+               pos++;
+
+               if (pos == size)
+               {
+                  pos = 0;
+               }
+            }
+
+            HandleStatus status = handle(ref, consumer);
+
+            if (status == HandleStatus.HANDLED)
+            {
+               messagesAdded++;
+
+               return true;
+            }
+
+            if (groupID != null)
+            {
+               groups.notDelivered(groupID, pinned);
+            }
+
+            if (byLoad)
+            {
+               skipped[current] = true;
+
+               pos = selectConsumer();
+
+               if (pos == -1)
+               {
+                  // Tried them all
+
+                  pos = current;
+
+                  return false;
+               }
+            }
+            else if (pos == startPos)
+            {
+               // Tried them all
+
+               return false;
+            }
+         }
+      }
+
+      private void resetSkipped(final int size)
+      {
+         if (skipped.length < size)
+         {
+            skipped = new boolean[size];
+         }
+         else
+         {
+            Arrays.fill(skipped, 0, size, false);
+         }
+      }
+
+      /**
+       * Picks the consumer with the fewest references delivered and not acknowledged, divided by its weight when the
+       * policy is WEIGHTED, among the consumers not skipped. The consumers are looked at from the one after pos, so
+       * consumers with the same load are taken in turn.
+       * 
+       * @return the position of the consumer, -1 if all of them are skipped
+       */
+      private int selectConsumer()
+      {
+         int size = consumerList.size();
+
+         int selected = -1;
+
+         long selectedLoad = 0;
+
+         long selectedWeight = 1;
+
+         for (int i = 1; i <= size; i++)
+         {
+            int candidate = (pos + i) % size;
+
+            if (skipped[candidate])
+            {
+               continue;
+            }
+
+            Consumer consumer = consumerList.get(candidate).consumer;
+
+            long load = 0;
+
+            long weight = 1;
+
+            if (consumer instanceof WeightedConsumer)
+            {
+               WeightedConsumer weighted = (WeightedConsumer)consumer;
+
+               load = weighted.getDeliveringCount();
+
+               if (dispatchPolicy == ConsumerDispatchPolicy.WEIGHTED)
+               {
+                  weight = weighted.getWeight();
+               }
+            }
+
+            // load / weight < selectedLoad / selectedWeight
+            if (selected == -1 || load * selectedWeight < selectedLoad * weight)
+            {
+               selected = candidate;
+
+               selectedLoad = load;
+
+               selectedWeight = weight;
+            }
+         }
+
+         return selected;
+      }
+
+      /**
+       * Expiring a reference acknowledges it, which takes the queue lock, so with more than one lane the expired
+       * references are only collected while the lane is locked
+       */
+      private boolean isExpired(final MessageReference ref)
+      {
+         if (lanes.length == 1)
+         {
+            return checkExpired(ref);
+         }
+
+         if (ref.getMessage().isExpired())
+         {
+            if (expiredRefs == null)
+            {
+               expiredRefs = new ArrayList<MessageReference>();
+            }
+
+            expiredRefs.add(ref);
+
+            return true;
+         }
+
+         return false;
+      }
+
+      private void expirePending()
+      {
+         List<MessageReference> refs;
+
+         synchronized (lock)
+         {
+            refs = expiredRefs;
+
+            expiredRefs = null;
+         }
+
+         if (refs != null)
+         {
+            for (MessageReference ref : refs)
+            {
+               checkExpired(ref);
+            }
+         }
+      }
+   }
+
+   private class DeliverRunner implements Runnable
+   {
+      private final DeliveryLane lane;
+
+      DeliverRunner(final DeliveryLane lane)
+      {
+         this.lane = lane;
+      }
+
+      public void run()
+      {
+         try
+         {
+            lane.deliver();
+         }
+         catch (Exception e)
+         {
+            log.error("Failed to deliver", e);
+         }
+      }
+   }
+
+   /**
+    * The references after the one being handled that a {@link BatchConsumer} can take with it. The batch stops at the
+    * first reference that has to go through the normal delivery: one with a group, a large message or an expired one.
+    *
+    * The reference being handled is only removed when the consumer asks for more, which is after it handled it.
+    */
+   private static class ReferenceBatch implements Iterator<MessageReference>
+   {
+      private LinkedListIterator<MessageReference> iter;
+
+      private int remaining;
+
+      private boolean firstRemoved;
+
+      private MessageReference next;
+
+      int taken;
+
+      void start(final LinkedListIterator<MessageReference> iter, final int max)
+      {
+         this.iter = iter;
+
+         remaining = max;
+
+         firstRemoved = false;
+
+         next = null;
+
+         taken = 0;
+      }
+
+      /**
+       * @return whether the reference that was handled was removed
+       */
+      boolean finish()
+      {
+         if (next != null)
+         {
+            // It was looked at but not taken
+            iter.repeat();
+
+            next = null;
+         }
+
+         iter = null;
+
+         return firstRemoved;
+      }
+
+      public boolean hasNext()
+      {
+         if (!firstRemoved)
+         {
+            iter.remove();
+
+            firstRemoved = true;
+         }
+
+         if (next != null)
+         {
+            return true;
+         }
+
+         if (remaining > 0 && iter.hasNext())
+         {
+            MessageReference ref = iter.next();
+
+            ServerMessage message = ref.getMessage();
+
+            if (message.isLargeMessage() || message.isExpired() ||
+                message.getSimpleStringProperty(Message.HDR_GROUP_ID) != null)
+            {
+               iter.repeat();
+
+               remaining = 0;
+
+               return false;
+            }
+
+            next = ref;
+
+            return true;
+         }
+
+         return false;
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         MessageReference ref = next;
+
+         next = null;
+
+         iter.remove();
+
+         remaining--;
+
+         taken++;
+
+         return ref;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+   private class DepageRunner implements Runnable
+   {
+      public void run()
+      {
+         try
+         {
+            depage();
+         }
+         catch (Exception e)
+         {
+            log.error("Failed to deliver", e);
+         }
+      }
+   }
+
+   /** Depages when a lane runs out of references, it runs on the queue's executor */
+   private class LaneDepageRunner implements Runnable
+   {
+      public void run()
+      {
+         try
+         {
+            if (pageIterator.hasNext())
+            {
+               depage();
+            }
+         }
+         catch (Exception e)
+         {
+            log.error("Failed to deliver", e);
+         }
+      }
+   }
+
+   private class ConcurrentPoller implements Runnable
+   {
+      private final DeliveryLane lane;
+
+      ConcurrentPoller(final DeliveryLane lane)
+      {
+         this.lane = lane;
+      }
+
+      public void run()
+      {
+         lane.doPoll();
+      }
+   }
+
+   private class StealRunner implements Runnable
+   {
+      private final DeliveryLane lane;
+
+      StealRunner(final DeliveryLane lane)
+      {
+         this.lane = lane;
+      }
+
+      public void run()
+      {
+         try
+         {
+            lane.steal();
+         }
+         catch (Exception e)
+         {
+            log.error("Failed to deliver", e);
+         }
+      }
+   }
+
+   /* For external use we need to use a synchronized version since the list is not thread safe */
+   private class SynchronizedIterator implements LinkedListIterator<MessageReference>
+   {
+      private final Object lock;
+
+      private final LinkedListIterator<MessageReference> iter;
+
+      SynchronizedIterator(final DeliveryLane lane)
+      {
+         lock = lane.lock;
+
+         synchronized (lock)
+         {
+            iter = lane.messageReferences.iterator();
+         }
+      }
+
+      public void close()
+      {
+         synchronized (lock)
+         {
+            iter.close();
+         }
+      }
+
+      public void repeat()
+      {
+         synchronized (lock)
+         {
+            iter.repeat();
+         }
+      }
+
+      public boolean hasNext()
+      {
+         synchronized (lock)
+         {
+            return iter.hasNext();
+         }
+      }
+
+      public MessageReference next()
+      {
+         synchronized (lock)
+         {
+            return iter.next();
+         }
+      }
+
+      public void remove()
+      {
+         synchronized (lock)
+         {
+            iter.remove();
+         }
+      }
+
+   }
+
+   /* Iterates the references of every lane, one lane after the other */
+   private class LanesIterator implements LinkedListIterator<MessageReference>
+   {
+      private final SynchronizedIterator[] iters = new SynchronizedIterator[lanes.length];
+
+      private int lane;
+
+      private int lastLane = -1;
+
+      LanesIterator()
+      {
+         iters[0] = new SynchronizedIterator(lanes[0]);
+      }
+
+      public void close()
+      {
+         for (SynchronizedIterator iter : iters)
+         {
+            if (iter != null)
+            {
+               iter.close();
+            }
+         }
+      }
+
+      public void repeat()
+      {
+         if (lastLane == -1)
+         {
+            throw new NoSuchElementException();
+         }
+
+         iters[lastLane].repeat();
+
+         lane = lastLane;
+      }
+
+      public boolean hasNext()
+      {
+         while (!iters[lane].hasNext())
+         {
+            if (lane == lanes.length - 1)
+            {
+               return false;
+            }
+
+            lane++;
+
+            if (iters[lane] == null)
+            {
+               iters[lane] = new SynchronizedIterator(lanes[lane]);
+            }
+         }
+
+         return true;
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         lastLane = lane;
+
+         return iters[lane].next();
+      }
+
+      public void remove()
+      {
+         if (lastLane == -1)
+         {
+            throw new NoSuchElementException();
+         }
+
+         iters[lastLane].remove();
       }
 
    }
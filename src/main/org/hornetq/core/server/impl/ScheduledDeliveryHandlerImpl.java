@@ -13,21 +13,28 @@
 package org.hornetq.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.ScheduledDeliveryHandler;
 
 /**
  * Handles scheduling deliveries to a queue at the correct time.
- * 
+ *
+ * The scheduled references are kept on a hierarchical timing wheel driven by a single task on the scheduled executor,
+ * instead of scheduling one task per reference. The references due on the same tick are added to the queue as a
+ * batch.
+ *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
  * @author <a href="jmesnil@redhat.com">Jeff Mesnil</a>
@@ -39,13 +46,57 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    private static final boolean trace = ScheduledDeliveryHandlerImpl.log.isTraceEnabled();
 
+   /** The resolution of the wheel in milliseconds, a reference is never delivered before its delivery time */
+   public static final long DEFAULT_TICK = 10;
+
+   private static final int WHEEL_BITS = 9;
+
+   /** Each level of the wheel has this many slots */
+   private static final int WHEEL_SIZE = 1 << ScheduledDeliveryHandlerImpl.WHEEL_BITS;
+
+   private static final int WHEEL_MASK = ScheduledDeliveryHandlerImpl.WHEEL_SIZE - 1;
+
+   private static final Comparator<ScheduledEntry> DELIVERY_ORDER = new Comparator<ScheduledEntry>()
+   {
+      public int compare(final ScheduledEntry e1, final ScheduledEntry e2)
+      {
+         long t1 = e1.deliveryTime;
+         long t2 = e2.deliveryTime;
+
+         return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+      }
+   };
+
    private final ScheduledExecutorService scheduledExecutor;
 
-   private final Map<Long, ScheduledDeliveryRunnable> scheduledRunnables = new LinkedHashMap<Long, ScheduledDeliveryRunnable>();
+   private final long tick;
+
+   /** Guarded by itself, as the wheels */
+   private final Map<Long, ScheduledEntry> scheduledEntries = new LinkedHashMap<Long, ScheduledEntry>();
+
+   /** A slot per tick of the current period of WHEEL_SIZE ticks */
+   private final ScheduledEntry[] ticks = new ScheduledEntry[ScheduledDeliveryHandlerImpl.WHEEL_SIZE];
+
+   /** A slot per period, the entries are moved to the ticks wheel when their period starts */
+   private final ScheduledEntry[] periods = new ScheduledEntry[ScheduledDeliveryHandlerImpl.WHEEL_SIZE];
+
+   /** The last tick processed */
+   private long currentTick;
+
+   private ScheduledFuture<?> tickerFuture;
+
+   private final Runnable ticker = new Ticker();
 
    public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor)
+   {
+      this(scheduledExecutor, ScheduledDeliveryHandlerImpl.DEFAULT_TICK);
+   }
+
+   public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor, final long tick)
    {
       this.scheduledExecutor = scheduledExecutor;
+
+      this.tick = tick;
    }
 
    public boolean checkAndSchedule(final MessageReference ref)
@@ -59,14 +110,30 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
             ScheduledDeliveryHandlerImpl.log.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(ref);
+         ScheduledEntry entry = new ScheduledEntry(ref, deliveryTime, tickOf(deliveryTime));
 
-         synchronized (scheduledRunnables)
+         synchronized (scheduledEntries)
          {
-            scheduledRunnables.put(ref.getMessage().getMessageID(), runnable);
-         }
+            if (scheduledEntries.isEmpty())
+            {
+               // The ticker only runs while there are scheduled references
+               currentTick = System.currentTimeMillis() / tick;
+
+               tickerFuture = scheduledExecutor.scheduleWithFixedDelay(ticker,
+                                                                       tick,
+                                                                       tick,
+                                                                       TimeUnit.MILLISECONDS);
+            }
+
+            ScheduledEntry old = scheduledEntries.put(ref.getMessage().getMessageID(), entry);
 
-         scheduleDelivery(runnable, deliveryTime);
+            if (old != null)
+            {
+               old.unlink();
+            }
+
+            insert(entry);
+         }
 
          return true;
       }
@@ -75,18 +142,39 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    public int getScheduledCount()
    {
-      return scheduledRunnables.size();
+      synchronized (scheduledEntries)
+      {
+         return scheduledEntries.size();
+      }
+   }
+
+   public long getNextScheduledDeliveryTime()
+   {
+      long next = 0;
+
+      synchronized (scheduledEntries)
+      {
+         for (ScheduledEntry entry : scheduledEntries.values())
+         {
+            if (next == 0 || entry.deliveryTime < next)
+            {
+               next = entry.deliveryTime;
+            }
+         }
+      }
+
+      return next;
    }
 
    public List<MessageReference> getScheduledReferences()
    {
       List<MessageReference> refs = new ArrayList<MessageReference>();
 
-      synchronized (scheduledRunnables)
+      synchronized (scheduledEntries)
       {
-         for (ScheduledDeliveryRunnable scheduledRunnable : scheduledRunnables.values())
+         for (ScheduledEntry entry : scheduledEntries.values())
          {
-            refs.add(scheduledRunnable.getReference());
+            refs.add(entry.ref);
          }
       }
       return refs;
@@ -96,122 +184,292 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
    {
       List<MessageReference> refs = new ArrayList<MessageReference>();
 
-      synchronized (scheduledRunnables)
+      synchronized (scheduledEntries)
       {
-         Map<Long, ScheduledDeliveryRunnable> copy = new LinkedHashMap<Long, ScheduledDeliveryRunnable>(scheduledRunnables);
-         for (ScheduledDeliveryRunnable runnable : copy.values())
+         for (ScheduledEntry entry : scheduledEntries.values())
          {
-            if (filter == null || filter.match(runnable.getReference().getMessage()))
+            if (filter == null || filter.match(entry.ref.getMessage()))
             {
-               runnable.cancel();
+               entry.unlink();
 
-               refs.add(runnable.getReference());
+               refs.add(entry.ref);
             }
          }
          for (MessageReference ref : refs)
          {
-            scheduledRunnables.remove(ref.getMessage().getMessageID());
+            scheduledEntries.remove(ref.getMessage().getMessageID());
          }
+
+         checkStopTicker();
       }
       return refs;
    }
 
    public MessageReference removeReferenceWithID(final long id)
    {
-      synchronized (scheduledRunnables)
+      synchronized (scheduledEntries)
       {
-         ScheduledDeliveryRunnable runnable = scheduledRunnables.remove(id);
-         if (runnable == null)
+         ScheduledEntry entry = scheduledEntries.remove(id);
+         if (entry == null)
          {
             return null;
          }
          else
          {
-            return runnable.getReference();
+            entry.unlink();
+
+            checkStopTicker();
+
+            return entry.ref;
          }
       }
    }
 
-   private void scheduleDelivery(final ScheduledDeliveryRunnable runnable, final long deliveryTime)
+   // Private -------------------------------------------------------
+
+   private long tickOf(final long deliveryTime)
    {
-      long now = System.currentTimeMillis();
+      // rounded up, so the entry is only due once its delivery time has passed
+      return (deliveryTime + tick - 1) / tick;
+   }
 
-      long delay = deliveryTime - now;
+   private static long periodOf(final long tick)
+   {
+      return tick >> ScheduledDeliveryHandlerImpl.WHEEL_BITS;
+   }
 
-      Future<?> future = scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+   /** Must be called holding the lock */
+   private void insert(final ScheduledEntry entry)
+   {
+      if (entry.tick <= currentTick)
+      {
+         // Late, it goes in the next tick
+         entry.tick = currentTick + 1;
+      }
 
-      runnable.setFuture(future);
+      if (ScheduledDeliveryHandlerImpl.periodOf(entry.tick) == ScheduledDeliveryHandlerImpl.periodOf(currentTick))
+      {
+         entry.link(ticks, (int)(entry.tick & ScheduledDeliveryHandlerImpl.WHEEL_MASK));
+      }
+      else
+      {
+         // Entries more than WHEEL_SIZE periods away share the slot, they stay on it until their period comes
+         entry.link(periods,
+                    (int)(ScheduledDeliveryHandlerImpl.periodOf(entry.tick) & ScheduledDeliveryHandlerImpl.WHEEL_MASK));
+      }
    }
 
-   private class ScheduledDeliveryRunnable implements Runnable
+   /** Must be called holding the lock */
+   private void advance(final long nextTick, final List<ScheduledEntry> due)
    {
-      private final MessageReference ref;
+      currentTick = nextTick;
 
-      private volatile Future<?> future;
+      int tickSlot = (int)(nextTick & ScheduledDeliveryHandlerImpl.WHEEL_MASK);
 
-      private boolean cancelled;
+      if (tickSlot == 0)
+      {
+         // A new period starts, its entries are spread over the ticks
+         long period = ScheduledDeliveryHandlerImpl.periodOf(nextTick);
 
-      public ScheduledDeliveryRunnable(final MessageReference ref)
+         ScheduledEntry entry = periods[(int)(period & ScheduledDeliveryHandlerImpl.WHEEL_MASK)];
+
+         while (entry != null)
+         {
+            ScheduledEntry next = entry.next;
+
+            if (ScheduledDeliveryHandlerImpl.periodOf(entry.tick) <= period)
+            {
+               entry.unlink();
+
+               if (entry.tick < nextTick)
+               {
+                  entry.tick = nextTick;
+               }
+
+               entry.link(ticks, (int)(entry.tick & ScheduledDeliveryHandlerImpl.WHEEL_MASK));
+            }
+
+            entry = next;
+         }
+      }
+
+      ScheduledEntry entry = ticks[tickSlot];
+
+      while (entry != null)
       {
-         this.ref = ref;
+         ScheduledEntry next = entry.next;
+
+         entry.unlink();
+
+         scheduledEntries.remove(entry.ref.getMessage().getMessageID());
+
+         due.add(entry);
+
+         entry = next;
       }
+   }
 
-      public synchronized void setFuture(final Future<?> future)
+   /** Must be called holding the lock */
+   private void checkStopTicker()
+   {
+      if (scheduledEntries.isEmpty() && tickerFuture != null)
+      {
+         tickerFuture.cancel(false);
+
+         tickerFuture = null;
+      }
+   }
+
+   private void deliver(final List<ScheduledEntry> due)
+   {
+      Collections.sort(due, ScheduledDeliveryHandlerImpl.DELIVERY_ORDER);
+
+      Map<Queue, List<MessageReference>> queues = new LinkedHashMap<Queue, List<MessageReference>>();
+
+      for (ScheduledEntry entry : due)
       {
-         if (cancelled)
+         if (ScheduledDeliveryHandlerImpl.trace)
          {
-            future.cancel(false);
+            ScheduledDeliveryHandlerImpl.log.trace("Scheduled delivery timeout " + entry.ref);
          }
-         else
+
+         entry.ref.setScheduledDeliveryTime(0);
+
+         List<MessageReference> refs = queues.get(entry.ref.getQueue());
+
+         if (refs == null)
          {
-            this.future = future;
+            refs = new ArrayList<MessageReference>();
+
+            queues.put(entry.ref.getQueue(), refs);
          }
+
+         refs.add(entry.ref);
       }
 
-      public synchronized void cancel()
+      for (Map.Entry<Queue, List<MessageReference>> entry : queues.entrySet())
       {
-         if (future != null)
+         Queue queue = entry.getKey();
+
+         List<MessageReference> refs = entry.getValue();
+
+         synchronized (queue)
          {
-            future.cancel(false);
-         }
+            queue.resetAllIterators();
 
-         cancelled = true;
-      }
+            // Added to the head backwards, so the first one due is delivered first
+            for (int i = refs.size() - 1; i >= 0; i--)
+            {
+               queue.addHead(refs.get(i));
+            }
 
-      public MessageReference getReference()
-      {
-         return ref;
+            queue.deliverAsync();
+         }
       }
+   }
+
+   // Inner classes -------------------------------------------------
 
+   private class Ticker implements Runnable
+   {
       public void run()
       {
-         if (ScheduledDeliveryHandlerImpl.trace)
-         {
-            ScheduledDeliveryHandlerImpl.log.trace("Scheduled delivery timeout " + ref);
-         }
+         List<ScheduledEntry> due = new ArrayList<ScheduledEntry>();
 
-         synchronized (scheduledRunnables)
+         synchronized (scheduledEntries)
          {
-            Object removed = scheduledRunnables.remove(ref.getMessage().getMessageID());
+            long now = System.currentTimeMillis() / tick;
 
-            if (removed == null)
+            while (currentTick < now)
             {
-               ScheduledDeliveryHandlerImpl.log.warn("Failed to remove timeout " + this);
+               advance(currentTick + 1, due);
+            }
+
+            checkStopTicker();
+         }
 
-               return;
+         if (!due.isEmpty())
+         {
+            try
+            {
+               deliver(due);
+            }
+            catch (Exception e)
+            {
+               ScheduledDeliveryHandlerImpl.log.error("Failed to deliver scheduled messages", e);
             }
          }
+      }
+   }
+
+   /** An entry on one of the slots of the wheels, the slots are doubly linked lists */
+   private static final class ScheduledEntry
+   {
+      final MessageReference ref;
+
+      final long deliveryTime;
+
+      long tick;
+
+      ScheduledEntry[] wheel;
+
+      int slot;
+
+      ScheduledEntry prev;
+
+      ScheduledEntry next;
+
+      ScheduledEntry(final MessageReference ref, final long deliveryTime, final long tick)
+      {
+         this.ref = ref;
+
+         this.deliveryTime = deliveryTime;
+
+         this.tick = tick;
+      }
+
+      void link(final ScheduledEntry[] wheel, final int slot)
+      {
+         this.wheel = wheel;
 
-         ref.setScheduledDeliveryTime(0);
+         this.slot = slot;
 
-         synchronized (ref.getQueue())
+         prev = null;
+
+         next = wheel[slot];
+
+         if (next != null)
+         {
+            next.prev = this;
+         }
+
+         wheel[slot] = this;
+      }
+
+      void unlink()
+      {
+         if (wheel == null)
+         {
+            return;
+         }
+
+         if (prev == null)
+         {
+            wheel[slot] = next;
+         }
+         else
          {
-            ref.getQueue().resetAllIterators();
+            prev.next = next;
+         }
 
-            ref.getQueue().addHead(ref);
-            
-            ref.getQueue().deliverAsync();
+         if (next != null)
+         {
+            next.prev = prev;
          }
+
+         wheel = null;
+
+         prev = next = null;
       }
    }
 }
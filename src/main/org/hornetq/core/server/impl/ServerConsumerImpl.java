@@ -13,15 +13,17 @@
 
 package org.hornetq.core.server.impl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.HornetQClient;
 import org.hornetq.api.core.management.ManagementHelper;
 import org.hornetq.api.core.management.NotificationType;
 import org.hornetq.core.client.impl.ClientConsumerImpl;
@@ -44,7 +46,6 @@ import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.spi.core.protocol.SessionCallback;
 import org.hornetq.spi.core.remoting.ReadyListener;
-import org.hornetq.utils.Future;
 import org.hornetq.utils.TypedProperties;
 
 /**
@@ -89,6 +90,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private volatile AtomicInteger availableCredits = new AtomicInteger(0);
 
+   /** As reported by the client, which may resize it when the window is adaptive */
+   private volatile int windowSize = -1;
+
    private boolean started;
 
    private volatile LargeMessageDeliverer largeMessageDeliverer = null;
@@ -106,7 +110,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private final StorageManager storageManager;
 
-   private final java.util.Queue<MessageReference> deliveringRefs = new ConcurrentLinkedQueue<MessageReference>();
+   private final DeliveringReferenceList deliveringRefs = new DeliveringReferenceList();
+
+   private final int weight;
 
    private final SessionCallback callback;
 
@@ -173,6 +179,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       this.callback.addReadyListener(this);
 
       this.creationTime = System.currentTimeMillis();
+
+      this.weight = parseWeight(session.getMetaData(HornetQClient.CONSUMER_WEIGHT_METADATA));
       
       if (browseOnly)
       {
@@ -213,6 +221,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
    }
 
    public HandleStatus handle(final MessageReference ref) throws Exception
+   {
+      return handle(ref, null);
+   }
+
+   public HandleStatus handle(final MessageReference ref, final Iterator<MessageReference> batch) throws Exception
    {
       if (availableCredits != null && availableCredits.get() <= 0)
       {
@@ -249,49 +262,20 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
             return HandleStatus.NO_MATCH;
          }
 
-         if (!browseOnly)
-         {
-            if (!preAcknowledge)
-            {
-               deliveringRefs.add(ref);
-            }
-
-            ref.handled();
-
-            ref.incrementDeliveryCount();
-
-            // If updateDeliveries = false (set by strict-update),
-            // the updateDeliveryCount would still be updated after c
-            if (strictUpdateDeliveryCount)
-            {
-               if (ref.getMessage().isDurable() && ref.getQueue().isDurable())
-               {
-                  storageManager.updateDeliveryCount(ref);
-               }
-            }
-
-            if (preAcknowledge)
-            {
-               if (message.isLargeMessage())
-               {
-                  // we must hold one reference, or the file will be deleted before it could be delivered
-                  ((LargeServerMessage)message).incrementDelayDeletionCount();
-               }
-
-               // With pre-ack, we ack *before* sending to the client
-               ref.getQueue().acknowledge(ref);
-            }
-
-         }
+         prepareDelivery(ref, message);
 
          if (message.isLargeMessage())
          {
             deliverLargeMessage(ref, message);
          }
-         else
+         else if (batch == null || filter != null || !batch.hasNext())
          {
             deliverStandardMessage(ref, message);
          }
+         else
+         {
+            deliverStandardMessages(ref, batch);
+         }
 
          return HandleStatus.HANDLED;
       }
@@ -369,13 +353,12 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
    {
       promptDelivery();
 
-      Future future = new Future();
-
-      executor.execute(future);
-
-      boolean ok = future.await(10000);
-
-      if (!ok)
+      try
+      {
+         // Waits on the executors of every delivery lane of the queue
+         messageQueue.blockOnExecutorFuture();
+      }
+      catch (IllegalStateException e)
       {
          log.warn("Timed out waiting for executor");
       }
@@ -406,28 +389,22 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       if (!deliveringRefs.isEmpty())
       {
-         for (MessageReference ref : deliveringRefs)
+         if (performACK)
          {
-            if (performACK)
-            {
-               acknowledge(false, tx, ref.getMessage().getMessageID());
+            acknowledge(false, tx, deliveringRefs.peek().getMessage().getMessageID());
+         }
 
-               performACK = false;
-            }
-            else
+         for (MessageReference ref : deliveringRefs.removeAll())
+         {
+            if (!failed)
             {
-               if (!failed)
-               {
-                  //We don't decrement delivery count if the client failed, since there's a possibility that refs were actually delivered but we just didn't get any acks for them
-                  //before failure
-                  ref.decrementDeliveryCount();
-               }
-
-               refs.add(ref);
+               //We don't decrement delivery count if the client failed, since there's a possibility that refs were actually delivered but we just didn't get any acks for them
+               //before failure
+               ref.decrementDeliveryCount();
             }
-         }
 
-         deliveringRefs.clear();
+            refs.add(ref);
+         }
       }
 
       return refs;
@@ -476,13 +453,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
          // executor and
          // wait for it to complete
 
-         Future future = new Future();
-
-         executor.execute(future);
-
-         boolean ok = future.await(10000);
-
-         if (!ok)
+         try
+         {
+            messageQueue.blockOnExecutorFuture();
+         }
+         catch (IllegalStateException e)
          {
             log.warn("Timed out waiting for executor to complete");
          }
@@ -494,6 +469,26 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   public int getDeliveringCount()
+   {
+      return deliveringRefs.size();
+   }
+
+   public int getWeight()
+   {
+      return weight;
+   }
+
+   public int getWindowSize()
+   {
+      return windowSize;
+   }
+
+   public void setWindowSize(final int windowSize)
+   {
+      this.windowSize = windowSize;
+   }
+
    public void receiveCredits(final int credits) throws Exception
    {      
       if (credits == -1)
@@ -542,35 +537,26 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
       
       // Acknowledge acknowledges all refs delivered by the consumer up to and including the one explicitly
-      // acknowledged
+      // acknowledged. They are acknowledged at once, so the storage can write a single record for all of them
 
-      MessageReference ref;
-      do
-      {
-         ref = deliveringRefs.poll();
-
-         if (ref == null)
-         {
-            throw new IllegalStateException(System.identityHashCode(this) + " Could not find reference on consumerID=" +
-                                            id +
-                                            ", messageId = " +
-                                            messageID +
-                                            " queue = " +
-                                            messageQueue.getName() +
-                                            " closed = " +
-                                            closed);
-         }
+      List<MessageReference> refs = deliveringRefs.removeUpTo(messageID);
 
-         if (autoCommitAcks || tx == null)
-         {
-            ref.acknowledge();
-         }
-         else
-         {
-            ref.acknowledge(tx);
-         }
+      if (refs.isEmpty() || refs.get(refs.size() - 1).getMessage().getMessageID() != messageID)
+      {
+         // the refs already taken are still acknowledged, as they would be one by one
+         acknowledge(autoCommitAcks, tx, refs);
+
+         throw new IllegalStateException(System.identityHashCode(this) + " Could not find reference on consumerID=" +
+                                         id +
+                                         ", messageId = " +
+                                         messageID +
+                                         " queue = " +
+                                         messageQueue.getName() +
+                                         " closed = " +
+                                         closed);
       }
-      while (ref.getMessage().getMessageID() != messageID);
+
+      acknowledge(autoCommitAcks, tx, refs);
    }
    
    public void individualAcknowledge(final boolean autoCommitAcks, final Transaction tx, final long messageID) throws Exception
@@ -606,25 +592,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       // Expiries can come in out of sequence with respect to delivery order
 
-      Iterator<MessageReference> iter = deliveringRefs.iterator();
-
-      MessageReference ref = null;
-
-      while (iter.hasNext())
-      {
-         MessageReference theRef = iter.next();
-
-         if (theRef.getMessage().getMessageID() == messageID)
-         {
-            iter.remove();
-
-            ref = theRef;
-
-            break;
-         }
-      }
-
-      return ref;
+      return deliveringRefs.remove(messageID);
    }
       
    public void readyForWriting(final boolean ready)
@@ -649,6 +617,23 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    // Private --------------------------------------------------------------------------------------
 
+   private void acknowledge(final boolean autoCommitAcks, final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      if (refs.isEmpty())
+      {
+         return;
+      }
+
+      if (autoCommitAcks || tx == null)
+      {
+         messageQueue.acknowledge(refs);
+      }
+      else
+      {
+         messageQueue.acknowledge(tx, refs);
+      }
+   }
+
    private void promptDelivery()
    {
       synchronized (lock)
@@ -673,6 +658,30 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   private int parseWeight(final String weight)
+   {
+      if (weight == null)
+      {
+         return 1;
+      }
+
+      try
+      {
+         return Math.max(1, Integer.parseInt(weight.trim()));
+      }
+      catch (NumberFormatException e)
+      {
+         ServerConsumerImpl.log.warn("Invalid " + HornetQClient.CONSUMER_WEIGHT_METADATA +
+                                     " " +
+                                     weight +
+                                     " on consumer " +
+                                     id +
+                                     ", using 1");
+
+         return 1;
+      }
+   }
+
    private void resumeLargeMessage()
    {
       executor.execute(resumeLargeMessageRunnable);
@@ -693,6 +702,80 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
     * @param ref
     * @param message
     */
+   /**
+    * The book keeping done for every reference handled, before it's sent
+    */
+   private void prepareDelivery(final MessageReference ref, final ServerMessage message) throws Exception
+   {
+      if (!browseOnly)
+      {
+         if (!preAcknowledge)
+         {
+            deliveringRefs.add(ref);
+         }
+
+         ref.handled();
+
+         ref.incrementDeliveryCount();
+
+         // If updateDeliveries = false (set by strict-update),
+         // the updateDeliveryCount would still be updated after c
+         if (strictUpdateDeliveryCount)
+         {
+            if (ref.getMessage().isDurable() && ref.getQueue().isDurable())
+            {
+               storageManager.updateDeliveryCount(ref);
+            }
+         }
+
+         if (preAcknowledge)
+         {
+            if (message.isLargeMessage())
+            {
+               // we must hold one reference, or the file will be deleted before it could be delivered
+               ((LargeServerMessage)message).incrementDelayDeletionCount();
+            }
+
+            // With pre-ack, we ack *before* sending to the client
+            ref.getQueue().acknowledge(ref);
+         }
+      }
+   }
+
+   /**
+    * Takes references from the batch while there are credits for them, and sends them all in a single write
+    */
+   private void deliverStandardMessages(final MessageReference ref, final Iterator<MessageReference> batch) throws Exception
+   {
+      AtomicInteger credits = availableCredits;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      refs.add(ref);
+
+      // The actual size is only known once the messages are encoded, this is close enough to not go much over the
+      // credits
+      int size = ref.getMessage().getEncodeSize();
+
+      while ((credits == null || credits.get() > size) && batch.hasNext())
+      {
+         MessageReference next = batch.next();
+
+         prepareDelivery(next, next.getMessage());
+
+         refs.add(next);
+
+         size += next.getMessage().getEncodeSize();
+      }
+
+      int packetsSize = callback.sendMessages(refs, id);
+
+      if (credits != null)
+      {
+         credits.addAndGet(-packetsSize);
+      }
+   }
+
    private void deliverStandardMessage(final MessageReference ref, final ServerMessage message)
    {
       int packetSize = callback.sendMessage(message, id, ref.getDeliveryCount());
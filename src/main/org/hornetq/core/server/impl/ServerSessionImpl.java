@@ -957,7 +957,7 @@ public class ServerSessionImpl implements ServerSession , FailureListener
       }
    }
 
-   public void receiveConsumerCredits(final long consumerID, final int credits) throws Exception
+   public void receiveConsumerCredits(final long consumerID, final int credits, final int windowSize) throws Exception
    {
       ServerConsumer consumer = consumers.get(consumerID);
 
@@ -968,6 +968,11 @@ public class ServerSessionImpl implements ServerSession , FailureListener
          return;
       }
 
+      if (windowSize >= 0)
+      {
+         consumer.setWindowSize(windowSize);
+      }
+
       consumer.receiveCredits(credits);
    }
 
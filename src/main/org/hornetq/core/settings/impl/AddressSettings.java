@@ -55,6 +55,30 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_SEND_TO_DLA_ON_NO_ROUTE = false;
 
+   public static final boolean DEFAULT_SELECTOR_INDEX = false;
+
+   public static final int DEFAULT_DELIVERY_LANES = 1;
+
+   public static final int DEFAULT_MAX_GROUPS = -1;
+
+   public static final long DEFAULT_GROUP_IDLE_TIMEOUT = -1;
+
+   public static final boolean DEFAULT_GROUP_REBALANCE = false;
+
+   public static final int DEFAULT_DELIVERY_BATCH_SIZE = 1;
+
+   public static final boolean DEFAULT_COMPACT_REFERENCES = false;
+
+   public static final boolean DEFAULT_LAST_VALUE_CONFLATION = false;
+
+   public static final ConsumerDispatchPolicy DEFAULT_CONSUMER_DISPATCH_POLICY = ConsumerDispatchPolicy.ROUND_ROBIN;
+
+   public static final boolean DEFAULT_PAGE_INDEX = false;
+
+   public static final int DEFAULT_PAGE_READ_AHEAD = 0;
+
+   public static final boolean DEFAULT_PAGE_COMPRESSION = false;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -79,6 +103,30 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean sendToDLAOnNoRoute = null;
 
+   private Boolean selectorIndex = null;
+
+   private Integer deliveryLanes = null;
+
+   private Integer maxGroups = null;
+
+   private Long groupIdleTimeout = null;
+
+   private Boolean groupRebalance = null;
+
+   private Integer deliveryBatchSize = null;
+
+   private Boolean compactReferences = null;
+
+   private Boolean lastValueConflation = null;
+
+   private Boolean pageIndex = null;
+
+   private Integer pageReadAhead = null;
+
+   private Boolean pageCompression = null;
+
+   private ConsumerDispatchPolicy consumerDispatchPolicy = null;
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -191,6 +239,127 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.redistributionDelay = redistributionDelay;
    }
 
+   public boolean isSelectorIndex()
+   {
+      return selectorIndex != null ? selectorIndex : AddressSettings.DEFAULT_SELECTOR_INDEX;
+   }
+
+   public void setSelectorIndex(final boolean selectorIndex)
+   {
+      this.selectorIndex = selectorIndex;
+   }
+
+   public int getDeliveryLanes()
+   {
+      return deliveryLanes != null ? deliveryLanes : AddressSettings.DEFAULT_DELIVERY_LANES;
+   }
+
+   public void setDeliveryLanes(final int deliveryLanes)
+   {
+      this.deliveryLanes = deliveryLanes;
+   }
+
+   public int getMaxGroups()
+   {
+      return maxGroups != null ? maxGroups : AddressSettings.DEFAULT_MAX_GROUPS;
+   }
+
+   public void setMaxGroups(final int maxGroups)
+   {
+      this.maxGroups = maxGroups;
+   }
+
+   public long getGroupIdleTimeout()
+   {
+      return groupIdleTimeout != null ? groupIdleTimeout : AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT;
+   }
+
+   public void setGroupIdleTimeout(final long groupIdleTimeout)
+   {
+      this.groupIdleTimeout = groupIdleTimeout;
+   }
+
+   public boolean isGroupRebalance()
+   {
+      return groupRebalance != null ? groupRebalance : AddressSettings.DEFAULT_GROUP_REBALANCE;
+   }
+
+   public void setGroupRebalance(final boolean groupRebalance)
+   {
+      this.groupRebalance = groupRebalance;
+   }
+
+   public int getDeliveryBatchSize()
+   {
+      return deliveryBatchSize != null ? deliveryBatchSize : AddressSettings.DEFAULT_DELIVERY_BATCH_SIZE;
+   }
+
+   public void setDeliveryBatchSize(final int deliveryBatchSize)
+   {
+      this.deliveryBatchSize = deliveryBatchSize;
+   }
+
+   public boolean isCompactReferences()
+   {
+      return compactReferences != null ? compactReferences : AddressSettings.DEFAULT_COMPACT_REFERENCES;
+   }
+
+   public void setCompactReferences(final boolean compactReferences)
+   {
+      this.compactReferences = compactReferences;
+   }
+
+   public boolean isLastValueConflation()
+   {
+      return lastValueConflation != null ? lastValueConflation : AddressSettings.DEFAULT_LAST_VALUE_CONFLATION;
+   }
+
+   public void setLastValueConflation(final boolean lastValueConflation)
+   {
+      this.lastValueConflation = lastValueConflation;
+   }
+
+   public ConsumerDispatchPolicy getConsumerDispatchPolicy()
+   {
+      return consumerDispatchPolicy != null ? consumerDispatchPolicy
+                                           : AddressSettings.DEFAULT_CONSUMER_DISPATCH_POLICY;
+   }
+
+   public void setConsumerDispatchPolicy(final ConsumerDispatchPolicy consumerDispatchPolicy)
+   {
+      this.consumerDispatchPolicy = consumerDispatchPolicy;
+   }
+
+   public boolean isPageIndex()
+   {
+      return pageIndex != null ? pageIndex : AddressSettings.DEFAULT_PAGE_INDEX;
+   }
+
+   public void setPageIndex(final boolean pageIndex)
+   {
+      this.pageIndex = pageIndex;
+   }
+
+   public int getPageReadAhead()
+   {
+      return pageReadAhead != null ? pageReadAhead : AddressSettings.DEFAULT_PAGE_READ_AHEAD;
+   }
+
+   public void setPageReadAhead(final int pageReadAhead)
+   {
+      this.pageReadAhead = pageReadAhead;
+   }
+
+   public boolean isPageCompression()
+   {
+      return pageCompression != null ? pageCompression : AddressSettings.DEFAULT_PAGE_COMPRESSION;
+   }
+
+   public void setPageCompression(final boolean pageCompression)
+   {
+      this.pageCompression = pageCompression;
+   }
+
    /**
     * merge 2 objects in to 1
     * @param merged
@@ -237,6 +406,54 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          sendToDLAOnNoRoute = merged.sendToDLAOnNoRoute;
       }
+      if (selectorIndex == null)
+      {
+         selectorIndex = merged.selectorIndex;
+      }
+      if (deliveryLanes == null)
+      {
+         deliveryLanes = merged.deliveryLanes;
+      }
+      if (maxGroups == null)
+      {
+         maxGroups = merged.maxGroups;
+      }
+      if (groupIdleTimeout == null)
+      {
+         groupIdleTimeout = merged.groupIdleTimeout;
+      }
+      if (groupRebalance == null)
+      {
+         groupRebalance = merged.groupRebalance;
+      }
+      if (deliveryBatchSize == null)
+      {
+         deliveryBatchSize = merged.deliveryBatchSize;
+      }
+      if (compactReferences == null)
+      {
+         compactReferences = merged.compactReferences;
+      }
+      if (lastValueConflation == null)
+      {
+         lastValueConflation = merged.lastValueConflation;
+      }
+      if (consumerDispatchPolicy == null)
+      {
+         consumerDispatchPolicy = merged.consumerDispatchPolicy;
+      }
+      if (pageIndex == null)
+      {
+         pageIndex = merged.pageIndex;
+      }
+      if (pageReadAhead == null)
+      {
+         pageReadAhead = merged.pageReadAhead;
+      }
+      if (pageCompression == null)
+      {
+         pageCompression = merged.pageCompression;
+      }
       if (addressFullMessagePolicy == null)
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
@@ -280,6 +497,68 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      if (buffer.readable())
+      {
+         selectorIndex = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         deliveryLanes = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         maxGroups = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         groupIdleTimeout = BufferHelper.readNullableLong(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         groupRebalance = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         deliveryBatchSize = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         compactReferences = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         lastValueConflation = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         SimpleString dispatchStr = buffer.readNullableSimpleString();
+
+         consumerDispatchPolicy = dispatchStr != null ? ConsumerDispatchPolicy.valueOf(dispatchStr.toString()) : null;
+      }
+
+      if (buffer.readable())
+      {
+         pageIndex = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageReadAhead = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageCompression = BufferHelper.readNullableBoolean(buffer);
+      }
    }
 
    /* (non-Javadoc)
@@ -299,7 +578,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              SimpleString.sizeofNullableString(expiryAddress) +
              BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
              BufferHelper.sizeOfNullableLong(redistributionDelay) +
-             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+             BufferHelper.sizeOfNullableBoolean(selectorIndex) +
+             BufferHelper.sizeOfNullableInteger(deliveryLanes) +
+             BufferHelper.sizeOfNullableInteger(maxGroups) +
+             BufferHelper.sizeOfNullableLong(groupIdleTimeout) +
+             BufferHelper.sizeOfNullableBoolean(groupRebalance) +
+             BufferHelper.sizeOfNullableInteger(deliveryBatchSize) +
+             BufferHelper.sizeOfNullableBoolean(compactReferences) +
+             BufferHelper.sizeOfNullableBoolean(lastValueConflation) +
+             BufferHelper.sizeOfNullableSimpleString(consumerDispatchPolicy != null ? consumerDispatchPolicy.toString()
+                                                                                   : null) +
+             BufferHelper.sizeOfNullableBoolean(pageIndex) +
+             BufferHelper.sizeOfNullableInteger(pageReadAhead) +
+             BufferHelper.sizeOfNullableBoolean(pageCompression);
    }
 
    /* (non-Javadoc)
@@ -331,6 +623,31 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableBoolean(buffer, selectorIndex);
+
+      BufferHelper.writeNullableInteger(buffer, deliveryLanes);
+
+      BufferHelper.writeNullableInteger(buffer, maxGroups);
+
+      BufferHelper.writeNullableLong(buffer, groupIdleTimeout);
+
+      BufferHelper.writeNullableBoolean(buffer, groupRebalance);
+
+      BufferHelper.writeNullableInteger(buffer, deliveryBatchSize);
+
+      BufferHelper.writeNullableBoolean(buffer, compactReferences);
+
+      BufferHelper.writeNullableBoolean(buffer, lastValueConflation);
+
+      buffer.writeNullableSimpleString(consumerDispatchPolicy != null ? new SimpleString(consumerDispatchPolicy.toString())
+                                                                     : null);
+
+      BufferHelper.writeNullableBoolean(buffer, pageIndex);
+
+      BufferHelper.writeNullableInteger(buffer, pageReadAhead);
+
+      BufferHelper.writeNullableBoolean(buffer, pageCompression);
    }
 
    /* (non-Javadoc)
@@ -354,6 +671,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((redeliveryDelay == null) ? 0 : redeliveryDelay.hashCode());
       result = prime * result + ((redistributionDelay == null) ? 0 : redistributionDelay.hashCode());
       result = prime * result + ((sendToDLAOnNoRoute == null) ? 0 : sendToDLAOnNoRoute.hashCode());
+      result = prime * result + ((selectorIndex == null) ? 0 : selectorIndex.hashCode());
+      result = prime * result + ((deliveryLanes == null) ? 0 : deliveryLanes.hashCode());
+      result = prime * result + ((maxGroups == null) ? 0 : maxGroups.hashCode());
+      result = prime * result + ((groupIdleTimeout == null) ? 0 : groupIdleTimeout.hashCode());
+      result = prime * result + ((groupRebalance == null) ? 0 : groupRebalance.hashCode());
+      result = prime * result + ((deliveryBatchSize == null) ? 0 : deliveryBatchSize.hashCode());
+      result = prime * result + ((compactReferences == null) ? 0 : compactReferences.hashCode());
+      result = prime * result + ((lastValueConflation == null) ? 0 : lastValueConflation.hashCode());
+      result = prime * result + ((consumerDispatchPolicy == null) ? 0 : consumerDispatchPolicy.hashCode());
+      result = prime * result + ((pageIndex == null) ? 0 : pageIndex.hashCode());
+      result = prime * result + ((pageReadAhead == null) ? 0 : pageReadAhead.hashCode());
+      result = prime * result + ((pageCompression == null) ? 0 : pageCompression.hashCode());
       return result;
    }
 
@@ -454,6 +783,90 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!sendToDLAOnNoRoute.equals(other.sendToDLAOnNoRoute))
          return false;
+      if (selectorIndex == null)
+      {
+         if (other.selectorIndex != null)
+            return false;
+      }
+      else if (!selectorIndex.equals(other.selectorIndex))
+         return false;
+      if (deliveryLanes == null)
+      {
+         if (other.deliveryLanes != null)
+            return false;
+      }
+      else if (!deliveryLanes.equals(other.deliveryLanes))
+         return false;
+      if (maxGroups == null)
+      {
+         if (other.maxGroups != null)
+            return false;
+      }
+      else if (!maxGroups.equals(other.maxGroups))
+         return false;
+      if (groupIdleTimeout == null)
+      {
+         if (other.groupIdleTimeout != null)
+            return false;
+      }
+      else if (!groupIdleTimeout.equals(other.groupIdleTimeout))
+         return false;
+      if (groupRebalance == null)
+      {
+         if (other.groupRebalance != null)
+            return false;
+      }
+      else if (!groupRebalance.equals(other.groupRebalance))
+         return false;
+      if (deliveryBatchSize == null)
+      {
+         if (other.deliveryBatchSize != null)
+            return false;
+      }
+      else if (!deliveryBatchSize.equals(other.deliveryBatchSize))
+         return false;
+      if (compactReferences == null)
+      {
+         if (other.compactReferences != null)
+            return false;
+      }
+      else if (!compactReferences.equals(other.compactReferences))
+         return false;
+      if (lastValueConflation == null)
+      {
+         if (other.lastValueConflation != null)
+            return false;
+      }
+      else if (!lastValueConflation.equals(other.lastValueConflation))
+         return false;
+      if (consumerDispatchPolicy == null)
+      {
+         if (other.consumerDispatchPolicy != null)
+            return false;
+      }
+      else if (!consumerDispatchPolicy.equals(other.consumerDispatchPolicy))
+         return false;
+      if (pageIndex == null)
+      {
+         if (other.pageIndex != null)
+            return false;
+      }
+      else if (!pageIndex.equals(other.pageIndex))
+         return false;
+      if (pageReadAhead == null)
+      {
+         if (other.pageReadAhead != null)
+            return false;
+      }
+      else if (!pageReadAhead.equals(other.pageReadAhead))
+         return false;
+      if (pageCompression == null)
+      {
+         if (other.pageCompression != null)
+            return false;
+      }
+      else if (!pageCompression.equals(other.pageCompression))
+         return false;
       return true;
    }
 
@@ -486,6 +899,30 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              redistributionDelay +
              ", sendToDLAOnNoRoute=" +
              sendToDLAOnNoRoute +
+             ", selectorIndex=" +
+             selectorIndex +
+             ", deliveryLanes=" +
+             deliveryLanes +
+             ", maxGroups=" +
+             maxGroups +
+             ", groupIdleTimeout=" +
+             groupIdleTimeout +
+             ", groupRebalance=" +
+             groupRebalance +
+             ", deliveryBatchSize=" +
+             deliveryBatchSize +
+             ", compactReferences=" +
+             compactReferences +
+             ", lastValueConflation=" +
+             lastValueConflation +
+             ", consumerDispatchPolicy=" +
+             consumerDispatchPolicy +
+             ", pageIndex=" +
+             pageIndex +
+             ", pageReadAhead=" +
+             pageReadAhead +
+             ", pageCompression=" +
+             pageCompression +
              "]";
    }
 
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.settings.impl;
+
+/**
+ * How a queue picks the consumer a message is delivered to.
+ * 
+ * ROUND_ROBIN takes the consumers in turn. LEAST_OUTSTANDING takes the consumer with the fewest messages delivered and
+ * not acknowledged yet. WEIGHTED does the same with the number of messages divided by the weight of the consumer.
+ */
+public enum ConsumerDispatchPolicy
+{
+   ROUND_ROBIN, LEAST_OUTSTANDING, WEIGHTED;
+}
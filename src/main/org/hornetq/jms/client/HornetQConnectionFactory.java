@@ -294,6 +294,39 @@ public class HornetQConnectionFactory implements Serializable, Referenceable
       serverLocator.setConsumerWindowSize(consumerWindowSize);
    }
 
+   public synchronized boolean isConsumerWindowAdaptive()
+   {
+      return serverLocator.isConsumerWindowAdaptive();
+   }
+
+   public synchronized void setConsumerWindowAdaptive(final boolean consumerWindowAdaptive)
+   {
+      checkWrite();
+      serverLocator.setConsumerWindowAdaptive(consumerWindowAdaptive);
+   }
+
+   public synchronized int getConsumerMinWindowSize()
+   {
+      return serverLocator.getConsumerMinWindowSize();
+   }
+
+   public synchronized void setConsumerMinWindowSize(final int consumerMinWindowSize)
+   {
+      checkWrite();
+      serverLocator.setConsumerMinWindowSize(consumerMinWindowSize);
+   }
+
+   public synchronized int getConsumerMaxWindowSize()
+   {
+      return serverLocator.getConsumerMaxWindowSize();
+   }
+
+   public synchronized void setConsumerMaxWindowSize(final int consumerMaxWindowSize)
+   {
+      checkWrite();
+      serverLocator.setConsumerMaxWindowSize(consumerMaxWindowSize);
+   }
+
    public synchronized int getConsumerMaxRate()
    {
       return serverLocator.getConsumerMaxRate();
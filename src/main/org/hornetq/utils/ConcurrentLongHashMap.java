@@ -0,0 +1,501 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A concurrent map of primitive long keys.
+ *
+ * <p>Entries are kept on open-addressing tables (linear probing), split into segments that are locked independently.
+ * No object is created per entry and the keys are never boxed, which makes it a lot cheaper than a
+ * ConcurrentHashMap&lt;Long, V&gt; when there are millions of entries (such as the records on the journal).</p>
+ *
+ * <p>Null values are not supported.</p>
+ */
+public class ConcurrentLongHashMap<V>
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int DEFAULT_EXPECTED_ITEMS = 256;
+
+   private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+   private static final float MAP_FILL_FACTOR = 0.66f;
+
+   // Attributes ----------------------------------------------------
+
+   private final Segment<V>[] segments;
+
+   // Static --------------------------------------------------------
+
+   /** Spreads the bits of the key, as record IDs are usually sequential */
+   static long hash(final long key)
+   {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return h ^ h >>> 32;
+   }
+
+   private static int alignToPowerOfTwo(final int n)
+   {
+      int value = 1;
+      while (value < n)
+      {
+         value <<= 1;
+      }
+      return value;
+   }
+
+   // Constructors --------------------------------------------------
+
+   public ConcurrentLongHashMap()
+   {
+      this(ConcurrentLongHashMap.DEFAULT_EXPECTED_ITEMS, ConcurrentLongHashMap.DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   public ConcurrentLongHashMap(final int expectedItems)
+   {
+      this(expectedItems, ConcurrentLongHashMap.DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int expectedItems, final int concurrencyLevel)
+   {
+      if (expectedItems <= 0)
+      {
+         throw new IllegalArgumentException("expectedItems must be > 0");
+      }
+      if (concurrencyLevel <= 0)
+      {
+         throw new IllegalArgumentException("concurrencyLevel must be > 0");
+      }
+
+      int numberOfSegments = ConcurrentLongHashMap.alignToPowerOfTwo(concurrencyLevel);
+
+      int perSegment = (int)(expectedItems / numberOfSegments / ConcurrentLongHashMap.MAP_FILL_FACTOR) + 1;
+
+      segments = (Segment<V>[])new Segment<?>[numberOfSegments];
+
+      for (int i = 0; i < numberOfSegments; i++)
+      {
+         segments[i] = new Segment<V>(ConcurrentLongHashMap.alignToPowerOfTwo(Math.max(perSegment, 2)));
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   public V get(final long key)
+   {
+      long h = ConcurrentLongHashMap.hash(key);
+      return segmentFor(h).get(key, (int)h);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   /** @return the previous value associated with the key, or null */
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      long h = ConcurrentLongHashMap.hash(key);
+      return segmentFor(h).put(key, value, (int)h, false);
+   }
+
+   /** @return the value already associated with the key, or null if value was added */
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      long h = ConcurrentLongHashMap.hash(key);
+      return segmentFor(h).put(key, value, (int)h, true);
+   }
+
+   /** @return the value removed, or null if there was no value for the key */
+   public V remove(final long key)
+   {
+      long h = ConcurrentLongHashMap.hash(key);
+      return segmentFor(h).remove(key, (int)h);
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (Segment<V> segment : segments)
+      {
+         size += segment.size();
+      }
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      for (Segment<V> segment : segments)
+      {
+         if (segment.size() != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void clear()
+   {
+      for (Segment<V> segment : segments)
+      {
+         segment.clear();
+      }
+   }
+
+   /**
+    * A snapshot of the keys.
+    * Each segment is consistent, but entries added or removed concurrently may or may not be on the result.
+    */
+   public long[] keys()
+   {
+      long[] keys = new long[size()];
+
+      int position = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         position = segment.copyKeys(keys, position);
+
+         if (position < 0)
+         {
+            // The map grew while we were copying it
+            return keysSlow();
+         }
+      }
+
+      if (position != keys.length)
+      {
+         long[] shrunk = new long[position];
+         System.arraycopy(keys, 0, shrunk, 0, position);
+         return shrunk;
+      }
+
+      return keys;
+   }
+
+   /** A snapshot of the values, with the same consistency as {@link #keys()} */
+   public List<V> values()
+   {
+      List<V> values = new ArrayList<V>(size());
+
+      for (Segment<V> segment : segments)
+      {
+         segment.copyValues(values);
+      }
+
+      return values;
+   }
+
+   /** The number of slots allocated on the tables, used to estimate the memory used by this map */
+   public long capacity()
+   {
+      long capacity = 0;
+      for (Segment<V> segment : segments)
+      {
+         capacity += segment.capacity();
+      }
+      return capacity;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ConcurrentLongHashMap(size=" + size() + ", capacity=" + capacity() + ")";
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private Segment<V> segmentFor(final long hash)
+   {
+      return segments[(int)(hash >>> 48) & segments.length - 1];
+   }
+
+   private void checkValue(final V value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("Null values are not supported");
+      }
+   }
+
+   private long[] keysSlow()
+   {
+      ArrayList<long[]> parts = new ArrayList<long[]>(segments.length);
+
+      int total = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         long[] part = segment.keys();
+         parts.add(part);
+         total += part.length;
+      }
+
+      long[] keys = new long[total];
+
+      int position = 0;
+
+      for (long[] part : parts)
+      {
+         System.arraycopy(part, 0, keys, position, part.length);
+         position += part.length;
+      }
+
+      return keys;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /** The slot is free when values[slot] == null */
+   private static final class Segment<V>
+   {
+      private long[] keys;
+
+      private Object[] values;
+
+      private int size;
+
+      private int resizeThreshold;
+
+      Segment(final int capacity)
+      {
+         allocate(capacity);
+      }
+
+      synchronized int size()
+      {
+         return size;
+      }
+
+      synchronized int capacity()
+      {
+         return keys.length;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V get(final long key, final int hash)
+      {
+         int mask = keys.length - 1;
+
+         int slot = hash & mask;
+
+         while (true)
+         {
+            Object value = values[slot];
+
+            if (value == null)
+            {
+               return null;
+            }
+
+            if (keys[slot] == key)
+            {
+               return (V)value;
+            }
+
+            slot = slot + 1 & mask;
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V put(final long key, final V value, final int hash, final boolean onlyIfAbsent)
+      {
+         int mask = keys.length - 1;
+
+         int slot = hash & mask;
+
+         while (true)
+         {
+            Object current = values[slot];
+
+            if (current == null)
+            {
+               keys[slot] = key;
+               values[slot] = value;
+
+               if (++size > resizeThreshold)
+               {
+                  rehash(keys.length * 2);
+               }
+
+               return null;
+            }
+
+            if (keys[slot] == key)
+            {
+               if (!onlyIfAbsent)
+               {
+                  values[slot] = value;
+               }
+
+               return (V)current;
+            }
+
+            slot = slot + 1 & mask;
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V remove(final long key, final int hash)
+      {
+         int mask = keys.length - 1;
+
+         int slot = hash & mask;
+
+         while (true)
+         {
+            Object current = values[slot];
+
+            if (current == null)
+            {
+               return null;
+            }
+
+            if (keys[slot] == key)
+            {
+               size--;
+
+               shiftBack(slot, mask);
+
+               return (V)current;
+            }
+
+            slot = slot + 1 & mask;
+         }
+      }
+
+      synchronized void clear()
+      {
+         allocate(keys.length);
+
+         size = 0;
+      }
+
+      synchronized int copyKeys(final long[] target, final int position)
+      {
+         if (position + size > target.length)
+         {
+            return -1;
+         }
+
+         int pos = position;
+
+         for (int i = 0; i < values.length; i++)
+         {
+            if (values[i] != null)
+            {
+               target[pos++] = keys[i];
+            }
+         }
+
+         return pos;
+      }
+
+      synchronized long[] keys()
+      {
+         long[] target = new long[size];
+
+         copyKeys(target, 0);
+
+         return target;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized void copyValues(final List<V> target)
+      {
+         for (Object value : values)
+         {
+            if (value != null)
+            {
+               target.add((V)value);
+            }
+         }
+      }
+
+      /**
+       * Closes the hole left by a removal, moving back the entries that were displaced by collisions.
+       * This way we don't need tombstones, and lookups never degrade after many adds and removes.
+       */
+      private void shiftBack(final int removedSlot, final int mask)
+      {
+         int hole = removedSlot;
+
+         int slot = hole + 1 & mask;
+
+         while (values[slot] != null)
+         {
+            int ideal = (int)ConcurrentLongHashMap.hash(keys[slot]) & mask;
+
+            // Only entries whose ideal slot is not between the hole and their current slot can be moved back
+            if ((slot - ideal & mask) >= (slot - hole & mask))
+            {
+               keys[hole] = keys[slot];
+               values[hole] = values[slot];
+               hole = slot;
+            }
+
+            slot = slot + 1 & mask;
+         }
+
+         values[hole] = null;
+      }
+
+      private void rehash(final int newCapacity)
+      {
+         long[] oldKeys = keys;
+
+         Object[] oldValues = values;
+
+         allocate(newCapacity);
+
+         int mask = newCapacity - 1;
+
+         for (int i = 0; i < oldValues.length; i++)
+         {
+            if (oldValues[i] != null)
+            {
+               int slot = (int)ConcurrentLongHashMap.hash(oldKeys[i]) & mask;
+
+               while (values[slot] != null)
+               {
+                  slot = slot + 1 & mask;
+               }
+
+               keys[slot] = oldKeys[i];
+               values[slot] = oldValues[i];
+            }
+         }
+      }
+
+      private void allocate(final int capacity)
+      {
+         keys = new long[capacity];
+         values = new Object[capacity];
+         resizeThreshold = (int)(capacity * ConcurrentLongHashMap.MAP_FILL_FACTOR);
+      }
+   }
+
+}
@@ -83,6 +83,74 @@ public class AcknowledgeTest extends ServiceTestBase
       }
    }
 
+   public void testReceiveAckLastMessageOnlyPersistent() throws Exception
+   {
+      HornetQServer server = createServer(true);
+      try
+      {
+         server.start();
+         ServerLocator locator = createInVMNonHALocator();
+         locator.setAckBatchSize(0);
+         locator.setBlockOnAcknowledge(true);
+         ClientSessionFactory cf = locator.createSessionFactory();
+         ClientSession sendSession = cf.createSession(false, true, true);
+         ClientSession session = cf.createSession(false, true, true);
+         ClientSession txSession = cf.createSession(false, false, false);
+         sendSession.createQueue(addressA, queueA, true);
+         sendSession.createQueue(addressA, queueB, true);
+         sendSession.createQueue(addressA, queueC, true);
+         ClientProducer cp = sendSession.createProducer(addressA);
+         int numMessages = 100;
+         for (int i = 0; i < numMessages; i++)
+         {
+            cp.send(sendSession.createMessage(true));
+         }
+
+         // all the messages acked at once on queueA
+         ClientConsumer cc = session.createConsumer(queueA);
+         session.start();
+         ClientMessage cm = null;
+         for (int i = 0; i < numMessages; i++)
+         {
+            cm = cc.receive(5000);
+            Assert.assertNotNull(cm);
+         }
+         cm.acknowledge();
+
+         // half of them acked on a transaction on queueB
+         ClientConsumer txConsumer = txSession.createConsumer(queueB);
+         txSession.start();
+         for (int i = 0; i < numMessages / 2; i++)
+         {
+            cm = txConsumer.receive(5000);
+            Assert.assertNotNull(cm);
+         }
+         cm.acknowledge();
+         txSession.commit();
+
+         session.close();
+         txSession.close();
+         sendSession.close();
+         locator.close();
+
+         server.stop();
+         server.start();
+
+         Assert.assertEquals(0, ((Queue)server.getPostOffice().getBinding(queueA).getBindable()).getMessageCount());
+         Assert.assertEquals(numMessages / 2,
+                             ((Queue)server.getPostOffice().getBinding(queueB).getBindable()).getMessageCount());
+         Assert.assertEquals(numMessages,
+                             ((Queue)server.getPostOffice().getBinding(queueC).getBindable()).getMessageCount());
+      }
+      finally
+      {
+         if (server.isStarted())
+         {
+            server.stop();
+         }
+      }
+   }
+
    public void testAsyncConsumerNoAck() throws Exception
    {
       HornetQServer server = createServer(false);
@@ -35,7 +35,7 @@ public class ConsumerFilterTest extends ServiceTestBase
 {
    private static final Logger log = Logger.getLogger(ConsumerFilterTest.class);
 
-   private HornetQServer server;
+   protected HornetQServer server;
 
    @Override
    protected void setUp() throws Exception
@@ -26,6 +26,8 @@ import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.Queue;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.ConsumerDispatchPolicy;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 import org.hornetq.tests.util.ServiceTestBase;
 
@@ -101,6 +103,59 @@ public class ConsumerTest extends ServiceTestBase
       session.close();
    }
 
+   public void testWeightedDispatch() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+      settings.setConsumerDispatchPolicy(ConsumerDispatchPolicy.WEIGHTED);
+      server.getAddressSettingsRepository().addMatch(QUEUE.toString(), settings);
+
+      ClientSessionFactory sf = locator.createSessionFactory();
+
+      ClientSession heavySession = sf.createSession(false, true, true);
+
+      heavySession.addMetaData(HornetQClient.CONSUMER_WEIGHT_METADATA, "3");
+
+      ClientSession lightSession = sf.createSession(false, true, true);
+
+      heavySession.createQueue(QUEUE, QUEUE, null, false);
+
+      ClientConsumer heavyConsumer = heavySession.createConsumer(QUEUE);
+
+      ClientConsumer lightConsumer = lightSession.createConsumer(QUEUE);
+
+      heavySession.start();
+
+      lightSession.start();
+
+      ClientProducer producer = heavySession.createProducer(QUEUE);
+
+      final int numMessages = 40;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         producer.send(createTextMessage("m" + i, heavySession));
+      }
+
+      // nothing is acknowledged until all the messages are received, so they're dispatched by weight
+      for (int i = 0; i < numMessages * 3 / 4; i++)
+      {
+         Assert.assertNotNull(heavyConsumer.receive(5000));
+      }
+
+      for (int i = 0; i < numMessages / 4; i++)
+      {
+         Assert.assertNotNull(lightConsumer.receive(5000));
+      }
+
+      Assert.assertNull(heavyConsumer.receiveImmediate());
+
+      Assert.assertNull(lightConsumer.receiveImmediate());
+
+      heavySession.close();
+
+      lightSession.close();
+   }
+
    public void testConsumerAckImmediateAutoCommitFalse() throws Exception
    {
 
@@ -338,6 +338,88 @@ public class ConsumerWindowSizeTest extends ServiceTestBase
 
    }
 
+   public void testAdaptiveWindowReported() throws Exception
+   {
+      HornetQServer server = createServer(false, isNetty());
+      try
+      {
+         server.start();
+
+         int initialWindow = 1024 * 1024;
+
+         locator.setBlockOnNonDurableSend(false);
+         locator.setConsumerWindowSize(initialWindow);
+         locator.setConsumerWindowAdaptive(true);
+         locator.setConsumerMinWindowSize(1024);
+         locator.setConsumerMaxWindowSize(2 * initialWindow);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(false, true, true);
+
+         session.createQueue(addressA, queueA, false);
+
+         ClientProducer producer = session.createProducer(addressA);
+
+         ClientConsumer consumer = session.createConsumer(queueA);
+
+         QueueBinding binding = (QueueBinding)server.getPostOffice().getBinding(queueA);
+
+         ServerConsumerImpl serverConsumer = (ServerConsumerImpl)binding.getQueue().getConsumers().iterator().next();
+
+         // the credits are sent asynchronously
+         long timeout = System.currentTimeMillis() + 5000;
+         while (timeout > System.currentTimeMillis() && serverConsumer.getWindowSize() == -1)
+         {
+            Thread.sleep(10);
+         }
+
+         Assert.assertEquals(initialWindow, serverConsumer.getWindowSize());
+
+         session.start();
+
+         int numberOfMessages = 2000;
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(false);
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+            producer.send(message);
+         }
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(5000);
+            Assert.assertNotNull(message);
+            message.acknowledge();
+         }
+
+         // the window was resized and the server was told
+         timeout = System.currentTimeMillis() + 5000;
+         while (timeout > System.currentTimeMillis() && serverConsumer.getWindowSize() == initialWindow)
+         {
+            Thread.sleep(10);
+         }
+
+         int windowSize = serverConsumer.getWindowSize();
+
+         Assert.assertTrue("windowSize=" + windowSize, windowSize != initialWindow);
+         Assert.assertTrue("windowSize=" + windowSize, windowSize >= 1024);
+         Assert.assertTrue("windowSize=" + windowSize, windowSize <= 2 * initialWindow);
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         session.close();
+      }
+      finally
+      {
+         if (server.isStarted())
+         {
+            server.stop();
+         }
+      }
+   }
+
    /*
    * tests send window size. we do this by having 2 receivers on the q. since we roundrobin the consumer for delivery we
    * know if consumer 1 has received n messages then consumer 2 must have also have received n messages or at least up
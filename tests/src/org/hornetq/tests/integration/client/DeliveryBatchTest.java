@@ -0,0 +1,231 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.HornetQClient;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A DeliveryBatchTest
+ */
+public class DeliveryBatchTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("DeliveryBatchTestQueue");
+
+   private static final int BATCH_SIZE = 50;
+
+   // Attributes ----------------------------------------------------
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testDeliveredInOrder() throws Exception
+   {
+      doTestDeliveredInOrder(1024 * 1024);
+   }
+
+   public void testDeliveredInOrderSmallWindow() throws Exception
+   {
+      doTestDeliveredInOrder(1024);
+   }
+
+   public void testDeliveredInOrderSlowConsumer() throws Exception
+   {
+      doTestDeliveredInOrder(0);
+   }
+
+   public void testDeliveredInOrderNetty() throws Exception
+   {
+      locator.close();
+
+      locator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(UnitTestCase.NETTY_CONNECTOR_FACTORY));
+
+      doTestDeliveredInOrder(1024 * 1024);
+   }
+
+   public void testGroupsAndBatches() throws Exception
+   {
+      ClientSession session = createSession(1024 * 1024);
+
+      ClientProducer producer = session.createProducer(DeliveryBatchTest.QUEUE);
+
+      int numMessages = 500;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+
+         message.putIntProperty("count", i);
+
+         if (i % 7 == 0)
+         {
+            message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % 3));
+         }
+
+         producer.send(message);
+      }
+
+      ClientConsumer consumer = session.createConsumer(DeliveryBatchTest.QUEUE);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      Configuration configuration = createDefaultConfig();
+
+      configuration.setSecurityEnabled(false);
+
+      configuration.getAcceptorConfigurations().add(new TransportConfiguration(UnitTestCase.INVM_ACCEPTOR_FACTORY));
+
+      configuration.getAcceptorConfigurations().add(new TransportConfiguration(UnitTestCase.NETTY_ACCEPTOR_FACTORY));
+
+      AddressSettings settings = new AddressSettings();
+
+      settings.setDeliveryBatchSize(DeliveryBatchTest.BATCH_SIZE);
+
+      configuration.getAddressesSettings().put(DeliveryBatchTest.QUEUE.toString(), settings);
+
+      server = HornetQServers.newHornetQServer(configuration, false);
+
+      server.start();
+
+      locator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(UnitTestCase.INVM_CONNECTOR_FACTORY));
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      locator.close();
+
+      server.stop();
+
+      server = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private ClientSession createSession(final int consumerWindowSize) throws Exception
+   {
+      locator.setConsumerWindowSize(consumerWindowSize);
+
+      ClientSessionFactory sf = locator.createSessionFactory();
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(DeliveryBatchTest.QUEUE, DeliveryBatchTest.QUEUE, null, false);
+
+      return session;
+   }
+
+   private void doTestDeliveredInOrder(final int consumerWindowSize) throws Exception
+   {
+      ClientSession session = createSession(consumerWindowSize);
+
+      ClientProducer producer = session.createProducer(DeliveryBatchTest.QUEUE);
+
+      int numMessages = 1000;
+
+      ClientConsumer consumer = session.createConsumer(DeliveryBatchTest.QUEUE);
+
+      // half of them are sent before the consumer starts, so they are delivered in batches
+      for (int i = 0; i < numMessages; i++)
+      {
+         if (i == numMessages / 2)
+         {
+            session.start();
+         }
+
+         ClientMessage message = session.createMessage(false);
+
+         message.putIntProperty("count", i);
+
+         producer.send(message);
+      }
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+
+         Assert.assertNotNull(message);
+
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      consumer.close();
+
+      Queue queue = (Queue)server.getPostOffice().getBinding(DeliveryBatchTest.QUEUE).getBindable();
+
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      session.close();
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.HornetQClient;
+import org.hornetq.api.core.client.MessageHandler;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A DeliveryLanesTest
+ */
+public class DeliveryLanesTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("DeliveryLanesTestQueue");
+
+   private static final int LANES = 4;
+
+   // Attributes ----------------------------------------------------
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   private ClientSession session;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testGroupsDeliveredInOrder() throws Exception
+   {
+      ClientProducer producer = session.createProducer(DeliveryLanesTest.QUEUE);
+
+      int numGroups = 10;
+
+      int numMessages = 1000;
+
+      CountDownLatch latch = new CountDownLatch(numMessages);
+
+      CollectingHandler[] handlers = new CollectingHandler[3];
+
+      for (int i = 0; i < handlers.length; i++)
+      {
+         handlers[i] = new CollectingHandler(latch);
+
+         session.createConsumer(DeliveryLanesTest.QUEUE).setMessageHandler(handlers[i]);
+      }
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+
+         message.putIntProperty("count", i);
+
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % numGroups));
+
+         producer.send(message);
+      }
+
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+      Set<String> groupsSeen = new HashSet<String>();
+
+      for (CollectingHandler handler : handlers)
+      {
+         Assert.assertNull(handler.error);
+
+         Set<String> groups = new HashSet<String>();
+
+         int[] last = new int[numGroups];
+
+         for (int i = 0; i < numGroups; i++)
+         {
+            last[i] = -1;
+         }
+
+         for (ClientMessage message : handler.messages)
+         {
+            int count = message.getIntProperty("count");
+
+            String group = message.getStringProperty(Message.HDR_GROUP_ID);
+
+            // in order within the group
+            Assert.assertTrue(count > last[count % numGroups]);
+
+            last[count % numGroups] = count;
+
+            groups.add(group);
+         }
+
+         // and a group is only delivered to one consumer
+         for (String group : groups)
+         {
+            Assert.assertTrue(groupsSeen.add(group));
+         }
+      }
+
+      Assert.assertEquals(numGroups, groupsSeen.size());
+   }
+
+   public void testAllMessagesDelivered() throws Exception
+   {
+      ClientProducer producer = session.createProducer(DeliveryLanesTest.QUEUE);
+
+      int numMessages = 1000;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+
+         message.putIntProperty("count", i);
+
+         producer.send(message);
+      }
+
+      ClientConsumer[] consumers = new ClientConsumer[] { session.createConsumer(DeliveryLanesTest.QUEUE),
+                                                         session.createConsumer(DeliveryLanesTest.QUEUE) };
+
+      session.start();
+
+      boolean[] received = new boolean[numMessages];
+
+      int receivedCount = 0;
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (receivedCount < numMessages && System.currentTimeMillis() < timeout)
+      {
+         for (ClientConsumer consumer : consumers)
+         {
+            ClientMessage message = consumer.receive(100);
+
+            if (message != null)
+            {
+               message.acknowledge();
+
+               int count = message.getIntProperty("count");
+
+               Assert.assertFalse(received[count]);
+
+               received[count] = true;
+
+               receivedCount++;
+            }
+         }
+      }
+
+      Assert.assertEquals(numMessages, receivedCount);
+
+      for (ClientConsumer consumer : consumers)
+      {
+         Assert.assertNull(consumer.receiveImmediate());
+
+         consumer.close();
+      }
+
+      Queue queue = (Queue)server.getPostOffice().getBinding(DeliveryLanesTest.QUEUE).getBindable();
+
+      Assert.assertEquals(0, queue.getMessageCount());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      Configuration configuration = createDefaultConfig();
+
+      configuration.setSecurityEnabled(false);
+
+      configuration.getAcceptorConfigurations().add(new TransportConfiguration(UnitTestCase.INVM_ACCEPTOR_FACTORY));
+
+      AddressSettings settings = new AddressSettings();
+
+      settings.setDeliveryLanes(DeliveryLanesTest.LANES);
+
+      configuration.getAddressesSettings().put(DeliveryLanesTest.QUEUE.toString(), settings);
+
+      server = HornetQServers.newHornetQServer(configuration, false);
+
+      server.start();
+
+      locator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(UnitTestCase.INVM_CONNECTOR_FACTORY));
+
+      ClientSessionFactory sf = locator.createSessionFactory();
+
+      session = sf.createSession(false, true, true);
+
+      session.createQueue(DeliveryLanesTest.QUEUE, DeliveryLanesTest.QUEUE, null, false);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      session.close();
+
+      locator.close();
+
+      server.stop();
+
+      server = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+   private static class CollectingHandler implements MessageHandler
+   {
+      final List<ClientMessage> messages = new ArrayList<ClientMessage>();
+
+      final CountDownLatch latch;
+
+      volatile Exception error;
+
+      CollectingHandler(final CountDownLatch latch)
+      {
+         this.latch = latch;
+      }
+
+      public void onMessage(final ClientMessage message)
+      {
+         messages.add(message);
+
+         try
+         {
+            message.acknowledge();
+         }
+         catch (HornetQException e)
+         {
+            error = e;
+         }
+
+         latch.countDown();
+      }
+   }
+
+}
@@ -31,6 +31,7 @@ import org.hornetq.core.config.impl.ConfigurationImpl;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.core.transaction.impl.XidImpl;
 import org.hornetq.tests.util.UnitTestCase;
 
@@ -161,6 +162,85 @@ public class MessageGroupingTest extends UnitTestCase
       consumer.close();
    }
 
+   public void testGroupRebalance() throws Exception
+   {
+      SimpleString rebalanceQueue = new SimpleString("MessageGroupingTestRebalanceQueue");
+
+      AddressSettings settings = new AddressSettings();
+      settings.setGroupRebalance(true);
+      server.getAddressSettingsRepository().addMatch(rebalanceQueue.toString(), settings);
+
+      ServerLocator ackLocator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(UnitTestCase.INVM_CONNECTOR_FACTORY));
+      ackLocator.setAckBatchSize(0);
+      ackLocator.setBlockOnAcknowledge(true);
+
+      ClientSession session = ackLocator.createSessionFactory().createSession(false, true, true);
+
+      try
+      {
+         session.createQueue(rebalanceQueue, rebalanceQueue, null, false);
+
+         ClientProducer producer = session.createProducer(rebalanceQueue);
+         ClientConsumer consumer = session.createConsumer(rebalanceQueue);
+         session.start();
+
+         int numGroups = 10;
+
+         for (int i = 0; i < numGroups; i++)
+         {
+            ClientMessage message = createTextMessage("m" + i, session);
+            message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("grp" + i));
+            producer.send(message);
+         }
+
+         for (int i = 0; i < numGroups; i++)
+         {
+            ClientMessage cm = consumer.receive(500);
+            Assert.assertNotNull(cm);
+            cm.acknowledge();
+         }
+
+         // every group is at a boundary, so they can move to the new consumer
+         ClientConsumer consumer2 = session.createConsumer(rebalanceQueue);
+
+         for (int i = 0; i < numGroups; i++)
+         {
+            ClientMessage message = createTextMessage("m" + i, session);
+            message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("grp" + i));
+            producer.send(message);
+         }
+
+         int received = 0;
+         int received2 = 0;
+
+         ClientMessage cm;
+
+         while ((cm = consumer.receive(500)) != null)
+         {
+            cm.acknowledge();
+            received++;
+         }
+
+         while ((cm = consumer2.receive(500)) != null)
+         {
+            cm.acknowledge();
+            received2++;
+         }
+
+         Assert.assertEquals(numGroups, received + received2);
+         Assert.assertTrue(received > 0);
+         Assert.assertTrue(received2 > 0);
+
+         consumer.close();
+         consumer2.close();
+      }
+      finally
+      {
+         session.close();
+         ackLocator.close();
+      }
+   }
+
    private void doTestMultipleGroupingSingleConsumer(final boolean directDelivery) throws Exception
    {
       ClientProducer clientProducer = clientSession.createProducer(qName);
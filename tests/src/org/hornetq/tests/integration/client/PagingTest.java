@@ -42,8 +42,13 @@ import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.logging.Logger;
+import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.paging.cursor.PagedReference;
+import org.hornetq.core.paging.cursor.SharedPageCache;
+import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.paging.impl.TestSupportPageStore;
 import org.hornetq.core.persistence.OperationContext;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
@@ -53,6 +58,7 @@ import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.tests.util.ServiceTestBase;
 import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LinkedListIterator;
 
 /**
  * A PagingTest
@@ -306,6 +312,729 @@ public class PagingTest extends ServiceTestBase
       internaltestSendReceivePaging(false);
    }
 
+   public void testPageIndexedLookup() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      HashMap<String, AddressSettings> settings = new HashMap<String, AddressSettings>();
+
+      AddressSettings indexed = new AddressSettings();
+      indexed.setPageIndex(true);
+      settings.put(PagingTest.ADDRESS.toString(), indexed);
+
+      HornetQServer server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+         ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            message.putIntProperty(new SimpleString("id"), i);
+
+            producer.send(message);
+         }
+
+         session.close();
+         sf.close();
+         locator.close();
+
+         server.stop();
+
+         server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+         server.start();
+
+         PagingStore store = server.getPagingManager().getPageStore(PagingTest.ADDRESS);
+
+         Assert.assertTrue(store.isPageIndex());
+
+         PageCursorProvider provider = store.getCursorProvier();
+
+         int cacheSize = provider.getCacheSize();
+
+         long pageId = store.getFirstPage() + 1;
+
+         Assert.assertTrue(pageId < store.getCurrentWritingPage());
+
+         PagedMessage first = provider.getMessage(new PagePositionImpl(pageId, 0));
+
+         PagedMessage second = provider.getMessage(new PagePositionImpl(pageId, 1));
+
+         Assert.assertEquals(first.getMessage().getIntProperty("id") + 1, second.getMessage()
+                                                                                .getIntProperty("id")
+                                                                                .intValue());
+
+         // the messages were read through the index, without caching their page
+         Assert.assertEquals(cacheSize, provider.getCacheSize());
+
+         locator = createInVMNonHALocator();
+         sf = locator.createSessionFactory();
+
+         session = sf.createSession(null, null, false, true, true, false, 0);
+
+         ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            message.acknowledge();
+         }
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         session.close();
+         sf.close();
+         locator.close();
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
+   public void testPageCacheMaxSize() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      final long pageCacheMaxSize = 3 * PagingTest.PAGE_SIZE;
+
+      config.setPageCacheMaxSize(pageCacheMaxSize);
+
+      HornetQServer server = createServer(true,
+                                          config,
+                                          PagingTest.PAGE_SIZE,
+                                          PagingTest.PAGE_MAX,
+                                          new HashMap<String, AddressSettings>());
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+         ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            message.putIntProperty(new SimpleString("id"), i);
+
+            producer.send(message);
+         }
+
+         session.close();
+         sf.close();
+         locator.close();
+
+         server.stop();
+
+         server = createServer(true,
+                               config,
+                               PagingTest.PAGE_SIZE,
+                               PagingTest.PAGE_MAX,
+                               new HashMap<String, AddressSettings>());
+         server.start();
+
+         locator = createInVMNonHALocator();
+         sf = locator.createSessionFactory();
+
+         session = sf.createSession(null, null, false, true, true, false, 0);
+
+         ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            message.acknowledge();
+         }
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         SharedPageCache pageCache = server.getPagingManager().getPageCache();
+
+         Assert.assertEquals(pageCacheMaxSize, pageCache.getMaxSize());
+         Assert.assertTrue(pageCache.getSize() <= pageCacheMaxSize);
+         Assert.assertTrue(pageCache.getMisses() > 0);
+         Assert.assertTrue(pageCache.getHits() > 0);
+         Assert.assertTrue(pageCache.getEvictions() > 0);
+
+         session.close();
+         sf.close();
+         locator.close();
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
+   public void testPageReadAhead() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      HashMap<String, AddressSettings> settings = new HashMap<String, AddressSettings>();
+
+      AddressSettings readAhead = new AddressSettings();
+      readAhead.setPageReadAhead(2);
+      settings.put(PagingTest.ADDRESS.toString(), readAhead);
+
+      HornetQServer server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+         ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            message.putIntProperty(new SimpleString("id"), i);
+
+            producer.send(message);
+         }
+
+         session.close();
+         sf.close();
+         locator.close();
+
+         server.stop();
+
+         server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+         server.start();
+
+         PagingStore store = server.getPagingManager().getPageStore(PagingTest.ADDRESS);
+
+         Assert.assertEquals(2, store.getPageReadAhead());
+
+         PageCursorProvider provider = store.getCursorProvier();
+
+         SharedPageCache sharedCache = server.getPagingManager().getPageCache();
+
+         Queue queue = (Queue)server.getPostOffice().getBinding(PagingTest.ADDRESS).getBindable();
+
+         long firstPage = store.getFirstPage();
+
+         // Nothing is depaged until there's a consumer, so this iterator is the only one reading the pages
+         LinkedListIterator<PagedReference> iterator = queue.getPageSubscription().iterator();
+
+         try
+         {
+            PagedReference reference = iterator.next();
+
+            Assert.assertEquals(firstPage, reference.getPosition().getPageNr());
+
+            provider.flushExecutors();
+
+            // the next two pages were read as the subscription started delivering the first one
+            Assert.assertTrue(sharedCache.contains(provider, firstPage + 1));
+            Assert.assertTrue(sharedCache.contains(provider, firstPage + 2));
+            Assert.assertFalse(sharedCache.contains(provider, firstPage + 3));
+
+            while (reference.getPosition().getPageNr() == firstPage)
+            {
+               reference = iterator.next();
+               Assert.assertNotNull(reference);
+            }
+
+            Assert.assertEquals(firstPage + 1, reference.getPosition().getPageNr());
+
+            provider.flushExecutors();
+
+            Assert.assertTrue(sharedCache.contains(provider, firstPage + 3));
+         }
+         finally
+         {
+            iterator.close();
+         }
+
+         locator = createInVMNonHALocator();
+         sf = locator.createSessionFactory();
+
+         session = sf.createSession(null, null, false, true, true, false, 0);
+
+         ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            message.acknowledge();
+         }
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         // the first messages were routed before the address started paging
+         long depaged = queue.getPageSubscription().getDepagedCount();
+
+         Assert.assertTrue(depaged > 0);
+         Assert.assertTrue(depaged <= numberOfMessages);
+
+         session.close();
+         sf.close();
+         locator.close();
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
+   public void testPageCompression() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      HashMap<String, AddressSettings> settings = new HashMap<String, AddressSettings>();
+
+      AddressSettings compressed = new AddressSettings();
+      compressed.setPageCompression(true);
+      settings.put(PagingTest.ADDRESS.toString(), compressed);
+
+      HornetQServer server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+         ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+
+            message.getBodyBuffer().writeString("message " + i + " " + new String(new char[1024]).replace('\0', 'x'));
+
+            message.putIntProperty(new SimpleString("id"), i);
+
+            producer.send(message);
+         }
+
+         Assert.assertTrue(server.getPagingManager().getPageStore(PagingTest.ADDRESS).isPageCompression());
+
+         session.close();
+         sf.close();
+         locator.close();
+
+         server.stop();
+
+         server = createServer(true, config, PagingTest.PAGE_SIZE, PagingTest.PAGE_MAX, settings);
+         server.start();
+
+         locator = createInVMNonHALocator();
+         sf = locator.createSessionFactory();
+
+         session = sf.createSession(null, null, false, true, true, false, 0);
+
+         ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            Assert.assertTrue(message.getBodyBuffer().readString().startsWith("message " + i + " xxx"));
+
+            message.acknowledge();
+         }
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         session.close();
+         sf.close();
+         locator.close();
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
+   public void testGlobalMaxSize() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      final long globalMaxSize = 2 * PagingTest.PAGE_MAX;
+
+      config.setGlobalMaxSize(globalMaxSize);
+
+      // no per-address limit, the addresses only page when the global max size is reached
+      HornetQServer server = createServer(true,
+                                          config,
+                                          PagingTest.PAGE_SIZE,
+                                          -1,
+                                          new HashMap<String, AddressSettings>());
+
+      server.start();
+
+      final SimpleString hotAddress = new SimpleString("hot");
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+         session.createQueue(hotAddress, hotAddress, null, true);
+
+         ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+         ClientProducer hotProducer = session.createProducer(hotAddress);
+
+         ClientConsumer hotConsumer = session.createConsumer(hotAddress);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = session.createMessage(true);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            message.putIntProperty(new SimpleString("id"), i);
+
+            producer.send(message);
+
+            // the hot address is consumed as it's sent to, so it never gets large
+            message = session.createMessage(true);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            hotProducer.send(message);
+
+            message = hotConsumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            message.acknowledge();
+         }
+
+         PagingStore coldStore = server.getPagingManager().getPageStore(PagingTest.ADDRESS);
+
+         PagingStore hotStore = server.getPagingManager().getPageStore(hotAddress);
+
+         Assert.assertEquals(-1, coldStore.getMaxSize());
+
+         Assert.assertTrue(coldStore.isPaging());
+
+         Assert.assertFalse(hotStore.isPaging());
+
+         Assert.assertEquals(globalMaxSize, server.getPagingManager().getGlobalMaxSize());
+
+         Assert.assertTrue(coldStore.getAddressSize() <= globalMaxSize + PagingTest.PAGE_SIZE);
+
+         ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            message.acknowledge();
+         }
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         session.close();
+         sf.close();
+         locator.close();
+
+         Assert.assertEquals(0, server.getPagingManager().getGlobalSize());
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
+   public void testGlobalMaxSizeBlocksAndDrops() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      final long globalMaxSize = 100 * 1024;
+
+      config.setGlobalMaxSize(globalMaxSize);
+
+      final SimpleString blockAddress = new SimpleString("block");
+
+      final SimpleString dropAddress = new SimpleString("drop");
+
+      HashMap<String, AddressSettings> settings = new HashMap<String, AddressSettings>();
+
+      AddressSettings blockSettings = new AddressSettings();
+      blockSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.BLOCK);
+      settings.put(blockAddress.toString(), blockSettings);
+
+      AddressSettings dropSettings = new AddressSettings();
+      dropSettings.setAddressFullMessagePolicy(AddressFullMessagePolicy.DROP);
+      settings.put(dropAddress.toString(), dropSettings);
+
+      // no per-address limit, only the global max size stops the addresses
+      HornetQServer server = createServer(true, config, PagingTest.PAGE_SIZE, -1, settings);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      try
+      {
+         ServerLocator locator = createInVMNonHALocator();
+
+         locator.setBlockOnNonDurableSend(true);
+
+         ClientSessionFactory sf = locator.createSessionFactory();
+
+         ClientSession session = sf.createSession(null, null, false, true, true, false, 0);
+
+         session.createQueue(blockAddress, blockAddress, null, false);
+
+         session.createQueue(dropAddress, dropAddress, null, false);
+
+         final ClientSession producerSession = sf.createSession(null, null, false, true, true, false, 0);
+
+         final ClientProducer blockProducer = producerSession.createProducer(blockAddress);
+
+         final CountDownLatch sent = new CountDownLatch(1);
+
+         final AtomicInteger errors = new AtomicInteger(0);
+
+         Thread producerThread = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  for (int i = 0; i < numberOfMessages; i++)
+                  {
+                     ClientMessage message = producerSession.createMessage(false);
+
+                     message.getBodyBuffer().writeBytes(new byte[1024]);
+
+                     message.putIntProperty(new SimpleString("id"), i);
+
+                     blockProducer.send(message);
+                  }
+               }
+               catch (Exception e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+
+               sent.countDown();
+            }
+         };
+
+         producerThread.start();
+
+         // the messages don't fit in the global max size
+         Assert.assertFalse(sent.await(2, TimeUnit.SECONDS));
+
+         Assert.assertTrue(server.getPagingManager().isGlobalFull());
+
+         ClientProducer dropProducer = session.createProducer(dropAddress);
+
+         for (int i = 0; i < 10; i++)
+         {
+            ClientMessage message = session.createMessage(false);
+
+            message.getBodyBuffer().writeBytes(new byte[1024]);
+
+            dropProducer.send(message);
+         }
+
+         Queue dropQueue = (Queue)server.getPostOffice().getBinding(dropAddress).getBindable();
+
+         Assert.assertEquals(0, dropQueue.getMessageCount());
+
+         ClientConsumer consumer = session.createConsumer(blockAddress);
+
+         session.start();
+
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            ClientMessage message = consumer.receive(PagingTest.RECEIVE_TIMEOUT);
+
+            Assert.assertNotNull(message);
+
+            Assert.assertEquals(i, message.getIntProperty("id").intValue());
+
+            message.acknowledge();
+         }
+
+         Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+
+         Assert.assertEquals(0, errors.get());
+
+         Assert.assertNull(consumer.receiveImmediate());
+
+         producerSession.close();
+         session.close();
+         sf.close();
+         locator.close();
+
+         Assert.assertEquals(0, server.getPagingManager().getGlobalSize());
+      }
+      finally
+      {
+         try
+         {
+            server.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+   }
+
    public void testWithDiverts() throws Exception
    {
       internalMultiQueuesTest(true);
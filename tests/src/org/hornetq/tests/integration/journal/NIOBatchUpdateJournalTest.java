@@ -0,0 +1,327 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.config.impl.ConfigurationImpl;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
+import org.hornetq.core.journal.impl.dataformat.JournalUpdateBatchRecord;
+import org.hornetq.tests.unit.core.journal.impl.JournalImplTestBase;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+
+/**
+ * Tests the journal with updates written through Journal#appendUpdateRecords
+ */
+public class NIOBatchUpdateJournalTest extends JournalImplTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testBatchSmallerThanUpdates() throws Exception
+   {
+      long[] ids = new long[100];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         ids[i] = 1000 + i * 3;
+      }
+
+      ByteArrayEncoding data = new ByteArrayEncoding(new byte[8]);
+
+      JournalUpdateBatchRecord batch = new JournalUpdateBatchRecord(ids, (byte)0, data);
+
+      int updatesSize = new JournalAddRecord(false, ids[0], (byte)0, data).getEncodeSize() * ids.length;
+
+      // one byte for every id, as they are close to each other
+      Assert.assertEquals(updatesSize / ids.length + ids.length, batch.getEncodeSize());
+   }
+
+   public void testBatchUpdate() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+      updateBatch(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+      // not ordered, with gaps
+      updateBatch(10, 3, 7, 1, 9);
+
+      updateBatch(5);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchUpdateTransactional() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+      updateBatchTx(1, 1, 2, 3, 4, 5);
+      updateTx(1, 6);
+      commit(1);
+
+      updateBatchTx(2, 6, 7, 8, 9, 10);
+      prepare(2, new SimpleEncoding(10, (byte)0));
+
+      updateBatchTx(3, 1, 2, 3);
+      rollback(3);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchLargerThanFile() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      recordLength = 10;
+      createJournal();
+      startJournal();
+      load();
+
+      long[] ids = new long[3000];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         // far from each other, so every id is written with several bytes
+         ids[i] = (i + 1) * 1000000000L;
+
+         add(ids[i]);
+      }
+
+      updateBatch(ids);
+
+      updateBatchTx(1, ids);
+      commit(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchLargerThanBuffer() throws Exception
+   {
+      fileFactory.stop();
+
+      // a buffer much smaller than the files, as the defaults are
+      fileFactory = new NIOSequentialFileFactory(getTestDir(),
+                                                 true,
+                                                 4 * 1024,
+                                                 ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
+                                                 false);
+      fileFactory.start();
+
+      setup(2, 100 * 1024, false);
+      recordLength = 10;
+      createJournal();
+      startJournal();
+      load();
+
+      long[] ids = new long[1000];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         // far from each other, so the ids alone take more than the buffer
+         ids[i] = (i + 1) * 1000000000L;
+
+         add(ids[i]);
+      }
+
+      updateBatch(ids);
+
+      updateBatchTx(1, ids);
+      commit(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchWithUnknownID() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      byte[] updateRecord = generateRecord(recordLength);
+
+      // the unknown id doesn't fail the update of the others
+      journal.appendUpdateRecords(new long[] { 1, 100, 3 }, (byte)0, new ByteArrayEncoding(updateRecord), true);
+
+      records.add(new RecordInfo(1, (byte)0, updateRecord, true, (short)0));
+      records.add(new RecordInfo(3, (byte)0, updateRecord, true, (short)0));
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchReclaimed() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 1; i <= 50; i++)
+      {
+         add(i);
+      }
+
+      long[] ids = new long[50];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         ids[i] = i + 1;
+      }
+
+      updateBatch(ids);
+
+      for (long i = 1; i <= 50; i++)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      int dataFiles = journal.getDataFilesCount();
+
+      checkAndReclaimFiles();
+
+      Assert.assertTrue(journal.getDataFilesCount() < dataFiles);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchCompacted() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      long[] ids = new long[50];
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         ids[i] = i + 1;
+         add(ids[i]);
+      }
+
+      updateBatch(ids);
+
+      updateBatchTx(1, ids);
+      commit(1);
+
+      for (long i = 1; i <= 50; i += 2)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      journal.compact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testBatchWhileCompacting() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5);
+
+      journal.forceMoveNextFile();
+
+      startCompact();
+
+      updateBatch(1, 2, 3, 4, 5);
+
+      updateBatchTx(1, 1, 2, 3);
+
+      finishCompact();
+
+      commit(1);
+
+      delete(5);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+
+      return new NIOSequentialFileFactory(getTestDir(), true);
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.JournalImplTestBase;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+
+/**
+ * Tests the journal with JournalImpl#setRecordChecksum on
+ */
+public class NIOChecksumJournalImplTest extends JournalImplTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private boolean recordChecksum = true;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setRecordChecksum(recordChecksum);
+   }
+
+   public void testTornRecordIgnored() throws Exception
+   {
+      setup(2, 100 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      journal.forceMoveNextFile();
+
+      JournalFile file = journal.getDataFiles()[0];
+
+      Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, file.getJournalVersion());
+
+      stopJournal();
+
+      // type, fileID, compactCount, id, size, userRecordType
+      int bodyStart = 1 + 4 + 1 + 8 + 4 + 1;
+
+      int recordSize = JournalImpl.SIZE_ADD_RECORD + 1 + recordLength + 4;
+
+      // Changing a byte in the middle of the body of the third record, as a torn write would.
+      // The size of the record is still valid, only the CRC can tell it's broken
+      changeByte(file, JournalImpl.SIZE_HEADER + recordSize * 2 + bodyStart + recordLength / 2);
+
+      records.remove(2);
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testRecordsAfterTornRecordDiscarded() throws Exception
+   {
+      setup(2, 100 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5);
+
+      journal.forceMoveNextFile();
+
+      JournalFile file = journal.getDataFiles()[0];
+
+      stopJournal();
+
+      int recordSize = JournalImpl.SIZE_ADD_RECORD + 1 + recordLength + 4;
+
+      // The file is the last one written to, and the writes after a torn one were never acknowledged, so the file
+      // is truncated at the torn record
+      changeByte(file, JournalImpl.SIZE_HEADER + recordSize + recordSize / 2);
+
+      while (records.size() > 1)
+      {
+         records.remove(1);
+      }
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testDamagedRecordOnOlderFileSkipped() throws Exception
+   {
+      setup(2, 100 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      journal.forceMoveNextFile();
+
+      JournalFile file = journal.getDataFiles()[0];
+
+      add(4, 5);
+
+      stopJournal();
+
+      int recordSize = JournalImpl.SIZE_ADD_RECORD + 1 + recordLength + 4;
+
+      // All the writes on a file the journal moved on from were completed, so only the damaged record is lost
+      changeByte(file, JournalImpl.SIZE_HEADER + recordSize + recordSize / 2);
+
+      records.remove(1);
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testFailedEncodingOnCurrentFile() throws Exception
+   {
+      setup(2, 100 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setConcurrentAppend(true);
+      startJournal();
+      load();
+
+      add(1);
+
+      try
+      {
+         journal.appendAddRecord(2, (byte)0, new EncodingSupport()
+         {
+            public int getEncodeSize()
+            {
+               return 100;
+            }
+
+            public void encode(final HornetQBuffer buffer)
+            {
+               throw new IllegalStateException("Failing on purpose");
+            }
+
+            public void decode(final HornetQBuffer buffer)
+            {
+            }
+         }, false);
+
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // The space claimed by the failed record is filled with zeros, and the records after it are still loaded
+      add(3, 4);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testFilesWithoutChecksum() throws Exception
+   {
+      setup(2, 100 * 1024, false);
+
+      recordChecksum = false;
+
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      journal.forceMoveNextFile();
+
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, journal.getDataFiles()[0].getJournalVersion());
+
+      stopJournal();
+
+      recordChecksum = true;
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      update(1);
+
+      add(4, 5);
+
+      delete(2);
+
+      journal.forceMoveNextFile();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testCompactWithChecksum() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 1; i <= 100; i++)
+      {
+         add(i);
+
+         if (i % 2 == 0)
+         {
+            update(i);
+         }
+
+         if (i % 10 == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+
+      for (long i = 1; i <= 100; i += 3)
+      {
+         delete(i);
+      }
+
+      addTx(1, 101, 102);
+      updateTx(1, 2);
+      deleteTx(1, 4);
+      commit(1);
+
+      addTx(2, 103);
+      prepare(2, new SimpleEncoding(10, (byte)0));
+
+      journal.forceMoveNextFile();
+
+      journal.compact();
+
+      for (JournalFile file : journal.getDataFiles())
+      {
+         Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, file.getJournalVersion());
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+
+      return new NIOSequentialFileFactory(getTestDir(), true);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void changeByte(final JournalFile file, final int position) throws Exception
+   {
+      RandomAccessFile randomFile = new RandomAccessFile(new File(getTestDir(), file.getFile().getFileName()), "rw");
+
+      try
+      {
+         randomFile.seek(position);
+
+         byte original = randomFile.readByte();
+
+         randomFile.seek(position);
+
+         randomFile.writeByte(original + 1);
+      }
+      finally
+      {
+         randomFile.close();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
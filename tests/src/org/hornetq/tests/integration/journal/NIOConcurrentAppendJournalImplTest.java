@@ -0,0 +1,231 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.SimpleWaitIOCallback;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Runs the whole NIOJournalImplTest with JournalImpl#setConcurrentAppend on
+ */
+public class NIOConcurrentAppendJournalImplTest extends NIOJournalImplTest
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setConcurrentAppend(true);
+   }
+
+   public void testConcurrentAppendIsEnabled() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+
+      Assert.assertTrue(((JournalImpl)journal).isConcurrentAppend());
+   }
+
+   public void testConcurrentAppendsAcrossFiles() throws Exception
+   {
+      final int NUMBER_OF_THREADS = 10;
+
+      final int NUMBER_OF_RECORDS = 500;
+
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      final AtomicLong seqGenerator = new AtomicLong(1);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      final ArrayList<RecordInfo> recordsAdded = new ArrayList<RecordInfo>();
+
+      Thread threads[] = new Thread[NUMBER_OF_THREADS];
+
+      for (int i = 0; i < threads.length; i++)
+      {
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  latchStart.await();
+
+                  for (int r = 0; r < NUMBER_OF_RECORDS; r++)
+                  {
+                     long id = seqGenerator.incrementAndGet();
+
+                     byte[] record = generateRecord(100);
+
+                     if (r % 2 == 0)
+                     {
+                        journal.appendAddRecord(id, (byte)0, record, r % 10 == 0);
+                     }
+                     else
+                     {
+                        long txID = seqGenerator.incrementAndGet();
+                        journal.appendAddRecordTransactional(txID, id, (byte)0, record);
+                        journal.appendCommitRecord(txID, r % 10 == 1);
+                     }
+
+                     synchronized (recordsAdded)
+                     {
+                        recordsAdded.add(new RecordInfo(id, (byte)0, record, false, (short)0));
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+
+         threads[i].start();
+      }
+
+      latchStart.countDown();
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+
+      Assert.assertTrue(journal.getDataFilesCount() > 1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+
+      // The threads are racing, so the records are not loaded in the order they were added
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      journal.load(committedRecords, new ArrayList<PreparedTransactionInfo>(), null);
+
+      Assert.assertEquals(NUMBER_OF_THREADS * NUMBER_OF_RECORDS, committedRecords.size());
+
+      Map<Long, RecordInfo> loaded = new HashMap<Long, RecordInfo>();
+
+      for (RecordInfo info : committedRecords)
+      {
+         loaded.put(info.id, info);
+      }
+
+      for (RecordInfo expected : recordsAdded)
+      {
+         RecordInfo actual = loaded.get(expected.id);
+         Assert.assertNotNull(actual);
+         UnitTestCase.assertEqualsByteArrays(expected.data, actual.data);
+      }
+   }
+
+   public void testFailedEncodingDoesNotBlockTheJournal() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1);
+
+      try
+      {
+         // The exception is thrown after the space for the record was claimed
+         journal.appendAddRecord(2, (byte)0, new EncodingSupport()
+         {
+            public int getEncodeSize()
+            {
+               return 100;
+            }
+
+            public void encode(final HornetQBuffer buffer)
+            {
+               throw new IllegalStateException("Failing on purpose");
+            }
+
+            public void decode(final HornetQBuffer buffer)
+            {
+            }
+         }, false);
+
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      // The batch with the claimed space is still flushed
+      byte[] record = generateRecord(recordLength);
+
+      SimpleWaitIOCallback callback = new SimpleWaitIOCallback();
+
+      journal.appendAddRecord(3, (byte)0, record, true, callback);
+
+      Assert.assertTrue(callback.waitCompletion(5000));
+
+      records.add(new RecordInfo(3, (byte)0, record, false, (short)0));
+
+      add(4);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
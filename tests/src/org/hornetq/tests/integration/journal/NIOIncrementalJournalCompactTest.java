@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+
+/**
+ * Runs the whole NIOJournalCompactTest with JournalImpl#setCompactFilesPerCycle set
+ */
+public class NIOIncrementalJournalCompactTest extends NIOJournalCompactTest
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int FILES_PER_CYCLE = 2;
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setCompactFilesPerCycle(NIOIncrementalJournalCompactTest.FILES_PER_CYCLE);
+   }
+
+   public void testOnlyOldestFilesCompacted() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      long id = 1;
+
+      // one record left on each file
+      for (int i = 0; i < 10; i++)
+      {
+         add(id++);
+         add(id++);
+         delete(id - 1);
+         journal.forceMoveNextFile();
+      }
+
+      List<Long> filesBefore = getFileIDs();
+
+      journal.compact();
+
+      List<Long> filesAfter = getFileIDs();
+
+      JournalImpl journalImpl = (JournalImpl)journal;
+
+      // The 2 oldest files were rewritten into 1, the others weren't touched
+      Assert.assertEquals(filesBefore.size() - 1, filesAfter.size());
+      Assert.assertEquals(filesBefore.subList(NIOIncrementalJournalCompactTest.FILES_PER_CYCLE, filesBefore.size()),
+                          filesAfter.subList(1, filesAfter.size()));
+
+      Assert.assertEquals(1, journalImpl.getLastCompactReclaimedFiles());
+      Assert.assertTrue(journalImpl.getLastCompactBytesRewritten() > 0);
+      Assert.assertTrue(journalImpl.getLastCompactPauseTime() >= 0);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testPendingTransactionCompactsWholeJournal() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      long id = 1;
+
+      // the transaction spans every file, so no group of files can be compacted alone
+      for (int i = 0; i < 10; i++)
+      {
+         addTx(1, id++);
+         add(id++);
+         delete(id - 1);
+         journal.forceMoveNextFile();
+      }
+
+      int filesBefore = journal.getDataFilesCount();
+
+      journal.compact();
+
+      // the whole journal, including the current file, was rewritten into a single file
+      Assert.assertEquals(1, journal.getDataFilesCount());
+      Assert.assertEquals(filesBefore, ((JournalImpl)journal).getLastCompactReclaimedFiles());
+
+      commit(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private List<Long> getFileIDs()
+   {
+      List<Long> ids = new ArrayList<Long>();
+
+      for (JournalFile file : journal.getDataFiles())
+      {
+         ids.add(file.getFileID());
+      }
+
+      return ids;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
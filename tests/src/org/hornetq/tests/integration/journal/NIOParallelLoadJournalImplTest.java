@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+
+/**
+ * Runs the whole NIOJournalImplTest reading the journal files in parallel during load
+ */
+public class NIOParallelLoadJournalImplTest extends NIOJournalImplTest
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setLoadThreads(3);
+   }
+
+   public void testLoadManyFilesInOrder() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      long id = 1;
+
+      // Updates and deletes are spread over many files, so they are only correct if the files are merged in order
+      for (int i = 0; i < 1000; i++)
+      {
+         journal.appendAddRecord(id, (byte)0, generateRecord(100), false);
+         journal.appendUpdateRecord(id, (byte)1, generateRecord(100), false);
+         if (i % 3 == 0)
+         {
+            journal.appendDeleteRecord(id, false);
+         }
+         id++;
+      }
+
+      Assert.assertTrue(journal.getDataFilesCount() > 10);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      journal.load(committedRecords, new ArrayList<PreparedTransactionInfo>(), null);
+
+      // one add and one update for each record not deleted
+      Assert.assertEquals(2 * (1000 - 334), committedRecords.size());
+
+      long lastID = 0;
+
+      for (RecordInfo info : committedRecords)
+      {
+         Assert.assertTrue((info.id - 1) % 3 != 0);
+         Assert.assertTrue(info.id >= lastID);
+         lastID = info.id;
+      }
+   }
+
+   public void testInvalidLoadThreads() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+
+      try
+      {
+         ((JournalImpl)journal).setLoadThreads(0);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.JournalImplTestBase;
+
+/**
+ * Tests the journal with JournalImpl#setMaxPreallocatedFiles
+ */
+public class NIOPreallocateJournalTest extends JournalImplTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int MAX_PREALLOCATED = 4;
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+
+      ((JournalImpl)journal).setMaxPreallocatedFiles(NIOPreallocateJournalTest.MAX_PREALLOCATED);
+   }
+
+   public void testFilesPreallocated() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 1; i <= 200; i++)
+      {
+         add(i);
+      }
+
+      journal.debugWait();
+
+      // The files are used much faster than one per second here, so the preallocator keeps as many as it's allowed
+      Assert.assertEquals(NIOPreallocateJournalTest.MAX_PREALLOCATED, journal.getFreeFilesCount());
+
+      long lastID = 0;
+
+      for (JournalFile file : journal.getDataFiles())
+      {
+         Assert.assertTrue(file.getFileID() > lastID);
+         lastID = file.getFileID();
+      }
+
+      // No temporary files left by the preallocator
+      for (String fileName : new File(getTestDir()).list())
+      {
+         Assert.assertFalse(fileName, fileName.endsWith(".tmp"));
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testReclaimedFilesRecycled() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 1; i <= 100; i++)
+      {
+         add(i);
+      }
+
+      for (long i = 1; i <= 100; i++)
+      {
+         update(i);
+      }
+
+      for (long i = 1; i <= 100; i++)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      int dataFiles = journal.getDataFilesCount();
+
+      checkAndReclaimFiles();
+
+      Assert.assertTrue(journal.getDataFilesCount() < dataFiles);
+
+      Assert.assertTrue(journal.getFreeFilesCount() <= NIOPreallocateJournalTest.MAX_PREALLOCATED + minFiles);
+
+      add(101, 102, 103);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   /** Appends, updates and deletes while files are being preallocated and recycled, then checks the order on reload */
+   public void testOrderWhilePreallocating() throws Exception
+   {
+      setup(2, 10 * 1024, false);
+      createJournal();
+      journal.setAutoReclaim(true);
+      startJournal();
+      load();
+
+      for (long i = 1; i <= 1000; i++)
+      {
+         add(i);
+
+         if (i % 3 == 0)
+         {
+            update(i - 1);
+         }
+
+         if (i % 5 == 0)
+         {
+            delete(i - 2);
+         }
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+
+      return new NIOSequentialFileFactory(getTestDir(), true);
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.TieredJournal;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A TieredJournalTest
+ */
+public class TieredJournalTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final byte HOT_TYPE = 1;
+
+   private static final byte UPDATE_TYPE = 2;
+
+   private static final byte COLD_TYPE = 3;
+
+   private static final int HOT_FILE_SIZE = 100 * 1024;
+
+   private static final int HOT_FILES = 2;
+
+   // Attributes ----------------------------------------------------
+
+   private JournalImpl mainJournal;
+
+   private JournalImpl hotJournal;
+
+   private TieredJournal journal;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testShortLivedRecordsStayOnHotJournal() throws Exception
+   {
+      createJournal();
+
+      for (long id = 1; id <= 1000; id++)
+      {
+         journal.appendAddRecord(id, TieredJournalTest.HOT_TYPE, new byte[100], false);
+         journal.appendUpdateRecord(id, TieredJournalTest.UPDATE_TYPE, new byte[10], false);
+         journal.appendDeleteRecord(id, false);
+      }
+
+      Assert.assertEquals(1000, journal.getHotDeletedCount());
+      Assert.assertEquals(0, journal.getMigratedCount());
+
+      journal.stop();
+
+      // nothing was written to the main journal
+      createJournal();
+
+      Assert.assertEquals(0, mainJournal.getNumberOfRecords());
+
+      journal.stop();
+   }
+
+   public void testColdRecordsOnMainJournal() throws Exception
+   {
+      createJournal();
+
+      journal.appendAddRecord(1, TieredJournalTest.COLD_TYPE, new byte[] { 1 }, true);
+      journal.appendUpdateRecord(1, TieredJournalTest.UPDATE_TYPE, new byte[] { 2 }, true);
+
+      Assert.assertEquals(1, mainJournal.getNumberOfRecords());
+      Assert.assertEquals(0, hotJournal.getNumberOfRecords());
+
+      journal.appendDeleteRecord(1, true);
+
+      Assert.assertEquals(0, mainJournal.getNumberOfRecords());
+
+      journal.stop();
+   }
+
+   public void testOldRecordsMigrated() throws Exception
+   {
+      createJournal();
+
+      Map<Long, byte[]> expected = new HashMap<Long, byte[]>();
+
+      // A few times the capacity of the hot journal, with every other record left alive
+      for (long id = 1; id <= 2000; id++)
+      {
+         byte[] body = new byte[500];
+         body[0] = (byte)id;
+
+         journal.appendAddRecord(id, TieredJournalTest.HOT_TYPE, body, false);
+
+         if (id % 2 == 0)
+         {
+            journal.appendDeleteRecord(id, false);
+         }
+         else
+         {
+            expected.put(id, body);
+         }
+      }
+
+      waitMigrated();
+
+      Assert.assertTrue(journal.getMigratedCount() > 0);
+
+      Assert.assertTrue(hotJournal.getNumberOfRecords() < expected.size());
+
+      journal.stop();
+
+      checkRecords(expected);
+
+      journal.stop();
+   }
+
+   public void testUpdatesMigrated() throws Exception
+   {
+      createJournal();
+
+      journal.appendAddRecord(1, TieredJournalTest.HOT_TYPE, new byte[] { 1 }, false);
+      journal.appendUpdateRecord(1, TieredJournalTest.UPDATE_TYPE, new byte[] { 2 }, false);
+      journal.appendUpdateRecord(1, TieredJournalTest.UPDATE_TYPE, new byte[] { 3 }, true);
+
+      // transactions are only written to the main journal, so the record is migrated first
+      journal.appendUpdateRecordTransactional(10, 1, TieredJournalTest.UPDATE_TYPE, new byte[] { 4 });
+      journal.appendCommitRecord(10, true);
+
+      Assert.assertEquals(1, journal.getMigratedCount());
+
+      waitMigrated();
+
+      Assert.assertEquals(0, hotJournal.getNumberOfRecords());
+
+      journal.stop();
+
+      List<RecordInfo> records = createJournal();
+
+      Assert.assertEquals(4, records.size());
+
+      for (int i = 0; i < 4; i++)
+      {
+         Assert.assertEquals(1, records.get(i).id);
+         Assert.assertEquals(i + 1, records.get(i).data[0]);
+      }
+
+      // a delete after the migration goes to the main journal
+      journal.appendDeleteRecord(1, true);
+
+      journal.stop();
+
+      Assert.assertEquals(0, createJournal().size());
+
+      journal.stop();
+   }
+
+   public void testRecordsLeftOnHotJournalMigratedOnLoad() throws Exception
+   {
+      createJournal();
+
+      Map<Long, byte[]> expected = new HashMap<Long, byte[]>();
+
+      for (long id = 1; id <= 10; id++)
+      {
+         byte[] body = new byte[] { (byte)id };
+         journal.appendAddRecord(id, TieredJournalTest.HOT_TYPE, body, true);
+         expected.put(id, body);
+      }
+
+      Assert.assertEquals(10, hotJournal.getNumberOfRecords());
+
+      journal.stop();
+
+      checkRecords(expected);
+
+      Assert.assertEquals(0, hotJournal.getNumberOfRecords());
+
+      Assert.assertEquals(10, mainJournal.getNumberOfRecords());
+
+      journal.stop();
+
+      checkRecords(expected);
+
+      journal.stop();
+   }
+
+   /** Updates and deletes racing with the migration of their records */
+   public void testUpdateAndDeleteDuringMigration() throws Exception
+   {
+      createJournal();
+
+      final int threads = 4;
+
+      final int recordsPerThread = 2000;
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+      Thread[] appenders = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final long firstID = t * recordsPerThread + 1;
+
+         appenders[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (long id = firstID; id < firstID + recordsPerThread; id++)
+                  {
+                     journal.appendAddRecord(id, TieredJournalTest.HOT_TYPE, new byte[500], false);
+
+                     // around the distance where the records are migrated
+                     for (int distance = 20; distance <= 100; distance += 20)
+                     {
+                        if (id - distance >= firstID)
+                        {
+                           journal.appendUpdateRecord(id - distance,
+                                                      TieredJournalTest.UPDATE_TYPE,
+                                                      new byte[] { 1 },
+                                                      false);
+                        }
+                     }
+
+                     if (id - 100 >= firstID && id % 2 == 0)
+                     {
+                        journal.appendDeleteRecord(id - 100, false);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  errors.add(e);
+               }
+            }
+         };
+
+         appenders[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread appender : appenders)
+      {
+         appender.join();
+      }
+
+      if (!errors.isEmpty())
+      {
+         throw new Exception(errors.get(0));
+      }
+
+      Assert.assertTrue(journal.getMigratedCount() > 0);
+
+      waitMigrated();
+
+      journal.stop();
+
+      List<RecordInfo> records = createJournal();
+
+      Map<Long, Integer> updates = new HashMap<Long, Integer>();
+
+      for (RecordInfo record : records)
+      {
+         Integer count = updates.get(record.id);
+         updates.put(record.id, (count == null ? 0 : count) + (record.isUpdate ? 1 : 0));
+      }
+
+      for (int t = 0; t < threads; t++)
+      {
+         long firstID = t * recordsPerThread + 1;
+
+         for (long id = firstID; id < firstID + recordsPerThread; id++)
+         {
+            boolean deleted = id + 100 < firstID + recordsPerThread && id % 2 == 0;
+
+            if (deleted)
+            {
+               Assert.assertFalse(updates.containsKey(id));
+            }
+            else
+            {
+               int expectedUpdates = 0;
+
+               for (int distance = 20; distance <= 100; distance += 20)
+               {
+                  if (id + distance < firstID + recordsPerThread)
+                  {
+                     expectedUpdates++;
+                  }
+               }
+
+               Assert.assertEquals("record " + id, expectedUpdates, updates.get(id).intValue());
+            }
+         }
+      }
+
+      journal.stop();
+   }
+
+   /** A crash after the record was synced on the main journal, before it was deleted from the hot journal */
+   public void testInterruptedMigration() throws Exception
+   {
+      createJournal();
+
+      journal.appendAddRecord(1, TieredJournalTest.HOT_TYPE, new byte[] { 1 }, true);
+
+      journal.stop();
+
+      mainJournal = new JournalImpl(100 * 1024,
+                                    2,
+                                    0,
+                                    0,
+                                    new NIOSequentialFileFactory(getTestDir(), true),
+                                    "hornetq-data",
+                                    "hq",
+                                    1);
+
+      mainJournal.start();
+      mainJournal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+      mainJournal.appendAddRecord(1, TieredJournalTest.HOT_TYPE, new byte[] { 1 }, true);
+      mainJournal.stop();
+
+      List<RecordInfo> records = createJournal();
+
+      Assert.assertEquals(1, records.size());
+
+      Assert.assertEquals(0, hotJournal.getNumberOfRecords());
+
+      journal.stop();
+   }
+
+   /** A crash before the migration of a record with updates was committed on the main journal */
+   public void testMigrationInterruptedBeforeCommit() throws Exception
+   {
+      createJournal();
+
+      journal.appendAddRecord(1, TieredJournalTest.HOT_TYPE, new byte[] { 1 }, false);
+      journal.appendUpdateRecord(1, TieredJournalTest.UPDATE_TYPE, new byte[] { 2 }, false);
+      journal.appendUpdateRecord(1, TieredJournalTest.UPDATE_TYPE, new byte[] { 3 }, true);
+
+      journal.stop();
+
+      mainJournal = new JournalImpl(100 * 1024,
+                                    2,
+                                    0,
+                                    0,
+                                    new NIOSequentialFileFactory(getTestDir(), true),
+                                    "hornetq-data",
+                                    "hq",
+                                    1);
+
+      // only the add reached the main journal
+      mainJournal.start();
+      mainJournal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+      mainJournal.appendAddRecordTransactional(1, 1, TieredJournalTest.HOT_TYPE, new byte[] { 1 });
+      mainJournal.stop();
+
+      for (int i = 0; i < 2; i++)
+      {
+         List<RecordInfo> records = createJournal();
+
+         Assert.assertEquals(3, records.size());
+
+         for (int j = 0; j < 3; j++)
+         {
+            Assert.assertEquals(1, records.get(j).id);
+            Assert.assertEquals(j + 1, records.get(j).data[0]);
+         }
+
+         Assert.assertEquals(0, hotJournal.getNumberOfRecords());
+
+         journal.stop();
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      File file = new File(getTestDir());
+
+      deleteDirectory(file);
+
+      file.mkdir();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      if (journal != null && journal.isStarted())
+      {
+         journal.stop();
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   /** Creates, starts and loads the journal, returning what was loaded */
+   private List<RecordInfo> createJournal() throws Exception
+   {
+      mainJournal = new JournalImpl(100 * 1024,
+                                    2,
+                                    0,
+                                    0,
+                                    new NIOSequentialFileFactory(getTestDir(), true),
+                                    "hornetq-data",
+                                    "hq",
+                                    1);
+
+      hotJournal = new JournalImpl(TieredJournalTest.HOT_FILE_SIZE,
+                                   TieredJournalTest.HOT_FILES,
+                                   0,
+                                   0,
+                                   new NIOSequentialFileFactory(getTestDir(), true),
+                                   "hornetq-hot-data",
+                                   "hqh",
+                                   1);
+
+      journal = new TieredJournal(mainJournal,
+                                  hotJournal,
+                                  TieredJournalTest.HOT_FILE_SIZE * TieredJournalTest.HOT_FILES,
+                                  TieredJournalTest.HOT_TYPE);
+
+      journal.start();
+
+      List<RecordInfo> records = new ArrayList<RecordInfo>();
+
+      journal.load(records, new ArrayList<PreparedTransactionInfo>(), null);
+
+      return records;
+   }
+
+   private void checkRecords(final Map<Long, byte[]> expected) throws Exception
+   {
+      List<RecordInfo> records = createJournal();
+
+      Assert.assertEquals(expected.size(), records.size());
+
+      for (RecordInfo record : records)
+      {
+         UnitTestCase.assertEqualsByteArrays(expected.get(record.id), record.data);
+      }
+   }
+
+   private void waitMigrated() throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (hotJournal.getNumberOfRecords() > journal.getHotRecordsCount() && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -265,6 +265,41 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (String)proxy.retrieveAttributeValue("pagingDirectory");
          }
 
+         public long getPageCacheMaxSize()
+         {
+            return (Long)proxy.retrieveAttributeValue("PageCacheMaxSize");
+         }
+
+         public long getPageCacheSize()
+         {
+            return (Long)proxy.retrieveAttributeValue("PageCacheSize");
+         }
+
+         public long getPageCacheHits()
+         {
+            return (Long)proxy.retrieveAttributeValue("PageCacheHits");
+         }
+
+         public long getPageCacheMisses()
+         {
+            return (Long)proxy.retrieveAttributeValue("PageCacheMisses");
+         }
+
+         public long getPageCacheEvictions()
+         {
+            return (Long)proxy.retrieveAttributeValue("PageCacheEvictions");
+         }
+
+         public long getGlobalMaxSize()
+         {
+            return (Long)proxy.retrieveAttributeValue("GlobalMaxSize");
+         }
+
+         public long getGlobalSize()
+         {
+            return (Long)proxy.retrieveAttributeValue("GlobalSize");
+         }
+
          public int getScheduledThreadPoolMaxSize()
          {
             return (Integer)proxy.retrieveAttributeValue("scheduledThreadPoolMaxSize");
@@ -455,6 +490,61 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalCompactPercentage");
          }
 
+         public long getJournalFlushLatency()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalFlushLatency");
+         }
+
+         public long getJournalBatchSize()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBatchSize");
+         }
+
+         public double getJournalBatchRecords()
+         {
+            return (Double)proxy.retrieveAttributeValue("JournalBatchRecords");
+         }
+
+         public int getJournalCurrentBufferTimeout()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCurrentBufferTimeout");
+         }
+
+         public long getJournalCompactBytesRewritten()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactBytesRewritten");
+         }
+
+         public long getJournalCompactPauseTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactPauseTime");
+         }
+
+         public int getJournalCompactReclaimedFiles()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCompactReclaimedFiles");
+         }
+
+         public long getJournalFileWaitCount()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalFileWaitCount");
+         }
+
+         public long getJournalFileWaitTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalFileWaitTime");
+         }
+
+         public long getJournalHotMigratedRecords()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalHotMigratedRecords");
+         }
+
+         public long getJournalHotDeletedRecords()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalHotDeletedRecords");
+         }
+
          public boolean isPersistenceEnabled()
          {
             return (Boolean)proxy.retrieveAttributeValue("PersistenceEnabled");
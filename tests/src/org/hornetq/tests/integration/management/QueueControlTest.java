@@ -229,6 +229,44 @@ public class QueueControlTest extends ManagementTestBase
       session.deleteQueue(queue);
    }
 
+   public void testGetGroupCount() throws Exception
+   {
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString queue = RandomUtil.randomSimpleString();
+
+      session.createQueue(address, queue, null, false);
+
+      QueueControl queueControl = createManagementControl(address, queue);
+
+      Assert.assertEquals(0, queueControl.getGroupCount());
+
+      ClientConsumer consumer = session.createConsumer(queue);
+
+      ClientProducer producer = session.createProducer(address);
+      for (int i = 0; i < 2; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.putStringProperty(Message.HDR_GROUP_ID, RandomUtil.randomSimpleString());
+         producer.send(message);
+      }
+
+      for (int i = 0; i < 2; i++)
+      {
+         Assert.assertNotNull(consumer.receive(500));
+      }
+
+      Assert.assertEquals(2, queueControl.getGroupCount());
+
+      JSONArray obj = new JSONArray(queueControl.listConsumersAsJSON());
+      assertEquals(1, obj.length());
+      assertEquals(2, obj.getJSONObject(0).getInt("groupCount"));
+
+      consumer.close();
+      Assert.assertEquals(0, queueControl.getGroupCount());
+
+      session.deleteQueue(queue);
+   }
+
    public void testGetMessageCount() throws Exception
    {
       SimpleString address = RandomUtil.randomSimpleString();
@@ -283,18 +321,22 @@ public class QueueControlTest extends ManagementTestBase
 
       QueueControl queueControl = createManagementControl(address, queue);
       Assert.assertEquals(0, queueControl.getScheduledCount());
+      Assert.assertEquals(0, queueControl.getNextScheduledDeliveryTime());
 
       ClientProducer producer = session.createProducer(address);
       ClientMessage message = session.createMessage(false);
-      message.putLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME, System.currentTimeMillis() + delay);
+      long deliveryTime = System.currentTimeMillis() + delay;
+      message.putLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME, deliveryTime);
       producer.send(message);
 
       Assert.assertEquals(1, queueControl.getScheduledCount());
+      Assert.assertEquals(deliveryTime, queueControl.getNextScheduledDeliveryTime());
       ManagementTestBase.consumeMessages(0, session, queue);
 
       Thread.sleep(delay * 2);
 
       Assert.assertEquals(0, queueControl.getScheduledCount());
+      Assert.assertEquals(0, queueControl.getNextScheduledDeliveryTime());
       ManagementTestBase.consumeMessages(1, session, queue);
 
       session.deleteQueue(queue);
@@ -94,6 +94,11 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return (Integer)proxy.retrieveAttributeValue("consumerCount");
          }
 
+         public int getGroupCount()
+         {
+            return (Integer)proxy.retrieveAttributeValue("groupCount");
+         }
+
          public String getDeadLetterAddress()
          {
             return (String)proxy.retrieveAttributeValue("deadLetterAddress");
@@ -124,6 +129,16 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return (Integer)proxy.retrieveAttributeValue("messagesAdded");
          }
 
+         public long getMessagesDepaged()
+         {
+            return ((Number)proxy.retrieveAttributeValue("messagesDepaged")).longValue();
+         }
+
+         public double getDepageRate()
+         {
+            return ((Number)proxy.retrieveAttributeValue("depageRate")).doubleValue();
+         }
+
          public String getName()
          {
             return (String)proxy.retrieveAttributeValue("name");
@@ -139,6 +154,11 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return (Long)proxy.retrieveAttributeValue("scheduledCount", Long.class);
          }
 
+         public long getNextScheduledDeliveryTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("nextScheduledDeliveryTime", Long.class);
+         }
+
          public boolean isDurable()
          {
             return (Boolean)proxy.retrieveAttributeValue("durable");
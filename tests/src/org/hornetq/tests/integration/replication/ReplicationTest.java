@@ -1040,6 +1040,37 @@ public class ReplicationTest extends ServiceTestBase
       {
       }
 
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.Journal#appendUpdateRecords(long[], byte, org.hornetq.core.journal.EncodingSupport, boolean)
+       */
+      public void appendUpdateRecords(final long[] ids,
+                                      final byte recordType,
+                                      final EncodingSupport record,
+                                      final boolean sync) throws Exception
+      {
+      }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.Journal#appendUpdateRecords(long[], byte, org.hornetq.core.journal.EncodingSupport, boolean, org.hornetq.core.journal.IOCompletion)
+       */
+      public void appendUpdateRecords(final long[] ids,
+                                      final byte recordType,
+                                      final EncodingSupport record,
+                                      final boolean sync,
+                                      final IOCompletion completionCallback) throws Exception
+      {
+      }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.Journal#appendUpdateRecordsTransactional(long, long[], byte, org.hornetq.core.journal.EncodingSupport)
+       */
+      public void appendUpdateRecordsTransactional(final long txID,
+                                                   final long[] ids,
+                                                   final byte recordType,
+                                                   final EncodingSupport record) throws Exception
+      {
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.Journal#sync(org.hornetq.core.journal.IOCompletion)
        */
@@ -23,6 +23,7 @@ import org.hornetq.core.config.impl.ConfigurationImpl;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.Queue;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.tests.util.ServiceTestBase;
 import org.hornetq.tests.util.UnitTestCase;
@@ -93,6 +94,79 @@ public class LVQTest extends UnitTestCase
       Assert.assertEquals(m.getBodyBuffer().readString(), "m4");
    }
 
+   public void testConflation() throws Exception
+   {
+      SimpleString conflatedAddress = new SimpleString("LVQTestConflatedAddress");
+      SimpleString conflatedQueue = new SimpleString("LVQTestConflatedQ");
+
+      AddressSettings qs = new AddressSettings();
+      qs.setLastValueQueue(true);
+      qs.setLastValueConflation(true);
+      server.getAddressSettingsRepository().addMatch(conflatedAddress.toString(), qs);
+
+      clientSession.createQueue(conflatedAddress, conflatedQueue, null, false);
+
+      ClientProducer producer = clientSession.createProducer(conflatedAddress);
+
+      final int numKeys = 10;
+
+      final int numUpdates = 100;
+
+      for (int i = 0; i < numUpdates; i++)
+      {
+         for (int key = 0; key < numKeys; key++)
+         {
+            ClientMessage m = createTextMessage("m" + key + "-" + i, false, clientSession);
+            m.putStringProperty(Message.HDR_LAST_VALUE_NAME, new SimpleString("SMID" + key));
+            producer.send(m);
+         }
+      }
+
+      Queue queue = (Queue)server.getPostOffice().getBinding(conflatedQueue).getBindable();
+
+      Assert.assertEquals(numKeys, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+
+      ClientConsumer consumer = clientSession.createConsumer(conflatedQueue);
+      clientSession.start();
+
+      for (int key = 0; key < numKeys; key++)
+      {
+         ClientMessage m = consumer.receive(1000);
+         Assert.assertNotNull(m);
+         m.acknowledge();
+         Assert.assertEquals("m" + key + "-" + (numUpdates - 1), m.getBodyBuffer().readString());
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      // the replaced values gave their size back to the address
+      Assert.assertEquals(0, server.getPagingManager().getPageStore(conflatedAddress).getAddressSize());
+   }
+
+   public void testDeliveringCount() throws Exception
+   {
+      ClientProducer producer = clientSession.createProducer(address);
+      ClientConsumer consumer = clientSession.createConsumer(qName1);
+      SimpleString rh = new SimpleString("SMID1");
+      ClientMessage m1 = createTextMessage("m1", clientSession);
+      m1.putStringProperty(Message.HDR_LAST_VALUE_NAME, rh);
+      producer.send(m1);
+      clientSession.start();
+
+      Queue queue = (Queue)server.getPostOffice().getBinding(qName1).getBindable();
+
+      ClientMessage m = consumer.receive(1000);
+      Assert.assertNotNull(m);
+      Assert.assertEquals(1, queue.getDeliveringCount());
+
+      m.acknowledge();
+      Assert.assertEquals(0, queue.getDeliveringCount());
+      Assert.assertEquals(0, queue.getMessageCount());
+   }
+
    public void testFirstMessageReceivedButAckedAfter() throws Exception
    {
       ClientProducer producer = clientSession.createProducer(address);
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Compares the throughput of the serialized append path with JournalImpl#setConcurrentAppend,
+ * when several threads are appending to the same journal
+ */
+public class MeasureConcurrentAppendTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasureConcurrentAppendTest.class);
+
+   private static final int NUMBER_OF_THREADS = 20;
+
+   private static final int RECORDS_PER_THREAD = 5000;
+
+   private static final int RECORD_SIZE = 512;
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testNIOAppendRate() throws Throwable
+   {
+      double classic = measure(false, false);
+
+      double concurrent = measure(false, true);
+
+      MeasureConcurrentAppendTest.log.info("NIO: serialized = " + classic +
+                                           " records/sec, concurrent = " +
+                                           concurrent +
+                                           " records/sec");
+   }
+
+   public void testAIOAppendRate() throws Throwable
+   {
+      if (!AIOSequentialFileFactory.isSupported())
+      {
+         MeasureConcurrentAppendTest.log.warn("AIO is not supported on this platform, ignoring test");
+         return;
+      }
+
+      double classic = measure(true, false);
+
+      double concurrent = measure(true, true);
+
+      MeasureConcurrentAppendTest.log.info("AIO: serialized = " + classic +
+                                           " records/sec, concurrent = " +
+                                           concurrent +
+                                           " records/sec");
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private SequentialFileFactory createFactory(final boolean aio)
+   {
+      if (aio)
+      {
+         return new AIOSequentialFileFactory(getTestDir());
+      }
+      else
+      {
+         return new NIOSequentialFileFactory(getTestDir(), true);
+      }
+   }
+
+   private double measure(final boolean aio, final boolean concurrentAppend) throws Throwable
+   {
+      File dir = new File(getTestDir());
+
+      deleteDirectory(dir);
+
+      dir.mkdirs();
+
+      JournalImpl journal = new JournalImpl(10 * 1024 * 1024,
+                                            10,
+                                            0,
+                                            0,
+                                            createFactory(aio),
+                                            "hornetq-data",
+                                            "hq",
+                                            aio ? 500 : 1);
+
+      journal.setConcurrentAppend(concurrentAppend);
+
+      journal.start();
+
+      journal.load(new ArrayList<RecordInfo>(), null, null);
+
+      final JournalImpl journalUsed = journal;
+
+      final AtomicLong idGenerator = new AtomicLong(0);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      final SimpleEncoding data = new SimpleEncoding(MeasureConcurrentAppendTest.RECORD_SIZE, (byte)'j');
+
+      Thread threads[] = new Thread[MeasureConcurrentAppendTest.NUMBER_OF_THREADS];
+
+      for (int i = 0; i < threads.length; i++)
+      {
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  latchStart.await();
+
+                  for (int r = 0; r < MeasureConcurrentAppendTest.RECORDS_PER_THREAD; r++)
+                  {
+                     journalUsed.appendAddRecord(idGenerator.incrementAndGet(), (byte)0, data, true);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+
+         threads[i].start();
+      }
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      long end = System.currentTimeMillis();
+
+      journal.stop();
+
+      Assert.assertEquals(0, errors.get());
+
+      int expectedRecords = MeasureConcurrentAppendTest.NUMBER_OF_THREADS * MeasureConcurrentAppendTest.RECORDS_PER_THREAD;
+
+      journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, createFactory(aio), "hornetq-data", "hq", aio ? 500 : 1);
+
+      journal.start();
+
+      ArrayList<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      journal.load(committedRecords, new ArrayList<PreparedTransactionInfo>(), null);
+
+      journal.stop();
+
+      Assert.assertEquals(expectedRecords, committedRecords.size());
+
+      return 1000 * (double)expectedRecords / (end - start);
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
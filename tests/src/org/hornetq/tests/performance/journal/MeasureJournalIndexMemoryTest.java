@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.logging.Logger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.ConcurrentLongHashMap;
+
+/**
+ * Measures the heap used by the index of live records on the journal (JournalImpl.records),
+ * comparing ConcurrentLongHashMap with the ConcurrentHashMap&lt;Long, JournalRecord&gt; it replaced.
+ *
+ * <p>The same value instance is used for every entry, so only the cost of the index itself is measured.
+ * Each size is skipped when the JVM doesn't have enough heap for it (50M records needs about 5GiB, -Xmx5g).</p>
+ */
+public class MeasureJournalIndexMemoryTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasureJournalIndexMemoryTest.class);
+
+   private static final Object VALUE = new Object();
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testIndexMemory10M() throws Exception
+   {
+      measure(10 * 1000 * 1000);
+   }
+
+   public void testIndexMemory50M() throws Exception
+   {
+      measure(50 * 1000 * 1000);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private void measure(final int numberOfRecords) throws Exception
+   {
+      // ConcurrentHashMap uses about 80 bytes per entry (node + boxed key + table slot)
+      long required = 100L * numberOfRecords;
+
+      if (Runtime.getRuntime().maxMemory() < required)
+      {
+         MeasureJournalIndexMemoryTest.log.warn("Not enough heap to measure " + numberOfRecords +
+                                                " records, at least " +
+                                                required /
+                                                1024 /
+                                                1024 +
+                                                "MiB needed, ignoring test");
+         return;
+      }
+
+      long before = usedMemory();
+
+      ConcurrentLongHashMap<Object> longMap = new ConcurrentLongHashMap<Object>();
+
+      for (long id = 0; id < numberOfRecords; id++)
+      {
+         longMap.put(id, MeasureJournalIndexMemoryTest.VALUE);
+      }
+
+      long longMapBytes = usedMemory() - before;
+
+      Assert.assertEquals(numberOfRecords, longMap.size());
+
+      longMap = null;
+
+      before = usedMemory();
+
+      ConcurrentHashMap<Long, Object> boxedMap = new ConcurrentHashMap<Long, Object>();
+
+      for (long id = 0; id < numberOfRecords; id++)
+      {
+         boxedMap.put(id, MeasureJournalIndexMemoryTest.VALUE);
+      }
+
+      long boxedMapBytes = usedMemory() - before;
+
+      Assert.assertEquals(numberOfRecords, boxedMap.size());
+
+      boxedMap = null;
+
+      MeasureJournalIndexMemoryTest.log.info(numberOfRecords + " records: ConcurrentHashMap = " +
+                                             boxedMapBytes /
+                                             1024 /
+                                             1024 +
+                                             "MiB (" +
+                                             boxedMapBytes /
+                                             numberOfRecords +
+                                             " bytes/record), ConcurrentLongHashMap = " +
+                                             longMapBytes /
+                                             1024 /
+                                             1024 +
+                                             "MiB (" +
+                                             longMapBytes /
+                                             numberOfRecords +
+                                             " bytes/record)");
+   }
+
+   private long usedMemory()
+   {
+      UnitTestCase.forceGC();
+      UnitTestCase.forceGC();
+      return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.paging;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.impl.PageImpl;
+import org.hornetq.core.paging.impl.PagedMessageImpl;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Measures how fast pages are written and read, and how much disk they take, with and without page compression.
+ *
+ * <p>The messages are JSON documents of about 2KB, the kind of payload compression is meant for. Every page is synced
+ * once it's written, as the store does when it moves to the next page, and read entirely, as the cursors do.</p>
+ */
+public class MeasurePageCompressionTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasurePageCompressionTest.class);
+
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   private static final int NUMBER_OF_PAGES = 20;
+
+   private static final int MESSAGES_PER_PAGE = 1000;
+
+   // Attributes ----------------------------------------------------
+
+   private SequentialFileFactory factory;
+
+   private ServerMessage[] messages;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testPageThroughput() throws Exception
+   {
+      // warm up
+      measure(false);
+      measure(true);
+
+      measure(false);
+      measure(true);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      recreateDirectory(getTestDir());
+
+      factory = new NIOSequentialFileFactory(getTestDir());
+
+      messages = new ServerMessage[MeasurePageCompressionTest.MESSAGES_PER_PAGE];
+
+      for (int i = 0; i < messages.length; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 4096);
+
+         messages[i].setAddress(MeasurePageCompressionTest.ADDRESS);
+
+         messages[i].getBodyBuffer().writeString(document(i));
+      }
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      messages = null;
+
+      factory = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void measure(final boolean compress) throws Exception
+   {
+      long diskSize = 0;
+
+      long start = System.currentTimeMillis();
+
+      for (int pageId = 0; pageId < MeasurePageCompressionTest.NUMBER_OF_PAGES; pageId++)
+      {
+         PageImpl page = newPage(pageId, compress);
+
+         page.open();
+
+         for (ServerMessage message : messages)
+         {
+            page.write(new PagedMessageImpl(message, new long[] { 1 }));
+         }
+
+         page.sync();
+
+         diskSize += page.getSize();
+
+         page.close();
+      }
+
+      long writeTime = Math.max(1, System.currentTimeMillis() - start);
+
+      start = System.currentTimeMillis();
+
+      for (int pageId = 0; pageId < MeasurePageCompressionTest.NUMBER_OF_PAGES; pageId++)
+      {
+         PageImpl page = newPage(pageId, compress);
+
+         page.open();
+
+         List<PagedMessage> read = page.read();
+
+         Assert.assertEquals(MeasurePageCompressionTest.MESSAGES_PER_PAGE, read.size());
+
+         page.close();
+
+         page.delete();
+      }
+
+      long readTime = Math.max(1, System.currentTimeMillis() - start);
+
+      long total = (long)MeasurePageCompressionTest.NUMBER_OF_PAGES * MeasurePageCompressionTest.MESSAGES_PER_PAGE;
+
+      MeasurePageCompressionTest.log.info((compress ? "compressed" : "plain") + ": " +
+                                          total * 1000 / writeTime +
+                                          " messages/s written, " +
+                                          total * 1000 / readTime +
+                                          " messages/s read, " +
+                                          diskSize / 1024 +
+                                          "KB on disk (" +
+                                          diskSize / total +
+                                          " bytes per message)");
+   }
+
+   private PageImpl newPage(final int pageId, final boolean compress) throws Exception
+   {
+      return new PageImpl(MeasurePageCompressionTest.ADDRESS,
+                          new NullStorageManager(),
+                          factory,
+                          factory.createSequentialFile(pageId + ".page", 1),
+                          null,
+                          pageId,
+                          compress);
+   }
+
+   private String document(final int id)
+   {
+      StringBuffer body = new StringBuffer("{\"orderId\":" + id + ",\"customer\":\"customer-" + id % 100 + "\",\"lines\":[");
+
+      for (int i = 0; i < 20; i++)
+      {
+         body.append("{\"sku\":\"SKU-" + (id * 31 + i) % 1000 +
+                     "\",\"description\":\"standard item\",\"quantity\":" +
+                     i +
+                     ",\"price\":" +
+                     (i * 7 + id) % 100 +
+                     ".99,\"currency\":\"EUR\"},");
+      }
+
+      return body.append("]}").toString();
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
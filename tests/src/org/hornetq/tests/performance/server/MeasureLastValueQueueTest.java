@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.LastValueQueue;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Measures how many updates per second a last-value queue takes when the same keys are updated over and over, with
+ * and without last-value-conflation.
+ *
+ * <p>The queue has no consumer, so every update after the first one of a key replaces the previous value. The queue is
+ * not durable, as conflation only applies to non durable queues.</p>
+ */
+public class MeasureLastValueQueueTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasureLastValueQueueTest.class);
+
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   private static final int NUMBER_OF_KEYS = 50000;
+
+   private static final int NUMBER_OF_UPDATES = 2000000;
+
+   // Attributes ----------------------------------------------------
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   /** Two messages per key, so a key is always updated with a message other than its current value */
+   private ServerMessage[] messages;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testUpdateThroughput() throws Exception
+   {
+      // warm up
+      measure(false);
+      measure(true);
+
+      double rateAck = measure(false);
+      double rateConflate = measure(true);
+
+      MeasureLastValueQueueTest.log.info(MeasureLastValueQueueTest.NUMBER_OF_KEYS + " keys: " +
+                                         (long)rateAck +
+                                         " updates/s acknowledging the old values, " +
+                                         (long)rateConflate +
+                                         " updates/s with conflation");
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      executor = Executors.newSingleThreadExecutor();
+
+      messages = new ServerMessage[MeasureLastValueQueueTest.NUMBER_OF_KEYS * 2];
+
+      for (int i = 0; i < messages.length; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 100);
+
+         messages[i].putStringProperty(Message.HDR_LAST_VALUE_NAME,
+                                       new SimpleString("key" + i % MeasureLastValueQueueTest.NUMBER_OF_KEYS));
+      }
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      executor.shutdownNow();
+
+      messages = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * @return updates per second
+    */
+   private double measure(final boolean conflation) throws Exception
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setLastValueQueue(true);
+      settings.setLastValueConflation(conflation);
+      repository.addMatch(MeasureLastValueQueueTest.ADDRESS.toString(), settings);
+
+      LastValueQueue queue = new LastValueQueue(1,
+                                                MeasureLastValueQueueTest.ADDRESS,
+                                                new SimpleString("queue"),
+                                                null,
+                                                null,
+                                                false,
+                                                false,
+                                                scheduledExecutor,
+                                                null,
+                                                null,
+                                                repository,
+                                                executor);
+
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < MeasureLastValueQueueTest.NUMBER_OF_UPDATES; i++)
+      {
+         // as the post office does when the message is routed
+         ServerMessage message = messages[i % messages.length];
+
+         message.incrementRefCount();
+
+         queue.addTail(message.createReference(queue));
+      }
+
+      long time = Math.max(1, System.currentTimeMillis() - start);
+
+      Assert.assertEquals(MeasureLastValueQueueTest.NUMBER_OF_KEYS, queue.getMessageCount());
+
+      for (ServerMessage message : messages)
+      {
+         // only the current values are still referenced
+         Assert.assertTrue(message.getRefCount() <= 1);
+
+         while (message.getRefCount() > 0)
+         {
+            message.decrementRefCount();
+         }
+      }
+
+      return MeasureLastValueQueueTest.NUMBER_OF_UPDATES * 1000d / time;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
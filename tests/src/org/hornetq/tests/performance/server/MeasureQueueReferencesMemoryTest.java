@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.CompactReferenceList;
+import org.hornetq.core.server.impl.IndexedReferenceList;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.PriorityLinkedList;
+
+/**
+ * Measures the heap used by the references of a deep queue, comparing the compact references (compact-references set
+ * to true) with the references a queue keeps by default.
+ *
+ * <p>The same message is referenced by every entry, so only the cost of the references and of the list holding them
+ * is measured. Each size is skipped when the JVM doesn't have enough heap for it (10M references needs about 1GiB,
+ * -Xmx1g).</p>
+ */
+public class MeasureQueueReferencesMemoryTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasureQueueReferencesMemoryTest.class);
+
+   private static final int PRIORITIES = 10;
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeQueue queue = new FakeQueue(new SimpleString("queue"));
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testReferencesMemory1M() throws Exception
+   {
+      measure(1000 * 1000);
+   }
+
+   public void testReferencesMemory10M() throws Exception
+   {
+      measure(10 * 1000 * 1000);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private void measure(final int numberOfReferences) throws Exception
+   {
+      // A reference with its entry and its node takes about 80 bytes
+      long required = 100L * numberOfReferences;
+
+      if (Runtime.getRuntime().maxMemory() < required)
+      {
+         MeasureQueueReferencesMemoryTest.log.warn("Not enough heap to measure " + numberOfReferences +
+                                                   " references, at least " +
+                                                   required /
+                                                   1024 /
+                                                   1024 +
+                                                   "MiB needed, ignoring test");
+         return;
+      }
+
+      ServerMessage message = generateMessage(1);
+
+      long before = usedMemory();
+
+      PriorityLinkedList<?> compact = fill(new CompactReferenceList(MeasureQueueReferencesMemoryTest.PRIORITIES,
+                                                                    queue), message, numberOfReferences);
+
+      long compactBytes = usedMemory() - before;
+
+      Assert.assertEquals(numberOfReferences, compact.size());
+
+      compact = null;
+
+      before = usedMemory();
+
+      PriorityLinkedList<?> indexed = fill(new IndexedReferenceList(MeasureQueueReferencesMemoryTest.PRIORITIES),
+                                           message,
+                                           numberOfReferences);
+
+      long indexedBytes = usedMemory() - before;
+
+      Assert.assertEquals(numberOfReferences, indexed.size());
+
+      indexed = null;
+
+      MeasureQueueReferencesMemoryTest.log.info(numberOfReferences + " references: default = " +
+                                                indexedBytes /
+                                                1024 /
+                                                1024 +
+                                                "MiB (" +
+                                                indexedBytes /
+                                                numberOfReferences +
+                                                " bytes/reference), compact = " +
+                                                compactBytes /
+                                                1024 /
+                                                1024 +
+                                                "MiB (" +
+                                                compactBytes /
+                                                numberOfReferences +
+                                                " bytes/reference)");
+   }
+
+   private PriorityLinkedList<?> fill(final PriorityLinkedList<MessageReference> list,
+                                      final ServerMessage message,
+                                      final int numberOfReferences)
+   {
+      for (int i = 0; i < numberOfReferences; i++)
+      {
+         list.addTail(message.createReference(queue), i % MeasureQueueReferencesMemoryTest.PRIORITIES);
+      }
+
+      return list;
+   }
+
+   private long usedMemory()
+   {
+      UnitTestCase.forceGC();
+      UnitTestCase.forceGC();
+      return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.logging.Logger;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * Measures the delivery throughput of a queue as a function of the number of consumers, when every consumer
+ * selects a different value of the same property (<code>tenant = 'tenantN'</code>), with and without the
+ * selector index (address-setting selector-index).
+ *
+ * <p>Without the index, every consumer walks all the references on the queue looking for the ones it matches.</p>
+ */
+public class MeasureSelectorIndexTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final Logger log = Logger.getLogger(MeasureSelectorIndexTest.class);
+
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   private static final SimpleString TENANT = new SimpleString("tenant");
+
+   private static final int NUMBER_OF_MESSAGES = 50000;
+
+   // Attributes ----------------------------------------------------
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testDeliveryThroughput() throws Exception
+   {
+      int[] consumerCounts = new int[] { 1, 10, 50, 100, 200 };
+
+      for (int consumers : consumerCounts)
+      {
+         // warm up
+         measure(consumers, false);
+         measure(consumers, true);
+
+         double rateScan = measure(consumers, false);
+         double rateIndex = measure(consumers, true);
+
+         MeasureSelectorIndexTest.log.info(consumers + " consumers: " +
+                                           (long)rateScan +
+                                           " msgs/s without index, " +
+                                           (long)rateIndex +
+                                           " msgs/s with index");
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      executor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * @return messages delivered per second
+    */
+   private double measure(final int numberOfConsumers, final boolean index) throws Exception
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setSelectorIndex(index);
+      repository.addMatch(MeasureSelectorIndexTest.ADDRESS.toString(), settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      MeasureSelectorIndexTest.ADDRESS,
+                                      new SimpleString("queue"),
+                                      null,
+                                      false,
+                                      false,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      // the messages are routed while the queue is paused, so only the delivery is measured
+      queue.pause();
+
+      FakeConsumer[] consumers = new FakeConsumer[numberOfConsumers];
+
+      for (int i = 0; i < numberOfConsumers; i++)
+      {
+         consumers[i] = new FakeConsumer(FilterImpl.createFilter("tenant = 'tenant" + i + "'"));
+
+         queue.addConsumer(consumers[i]);
+      }
+
+      for (int i = 0; i < MeasureSelectorIndexTest.NUMBER_OF_MESSAGES; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(i, 100);
+
+         message.putStringProperty(MeasureSelectorIndexTest.TENANT, new SimpleString("tenant" + i % numberOfConsumers));
+
+         queue.addTail(message.createReference(queue));
+      }
+
+      queue.deliverNow();
+
+      long start = System.currentTimeMillis();
+
+      queue.resume();
+
+      int delivered = 0;
+
+      // the queue delivers at most QueueImpl.MAX_DELIVERIES_IN_LOOP on each run of the executor
+      while (delivered < MeasureSelectorIndexTest.NUMBER_OF_MESSAGES && System.currentTimeMillis() - start < 60000)
+      {
+         queue.deliverNow();
+
+         delivered = 0;
+
+         for (FakeConsumer consumer : consumers)
+         {
+            delivered += consumer.getReferences().size();
+         }
+      }
+
+      long time = Math.max(1, System.currentTimeMillis() - start);
+
+      Assert.assertEquals(MeasureSelectorIndexTest.NUMBER_OF_MESSAGES, delivered);
+
+      return delivered * 1000d / time;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.client.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.client.impl.AdaptiveConsumerWindow;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A AdaptiveConsumerWindowTest
+ */
+public class AdaptiveConsumerWindowTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int K = 1024;
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testInitialSizeClamped() throws Exception
+   {
+      Assert.assertEquals(64 * K, new AdaptiveConsumerWindow(K, 64 * K, 1024 * K, 0).getWindowSize());
+
+      Assert.assertEquals(1024 * K, new AdaptiveConsumerWindow(4096 * K, 64 * K, 1024 * K, 0).getWindowSize());
+
+      Assert.assertEquals(128 * K, new AdaptiveConsumerWindow(128 * K, 64 * K, 1024 * K, 0).getWindowSize());
+   }
+
+   public void testNoCreditsBeforeHalfWindow() throws Exception
+   {
+      AdaptiveConsumerWindow window = new AdaptiveConsumerWindow(64 * K, 64 * K, 1024 * K, 0);
+
+      window.received(16 * K, 1);
+
+      Assert.assertEquals(0, window.consumed(16 * K, 2));
+
+      Assert.assertEquals(64 * K, window.getWindowSize());
+   }
+
+   /*
+    * The server never runs out of credits, so there's no round trip to cover and the window shrinks down to the min
+    * size
+    */
+   public void testShrinkWhenNeverBlocked() throws Exception
+   {
+      AdaptiveConsumerWindow window = new AdaptiveConsumerWindow(1024 * K, 64 * K, 10240 * K, 0);
+
+      long now = 0;
+
+      int expectedSize = 1024 * K;
+
+      while (expectedSize > 64 * K)
+      {
+         int half = window.getWindowSize() / 2;
+
+         now += 100;
+
+         window.received(half, now);
+
+         // the window is halved, so the credits of what was consumed are taken back
+         Assert.assertEquals(0, window.consumed(half, now));
+
+         expectedSize /= 2;
+
+         Assert.assertEquals(expectedSize, window.getWindowSize());
+      }
+
+      Assert.assertEquals(0.0, window.getRoundTripTime());
+
+      Assert.assertTrue(window.getRate() > 0);
+   }
+
+   /*
+    * The server ran out of credits, so the window grows to cover the round trip at the rate of the consumer
+    */
+   public void testGrowWhenBlocked() throws Exception
+   {
+      AdaptiveConsumerWindow window = new AdaptiveConsumerWindow(64 * K, 64 * K, 10240 * K, 0);
+
+      // the server uses all its credits
+      window.received(64 * K, 0);
+
+      Assert.assertEquals(32 * K, window.consumed(32 * K, 10));
+
+      // the next message arrives 50 milliseconds after the credits were sent
+      window.received(K, 60);
+
+      Assert.assertEquals(50.0, window.getRoundTripTime());
+
+      // 2 * rate * round trip time is about 186KiB, but the window is at most doubled each time
+      Assert.assertEquals(32 * K + 64 * K, window.consumed(32 * K, 70));
+
+      Assert.assertEquals(128 * K, window.getWindowSize());
+   }
+
+   public void testGrowUpToMax() throws Exception
+   {
+      AdaptiveConsumerWindow window = new AdaptiveConsumerWindow(64 * K, 64 * K, 100 * K, 0);
+
+      window.received(64 * K, 0);
+
+      Assert.assertEquals(32 * K, window.consumed(32 * K, 10));
+
+      window.received(K, 60);
+
+      Assert.assertEquals(32 * K + 36 * K, window.consumed(32 * K, 70));
+
+      Assert.assertEquals(100 * K, window.getWindowSize());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
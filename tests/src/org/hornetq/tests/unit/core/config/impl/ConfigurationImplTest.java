@@ -60,6 +60,15 @@ public class ConfigurationImplTest extends UnitTestCase
                           conf.isJournalSyncNonTransactional());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_FILE_SIZE, conf.getJournalFileSize());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MIN_FILES, conf.getJournalMinFiles());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_CONCURRENT_APPEND, conf.isJournalConcurrentAppend());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_LOAD_THREADS, conf.getJournalLoadThreads());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE, conf.isJournalBufferTimeoutAdaptive());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_FILES_PER_CYCLE, conf.getJournalCompactFilesPerCycle());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_I_O_BUDGET, conf.getJournalCompactIOBudget());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_RECORD_CHECKSUM, conf.isJournalRecordChecksum());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_PREALLOCATED_FILES, conf.getJournalMaxPreallocatedFiles());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILES, conf.getJournalHotFiles());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILE_SIZE, conf.getJournalHotFileSize());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_IO_AIO, conf.getJournalMaxIO_AIO());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_IO_NIO, conf.getJournalMaxIO_NIO());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_WILDCARD_ROUTING_ENABLED, conf.isWildcardRoutingEnabled());
@@ -85,6 +94,8 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(ConfigurationImpl.DEFAULT_ASYNC_CONNECTION_EXECUTION_ENABLED,
                           conf.isAsyncConnectionExecutionEnabled());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGING_DIR, conf.getPagingDirectory());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGE_CACHE_MAX_SIZE, conf.getPageCacheMaxSize());
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_GLOBAL_MAX_SIZE, conf.getGlobalMaxSize());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_LARGE_MESSAGES_DIR, conf.getLargeMessagesDirectory());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_PERCENTAGE, conf.getJournalCompactPercentage());
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
@@ -169,6 +180,42 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalMinFiles(i);
          Assert.assertEquals(i, conf.getJournalMinFiles());
 
+         b = RandomUtil.randomBoolean();
+         conf.setJournalConcurrentAppend(b);
+         Assert.assertEquals(b, conf.isJournalConcurrentAppend());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalLoadThreads(i);
+         Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalBufferTimeoutAdaptive(b);
+         Assert.assertEquals(b, conf.isJournalBufferTimeoutAdaptive());
+
+         i = RandomUtil.randomPositiveInt();
+         conf.setJournalCompactFilesPerCycle(i);
+         Assert.assertEquals(i, conf.getJournalCompactFilesPerCycle());
+
+         i = RandomUtil.randomPositiveInt();
+         conf.setJournalCompactIOBudget(i);
+         Assert.assertEquals(i, conf.getJournalCompactIOBudget());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalRecordChecksum(b);
+         Assert.assertEquals(b, conf.isJournalRecordChecksum());
+
+         i = RandomUtil.randomPositiveInt();
+         conf.setJournalMaxPreallocatedFiles(i);
+         Assert.assertEquals(i, conf.getJournalMaxPreallocatedFiles());
+
+         i = RandomUtil.randomPositiveInt();
+         conf.setJournalHotFiles(i);
+         Assert.assertEquals(i, conf.getJournalHotFiles());
+
+         i = RandomUtil.randomPositiveInt();
+         conf.setJournalHotFileSize(i);
+         Assert.assertEquals(i, conf.getJournalHotFileSize());
+
          i = RandomUtil.randomInt();
          conf.setJournalMaxIO_AIO(i);
          Assert.assertEquals(i, conf.getJournalMaxIO_AIO());
@@ -277,6 +324,14 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setPagingDirectory(s);
          Assert.assertEquals(s, conf.getPagingDirectory());
 
+         l = RandomUtil.randomPositiveLong();
+         conf.setPageCacheMaxSize(l);
+         Assert.assertEquals(l, conf.getPageCacheMaxSize());
+
+         l = RandomUtil.randomPositiveLong();
+         conf.setGlobalMaxSize(l);
+         Assert.assertEquals(l, conf.getGlobalMaxSize());
+
          s = RandomUtil.randomString();
          conf.setLargeMessagesDirectory(s);
          Assert.assertEquals(s, conf.getLargeMessagesDirectory());
@@ -386,6 +441,42 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalMinFiles(i);
       Assert.assertEquals(i, conf.getJournalMinFiles());
 
+      b = RandomUtil.randomBoolean();
+      conf.setJournalConcurrentAppend(b);
+      Assert.assertEquals(b, conf.isJournalConcurrentAppend());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalLoadThreads(i);
+      Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalBufferTimeoutAdaptive(b);
+      Assert.assertEquals(b, conf.isJournalBufferTimeoutAdaptive());
+
+      i = RandomUtil.randomPositiveInt();
+      conf.setJournalCompactFilesPerCycle(i);
+      Assert.assertEquals(i, conf.getJournalCompactFilesPerCycle());
+
+      i = RandomUtil.randomPositiveInt();
+      conf.setJournalCompactIOBudget(i);
+      Assert.assertEquals(i, conf.getJournalCompactIOBudget());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalRecordChecksum(b);
+      Assert.assertEquals(b, conf.isJournalRecordChecksum());
+
+      i = RandomUtil.randomPositiveInt();
+      conf.setJournalMaxPreallocatedFiles(i);
+      Assert.assertEquals(i, conf.getJournalMaxPreallocatedFiles());
+
+      i = RandomUtil.randomPositiveInt();
+      conf.setJournalHotFiles(i);
+      Assert.assertEquals(i, conf.getJournalHotFiles());
+
+      i = RandomUtil.randomPositiveInt();
+      conf.setJournalHotFileSize(i);
+      Assert.assertEquals(i, conf.getJournalHotFileSize());
+
       i = RandomUtil.randomInt();
       conf.setJournalMaxIO_AIO(i);
       Assert.assertEquals(i, conf.getJournalMaxIO_AIO());
@@ -495,6 +586,14 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setPagingDirectory(s);
       Assert.assertEquals(s, conf.getPagingDirectory());
 
+      l = RandomUtil.randomPositiveLong();
+      conf.setPageCacheMaxSize(l);
+      Assert.assertEquals(l, conf.getPageCacheMaxSize());
+
+      l = RandomUtil.randomPositiveLong();
+      conf.setGlobalMaxSize(l);
+      Assert.assertEquals(l, conf.getGlobalMaxSize());
+
       s = RandomUtil.randomString();
       conf.setLargeMessagesDirectory(s);
       Assert.assertEquals(s, conf.getLargeMessagesDirectory());
@@ -107,6 +107,24 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MIN_FILES, conf.getJournalMinFiles());
 
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_CONCURRENT_APPEND, conf.isJournalConcurrentAppend());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_LOAD_THREADS, conf.getJournalLoadThreads());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE, conf.isJournalBufferTimeoutAdaptive());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_FILES_PER_CYCLE, conf.getJournalCompactFilesPerCycle());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_COMPACT_I_O_BUDGET, conf.getJournalCompactIOBudget());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_RECORD_CHECKSUM, conf.isJournalRecordChecksum());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_PREALLOCATED_FILES, conf.getJournalMaxPreallocatedFiles());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILES, conf.getJournalHotFiles());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_HOT_FILE_SIZE, conf.getJournalHotFileSize());
+
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_MAX_IO_AIO, conf.getJournalMaxIO_AIO());
 
       Assert.assertEquals(ConfigurationImpl.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
@@ -125,6 +143,10 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGING_DIR, conf.getPagingDirectory());
 
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_PAGE_CACHE_MAX_SIZE, conf.getPageCacheMaxSize());
+
+      Assert.assertEquals(ConfigurationImpl.DEFAULT_GLOBAL_MAX_SIZE, conf.getGlobalMaxSize());
+
       Assert.assertEquals(ConfigurationImpl.DEFAULT_LARGE_MESSAGES_DIR, conf.getLargeMessagesDirectory());
 
       Assert.assertEquals(ConfigurationImpl.DEFAULT_WILDCARD_ROUTING_ENABLED, conf.isWildcardRoutingEnabled());
@@ -68,6 +68,8 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(true, conf.isSharedStore());
       Assert.assertEquals(true, conf.isPersistDeliveryCountBeforeDelivery());
       Assert.assertEquals("pagingdir", conf.getPagingDirectory());
+      Assert.assertEquals(52428800, conf.getPageCacheMaxSize());
+      Assert.assertEquals(104857600, conf.getGlobalMaxSize());
       Assert.assertEquals("somedir", conf.getBindingsDirectory());
       Assert.assertEquals(false, conf.isCreateBindingsDir());
       Assert.assertEquals("somedir2", conf.getJournalDirectory());
@@ -81,6 +83,15 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(true, conf.isJournalSyncNonTransactional());
       Assert.assertEquals(12345678, conf.getJournalFileSize());
       Assert.assertEquals(100, conf.getJournalMinFiles());
+      Assert.assertEquals(true, conf.isJournalConcurrentAppend());
+      Assert.assertEquals(4, conf.getJournalLoadThreads());
+      Assert.assertEquals(true, conf.isJournalBufferTimeoutAdaptive());
+      Assert.assertEquals(5, conf.getJournalCompactFilesPerCycle());
+      Assert.assertEquals(50, conf.getJournalCompactIOBudget());
+      Assert.assertEquals(true, conf.isJournalRecordChecksum());
+      Assert.assertEquals(5, conf.getJournalMaxPreallocatedFiles());
+      Assert.assertEquals(4, conf.getJournalHotFiles());
+      Assert.assertEquals(524288, conf.getJournalHotFileSize());
       Assert.assertEquals(123, conf.getJournalCompactMinFiles());
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
 
@@ -57,6 +57,22 @@ public class FilterTest extends UnitTestCase
       Assert.assertFalse(filter.match(message));
    }
 
+   public void testEqualityTerm() throws Exception
+   {
+      FilterImpl equality = (FilterImpl)FilterImpl.createFilter(new SimpleString("color = 'RED'"));
+      Assert.assertEquals(new SimpleString("color"), equality.getEqualityProperty());
+      Assert.assertEquals(new SimpleString("RED"), equality.getEqualityValue());
+
+      equality = (FilterImpl)FilterImpl.createFilter(new SimpleString("'RED' = color"));
+      Assert.assertEquals(new SimpleString("color"), equality.getEqualityProperty());
+      Assert.assertEquals(new SimpleString("RED"), equality.getEqualityValue());
+
+      Assert.assertNull(((FilterImpl)FilterImpl.createFilter("color = 1")).getEqualityProperty());
+      Assert.assertNull(((FilterImpl)FilterImpl.createFilter("color <> 'RED'")).getEqualityProperty());
+      Assert.assertNull(((FilterImpl)FilterImpl.createFilter("color = 'RED' AND size = 'L'")).getEqualityProperty());
+      Assert.assertNull(((FilterImpl)FilterImpl.createFilter("HQUserID = 'ID:1'")).getEqualityProperty());
+   }
+
    public void testInvalidString() throws Exception
    {
       testInvalidFilter("color = 'red");
@@ -33,6 +33,7 @@ import org.hornetq.core.journal.TestableJournal;
 import org.hornetq.core.journal.impl.ExportJournal;
 import org.hornetq.core.journal.impl.ImportJournal;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.core.logging.Logger;
 import org.hornetq.tests.util.UnitTestCase;
 import org.hornetq.utils.ReusableLatch;
@@ -355,6 +356,23 @@ public abstract class JournalImplTestBase extends UnitTestCase
       journal.debugWait();
    }
 
+   /** All the records receive the same update, through {@link org.hornetq.core.journal.Journal#appendUpdateRecords} */
+   protected void updateBatch(final long... arguments) throws Exception
+   {
+      byte[] updateRecord = generateRecord(recordLength);
+
+      beforeJournalOperation();
+
+      journal.appendUpdateRecords(arguments, (byte)0, new ByteArrayEncoding(updateRecord), sync);
+
+      for (long element : arguments)
+      {
+         records.add(new RecordInfo(element, (byte)0, updateRecord, true, (short)0));
+      }
+
+      journal.debugWait();
+   }
+
    protected void delete(final long... arguments) throws Exception
    {
       for (long element : arguments)
@@ -407,6 +425,24 @@ public abstract class JournalImplTestBase extends UnitTestCase
       journal.debugWait();
    }
 
+   protected void updateBatchTx(final long txID, final long... arguments) throws Exception
+   {
+      TransactionHolder tx = getTransaction(txID);
+
+      byte[] updateRecord = generateRecord(recordLength);
+
+      beforeJournalOperation();
+
+      journal.appendUpdateRecordsTransactional(txID, arguments, (byte)0, new ByteArrayEncoding(updateRecord));
+
+      for (long element : arguments)
+      {
+         tx.records.add(new RecordInfo(element, (byte)0, updateRecord, true, (short)0));
+      }
+
+      journal.debugWait();
+   }
+
    protected void deleteTx(final long txID, final long... arguments) throws Exception
    {
       TransactionHolder tx = getTransaction(txID);
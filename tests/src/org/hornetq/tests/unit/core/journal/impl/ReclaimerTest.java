@@ -960,6 +960,15 @@ public class ReclaimerTest extends UnitTestCase
          return false;
       }
 
+      public void transactionCompleted(final JournalFile completionFile)
+      {
+      }
+
+      public long getTransactionCompletionID()
+      {
+         return -1;
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.impl.JournalFile#setNeedCleanup(boolean)
        */
@@ -16,6 +16,8 @@ package org.hornetq.tests.unit.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
@@ -223,6 +225,91 @@ public class TimedBufferTest extends UnitTestCase
 
    }
 
+   public void testAdaptiveTimeout() throws Exception
+   {
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            try
+            {
+               // simulating the time taken by the disk to sync
+               Thread.sleep(5);
+            }
+            catch (InterruptedException e)
+            {
+            }
+
+            for (IOAsyncTask callback : callbacks)
+            {
+               callback.done();
+            }
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      TimedBuffer timedBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND / 10, false);
+
+      timedBuffer.setAdaptiveTimeout(true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         Assert.assertEquals(TimedBufferTest.ONE_SECOND / 10, timedBuffer.getTimeout());
+
+         // syncs requested far less often than a flush takes, there's no point on waiting for the timeout
+         for (int i = 0; i < 10; i++)
+         {
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, new IOAsyncTask()
+            {
+               public void done()
+               {
+                  latch.countDown();
+               }
+
+               public void onError(final int errorCode, final String errorMessage)
+               {
+               }
+            });
+
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            Thread.sleep(50);
+         }
+
+         Assert.assertEquals(0, timedBuffer.getTimeout());
+
+         Assert.assertTrue(timedBuffer.getAverageFlushLatency() >= TimeUnit.MILLISECONDS.toNanos(5));
+
+         Assert.assertEquals(10, timedBuffer.getAverageBatchSize());
+
+         Assert.assertEquals(1d, timedBuffer.getAverageBatchRecords(), 0.01);
+
+         timedBuffer.setAdaptiveTimeout(false);
+
+         Assert.assertEquals(TimedBufferTest.ONE_SECOND / 10, timedBuffer.getTimeout());
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -27,6 +27,7 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.TimedBuffer;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.logging.Logger;
 
 /**
@@ -158,6 +159,11 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       return pos;
    }
 
+   public int getMaxRecordSize()
+   {
+      return -1;
+   }
+
    public ByteBuffer wrapBuffer(final byte[] bytes)
    {
       return ByteBuffer.wrap(bytes);
@@ -642,7 +648,7 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       {
          ByteBuffer buffer = newBuffer(bytes.getEncodeSize());
          HornetQBuffer outbuffer = HornetQBuffers.wrappedBuffer(buffer);
-         bytes.encode(outbuffer);
+         encode(bytes, outbuffer);
          write(outbuffer, sync, callback);
       }
 
@@ -653,10 +659,43 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       {
          ByteBuffer buffer = newBuffer(bytes.getEncodeSize());
          HornetQBuffer outbuffer = HornetQBuffers.wrappedBuffer(buffer);
-         bytes.encode(outbuffer);
+         encode(bytes, outbuffer);
          write(outbuffer, sync);
       }
 
+      private void encode(final EncodingSupport bytes, final HornetQBuffer outbuffer)
+      {
+         bytes.encode(outbuffer);
+
+         if (bytes instanceof JournalInternalRecord && ((JournalInternalRecord)bytes).isChecksum())
+         {
+            JournalInternalRecord.fillChecksums(outbuffer.toByteBuffer(), 0, outbuffer.writerIndex());
+         }
+      }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.SequentialFile#reserve(int)
+       */
+      public synchronized int reserve(final int size) throws Exception
+      {
+         return fits(size) ? data.position() : -1;
+      }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.SequentialFile#write(int, org.hornetq.core.journal.EncodingSupport, boolean, org.hornetq.core.journal.IOAsyncTask)
+       */
+      public void write(final int slot, final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+      {
+         write(bytes, sync, callback);
+      }
+
+      /* (non-Javadoc)
+       * @see org.hornetq.core.journal.SequentialFile#abort(int, int)
+       */
+      public void abort(final int slot, final int size)
+      {
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.SequentialFile#exists()
        */
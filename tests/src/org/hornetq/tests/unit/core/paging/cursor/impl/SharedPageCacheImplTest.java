@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.paging.cursor.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.PageSubscription;
+import org.hornetq.core.paging.cursor.PagedReference;
+import org.hornetq.core.paging.cursor.impl.PageCacheImpl;
+import org.hornetq.core.paging.cursor.impl.SharedPageCacheImpl;
+import org.hornetq.core.paging.impl.PageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A SharedPageCacheImplTest
+ */
+public class SharedPageCacheImplTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testEvictLeastRecentlyUsed() throws Exception
+   {
+      SharedPageCacheImpl cache = new SharedPageCacheImpl(300);
+
+      PageCursorProvider provider = new FakeCursorProvider();
+
+      for (int i = 1; i <= 3; i++)
+      {
+         cache.put(provider, createCache(i));
+         cache.setSize(provider, i, 100);
+      }
+
+      Assert.assertEquals(300, cache.getSize());
+      Assert.assertEquals(0, cache.getEvictions());
+
+      // page 1 is now used more recently than page 2
+      Assert.assertNotNull(cache.get(provider, 1));
+
+      cache.put(provider, createCache(4));
+      cache.setSize(provider, 4, 100);
+
+      Assert.assertEquals(1, cache.getEvictions());
+      Assert.assertEquals(300, cache.getSize());
+      Assert.assertEquals(3, cache.getNumberOfPages());
+
+      Assert.assertFalse(cache.contains(provider, 2));
+      Assert.assertTrue(cache.contains(provider, 1));
+      Assert.assertTrue(cache.contains(provider, 3));
+      Assert.assertTrue(cache.contains(provider, 4));
+
+      Assert.assertNull(cache.get(provider, 2));
+
+      Assert.assertEquals(1, cache.getHits());
+      Assert.assertEquals(1, cache.getMisses());
+
+      // a page bigger than the cache doesn't stay in it
+      cache.put(provider, createCache(5));
+      cache.setSize(provider, 5, 1000);
+
+      Assert.assertEquals(0, cache.getNumberOfPages());
+      Assert.assertEquals(0, cache.getSize());
+      Assert.assertEquals(5, cache.getEvictions());
+   }
+
+   public void testProviders() throws Exception
+   {
+      SharedPageCacheImpl cache = new SharedPageCacheImpl(1000);
+
+      PageCursorProvider provider1 = new FakeCursorProvider();
+
+      PageCursorProvider provider2 = new FakeCursorProvider();
+
+      PageCache cache1 = createCache(1);
+
+      PageCache cache2 = createCache(1);
+
+      cache.put(provider1, cache1);
+      cache.setSize(provider1, 1, 100);
+
+      cache.put(provider2, cache2);
+      cache.setSize(provider2, 1, 200);
+
+      cache.put(provider2, createCache(2));
+      cache.setSize(provider2, 2, 200);
+
+      Assert.assertSame(cache1, cache.get(provider1, 1));
+      Assert.assertSame(cache2, cache.get(provider2, 1));
+
+      Assert.assertEquals(1, cache.getNumberOfPages(provider1));
+      Assert.assertEquals(2, cache.getNumberOfPages(provider2));
+      Assert.assertEquals(500, cache.getSize());
+
+      cache.remove(provider2, 2);
+
+      Assert.assertEquals(300, cache.getSize());
+
+      cache.removeAll(provider1);
+
+      Assert.assertEquals(0, cache.getNumberOfPages(provider1));
+      Assert.assertEquals(1, cache.getNumberOfPages(provider2));
+      Assert.assertEquals(200, cache.getSize());
+      Assert.assertEquals(0, cache.getEvictions());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private PageCache createCache(final int pageId) throws Exception
+   {
+      return new PageCacheImpl(new PageImpl(new SimpleString("test"), null, null, null, pageId));
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static class FakeCursorProvider implements PageCursorProvider
+   {
+      public PageCache getPageCache(final PagePosition pos)
+      {
+         return null;
+      }
+
+      public PagedReference newReference(final PagePosition pos, final PagedMessage msg, final PageSubscription sub)
+      {
+         return null;
+      }
+
+      public void addPageCache(final PageCache cache)
+      {
+      }
+
+      public PagingStore getAssociatedStore()
+      {
+         return null;
+      }
+
+      public PageSubscription getSubscription(final long queueId)
+      {
+         return null;
+      }
+
+      public PageSubscription createSubscription(final long queueId, final Filter filter, final boolean durable)
+      {
+         return null;
+      }
+
+      public PagedMessage getMessage(final PagePosition pos) throws Exception
+      {
+         return null;
+      }
+
+      public void processReload() throws Exception
+      {
+      }
+
+      public void stop()
+      {
+      }
+
+      public void flushExecutors()
+      {
+      }
+
+      public void scheduleCleanup()
+      {
+      }
+
+      public void scheduleRead(final long pageId)
+      {
+      }
+
+      public void cleanup()
+      {
+      }
+
+      public void close(final PageSubscription pageCursorImpl)
+      {
+      }
+
+      public int getCacheSize()
+      {
+         return 0;
+      }
+
+      public void printDebug()
+      {
+      }
+   }
+}
@@ -62,6 +62,18 @@ public class PageImplTest extends UnitTestCase
       testDamagedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
    }
 
+   public void testIndexedReadWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testIndexedRead(new NIOSequentialFileFactory(getTestDir()), 100);
+   }
+
+   public void testCompressedWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testCompressed(new NIOSequentialFileFactory(getTestDir()), 100);
+   }
+
    public void testPageFakeWithoutCallbacks() throws Exception
    {
       testAdd(new FakeSequentialFileFactory(1, false), 10);
@@ -121,6 +133,152 @@ public class PageImplTest extends UnitTestCase
 
    }
 
+   protected void testIndexedRead(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      PageImpl impl = new PageImpl(new SimpleString("something"),
+                                   new NullStorageManager(),
+                                   factory,
+                                   factory.createSequentialFile("00010.page", 1),
+                                   factory.createSequentialFile("00010.page.index", 1),
+                                   10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      addPageElements(simpleDestination, impl, numberOfElements);
+
+      impl.sync();
+      impl.close();
+
+      Assert.assertEquals(1, factory.listFiles("index").size());
+
+      impl = new PageImpl(new SimpleString("something"),
+                          new NullStorageManager(),
+                          factory,
+                          factory.createSequentialFile("00010.page", 1),
+                          factory.createSequentialFile("00010.page.index", 1),
+                          10);
+
+      impl.open();
+
+      for (int i = numberOfElements - 1; i >= 0; i -= 7)
+      {
+         PagedMessage msg = impl.read(i);
+
+         Assert.assertNotNull(msg);
+         Assert.assertEquals(i, msg.getMessage().getMessageID());
+         Assert.assertEquals(simpleDestination, msg.getMessage().getAddress());
+      }
+
+      Assert.assertNull(impl.read(numberOfElements));
+
+      impl.close();
+
+      // a page without an index can't be read by message number until it's read entirely
+      factory.createSequentialFile("00010.page.index", 1).delete();
+
+      impl = new PageImpl(new SimpleString("something"),
+                          new NullStorageManager(),
+                          factory,
+                          factory.createSequentialFile("00010.page", 1),
+                          factory.createSequentialFile("00010.page.index", 1),
+                          10);
+
+      impl.open();
+
+      Assert.assertNull(impl.read(0));
+
+      Assert.assertEquals(numberOfElements, impl.read().size());
+
+      Assert.assertEquals(numberOfElements - 1, impl.read(numberOfElements - 1).getMessage().getMessageID());
+
+      impl.delete();
+
+      Assert.assertEquals(0, factory.listFiles("page").size());
+
+      Assert.assertEquals(0, factory.listFiles("index").size());
+   }
+
+   protected void testCompressed(final SequentialFileFactory factory, final int numberOfElements) throws Exception
+   {
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      PageImpl plain = new PageImpl(new SimpleString("something"),
+                                    new NullStorageManager(),
+                                    factory,
+                                    factory.createSequentialFile("00010.page", 1),
+                                    null,
+                                    10,
+                                    false);
+
+      plain.open();
+
+      addTextPageElements(simpleDestination, plain, 0, numberOfElements);
+
+      plain.sync();
+      plain.close();
+
+      PageImpl compressed = new PageImpl(new SimpleString("something"),
+                                         new NullStorageManager(),
+                                         factory,
+                                         factory.createSequentialFile("00011.page", 1),
+                                         factory.createSequentialFile("00011.page.index", 1),
+                                         11,
+                                         true);
+
+      compressed.open();
+
+      addTextPageElements(simpleDestination, compressed, 0, numberOfElements);
+
+      // messages that don't get smaller are written plain in the same page
+      addPageElements(simpleDestination, compressed, 1);
+
+      compressed.sync();
+
+      Assert.assertTrue("compressed " + compressed.getSize() + ", plain " + plain.getSize(),
+                        compressed.getSize() * 2 < plain.getSize());
+
+      compressed.close();
+
+      compressed = new PageImpl(new SimpleString("something"),
+                                new NullStorageManager(),
+                                factory,
+                                factory.createSequentialFile("00011.page", 1),
+                                factory.createSequentialFile("00011.page.index", 1),
+                                11,
+                                false);
+
+      compressed.open();
+
+      List<PagedMessage> msgs = compressed.read();
+
+      Assert.assertEquals(numberOfElements + 1, msgs.size());
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         Assert.assertEquals(simpleDestination, msgs.get(i).getMessage().getAddress());
+         Assert.assertEquals(textBody(i), msgs.get(i).getMessage().getBodyBuffer().readString());
+      }
+
+      for (int i = numberOfElements - 1; i >= 0; i -= 7)
+      {
+         PagedMessage msg = compressed.read(i);
+
+         Assert.assertNotNull(msg);
+         Assert.assertEquals(i, msg.getMessage().getMessageID());
+         Assert.assertEquals(textBody(i), msg.getMessage().getBodyBuffer().readString());
+      }
+
+      Assert.assertEquals(0, compressed.read(numberOfElements).getMessage().getMessageID());
+
+      compressed.delete();
+
+      plain.delete();
+
+      Assert.assertEquals(0, factory.listFiles("page").size());
+   }
+
    protected void testDamagedPage(final SequentialFileFactory factory, final int numberOfElements) throws Exception
    {
 
@@ -230,6 +388,36 @@ public class PageImplTest extends UnitTestCase
       return buffers;
    }
 
+   protected void addTextPageElements(final SimpleString simpleDestination,
+                                      final PageImpl page,
+                                      final int firstID,
+                                      final int numberOfElements) throws Exception
+   {
+      for (int i = firstID; i < firstID + numberOfElements; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 1000);
+
+         msg.getBodyBuffer().writeString(textBody(i));
+
+         msg.setAddress(simpleDestination);
+
+         page.write(new PagedMessageImpl(msg, new long[0]));
+      }
+   }
+
+   /** A JSON document, which compresses well as most of it repeats */
+   protected String textBody(final int id)
+   {
+      StringBuffer body = new StringBuffer("{\"id\":" + id + ",\"items\":[");
+
+      for (int i = 0; i < 20; i++)
+      {
+         body.append("{\"name\":\"item-" + i + "\",\"quantity\":" + i * id + ",\"status\":\"available\"},");
+      }
+
+      return body.append("]}").toString();
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -48,6 +48,8 @@ import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
 import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.SharedPageCache;
+import org.hornetq.core.paging.cursor.impl.SharedPageCacheImpl;
 import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.paging.impl.PagingStoreImpl;
 import org.hornetq.core.paging.impl.TestSupportPageStore;
@@ -973,6 +975,7 @@ public class PagingStoreImplTest extends UnitTestCase
 
    class FakePagingManager implements PagingManager
    {
+      private final SharedPageCache pageCache = new SharedPageCacheImpl(100 * 1024 * 1024);
 
       public void activate()
       {
@@ -1110,6 +1113,25 @@ public class PagingStoreImplTest extends UnitTestCase
 
       }
 
+      public SharedPageCache getPageCache()
+      {
+         return pageCache;
+      }
+
+      public void addGlobalSize(final int size)
+      {
+      }
+
+      public long getGlobalSize()
+      {
+         return 0;
+      }
+
+      public long getGlobalMaxSize()
+      {
+         return -1;
+      }
+
    }
 
    class FakeStorageManager implements StorageManager
@@ -1256,6 +1278,13 @@ public class PagingStoreImplTest extends UnitTestCase
       {
       }
 
+      /* (non-Javadoc)
+       * @see org.hornetq.core.persistence.StorageManager#storeAcknowledgeBatch(long, long[])
+       */
+      public void storeAcknowledgeBatch(final long queueID, final long[] messageIDs) throws Exception
+      {
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.persistence.StorageManager#storeAcknowledgeTransactional(long, long, long)
        */
@@ -1263,6 +1292,13 @@ public class PagingStoreImplTest extends UnitTestCase
       {
       }
 
+      /* (non-Javadoc)
+       * @see org.hornetq.core.persistence.StorageManager#storeAcknowledgeBatchTransactional(long, long, long[])
+       */
+      public void storeAcknowledgeBatchTransactional(final long txID, final long queueID, final long[] messageIDs) throws Exception
+      {
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.persistence.StorageManager#storeDuplicateID(org.hornetq.utils.SimpleString, byte[], long)
        */
@@ -1652,6 +1688,61 @@ public class PagingStoreImplTest extends UnitTestCase
          return 0;
       }
 
+      public long getJournalFlushLatency()
+      {
+         return 0;
+      }
+
+      public long getJournalBatchSize()
+      {
+         return 0;
+      }
+
+      public double getJournalBatchRecords()
+      {
+         return 0;
+      }
+
+      public int getJournalCurrentBufferTimeout()
+      {
+         return 0;
+      }
+
+      public long getJournalCompactBytesRewritten()
+      {
+         return 0;
+      }
+
+      public long getJournalCompactPauseTime()
+      {
+         return 0;
+      }
+
+      public int getJournalCompactReclaimedFiles()
+      {
+         return 0;
+      }
+
+      public long getJournalFileWaitCount()
+      {
+         return 0;
+      }
+
+      public long getJournalFileWaitTime()
+      {
+         return 0;
+      }
+
+      public long getJournalHotMigratedRecords()
+      {
+         return 0;
+      }
+
+      public long getJournalHotDeletedRecords()
+      {
+         return 0;
+      }
+
    }
 
    class FakeStoreFactory implements PagingStoreFactory
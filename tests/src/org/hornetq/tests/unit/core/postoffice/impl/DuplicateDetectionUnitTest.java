@@ -31,6 +31,7 @@ import org.hornetq.core.config.impl.ConfigurationImpl;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.SharedPageCache;
 import org.hornetq.core.persistence.GroupingInfo;
 import org.hornetq.core.persistence.QueueBindingInfo;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
@@ -333,6 +334,25 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
       {
       }
 
+      public SharedPageCache getPageCache()
+      {
+         return null;
+      }
+
+      public void addGlobalSize(final int size)
+      {
+      }
+
+      public long getGlobalSize()
+      {
+         return 0;
+      }
+
+      public long getGlobalMaxSize()
+      {
+         return -1;
+      }
+
    }
 
 }
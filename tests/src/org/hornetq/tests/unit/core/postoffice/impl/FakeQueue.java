@@ -127,6 +127,24 @@ public class FakeQueue implements Queue
 
    }
 
+   /* (non-Javadoc)
+    * @see org.hornetq.core.server.Queue#acknowledge(java.util.List)
+    */
+   public void acknowledge(final List<MessageReference> refs) throws Exception
+   {
+      // TODO Auto-generated method stub
+
+   }
+
+   /* (non-Javadoc)
+    * @see org.hornetq.core.server.Queue#acknowledge(org.hornetq.core.transaction.Transaction, java.util.List)
+    */
+   public void acknowledge(final Transaction tx, final List<MessageReference> refs) throws Exception
+   {
+      // TODO Auto-generated method stub
+
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.server.Queue#addConsumer(org.hornetq.core.server.Consumer)
     */
@@ -392,6 +410,21 @@ public class FakeQueue implements Queue
       return 0;
    }
 
+   public long getNextScheduledDeliveryTime()
+   {
+      return 0;
+   }
+
+   public int getGroupCount()
+   {
+      return 0;
+   }
+
+   public int getGroupCount(final Consumer consumer)
+   {
+      return 0;
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.server.Queue#getScheduledMessages()
     */
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.CompactReferenceList;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LinkedListIterator;
+
+/**
+ * A CompactReferenceListTest
+ */
+public class CompactReferenceListTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeQueue queue = new FakeQueue(new SimpleString("queue"));
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testMaterialize() throws Exception
+   {
+      CompactReferenceList list = new CompactReferenceList(10, queue);
+
+      MessageReference ref1 = generateReference(queue, 1);
+
+      MessageReference ref2 = generateReference(queue, 2);
+
+      // Delivered already, it has to be kept as it is
+      ref2.incrementDeliveryCount();
+
+      MessageReference ref3 = generateReference(new FakeQueue(new SimpleString("other")), 3);
+
+      list.addTail(ref1, 4);
+      list.addTail(ref2, 4);
+      list.addTail(ref3, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator();
+
+      Assert.assertTrue(iter.hasNext());
+      MessageReference ref = iter.next();
+      Assert.assertNotSame(ref1, ref);
+      Assert.assertSame(ref1.getMessage(), ref.getMessage());
+      Assert.assertSame(queue, ref.getQueue());
+
+      // a repeat returns the same reference
+      iter.repeat();
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertSame(ref, iter.next());
+
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertSame(ref2, iter.next());
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertSame(ref3, iter.next());
+      Assert.assertFalse(iter.hasNext());
+
+      iter.close();
+
+      Assert.assertEquals(3, list.size());
+      Assert.assertSame(ref1.getMessage(), list.poll().getMessage());
+      Assert.assertSame(ref2, list.poll());
+      Assert.assertSame(ref3, list.poll());
+      Assert.assertNull(list.poll());
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   public void testPriorities() throws Exception
+   {
+      CompactReferenceList list = new CompactReferenceList(10, queue);
+
+      list.addTail(generateReference(queue, 1), 0);
+      list.addTail(generateReference(queue, 2), 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator();
+
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertEquals(2, iter.next().getMessage().getMessageID());
+
+      // the iterator goes back to the highest priority
+      list.addTail(generateReference(queue, 3), 9);
+      list.addHead(generateReference(queue, 4), 4);
+
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertEquals(3, iter.next().getMessage().getMessageID());
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertEquals(1, iter.next().getMessage().getMessageID());
+      Assert.assertFalse(iter.hasNext());
+
+      Assert.assertEquals(3, list.poll().getMessage().getMessageID());
+      Assert.assertEquals(4, list.poll().getMessage().getMessageID());
+      Assert.assertEquals(2, list.poll().getMessage().getMessageID());
+      Assert.assertEquals(1, list.poll().getMessage().getMessageID());
+   }
+
+   public void testRemoveAcrossChunks() throws Exception
+   {
+      CompactReferenceList list = new CompactReferenceList(10, queue);
+
+      final int numMessages = 2000;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         list.addTail(generateReference(queue, i), 4);
+      }
+
+      LinkedListIterator<MessageReference> other = list.iterator();
+
+      Assert.assertTrue(other.hasNext());
+      Assert.assertEquals(0, other.next().getMessage().getMessageID());
+
+      LinkedListIterator<MessageReference> iter = list.iterator();
+
+      // keeps one reference out of 500, so most chunks are emptied
+      while (iter.hasNext())
+      {
+         if (iter.next().getMessage().getMessageID() % 500 != 0)
+         {
+            iter.remove();
+         }
+      }
+
+      Assert.assertEquals(4, list.size());
+
+      // the other iterator skips the removed references
+      for (int i = 1; i < 4; i++)
+      {
+         Assert.assertTrue(other.hasNext());
+         Assert.assertEquals(i * 500, other.next().getMessage().getMessageID());
+      }
+
+      Assert.assertFalse(other.hasNext());
+
+      list.addTail(generateReference(queue, numMessages), 4);
+
+      Assert.assertTrue(other.hasNext());
+      Assert.assertEquals(numMessages, other.next().getMessage().getMessageID());
+
+      list.clear();
+
+      Assert.assertFalse(other.hasNext());
+
+      list.addTail(generateReference(queue, 1), 4);
+
+      Assert.assertTrue(other.hasNext());
+      Assert.assertEquals(1, other.next().getMessage().getMessageID());
+   }
+
+   public void testSameOrderAsLinkedLists() throws Exception
+   {
+      CompactReferenceList list = new CompactReferenceList(10, queue);
+
+      List<LinkedList<MessageReference>> expected = new ArrayList<LinkedList<MessageReference>>();
+
+      for (int i = 0; i < 10; i++)
+      {
+         expected.add(new LinkedList<MessageReference>());
+      }
+
+      Random random = new Random(1);
+
+      long id = 0;
+
+      for (int round = 0; round < 50; round++)
+      {
+         for (int i = random.nextInt(1000); i > 0; i--)
+         {
+            MessageReference ref = generateReference(queue, id++);
+
+            int priority = random.nextInt(10);
+
+            if (random.nextInt(10) == 0)
+            {
+               list.addHead(ref, priority);
+               expected.get(priority).addFirst(ref);
+            }
+            else
+            {
+               list.addTail(ref, priority);
+               expected.get(priority).addLast(ref);
+            }
+         }
+
+         LinkedListIterator<MessageReference> iter = list.iterator();
+
+         int size = 0;
+
+         for (int priority = 9; priority >= 0; priority--)
+         {
+            Iterator<MessageReference> expectedIter = expected.get(priority).iterator();
+
+            while (expectedIter.hasNext())
+            {
+               Assert.assertTrue(iter.hasNext());
+
+               Assert.assertSame(expectedIter.next().getMessage(), iter.next().getMessage());
+
+               if (random.nextInt(3) != 0)
+               {
+                  expectedIter.remove();
+                  iter.remove();
+               }
+               else
+               {
+                  size++;
+               }
+            }
+         }
+
+         Assert.assertFalse(iter.hasNext());
+
+         iter.close();
+
+         Assert.assertEquals(size, list.size());
+
+         for (int i = random.nextInt(100); i > 0 && size > 0; i--, size--)
+         {
+            MessageReference ref = list.poll();
+
+            for (int priority = 9; priority >= 0; priority--)
+            {
+               if (!expected.get(priority).isEmpty())
+               {
+                  Assert.assertSame(expected.get(priority).removeFirst().getMessage(), ref.getMessage());
+
+                  break;
+               }
+            }
+         }
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.DeliveringReferenceList;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A DeliveringReferenceListTest
+ */
+public class DeliveringReferenceListTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeQueue queue = new FakeQueue(new SimpleString("queue"));
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testRemoveUpTo() throws Exception
+   {
+      DeliveringReferenceList list = new DeliveringReferenceList();
+
+      List<MessageReference> refs = fill(list, 10);
+
+      Assert.assertSame(refs.get(0), list.peek());
+
+      Assert.assertEquals(refs.subList(0, 4), list.removeUpTo(3));
+
+      Assert.assertEquals(6, list.size());
+
+      Assert.assertSame(refs.get(4), list.peek());
+
+      Assert.assertEquals(refs.subList(4, 5), list.removeUpTo(4));
+
+      // not delivered, all of them are removed
+      Assert.assertEquals(refs.subList(5, 10), list.removeUpTo(100));
+
+      Assert.assertTrue(list.isEmpty());
+
+      Assert.assertNull(list.peek());
+   }
+
+   public void testRemoveOutOfOrder() throws Exception
+   {
+      DeliveringReferenceList list = new DeliveringReferenceList();
+
+      List<MessageReference> refs = fill(list, 10);
+
+      Assert.assertSame(refs.get(5), list.remove(5));
+
+      Assert.assertNull(list.remove(5));
+
+      Assert.assertSame(refs.get(0), list.remove(0));
+
+      Assert.assertSame(refs.get(9), list.remove(9));
+
+      Assert.assertEquals(7, list.size());
+
+      // the order of the others is kept
+      List<MessageReference> expected = new ArrayList<MessageReference>(refs.subList(1, 9));
+
+      expected.remove(refs.get(5));
+
+      Assert.assertEquals(expected.subList(0, 5), list.removeUpTo(6));
+
+      Assert.assertEquals(expected.subList(5, 7), list.removeAll());
+
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   private List<MessageReference> fill(final DeliveringReferenceList list, final int numberOfReferences)
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numberOfReferences; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         refs.add(ref);
+
+         list.add(ref);
+      }
+
+      return refs;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
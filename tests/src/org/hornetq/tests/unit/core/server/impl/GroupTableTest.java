@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.impl.GroupTable;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A GroupTableTest
+ */
+public class GroupTableTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString GROUP1 = new SimpleString("group1");
+
+   private static final SimpleString GROUP2 = new SimpleString("group2");
+
+   private static final SimpleString GROUP3 = new SimpleString("group3");
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeConsumer cons1 = new FakeConsumer();
+
+   private final FakeConsumer cons2 = new FakeConsumer();
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testPinned() throws Exception
+   {
+      GroupTable groups = new GroupTable(-1, -1);
+
+      Assert.assertNull(groups.get(GroupTableTest.GROUP1, 0));
+
+      Assert.assertTrue(groups.delivering(GroupTableTest.GROUP1, cons1, 0));
+      Assert.assertFalse(groups.delivering(GroupTableTest.GROUP1, cons1, 0));
+
+      Assert.assertSame(cons1, groups.get(GroupTableTest.GROUP1, 0));
+
+      // not delivered on the first try, so it's not pinned
+      Assert.assertTrue(groups.delivering(GroupTableTest.GROUP2, cons2, 0));
+      groups.notDelivered(GroupTableTest.GROUP2, true);
+
+      Assert.assertNull(groups.get(GroupTableTest.GROUP2, 0));
+
+      Assert.assertEquals(1, groups.size());
+      Assert.assertEquals(1, groups.getGroupCount(cons1));
+      Assert.assertEquals(0, groups.getGroupCount(cons2));
+
+      groups.removeConsumer(cons1);
+
+      Assert.assertEquals(0, groups.size());
+      Assert.assertEquals(0, groups.getGroupCount(cons1));
+   }
+
+   public void testMaxGroups() throws Exception
+   {
+      GroupTable groups = new GroupTable(2, -1);
+
+      groups.delivering(GroupTableTest.GROUP1, cons1, 0);
+      groups.delivering(GroupTableTest.GROUP2, cons2, 0);
+
+      // every group has a message in flight, none of them can be moved
+      groups.delivering(GroupTableTest.GROUP3, cons1, 0);
+
+      Assert.assertEquals(3, groups.size());
+
+      groups.completed(GroupTableTest.GROUP1, 0);
+      groups.completed(GroupTableTest.GROUP2, 0);
+      groups.completed(GroupTableTest.GROUP3, 0);
+
+      groups.removeConsumer(cons2);
+
+      // group1 is the least recently used
+      groups.delivering(GroupTableTest.GROUP2, cons2, 0);
+
+      Assert.assertEquals(2, groups.size());
+      Assert.assertNull(groups.get(GroupTableTest.GROUP1, 0));
+      Assert.assertSame(cons1, groups.get(GroupTableTest.GROUP3, 0));
+      Assert.assertSame(cons2, groups.get(GroupTableTest.GROUP2, 0));
+      Assert.assertEquals(1, groups.getGroupCount(cons1));
+   }
+
+   public void testIdleTimeout() throws Exception
+   {
+      GroupTable groups = new GroupTable(-1, 100);
+
+      groups.delivering(GroupTableTest.GROUP1, cons1, 0);
+      groups.completed(GroupTableTest.GROUP1, 0);
+
+      groups.delivering(GroupTableTest.GROUP2, cons1, 0);
+
+      groups.delivering(GroupTableTest.GROUP3, cons2, 80);
+      groups.completed(GroupTableTest.GROUP3, 80);
+
+      groups.expire(150);
+
+      // group2 has a message in flight, and group3 was used recently
+      Assert.assertNull(groups.get(GroupTableTest.GROUP1, 150));
+      Assert.assertSame(cons1, groups.get(GroupTableTest.GROUP2, 150));
+      Assert.assertSame(cons2, groups.get(GroupTableTest.GROUP3, 150));
+
+      groups.completed(GroupTableTest.GROUP2, 150);
+
+      groups.expire(300);
+
+      Assert.assertEquals(0, groups.size());
+      Assert.assertEquals(0, groups.getGroupCount(cons1));
+      Assert.assertEquals(0, groups.getGroupCount(cons2));
+   }
+
+   public void testRebalance() throws Exception
+   {
+      GroupTable groups = new GroupTable(-1, -1);
+
+      groups.delivering(GroupTableTest.GROUP1, cons1, 0);
+      groups.completed(GroupTableTest.GROUP1, 0);
+
+      groups.delivering(GroupTableTest.GROUP2, cons1, 0);
+      groups.delivering(GroupTableTest.GROUP2, cons1, 0);
+
+      Assert.assertEquals(2, groups.getGroupCount(cons1));
+
+      groups.rebalance();
+
+      Assert.assertNull(groups.get(GroupTableTest.GROUP1, 0));
+
+      // group2 stays on its consumer until all its messages are acknowledged
+      Assert.assertSame(cons1, groups.get(GroupTableTest.GROUP2, 0));
+
+      groups.completed(GroupTableTest.GROUP2, 0);
+
+      Assert.assertSame(cons1, groups.get(GroupTableTest.GROUP2, 0));
+
+      groups.completed(GroupTableTest.GROUP2, 0);
+
+      Assert.assertNull(groups.get(GroupTableTest.GROUP2, 0));
+
+      Assert.assertTrue(groups.delivering(GroupTableTest.GROUP2, cons2, 0));
+
+      Assert.assertEquals(0, groups.getGroupCount(cons1));
+      Assert.assertEquals(1, groups.getGroupCount(cons2));
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+}
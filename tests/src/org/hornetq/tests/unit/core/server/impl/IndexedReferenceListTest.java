@@ -0,0 +1,303 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.IndexedReferenceList;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LinkedListIterator;
+
+/**
+ * A IndexedReferenceListTest
+ */
+public class IndexedReferenceListTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString TENANT = new SimpleString("tenant");
+
+   private static final SimpleString A = new SimpleString("a");
+
+   private static final SimpleString B = new SimpleString("b");
+
+   // Attributes ----------------------------------------------------
+
+   private final FakeQueue queue = new FakeQueue(new SimpleString("queue"));
+
+   private IndexedReferenceList list;
+
+   private long messageID;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testIndexedIteration() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      List<MessageReference> refsA = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 10; i++)
+      {
+         refsA.add(addTail(IndexedReferenceListTest.A, 4));
+         addTail(IndexedReferenceListTest.B, 4);
+         addTail(null, 4);
+      }
+
+      Assert.assertEquals(30, list.size());
+
+      assertRefListsIdenticalRefs(refsA, iterate(IndexedReferenceListTest.A));
+   }
+
+   public void testIndexAddedAfterReferences() throws Exception
+   {
+      List<MessageReference> refsA = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 10; i++)
+      {
+         refsA.add(addTail(IndexedReferenceListTest.A, i % 10));
+         addTail(IndexedReferenceListTest.B, i % 10);
+      }
+
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      // Same order as the main list, highest priority first
+      List<MessageReference> expected = new ArrayList<MessageReference>();
+
+      for (MessageReference ref : iterate(null))
+      {
+         if (refsA.contains(ref))
+         {
+            expected.add(ref);
+         }
+      }
+
+      assertRefListsIdenticalRefs(expected, iterate(IndexedReferenceListTest.A));
+   }
+
+   public void testRemoveThroughIndex() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      MessageReference refA = addTail(IndexedReferenceListTest.A, 4);
+
+      MessageReference refB = addTail(IndexedReferenceListTest.B, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator(IndexedReferenceListTest.TENANT,
+                                                                IndexedReferenceListTest.A);
+
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertSame(refA, iter.next());
+      iter.remove();
+      Assert.assertFalse(iter.hasNext());
+      iter.close();
+
+      Assert.assertEquals(1, list.size());
+
+      List<MessageReference> remaining = iterate(null);
+
+      Assert.assertEquals(1, remaining.size());
+      Assert.assertSame(refB, remaining.get(0));
+
+      Assert.assertSame(refB, list.poll());
+      Assert.assertNull(list.poll());
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   public void testRemoveThroughMain() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      MessageReference refA1 = addTail(IndexedReferenceListTest.A, 4);
+
+      MessageReference refA2 = addTail(IndexedReferenceListTest.A, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator();
+
+      Assert.assertSame(refA1, iter.next());
+      iter.remove();
+      iter.close();
+
+      Assert.assertEquals(1, list.size());
+
+      List<MessageReference> refs = iterate(IndexedReferenceListTest.A);
+
+      Assert.assertEquals(1, refs.size());
+      Assert.assertSame(refA2, refs.get(0));
+
+      Assert.assertSame(refA2, list.poll());
+
+      Assert.assertTrue(iterate(IndexedReferenceListTest.A).isEmpty());
+   }
+
+   public void testRepeatOnIndex() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      MessageReference refA1 = addTail(IndexedReferenceListTest.A, 4);
+
+      MessageReference refA2 = addTail(IndexedReferenceListTest.A, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator(IndexedReferenceListTest.TENANT,
+                                                                IndexedReferenceListTest.A);
+
+      Assert.assertSame(refA1, iter.next());
+      iter.repeat();
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertTrue(iter.hasNext());
+      Assert.assertSame(refA1, iter.next());
+      Assert.assertSame(refA2, iter.next());
+      Assert.assertFalse(iter.hasNext());
+      iter.close();
+   }
+
+   public void testCancelledBackToHead() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      MessageReference refA1 = addTail(IndexedReferenceListTest.A, 4);
+
+      MessageReference refA2 = addTail(IndexedReferenceListTest.A, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator(IndexedReferenceListTest.TENANT,
+                                                                IndexedReferenceListTest.A);
+
+      Assert.assertSame(refA1, iter.next());
+      iter.remove();
+      iter.close();
+
+      // the reference was removed through the index, but it's still physically on the main list
+      list.addHead(refA1, 4);
+
+      Assert.assertEquals(2, list.size());
+
+      List<MessageReference> expected = new ArrayList<MessageReference>();
+      expected.add(refA1);
+      expected.add(refA2);
+
+      assertRefListsIdenticalRefs(expected, iterate(null));
+      assertRefListsIdenticalRefs(expected, iterate(IndexedReferenceListTest.A));
+   }
+
+   public void testPurge() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      int numberOfMessages = 10000;
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         addTail(IndexedReferenceListTest.A, 4);
+      }
+
+      MessageReference last = addTail(IndexedReferenceListTest.B, 4);
+
+      LinkedListIterator<MessageReference> iter = list.iterator(IndexedReferenceListTest.TENANT,
+                                                                IndexedReferenceListTest.A);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         iter.next();
+         iter.remove();
+      }
+
+      iter.close();
+
+      Assert.assertEquals(1, list.size());
+
+      Assert.assertSame(last, list.poll());
+   }
+
+   public void testRemoveIndex() throws Exception
+   {
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+      list.addIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      MessageReference refA = addTail(IndexedReferenceListTest.A, 4);
+
+      list.removeIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      Assert.assertTrue(list.isIndexed(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A));
+
+      list.removeIndex(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A);
+
+      Assert.assertFalse(list.isIndexed(IndexedReferenceListTest.TENANT, IndexedReferenceListTest.A));
+
+      Assert.assertSame(refA, list.poll());
+
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      list = new IndexedReferenceList(10);
+   }
+
+   // Private -------------------------------------------------------
+
+   private MessageReference addTail(final SimpleString tenant, final int priority)
+   {
+      MessageReference ref = generateReference(queue, messageID++);
+
+      ref.getMessage().setPriority((byte)priority);
+
+      if (tenant != null)
+      {
+         ref.getMessage().putStringProperty(IndexedReferenceListTest.TENANT, tenant);
+      }
+
+      list.addTail(ref, priority);
+
+      return ref;
+   }
+
+   private List<MessageReference> iterate(final SimpleString tenant)
+   {
+      LinkedListIterator<MessageReference> iter = tenant == null ? list.iterator()
+                                                                 : list.iterator(IndexedReferenceListTest.TENANT,
+                                                                                 tenant);
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      while (iter.hasNext())
+      {
+         refs.add(iter.next());
+      }
+
+      iter.close();
+
+      return refs;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
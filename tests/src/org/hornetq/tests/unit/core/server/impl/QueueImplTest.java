@@ -14,24 +14,33 @@
 package org.hornetq.tests.unit.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import junit.framework.Assert;
 
+import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.BatchConsumer;
 import org.hornetq.core.server.Consumer;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.WeightedConsumer;
 import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.ConsumerDispatchPolicy;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeFilter;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
@@ -1138,8 +1147,213 @@ public class QueueImplTest extends UnitTestCase
       Assert.assertEquals(20, queue.getDeliveringCount());
    }
 
+   public void testConsumersWithIndexedFilters() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setSelectorIndex(true);
+      repository.addMatch(QueueImplTest.address1.toString(), settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      final int numMessages = 10;
+
+      List<MessageReference> refsRed = new ArrayList<MessageReference>();
+      List<MessageReference> refsGreen = new ArrayList<MessageReference>();
+      List<MessageReference> refsOther = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().putStringProperty("color", i % 2 == 0 ? "red" : "green");
+         (i % 2 == 0 ? refsRed : refsGreen).add(ref);
+         queue.addTail(ref);
+      }
+
+      // added before the messages, the index is built from the messages already on the queue
+      FakeConsumer red = new FakeConsumer(FilterImpl.createFilter("color = 'red'"));
+      FakeConsumer green = new FakeConsumer(FilterImpl.createFilter("'green' = color"));
+
+      queue.addConsumer(red);
+      queue.addConsumer(green);
+
+      for (int i = numMessages; i < numMessages * 2; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         if (i % 2 == 0)
+         {
+            ref.getMessage().putStringProperty("color", "red");
+            refsRed.add(ref);
+         }
+         else
+         {
+            ref.getMessage().putIntProperty("color", 1);
+            refsOther.add(ref);
+         }
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(refsRed, red.getReferences());
+      assertRefListsIdenticalRefs(refsGreen, green.getReferences());
+
+      Assert.assertEquals(numMessages * 2, queue.getMessageCount());
+      Assert.assertEquals(refsRed.size() + refsGreen.size(), queue.getDeliveringCount());
+
+      // the messages not matching any index are still delivered to the consumers without one
+      FakeConsumer all = new FakeConsumer();
+
+      queue.addConsumer(all);
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(refsOther, all.getReferences());
+
+      Assert.assertEquals(numMessages * 2, queue.getDeliveringCount());
+
+      queue.removeConsumer(red);
+      queue.removeConsumer(green);
+      queue.removeConsumer(all);
+   }
+
+   public void testDeliveryLanes() throws Exception
+   {
+      Executor[] laneExecutors = new Executor[3];
+
+      for (int i = 0; i < laneExecutors.length; i++)
+      {
+         laneExecutors[i] = Executors.newSingleThreadExecutor();
+      }
+
+      try
+      {
+         QueueImpl queue = new QueueImpl(1,
+                                         QueueImplTest.address1,
+                                         QueueImplTest.queue1,
+                                         null,
+                                         null,
+                                         false,
+                                         true,
+                                         scheduledExecutor,
+                                         null,
+                                         null,
+                                         null,
+                                         executor,
+                                         laneExecutors);
+
+         final int numGroups = 5;
+
+         final int numMessages = 100;
+
+         // added while paused, so every lane has references when the delivery starts
+         queue.pause();
+
+         FakeConsumer cons1 = new FakeConsumer();
+         FakeConsumer cons2 = new FakeConsumer();
+
+         queue.addConsumer(cons1);
+         queue.addConsumer(cons2);
+
+         List<List<MessageReference>> groups = new ArrayList<List<MessageReference>>();
+
+         for (int i = 0; i < numGroups; i++)
+         {
+            groups.add(new ArrayList<MessageReference>());
+         }
+
+         for (int i = 0; i < numMessages; i++)
+         {
+            MessageReference ref = generateReference(queue, i);
+
+            if (i % 2 == 0)
+            {
+               int group = i / 2 % numGroups;
+
+               ref.getMessage().putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + group));
+
+               groups.get(group).add(ref);
+            }
+
+            queue.addTail(ref);
+         }
+
+         queue.deliverNow();
+
+         // the iterator goes through every lane
+         Assert.assertEquals(numMessages, queue.getMessageCount());
+         Assert.assertEquals(numMessages, queue.getMessagesAdded());
+
+         queue.resume();
+
+         queue.deliverNow();
+
+         Assert.assertEquals(numMessages, cons1.getReferences().size() + cons2.getReferences().size());
+         Assert.assertEquals(numMessages, queue.getDeliveringCount());
+
+         // a group goes to a single consumer, in order
+         for (List<MessageReference> group : groups)
+         {
+            List<MessageReference> refs = cons1.getReferences().contains(group.get(0)) ? cons1.getReferences()
+                                                                                       : cons2.getReferences();
+
+            List<MessageReference> received = new ArrayList<MessageReference>();
+
+            for (MessageReference ref : refs)
+            {
+               if (group.contains(ref))
+               {
+                  received.add(ref);
+               }
+            }
+
+            assertRefListsIdenticalRefs(group, received);
+         }
+
+         queue.removeConsumer(cons1);
+         queue.removeConsumer(cons2);
+      }
+      finally
+      {
+         for (Executor laneExecutor : laneExecutors)
+         {
+            ((ExecutorService)laneExecutor).shutdownNow();
+         }
+      }
+   }
+
    // Private ------------------------------------------------------------------------------
 
+   private QueueImpl createQueue(final ConsumerDispatchPolicy dispatchPolicy)
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setConsumerDispatchPolicy(dispatchPolicy);
+      repository.addMatch(QueueImplTest.address1.toString(), settings);
+
+      return new QueueImpl(1,
+                           QueueImplTest.address1,
+                           QueueImplTest.queue1,
+                           null,
+                           false,
+                           true,
+                           scheduledExecutor,
+                           null,
+                           null,
+                           repository,
+                           executor);
+   }
+
    private void testConsumerWithFilters(final boolean direct) throws Exception
    {
       QueueImpl queue = new QueueImpl(1,
@@ -1463,6 +1677,300 @@ public class QueueImplTest extends UnitTestCase
 
    }
 
+   public void testBatchConsumer() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setDeliveryBatchSize(10);
+      repository.addMatch(QueueImplTest.address1.toString(), settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      final int numMessages = 30;
+
+      final int groupedMessage = 12;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         if (i == groupedMessage)
+         {
+            ref.getMessage().putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group"));
+         }
+
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      FakeBatchConsumer consumer = new FakeBatchConsumer(5);
+
+      consumer.setStatusImmediate(HandleStatus.BUSY);
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      // nothing is taken from the queue when the consumer is busy
+      Assert.assertEquals(numMessages, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+      Assert.assertTrue(consumer.getReferences().isEmpty());
+
+      consumer.setStatusImmediate(HandleStatus.HANDLED);
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(refs, consumer.getReferences());
+
+      Assert.assertEquals(numMessages, queue.getDeliveringCount());
+
+      // the batches stop before the grouped message, which is handled on its own, and at the end of the queue
+      Assert.assertEquals(Arrays.asList(5, 5, 2, 5, 5, 5, 2), consumer.batchSizes);
+
+      queue.removeConsumer(consumer);
+   }
+
+   public void testLeastOutstandingDispatch() throws Exception
+   {
+      QueueImpl queue = createQueue(ConsumerDispatchPolicy.LEAST_OUTSTANDING);
+
+      final int numMessages = 10;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      // the references are queued before there are consumers to deliver to
+      queue.blockOnExecutorFuture();
+
+      FakeWeightedConsumer loaded = new FakeWeightedConsumer(1, 5);
+
+      FakeWeightedConsumer idle = new FakeWeightedConsumer(1, 0);
+
+      queue.addConsumer(loaded);
+
+      queue.addConsumer(idle);
+
+      queue.deliverNow();
+
+      // the idle consumer catches up, then the consumers are taken in turn
+      Assert.assertEquals(3, loaded.getReferences().size());
+
+      Assert.assertEquals(7, idle.getReferences().size());
+
+      // a busy consumer is skipped, however few references it has
+      FakeWeightedConsumer busy = new FakeWeightedConsumer(1, 0);
+
+      busy.setStatusImmediate(HandleStatus.BUSY);
+
+      queue.addConsumer(busy);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, numMessages + i));
+      }
+
+      queue.deliverNow();
+
+      Assert.assertTrue(busy.getReferences().isEmpty());
+
+      Assert.assertEquals(numMessages * 2, loaded.getReferences().size() + idle.getReferences().size());
+
+      Assert.assertEquals(0, queue.getMessageCount() - queue.getDeliveringCount());
+   }
+
+   public void testWeightedDispatch() throws Exception
+   {
+      QueueImpl queue = createQueue(ConsumerDispatchPolicy.WEIGHTED);
+
+      FakeWeightedConsumer heavy = new FakeWeightedConsumer(3, 0);
+
+      FakeWeightedConsumer light = new FakeWeightedConsumer(1, 0);
+
+      queue.addConsumer(heavy);
+
+      queue.addConsumer(light);
+
+      final int numMessages = 8;
+
+      // delivered directly
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i), true);
+      }
+
+      queue.deliverNow();
+
+      Assert.assertEquals(6, heavy.getReferences().size());
+
+      Assert.assertEquals(2, light.getReferences().size());
+
+      // the heavy consumer acknowledges its references, it gets the next ones
+      heavy.clearReferences();
+
+      for (int i = 0; i < 4; i++)
+      {
+         queue.addTail(generateReference(queue, numMessages + i), true);
+      }
+
+      queue.deliverNow();
+
+      Assert.assertEquals(4, heavy.getReferences().size());
+
+      Assert.assertEquals(2, light.getReferences().size());
+   }
+
+   public void testCompactReferences() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setCompactReferences(true);
+      repository.addMatch(QueueImplTest.address1.toString(), settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      final int numMessages = 10;
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         refs.add(ref);
+
+         queue.addTail(ref);
+      }
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(numMessages, consumer.getReferences().size());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         // the references are created again when they're delivered
+         MessageReference ref = consumer.getReferences().get(i);
+
+         Assert.assertSame(refs.get(i).getMessage(), ref.getMessage());
+
+         Assert.assertSame(queue, ref.getQueue());
+      }
+
+      Assert.assertEquals(numMessages, queue.getDeliveringCount());
+
+      // a cancelled reference has been delivered, it's kept as it is
+      MessageReference cancelled = consumer.getReferences().get(0);
+
+      cancelled.incrementDeliveryCount();
+
+      queue.removeConsumer(consumer);
+
+      queue.cancel(cancelled);
+
+      for (int i = 1; i < numMessages; i++)
+      {
+         queue.acknowledge(consumer.getReferences().get(i));
+      }
+
+      Assert.assertEquals(1, queue.getMessageCount());
+
+      consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(1, consumer.getReferences().size());
+
+      Assert.assertSame(cancelled, consumer.getReferences().get(0));
+   }
+
+   class FakeWeightedConsumer extends FakeConsumer implements WeightedConsumer
+   {
+      final int weight;
+
+      /** Delivered before the test */
+      final int outstanding;
+
+      FakeWeightedConsumer(final int weight, final int outstanding)
+      {
+         this.weight = weight;
+
+         this.outstanding = outstanding;
+      }
+
+      public int getDeliveringCount()
+      {
+         return outstanding + getReferences().size();
+      }
+
+      public int getWeight()
+      {
+         return weight;
+      }
+   }
+
+   class FakeBatchConsumer extends FakeConsumer implements BatchConsumer
+   {
+      final int maxBatch;
+
+      final List<Integer> batchSizes = new ArrayList<Integer>();
+
+      FakeBatchConsumer(final int maxBatch)
+      {
+         this.maxBatch = maxBatch;
+      }
+
+      public synchronized HandleStatus handle(final MessageReference reference, final Iterator<MessageReference> batch)
+      {
+         HandleStatus status = handle(reference);
+
+         if (status == HandleStatus.HANDLED)
+         {
+            int size = 1;
+
+            while (size < maxBatch && batch.hasNext())
+            {
+               handle(batch.next());
+
+               size++;
+            }
+
+            batchSizes.add(size);
+         }
+
+         return status;
+      }
+   }
+
    class AddtoQueueRunner implements Runnable
    {
       QueueImpl queue;
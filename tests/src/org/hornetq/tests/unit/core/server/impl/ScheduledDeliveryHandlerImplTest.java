@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A ScheduledDeliveryHandlerImplTest
+ */
+public class ScheduledDeliveryHandlerImplTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   /** With a 1 millisecond tick, a period of the wheel is 512 milliseconds */
+   private static final long TICK = 1;
+
+   // Attributes ----------------------------------------------------
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private RecordingQueue queue;
+
+   private ScheduledDeliveryHandlerImpl handler;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testDeliveredInOrder() throws Exception
+   {
+      long now = System.currentTimeMillis();
+
+      // over more than one period of the wheel, and not in order
+      long[] delays = new long[] { 900, 300, 1500, 250, 300, 800 };
+
+      queue.expect(delays.length);
+
+      for (int i = 0; i < delays.length; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.setScheduledDeliveryTime(now + delays[i]);
+
+         Assert.assertTrue(handler.checkAndSchedule(ref));
+      }
+
+      Assert.assertEquals(delays.length, handler.getScheduledCount());
+
+      Assert.assertEquals(now + 250, handler.getNextScheduledDeliveryTime());
+
+      Assert.assertTrue(queue.latch.await(10, TimeUnit.SECONDS));
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+
+      Assert.assertEquals(0, handler.getNextScheduledDeliveryTime());
+
+      long last = 0;
+
+      for (int i = 0; i < queue.refs.size(); i++)
+      {
+         long deliveryTime = now + delays[(int)queue.refs.get(i).getMessage().getMessageID()];
+
+         // never before its time
+         Assert.assertTrue(queue.times.get(i) >= deliveryTime);
+
+         Assert.assertTrue(deliveryTime >= last);
+
+         last = deliveryTime;
+
+         Assert.assertEquals(0, queue.refs.get(i).getScheduledDeliveryTime());
+      }
+   }
+
+   public void testNotScheduled() throws Exception
+   {
+      MessageReference ref = generateReference(queue, 1);
+
+      ref.setScheduledDeliveryTime(System.currentTimeMillis() - 1000);
+
+      Assert.assertFalse(handler.checkAndSchedule(ref));
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+   }
+
+   public void testCancelAndRemove() throws Exception
+   {
+      long now = System.currentTimeMillis();
+
+      queue.expect(1);
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < 4; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.setScheduledDeliveryTime(now + 200 + i * 400);
+
+         ref.getMessage().putIntProperty("index", i);
+
+         handler.checkAndSchedule(ref);
+
+         refs.add(ref);
+      }
+
+      Assert.assertSame(refs.get(1), handler.removeReferenceWithID(1));
+
+      Assert.assertNull(handler.removeReferenceWithID(1));
+
+      List<MessageReference> cancelled = handler.cancel(FilterImpl.createFilter("index >= 2"));
+
+      Assert.assertEquals(2, cancelled.size());
+
+      Assert.assertEquals(1, handler.getScheduledCount());
+
+      Assert.assertEquals(refs.get(0).getScheduledDeliveryTime(), handler.getNextScheduledDeliveryTime());
+
+      Assert.assertTrue(queue.latch.await(10, TimeUnit.SECONDS));
+
+      // give the removed ones a chance to be delivered
+      Thread.sleep(1500);
+
+      Assert.assertEquals(1, queue.refs.size());
+
+      Assert.assertSame(refs.get(0), queue.refs.get(0));
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+
+      queue = new RecordingQueue();
+
+      handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor, ScheduledDeliveryHandlerImplTest.TICK);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+
+   /** Keeps the references in the order they would be delivered */
+   private static class RecordingQueue extends FakeQueue
+   {
+      final List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      final List<Long> times = new ArrayList<Long>();
+
+      volatile CountDownLatch latch;
+
+      /** Where the current batch starts */
+      private int batchStart;
+
+      RecordingQueue()
+      {
+         super(new SimpleString("queue"));
+      }
+
+      void expect(final int count)
+      {
+         latch = new CountDownLatch(count);
+      }
+
+      @Override
+      public synchronized void resetAllIterators()
+      {
+         batchStart = refs.size();
+      }
+
+      @Override
+      public synchronized void addHead(final MessageReference ref)
+      {
+         refs.add(batchStart, ref);
+
+         times.add(batchStart, System.currentTimeMillis());
+
+         latch.countDown();
+      }
+   }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.hornetq.tests.util.RandomUtil;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.ConcurrentLongHashMap;
+import org.hornetq.utils.ConcurrentLongHashSet;
+
+/**
+ * A ConcurrentLongHashMapTest
+ */
+public class ConcurrentLongHashMapTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   // Attributes ----------------------------------------------------
+
+   private ConcurrentLongHashMap<String> map;
+
+   // Static --------------------------------------------------------
+
+   // Constructors --------------------------------------------------
+
+   // Public --------------------------------------------------------
+
+   public void testPutGetRemove() throws Exception
+   {
+      Assert.assertNull(map.get(1));
+      Assert.assertNull(map.put(1, "one"));
+      Assert.assertEquals("one", map.get(1));
+      Assert.assertEquals("one", map.put(1, "uno"));
+      Assert.assertEquals("uno", map.get(1));
+      Assert.assertEquals(1, map.size());
+
+      Assert.assertEquals("uno", map.remove(1));
+      Assert.assertNull(map.remove(1));
+      Assert.assertNull(map.get(1));
+      Assert.assertTrue(map.isEmpty());
+   }
+
+   public void testZeroAndNegativeKeys() throws Exception
+   {
+      map.put(0, "zero");
+      map.put(-1, "minus one");
+      map.put(Long.MIN_VALUE, "min");
+      map.put(Long.MAX_VALUE, "max");
+
+      Assert.assertEquals("zero", map.get(0));
+      Assert.assertEquals("minus one", map.get(-1));
+      Assert.assertEquals("min", map.get(Long.MIN_VALUE));
+      Assert.assertEquals("max", map.get(Long.MAX_VALUE));
+      Assert.assertEquals(4, map.size());
+   }
+
+   public void testPutIfAbsent() throws Exception
+   {
+      Assert.assertNull(map.putIfAbsent(10, "a"));
+      Assert.assertEquals("a", map.putIfAbsent(10, "b"));
+      Assert.assertEquals("a", map.get(10));
+   }
+
+   public void testNullValue() throws Exception
+   {
+      try
+      {
+         map.put(1, null);
+         Assert.fail("Exception expected");
+      }
+      catch (NullPointerException expected)
+      {
+      }
+   }
+
+   public void testKeysAndValues() throws Exception
+   {
+      for (long i = 0; i < 1000; i++)
+      {
+         map.put(i, Long.toString(i));
+      }
+
+      long[] keys = map.keys();
+
+      Arrays.sort(keys);
+
+      Assert.assertEquals(1000, keys.length);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         Assert.assertEquals(i, keys[i]);
+      }
+
+      Assert.assertEquals(1000, map.values().size());
+
+      map.clear();
+
+      Assert.assertEquals(0, map.size());
+      Assert.assertEquals(0, map.keys().length);
+      Assert.assertEquals(0, map.values().size());
+   }
+
+   /** Compares random operations against a HashMap, so the removals are exercised on long collision chains */
+   public void testRandomOperations() throws Exception
+   {
+      Map<Long, String> reference = new HashMap<Long, String>();
+
+      ConcurrentLongHashMap<String> small = new ConcurrentLongHashMap<String>(2, 1);
+
+      for (int i = 0; i < 100000; i++)
+      {
+         long key = RandomUtil.randomPositiveInt() % 2000;
+
+         if (RandomUtil.randomBoolean())
+         {
+            String value = RandomUtil.randomString();
+            Assert.assertEquals(reference.put(key, value), small.put(key, value));
+         }
+         else
+         {
+            Assert.assertEquals(reference.remove(key), small.remove(key));
+         }
+      }
+
+      Assert.assertEquals(reference.size(), small.size());
+
+      for (Map.Entry<Long, String> entry : reference.entrySet())
+      {
+         Assert.assertEquals(entry.getValue(), small.get(entry.getKey()));
+      }
+   }
+
+   public void testConcurrentUpdates() throws Exception
+   {
+      final int THREADS = 10;
+
+      final int ELEMENTS = 10000;
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread threads[] = new Thread[THREADS];
+
+      for (int i = 0; i < THREADS; i++)
+      {
+         final long base = i * ELEMENTS;
+
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  latchStart.await();
+
+                  for (long id = base; id < base + ELEMENTS; id++)
+                  {
+                     map.put(id, "value");
+                  }
+
+                  for (long id = base; id < base + ELEMENTS; id += 2)
+                  {
+                     if (map.remove(id) == null)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      latchStart.countDown();
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+
+      Assert.assertEquals(THREADS * ELEMENTS / 2, map.size());
+
+      for (long id = 0; id < THREADS * ELEMENTS; id++)
+      {
+         Assert.assertEquals(id % 2 == 1, map.containsKey(id));
+      }
+   }
+
+   public void testSet() throws Exception
+   {
+      ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+
+      Assert.assertTrue(set.add(3));
+      Assert.assertFalse(set.add(3));
+      Assert.assertTrue(set.contains(3));
+      Assert.assertEquals(1, set.size());
+
+      set.addAll(new long[] { 1, 2, 3 });
+      Assert.assertEquals(3, set.size());
+
+      Assert.assertTrue(set.remove(3));
+      Assert.assertFalse(set.remove(3));
+      Assert.assertFalse(set.contains(3));
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      map = new ConcurrentLongHashMap<String>();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      map = null;
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   // Inner classes -------------------------------------------------
+}